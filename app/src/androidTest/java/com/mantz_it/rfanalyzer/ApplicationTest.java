@@ -147,6 +147,2045 @@ public class ApplicationTest extends ApplicationTestCase<Application> {
 		//Debug.stopMethodTracing();
 	}
 
+	public void testOverlapSaveFilter() {
+		// Compare the overlap-save filter against a direct convolution with the same decimation
+		// semantics as FirFilter.filter(). The input is fed in chunks of varying length (many of
+		// them much shorter than a block) and the output packet is kept small so that the filter
+		// has to stop early.
+		java.util.Random random = new java.util.Random(42);
+		int[] numberOfTaps = {1, 17, 181, 1001};
+		int[] decimations = {1, 2, 3, 8};
+		for (int ntaps : numberOfTaps) {
+			for (int decimation : decimations) {
+				float[] tapsReal = new float[ntaps];
+				float[] tapsImag = new float[ntaps];
+				for (int i = 0; i < ntaps; i++) {
+					tapsReal[i] = random.nextFloat() - 0.5f;
+					tapsImag[i] = random.nextFloat() - 0.5f;
+				}
+				int samples = 20000;
+				SamplePacket in = new SamplePacket(samples);
+				in.setSize(samples);
+				in.setSampleRate(1000000);
+				for (int i = 0; i < samples; i++) {
+					in.re()[i] = random.nextFloat() * 2 - 1;
+					in.im()[i] = random.nextFloat() * 2 - 1;
+				}
+
+				// reference (direct form):
+				float[] refReal = new float[samples];
+				float[] refImag = new float[samples];
+				int refCount = 0;
+				int decimationCounter = 1;
+				for (int t = 0; t < samples; t++) {
+					if(decimationCounter == 0) {
+						for (int j = 0; j < ntaps && j <= t; j++) {
+							refReal[refCount] += tapsReal[j]*in.re(t-j) - tapsImag[j]*in.im(t-j);
+							refImag[refCount] += tapsImag[j]*in.re(t-j) + tapsReal[j]*in.im(t-j);
+						}
+						refCount++;
+					}
+					decimationCounter++;
+					if(decimationCounter >= decimation)
+						decimationCounter = 0;
+				}
+
+				// overlap-save:
+				OverlapSaveFilter filter = new OverlapSaveFilter(tapsReal, tapsImag, decimation);
+				SamplePacket out = new SamplePacket(777);
+				int outCount = 0;
+				int offset = 0;
+				while (offset < samples) {
+					int length = Math.min(random.nextBoolean() ? random.nextInt(64) + 1 : random.nextInt(3000) + 1, samples - offset);
+					out.setSize(0);
+					int consumed = filter.filter(in, out, offset, length);
+					assertTrue("consumed too much", consumed <= length);
+					assertTrue("stopped although output was not full", consumed == length || out.size() == out.capacity());
+					assertEquals(in.getSampleRate()/decimation, out.getSampleRate());
+					for (int i = 0; i < out.size(); i++) {
+						assertEquals("taps=" + ntaps + " dec=" + decimation + " out=" + outCount, refReal[outCount], out.re(i), 1e-3f * (float) Math.sqrt(ntaps));
+						assertEquals("taps=" + ntaps + " dec=" + decimation + " out=" + outCount, refImag[outCount], out.im(i), 1e-3f * (float) Math.sqrt(ntaps));
+						outCount++;
+					}
+					offset += consumed;
+				}
+				assertEquals(refCount, outCount);
+			}
+		}
+	}
+
+	public void testOverlapSaveFilterPerformance() {
+		// SSB band pass as used by the Demodulator (~180 taps, decimation 2):
+		int sampleRate = 62500;
+		int packetSize = 16384;
+		int loopCycles = 1000;
+		SamplePacket in = new SamplePacket(packetSize);
+		SamplePacket out = new SamplePacket(packetSize);
+		in.setSize(in.capacity());
+		in.setSampleRate(sampleRate);
+
+		ComplexFirFilter filter = ComplexFirFilter.createBandPass(2, 1, sampleRate, 200, 3000, sampleRate*0.01f, 40);
+		System.out.println("Created filter with " + filter.getNumberOfTaps() + " taps! (overlap-save: " + filter.isOverlapSave() + ")");
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < loopCycles; i++) {
+			out.setSize(0);
+			filter.filter(in, out, 0, in.size());
+		}
+		System.out.println("Time needed for 1 sec of samples: " + (System.currentTimeMillis() - startTime)/(packetSize*loopCycles/(float)sampleRate) + "ms");
+
+		// The same in chunks that are much shorter than a block:
+		int chunkSize = 64;
+		startTime = System.currentTimeMillis();
+		for (int i = 0; i < loopCycles; i++) {
+			for (int offset = 0; offset < in.size(); offset += chunkSize) {
+				out.setSize(0);
+				filter.filter(in, out, offset, chunkSize);
+			}
+		}
+		System.out.println("Time needed for 1 sec of samples (chunks of " + chunkSize + " samples): "
+				+ (System.currentTimeMillis() - startTime)/(packetSize*loopCycles/(float)sampleRate) + "ms");
+	}
+
+	public void testPolyphaseDecimator() {
+		// Compare the polyphase decimator against the circular buffer kernel that FirFilter used before:
+		java.util.Random random = new java.util.Random(42);
+		int samples = 16384;
+		SamplePacket in = new SamplePacket(samples);
+		in.setSize(samples);
+		in.setSampleRate(1000000);
+		for (int i = 0; i < samples; i++) {
+			in.re()[i] = random.nextFloat() * 2 - 1;
+			in.im()[i] = random.nextFloat() * 2 - 1;
+		}
+		int[] numberOfTaps = {1, 5, 31};
+		int[] decimations = {1, 2, 3, 4, 16};
+		for (int ntaps : numberOfTaps) {
+			for (int decimation : decimations) {
+				float[] taps = new float[ntaps];
+				for (int i = 0; i < ntaps; i++)
+					taps[i] = random.nextFloat() - 0.5f;
+				CircularBufferFirKernel reference = new CircularBufferFirKernel(taps, decimation);
+				PolyphaseDecimator polyphase = new PolyphaseDecimator(taps, decimation);
+				SamplePacket refOut = new SamplePacket(samples);
+				SamplePacket out = new SamplePacket(333);
+				int offset = 0;
+				int refIndex = 0;
+				while (offset < samples) {
+					int length = Math.min(random.nextInt(2000) + 1, samples - offset);
+					out.setSize(0);
+					refOut.setSize(0);
+					int consumed = polyphase.filter(in, out, offset, length);
+					assertEquals(consumed, reference.filter(in, refOut, offset, consumed));
+					assertTrue("stopped although output was not full", consumed == length || out.size() == out.capacity());
+					assertEquals(refOut.size(), out.size());
+					for (int i = 0; i < out.size(); i++) {
+						assertEquals("taps=" + ntaps + " dec=" + decimation + " out=" + refIndex, refOut.re(i), out.re(i), 1e-4f);
+						assertEquals("taps=" + ntaps + " dec=" + decimation + " out=" + refIndex, refOut.im(i), out.im(i), 1e-4f);
+						refIndex++;
+					}
+					offset += consumed;
+				}
+			}
+		}
+	}
+
+	public void testPolyphaseDecimatorPerformance() {
+		int packetSize = 16384;
+		int loopCycles = 1000;
+		SamplePacket in = new SamplePacket(packetSize);
+		SamplePacket out = new SamplePacket(packetSize);
+		in.setSize(in.capacity());
+		float[] taps = new float[15];
+		for (int i = 0; i < taps.length; i++)
+			taps[i] = 1f / taps.length;
+
+		int[] decimations = {2, 4, 8};
+		for (int decimation : decimations) {
+			CircularBufferFirKernel reference = new CircularBufferFirKernel(taps, decimation);
+			PolyphaseDecimator polyphase = new PolyphaseDecimator(taps, decimation);
+			long startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				out.setSize(0);
+				reference.filter(in, out, 0, in.size());
+			}
+			long referenceTime = System.currentTimeMillis() - startTime;
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				out.setSize(0);
+				polyphase.filter(in, out, 0, in.size());
+			}
+			long polyphaseTime = System.currentTimeMillis() - startTime;
+			System.out.println("Decimation " + decimation + " (" + taps.length + " taps): circular buffer kernel "
+					+ referenceTime + "ms, polyphase decimator " + polyphaseTime + "ms for " + loopCycles + " packets");
+		}
+	}
+
+	/**
+	 * The direct form kernel of FirFilter.filter() with the circular delay line (before the
+	 * PolyphaseDecimator was introduced). Used as reference.
+	 */
+	protected static class CircularBufferFirKernel {
+		private float[] taps;
+		private float[] delaysReal;
+		private float[] delaysImag;
+		private int tapCounter = 0;
+		private int decimation;
+		private int decimationCounter = 1;
+
+		public CircularBufferFirKernel(float[] taps, int decimation) {
+			this.taps = taps;
+			this.delaysReal = new float[taps.length];
+			this.delaysImag = new float[taps.length];
+			this.decimation = decimation;
+		}
+
+		public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+			int index;
+			int indexOut = out.size();
+			float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+			for (int i = 0; i < length; i++) {
+				delaysReal[tapCounter] = reIn[offset + i];
+				delaysImag[tapCounter] = imIn[offset + i];
+				if(decimationCounter == 0) {
+					if(indexOut == out.capacity()) {
+						out.setSize(indexOut);
+						return i;
+					}
+					reOut[indexOut] = 0;
+					imOut[indexOut] = 0;
+					index = tapCounter;
+					for (float tap : taps) {
+						reOut[indexOut] += tap * delaysReal[index];
+						imOut[indexOut] += tap * delaysImag[index];
+						index--;
+						if (index < 0)
+							index = taps.length - 1;
+					}
+					indexOut++;
+				}
+				decimationCounter++;
+				if(decimationCounter >= decimation)
+					decimationCounter = 0;
+				tapCounter++;
+				if(tapCounter >= taps.length)
+					tapCounter = 0;
+			}
+			out.setSize(indexOut);
+			return length;
+		}
+	}
+
+	public void testIQConverterMixer() {
+		// The NCO has to produce the same result as the lookup table mixer (for a mix frequency that the
+		// lookup table can represent exactly):
+		IQConverter[] converters = {new Unsigned8BitIQConverter(), new Signed8BitIQConverter(), new Signed12BitIQConverter()};
+		java.util.Random random = new java.util.Random(3);
+		for (IQConverter converter : converters) {
+			IQConverter lutConverter = converter instanceof Unsigned8BitIQConverter ? new Unsigned8BitIQConverter()
+					: converter instanceof Signed8BitIQConverter ? new Signed8BitIQConverter() : new Signed12BitIQConverter();
+			lutConverter.setMixerMode(IQConverter.MIXER_LOOKUP_TABLE);
+			assertEquals(IQConverter.MIXER_NCO, converter.getMixerMode());
+			for (IQConverter c : new IQConverter[]{converter, lutConverter}) {
+				c.setSampleRate(1000000);
+				c.setFrequency(100000000);
+			}
+			int bytesPerSample = converter instanceof Signed12BitIQConverter ? 4 : 2;
+			byte[] packet = createRandomPacket(random, 4096 * bytesPerSample, converter instanceof Signed12BitIQConverter);
+			SamplePacket ncoOut = new SamplePacket(4096);
+			SamplePacket lutOut = new SamplePacket(4096);
+			for (int p = 0; p < 50; p++) {
+				ncoOut.setSize(0);
+				lutOut.setSize(0);
+				assertEquals(lutConverter.mixPacketIntoSamplePacket(packet, lutOut, 100125000),
+						converter.mixPacketIntoSamplePacket(packet, ncoOut, 100125000));
+				assertEquals(100125000, ncoOut.getFrequency());
+				assertEquals(lutOut.size(), ncoOut.size());
+				for (int i = 0; i < ncoOut.size(); i++) {
+					assertEquals("packet " + p + " sample " + i, lutOut.re(i), ncoOut.re(i), 1e-4f);
+					assertEquals("packet " + p + " sample " + i, lutOut.im(i), ncoOut.im(i), 1e-4f);
+				}
+			}
+			assertNull(converter.cosineRealLookupTable);	// NCO must not allocate tables
+		}
+	}
+
+	public void testIQConverterMixerPerformance() {
+		// Measure memory and throughput of both mixers for all converters (2.4 Msps and 20 Msps,
+		// retune to a new channel before every packet as it happens while scrolling):
+		int[] sampleRates = {2400000, 20000000};
+		int loopCycles = 100;
+		int samples = 65536;
+		java.util.Random random = new java.util.Random(5);
+		for (int sampleRate : sampleRates) {
+			for (int type = 0; type < 3; type++) {
+				long[] times = new long[2];
+				long tableBytes = 0;
+				String name = null;
+				for (int mode : new int[] {IQConverter.MIXER_LOOKUP_TABLE, IQConverter.MIXER_NCO}) {
+					IQConverter converter = type == 0 ? new Unsigned8BitIQConverter()
+							: type == 1 ? new Signed8BitIQConverter() : new Signed12BitIQConverter();
+					name = converter.getClass().getSimpleName();
+					converter.setMixerMode(mode);
+					converter.setSampleRate(sampleRate);
+					converter.setFrequency(100000000);
+					byte[] packet = createRandomPacket(random, samples * (type == 2 ? 4 : 2), type == 2);
+					SamplePacket out = new SamplePacket(samples);
+					long startTime = System.currentTimeMillis();
+					for (int i = 0; i < loopCycles; i++) {
+						out.setSize(0);
+						converter.mixPacketIntoSamplePacket(packet, out, 100000000 + 12345 + (i % 10) * 1000);
+					}
+					times[mode] = System.currentTimeMillis() - startTime;
+					if(mode == IQConverter.MIXER_LOOKUP_TABLE)
+						tableBytes = 2L * converter.cosineRealLookupTable.length * converter.cosineRealLookupTable[0].length * 4;
+				}
+				System.out.println(name + " @ " + sampleRate + " Sps (" + loopCycles + " packets of " + samples
+						+ " samples): lookup table: " + times[IQConverter.MIXER_LOOKUP_TABLE] + "ms (" + tableBytes / 1024
+						+ " KB tables)   NCO: " + times[IQConverter.MIXER_NCO] + "ms (no tables)");
+			}
+		}
+	}
+
+	private static byte[] createRandomPacket(java.util.Random random, int length, boolean twelveBit) {
+		byte[] packet = new byte[length];
+		if(!twelveBit) {
+			random.nextBytes(packet);
+			return packet;
+		}
+		// 12 bit samples are stored as little endian 16 bit values in the range [-2048, 2047]:
+		for (int i = 0; i < length; i += 2) {
+			int value = random.nextInt(4096) - 2048;
+			packet[i] = (byte) value;
+			packet[i + 1] = (byte) (value >> 8);
+		}
+		return packet;
+	}
+
+	public void testFrequencyXlatingFirFilter() {
+		// Compare the xlating filter against mixing every sample followed by the polyphase decimator:
+		java.util.Random random = new java.util.Random(7);
+		int samples = 20000;
+		int sampleRate = 10000000;
+		long shiftFrequency = 1234567;
+		SamplePacket in = new SamplePacket(samples);
+		SamplePacket mixed = new SamplePacket(samples);
+		in.setSize(samples);
+		mixed.setSize(samples);
+		in.setSampleRate(sampleRate);
+		in.setFrequency(100000000);
+		double omega = 2 * Math.PI * shiftFrequency / sampleRate;
+		for (int i = 0; i < samples; i++) {
+			in.re()[i] = random.nextFloat() * 2 - 1;
+			in.im()[i] = random.nextFloat() * 2 - 1;
+			mixed.re()[i] = (float) (in.re(i) * Math.cos(omega * i) + in.im(i) * Math.sin(omega * i));
+			mixed.im()[i] = (float) (in.im(i) * Math.cos(omega * i) - in.re(i) * Math.sin(omega * i));
+		}
+		int decimation = 10;
+		FrequencyXlatingFirFilter xlatingFilter = FrequencyXlatingFirFilter.createLowPass(decimation, 1, sampleRate, 200000, 600000, 30);
+		xlatingFilter.setShiftFrequency(shiftFrequency);
+		float[] taps = FirFilter.createLowPassTaps(1, sampleRate, 200000, 600000, 30);
+		PolyphaseDecimator reference = new PolyphaseDecimator(taps, decimation);
+		SamplePacket refOut = new SamplePacket(samples);
+		SamplePacket out = new SamplePacket(samples);
+		int offset = 0;
+		while (offset < samples) {
+			int length = Math.min(random.nextInt(3000) + 1, samples - offset);
+			offset += xlatingFilter.filter(in, out, offset, length);
+		}
+		reference.filter(mixed, refOut, 0, samples);
+		assertEquals(sampleRate / decimation, out.getSampleRate());
+		assertEquals(in.getFrequency() + shiftFrequency, out.getFrequency());
+		assertEquals(refOut.size(), out.size());
+
+		// The rotator starts with phase 0 at the first output (input sample decimation-1), the reference with -omega*(decimation-1):
+		float phaseRe = (float) Math.cos(omega * (decimation - 1));
+		float phaseIm = (float) -Math.sin(omega * (decimation - 1));
+		for (int i = 0; i < out.size(); i++) {
+			assertEquals("out=" + i, refOut.re(i), out.re(i) * phaseRe - out.im(i) * phaseIm, 1e-3f);
+			assertEquals("out=" + i, refOut.im(i), out.re(i) * phaseIm + out.im(i) * phaseRe, 1e-3f);
+		}
+	}
+
+	public void testFrequencyXlatingFirFilterPerformance() {
+		// Compare mixing at full rate + decimation with the xlating filter for a 20 Msps source (8 bit samples):
+		int packetSize = 262144;
+		int loopCycles = 100;
+		int sampleRate = 20000000;
+		int decimation = 20;
+		byte[] packet = new byte[packetSize];
+		new java.util.Random(1).nextBytes(packet);
+		IQConverter converter = new Signed8BitIQConverter();
+		converter.setSampleRate(sampleRate);
+		converter.setFrequency(100000000);
+		SamplePacket buffer = new SamplePacket(packetSize / 2);
+		SamplePacket out = new SamplePacket(packetSize / 2);
+		float[] taps = FirFilter.createLowPassTaps(1, sampleRate, 200000, 600000, 30);
+		PolyphaseDecimator decimator = new PolyphaseDecimator(taps, decimation);
+		FrequencyXlatingFirFilter xlatingFilter = new FrequencyXlatingFirFilter(taps, decimation, sampleRate);
+		xlatingFilter.setShiftFrequency(1234567);
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < loopCycles; i++) {
+			buffer.setSize(0);
+			out.setSize(0);
+			converter.mixPacketIntoSamplePacket(packet, buffer, 101234567);
+			decimator.filter(buffer, out, 0, buffer.size());
+		}
+		long mixTime = System.currentTimeMillis() - startTime;
+		startTime = System.currentTimeMillis();
+		for (int i = 0; i < loopCycles; i++) {
+			buffer.setSize(0);
+			out.setSize(0);
+			converter.fillPacketIntoSamplePacket(packet, buffer);
+			xlatingFilter.filter(buffer, out, 0, buffer.size());
+		}
+		long xlatingTime = System.currentTimeMillis() - startTime;
+		System.out.println("Xlating filter (" + taps.length + " taps, decimation " + decimation + "): mix + decimate: "
+				+ mixTime + "ms   xlating: " + xlatingTime + "ms  (" + loopCycles + " packets)");
+	}
+
+	public void testDirectSamplePacket() {
+		// Arena:
+		SampleBufferArena arena = new SampleBufferArena(4096 * 8, 3);
+		ByteBuffer[] blocks = new ByteBuffer[3];
+		for (int i = 0; i < 3; i++) {
+			blocks[i] = arena.allocate();
+			assertTrue(blocks[i].isDirect());
+			assertEquals(4096 * 8, blocks[i].capacity());
+		}
+		assertNull(arena.allocate());
+		assertTrue(arena.release(blocks[1]));
+		assertFalse(arena.release(blocks[1]));						// released twice
+		assertFalse(arena.release(ByteBuffer.allocateDirect(4096 * 8)));	// foreign block
+		assertEquals(1, arena.getFreeBlocks());
+		assertTrue(arena.release(blocks[0]));
+		assertTrue(arena.release(blocks[2]));
+
+		// Converting from direct bytes must give the same result as converting from a byte array:
+		IQConverter[] converters = {new Unsigned8BitIQConverter(), new Signed8BitIQConverter(), new Signed12BitIQConverter()};
+		java.util.Random random = new java.util.Random(13);
+		for (IQConverter converter : converters) {
+			converter.setSampleRate(2000000);
+			converter.setFrequency(100000000);
+			int bytesPerSample = converter instanceof Signed12BitIQConverter ? 4 : 2;
+			byte[] packet = createRandomPacket(random, 4096 * bytesPerSample, converter instanceof Signed12BitIQConverter);
+			ByteBuffer directPacket = arena.allocate();
+			directPacket.put(packet).flip();
+			SamplePacket reference = new SamplePacket(4096);
+			SamplePacket heapOut = new SamplePacket(4096);
+			converter.fillPacketIntoSamplePacket(packet, reference);
+			assertEquals(4096, converter.fillPacketIntoSamplePacket(directPacket, heapOut));
+			for (int layout : new int[] {DirectSamplePacket.LAYOUT_SPLIT, DirectSamplePacket.LAYOUT_INTERLEAVED}) {
+				DirectSamplePacket directOut = new DirectSamplePacket(arena, layout);
+				assertEquals(4096, directOut.capacity());
+				assertEquals(4096, converter.fillPacketIntoDirectSamplePacket(directPacket, directOut));
+				assertEquals(0, directPacket.position());
+				assertEquals(2000000, directOut.getSampleRate());
+				SamplePacket copy = new SamplePacket(4096);
+				assertEquals(4096, directOut.copyTo(copy));
+				SamplePacket tail = new SamplePacket(4096);
+				assertEquals(4096 - 1000, directOut.copyTo(tail, 1000));
+				assertEquals(reference.re(1000), tail.re(0));
+				assertEquals(reference.im(4095), tail.im(4095 - 1000));
+				for (int i = 0; i < 4096; i++) {
+					assertEquals(reference.re(i), heapOut.re(i));
+					assertEquals(reference.im(i), heapOut.im(i));
+					assertEquals(reference.re(i), directOut.re(i));
+					assertEquals(reference.im(i), directOut.im(i));
+					assertEquals(reference.re(i), copy.re(i));
+					assertEquals(reference.im(i), copy.im(i));
+				}
+				directOut.setSize(0);
+				assertEquals(4096, directOut.copyFrom(reference));
+				assertEquals(reference.im(4095), directOut.im(4095));
+				directOut.free();
+			}
+			assertTrue(arena.release(directPacket));
+		}
+		assertEquals(3, arena.getFreeBlocks());
+
+		// The xlating filter has to produce the same output for direct and heap input:
+		int samples = 20000;
+		SamplePacket in = new SamplePacket(samples);
+		DirectSamplePacket directIn = new DirectSamplePacket(samples, DirectSamplePacket.LAYOUT_INTERLEAVED);
+		for (int i = 0; i < samples; i++) {
+			in.re()[i] = random.nextFloat() * 2 - 1;
+			in.im()[i] = random.nextFloat() * 2 - 1;
+		}
+		in.setSize(samples);
+		in.setSampleRate(10000000);
+		directIn.copyFrom(in);
+		FrequencyXlatingFirFilter heapFilter = FrequencyXlatingFirFilter.createLowPass(10, 1, 10000000, 200000, 600000, 30);
+		FrequencyXlatingFirFilter directFilter = FrequencyXlatingFirFilter.createLowPass(10, 1, 10000000, 200000, 600000, 30);
+		heapFilter.setShiftFrequency(-1234567);
+		directFilter.setShiftFrequency(-1234567);
+		SamplePacket heapOut = new SamplePacket(samples);
+		SamplePacket directOut = new SamplePacket(samples);
+		assertEquals(samples, heapFilter.filter(in, heapOut, 0, samples));
+		int offset = 0;
+		while (offset < samples)
+			offset += directFilter.filter(directIn, directOut, offset, Math.min(random.nextInt(3000) + 1, samples - offset));
+		assertEquals(heapOut.size(), directOut.size());
+		assertEquals(heapOut.getFrequency(), directOut.getFrequency());
+		for (int i = 0; i < heapOut.size(); i++) {
+			assertEquals(heapOut.re(i), directOut.re(i), 1e-6f);
+			assertEquals(heapOut.im(i), directOut.im(i), 1e-6f);
+		}
+	}
+
+	public void testDirectSamplePacketPerformance() {
+		// Convert and shift/decimate 20 Msps (8 bit samples) from heap arrays and from direct memory:
+		int packetSize = 262144;
+		int loopCycles = 100;
+		java.util.Random random = new java.util.Random(17);
+		IQConverter converter = new Signed8BitIQConverter();
+		converter.setSampleRate(20000000);
+		byte[] packet = createRandomPacket(random, packetSize * 2, false);
+		SampleBufferArena arena = new SampleBufferArena(packetSize * 8, 2);
+		ByteBuffer directPacket = arena.allocate();
+		directPacket.put(packet).flip();
+		SamplePacket heapSamples = new SamplePacket(packetSize);
+		DirectSamplePacket directSamples = new DirectSamplePacket(arena, DirectSamplePacket.LAYOUT_SPLIT);
+		FrequencyXlatingFirFilter heapFilter = FrequencyXlatingFirFilter.createLowPass(10, 1, 20000000, 400000, 1200000, 30);
+		FrequencyXlatingFirFilter directFilter = FrequencyXlatingFirFilter.createLowPass(10, 1, 20000000, 400000, 1200000, 30);
+		heapFilter.setShiftFrequency(3000000);
+		directFilter.setShiftFrequency(3000000);
+		SamplePacket out = new SamplePacket(packetSize);
+
+		for (int run = 0; run < 2; run++) {
+			long startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				heapSamples.setSize(0);
+				converter.fillPacketIntoSamplePacket(packet, heapSamples);
+				out.setSize(0);
+				heapFilter.filter(heapSamples, out, 0, heapSamples.size());
+			}
+			long heapTime = System.currentTimeMillis() - startTime;
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				directSamples.setSize(0);
+				converter.fillPacketIntoDirectSamplePacket(directPacket, directSamples);
+				out.setSize(0);
+				directFilter.filter(directSamples, out, 0, directSamples.size());
+			}
+			long directTime = System.currentTimeMillis() - startTime;
+			System.out.println("##### DONE (" + loopCycles + " packets of " + packetSize + " samples, converter + xlating filter with "
+					+ heapFilter.getNumberOfTaps() + " taps): byte[] + float[]: " + heapTime + "ms   direct buffers: " + directTime + "ms");
+		}
+		directSamples.free();
+
+		// Every Scheduler needs a buffer for the converted samples. On the heap it is allocated (and
+		// later collected) for every start, a block of the arena is reused:
+		Runtime runtime = Runtime.getRuntime();
+		long startTime = System.currentTimeMillis();
+		long freeMemory = runtime.freeMemory();
+		long gcRuns = 0;
+		for (int i = 0; i < loopCycles; i++) {
+			heapSamples = new SamplePacket(packetSize);
+			long newFreeMemory = runtime.freeMemory();
+			if(newFreeMemory > freeMemory)
+				gcRuns++;		// the heap shrank: the garbage collector ran
+			freeMemory = newFreeMemory;
+		}
+		long heapTime = System.currentTimeMillis() - startTime;
+		startTime = System.currentTimeMillis();
+		for (int i = 0; i < loopCycles; i++) {
+			directSamples = new DirectSamplePacket(arena, DirectSamplePacket.LAYOUT_SPLIT);
+			directSamples.free();
+		}
+		long arenaTime = System.currentTimeMillis() - startTime;
+		System.out.println("##### DONE (" + loopCycles + " buffers of " + packetSize + " samples): heap: " + heapTime + "ms ("
+				+ (loopCycles * packetSize * 8L / 1024 / 1024) + " MB garbage, " + gcRuns + " gc runs)   arena: " + arenaTime + "ms (no garbage)");
+		arena.release(directPacket);
+	}
+
+	public void testFileIQSource() throws Exception {
+		// Create a file with 10.5 packets of 8 bit samples:
+		int packetSize = 4096;
+		java.util.Random random = new java.util.Random(21);
+		byte[] content = createRandomPacket(random, packetSize * 10 + packetSize / 2, false);
+		java.io.File file = java.io.File.createTempFile("iqsource", ".iq");
+		file.deleteOnExit();
+		java.io.FileOutputStream outputStream = new java.io.FileOutputStream(file);
+		outputStream.write(content);
+		outputStream.close();
+		final int[] errors = new int[1];
+		IQSourceInterface.Callback callback = new IQSourceInterface.Callback() {
+			@Override
+			public void onIQSourceReady(IQSourceInterface source) {}
+			@Override
+			public void onIQSourceError(IQSourceInterface source, String message) {
+				errors[0]++;
+			}
+		};
+
+		for (boolean memoryMapped : new boolean[] {false, true}) {
+			// Both modes have to deliver the same packets and rewind at the end of the file:
+			FileIQSource source = new FileIQSource(file.getAbsolutePath(), 2000000, 100000000, packetSize, true,
+					FileIQSource.FILE_FORMAT_8BIT_SIGNED, memoryMapped);
+			assertTrue(source.open(null, callback));
+			assertTrue(source.isOpen());
+			assertEquals(memoryMapped, source.isMapped());
+			assertEquals(content.length / 2, source.getTotalSamples());
+			for (int i = 0; i < 25; i++) {
+				assertEquals((i % 10) * packetSize / 2, source.getSamplePosition());
+				byte[] packet = source.getPacket(0);
+				assertNotNull(packet);
+				for (int j = 0; j < packetSize; j++)
+					assertEquals(content[(i % 10) * packetSize + j], packet[j]);
+				source.returnPacket(packet);
+			}
+
+			// Seek (by sample and by time):
+			assertTrue(source.seekToSample(1001));
+			assertEquals(1001, source.getSamplePosition());
+			byte[] packet = source.getPacket(0);
+			for (int j = 0; j < packetSize; j++)
+				assertEquals(content[2002 + j], packet[j]);
+			assertTrue(source.seekToTime(5));		// 5ms at 2 Msps = sample 10000
+			packet = source.getPacket(0);
+			assertEquals(content[20000], packet[0]);
+			assertFalse(source.seekToSample(content.length / 2));
+			assertFalse(source.seekToSample(-1));
+
+			// Converting a packet buffer has to give the same samples as converting the byte array:
+			source.seekToSample(0);
+			ByteBuffer packetBuffer = source.getPacketBuffer(0);
+			assertEquals(packetSize, packetBuffer.remaining());
+			SamplePacket fromBuffer = new SamplePacket(packetSize / 2);
+			SamplePacket fromArray = new SamplePacket(packetSize / 2);
+			assertEquals(packetSize / 2, source.fillPacketIntoSamplePacket(packetBuffer, fromBuffer));
+			packet = new byte[packetSize];
+			System.arraycopy(content, 0, packet, 0, packetSize);
+			source.fillPacketIntoSamplePacket(packet, fromArray);
+			for (int j = 0; j < packetSize / 2; j++) {
+				assertEquals(fromArray.re(j), fromBuffer.re(j));
+				assertEquals(fromArray.im(j), fromBuffer.im(j));
+			}
+			assertTrue(source.close());
+		}
+		assertEquals(0, errors[0]);
+
+		// Without repeat the source stops at the end of the file:
+		FileIQSource source = new FileIQSource(file.getAbsolutePath(), 2000000, 100000000, packetSize, false,
+				FileIQSource.FILE_FORMAT_8BIT_SIGNED, true);
+		assertTrue(source.open(null, callback));
+		source.seekToSample(9 * packetSize / 2);
+		assertNotNull(source.getPacket(0));
+		assertNull(source.getPacket(0));
+		assertEquals(1, errors[0]);
+		source.close();
+
+		// A file that cannot be opened is reported in both modes:
+		for (boolean memoryMapped : new boolean[] {false, true}) {
+			source = new FileIQSource(file.getAbsolutePath() + ".missing", 2000000, 100000000, packetSize, false,
+					FileIQSource.FILE_FORMAT_8BIT_SIGNED, memoryMapped);
+			assertFalse(source.open(null, callback));
+			assertFalse(source.isOpen());
+		}
+		assertEquals(3, errors[0]);
+
+		// The scheduler reads a memory mapped source with getPacketBuffer(); the recording still gets the raw bytes:
+		source = new FileIQSource(file.getAbsolutePath(), 2000000, 100000000, packetSize, false,
+				FileIQSource.FILE_FORMAT_8BIT_SIGNED, true);
+		source.setThrottled(false);
+		assertTrue(source.open(null, callback));
+		java.io.ByteArrayOutputStream recording = new java.io.ByteArrayOutputStream();
+		Scheduler scheduler = new Scheduler(1024, source);
+		scheduler.startRecording(new java.io.BufferedOutputStream(recording));
+		scheduler.start();
+		scheduler.join(10000);
+		assertFalse(scheduler.isAlive());
+		source.close();
+		byte[] recorded = recording.toByteArray();
+		assertEquals(10 * packetSize, recorded.length);
+		for (int j = 0; j < recorded.length; j++)
+			assertEquals(content[j], recorded[j]);
+
+		// A channel has to get the same samples from a memory mapped source (converted into a block
+		// of the arena and read by the xlating filter) as from a stream:
+		SampleBufferArena arena = new SampleBufferArena(packetSize * 8, 1);
+		SamplePacket[] channelSamples = new SamplePacket[2];
+		for (int run = 0; run < 2; run++) {
+			source = new FileIQSource(file.getAbsolutePath(), 2000000, 100000000, packetSize, false,
+					FileIQSource.FILE_FORMAT_8BIT_SIGNED, run == 1);
+			source.setThrottled(false);
+			assertTrue(source.open(null, callback));
+			scheduler = new Scheduler(1024, source);
+			scheduler.setSampleBufferArena(arena);
+			scheduler.setChannelFrequency(100300000);
+			scheduler.setSquelchSatisfied(true);
+			scheduler.setDemodulationActivated(true);
+			scheduler.start();
+			scheduler.join(10000);
+			assertFalse(scheduler.isAlive());
+			source.close();
+			assertEquals(1, arena.getFreeBlocks());		// the block was returned for the next scheduler
+			channelSamples[run] = new SamplePacket(10 * packetSize);
+			RingBuffer<SamplePacket> demodRingBuffer = scheduler.getDemodRingBuffer();
+			SamplePacket demodPacket;
+			while ((demodPacket = demodRingBuffer.acquire()) != null) {
+				demodPacket.copyTo(channelSamples[run]);
+				demodRingBuffer.release(demodPacket);
+			}
+		}
+		assertEquals(10 * packetSize / 2 / 2, channelSamples[0].size());	// decimated to 1 Msps
+		assertEquals(channelSamples[0].size(), channelSamples[1].size());
+		assertEquals(channelSamples[0].getSampleRate(), channelSamples[1].getSampleRate());
+		assertEquals(channelSamples[0].getFrequency(), channelSamples[1].getFrequency());
+		for (int j = 0; j < channelSamples[0].size(); j++) {
+			assertEquals(channelSamples[0].re(j), channelSamples[1].re(j), 1e-6f);
+			assertEquals(channelSamples[0].im(j), channelSamples[1].im(j), 1e-6f);
+		}
+	}
+
+	public void testFileIQSourcePerformance() throws Exception {
+		// Read a 64 MB file five times (no throttling because of the zero timeout):
+		int packetSize = 16384;
+		int fileSize = 64 * 1024 * 1024;
+		java.io.File file = java.io.File.createTempFile("iqsource", ".iq");
+		file.deleteOnExit();
+		java.io.FileOutputStream outputStream = new java.io.FileOutputStream(file);
+		byte[] chunk = createRandomPacket(new java.util.Random(22), 1024 * 1024, false);
+		for (int i = 0; i < fileSize / chunk.length; i++)
+			outputStream.write(chunk);
+		outputStream.close();
+		IQSourceInterface.Callback callback = new IQSourceInterface.Callback() {
+			@Override
+			public void onIQSourceReady(IQSourceInterface source) {}
+			@Override
+			public void onIQSourceError(IQSourceInterface source, String message) {}
+		};
+		int packets = 5 * fileSize / packetSize;
+
+		for (int run = 0; run < 2; run++) {
+			long[] times = new long[3];
+			for (int mode = 0; mode < 3; mode++) {
+				FileIQSource source = new FileIQSource(file.getAbsolutePath(), 20000000, 100000000, packetSize, true,
+						FileIQSource.FILE_FORMAT_8BIT_SIGNED, mode > 0);
+				source.open(null, callback);
+				long startTime = System.currentTimeMillis();
+				for (int i = 0; i < packets; i++) {
+					if(mode < 2)
+						assertNotNull(source.getPacket(0));
+					else
+						assertNotNull(source.getPacketBuffer(0));
+				}
+				times[mode] = System.currentTimeMillis() - startTime;
+				source.seekToSample(fileSize / 4);		// random access
+				assertNotNull(source.getPacket(0));
+				source.close();
+			}
+			System.out.println("##### DONE (" + packets + " packets of " + packetSize + " bytes): stream: " + times[0]
+					+ "ms   memory mapped (copy): " + times[1] + "ms   memory mapped (view): " + times[2] + "ms");
+		}
+		file.delete();
+	}
+
+	public void testBatchProcessor() throws Exception {
+		// 2 seconds of an FM carrier (1 kHz tone, 3 kHz deviation) at +200 kHz, 8 bit signed at 2 Msps:
+		int sampleRate = 2000000;
+		long centerFrequency = 100000000;
+		int carrierOffset = 200000;
+		int packetSize = 16384;
+		int samples = 2 * sampleRate;
+		byte[] content = new byte[samples * 2];
+		java.util.Random random = new java.util.Random(23);
+		double phase = 0;
+		for (int i = 0; i < samples; i++) {
+			phase += 2 * Math.PI * (carrierOffset + 3000 * Math.sin(2 * Math.PI * 1000 * i / sampleRate)) / sampleRate;
+			content[2 * i] = (byte) Math.round(100 * Math.cos(phase) + random.nextGaussian() * 2);
+			content[2 * i + 1] = (byte) Math.round(100 * Math.sin(phase) + random.nextGaussian() * 2);
+		}
+		java.io.File iqFile = java.io.File.createTempFile("batch", ".iq");
+		java.io.File spectrumFile = java.io.File.createTempFile("batch", ".spectrum");
+		java.io.File wavFile = java.io.File.createTempFile("batch", ".wav");
+		iqFile.deleteOnExit();
+		spectrumFile.deleteOnExit();
+		wavFile.deleteOnExit();
+		java.io.FileOutputStream outputStream = new java.io.FileOutputStream(iqFile);
+		outputStream.write(content);
+		outputStream.close();
+
+		FileIQSource source = new FileIQSource(iqFile.getAbsolutePath(), sampleRate, centerFrequency, packetSize, false,
+				FileIQSource.FILE_FORMAT_8BIT_SIGNED, true);
+		BatchProcessor batchProcessor = new BatchProcessor(source, 1024);
+		batchProcessor.setSpectrumFile(spectrumFile);
+		assertFalse(batchProcessor.addChannel(centerFrequency, 17, wavFile));
+		assertTrue(batchProcessor.addChannel(centerFrequency + carrierOffset, Demodulator.DEMODULATION_NFM, wavFile));
+		assertTrue(batchProcessor.run());
+		System.out.println("##### DONE (2 s of IQ samples at 2 Msps; fft + NFM demodulation to file): "
+				+ batchProcessor.getElapsedTime() + "ms  (" + batchProcessor.getRealTimeFactor() + "x real time)");
+
+		// Lossless: there is one spectrum for every 1024 samples (of all complete packets) and the carrier is at its bin:
+		int frames = content.length / packetSize * packetSize / 2 / 1024;
+		assertEquals(frames, batchProcessor.getProcessedFrames());
+		java.io.DataInputStream spectrumStream = new java.io.DataInputStream(
+				new java.io.BufferedInputStream(new java.io.FileInputStream(spectrumFile)));
+		for (int frame = 0; frame < frames; frame++) {
+			assertEquals(centerFrequency, spectrumStream.readLong());
+			assertEquals(sampleRate, spectrumStream.readInt());
+			assertEquals(1024, spectrumStream.readInt());
+			int maxIndex = 0;
+			float[] mag = new float[1024];
+			for (int i = 0; i < mag.length; i++) {
+				mag[i] = spectrumStream.readFloat();
+				if(mag[i] > mag[maxIndex])
+					maxIndex = i;
+			}
+			assertEquals(512 + carrierOffset * 1024 / sampleRate, maxIndex, 2);
+		}
+		assertEquals(-1, spectrumStream.read());
+		spectrumStream.close();
+
+		// The wav file contains (almost) 2 seconds of the 1 kHz tone:
+		byte[] wav = new byte[(int) wavFile.length()];
+		java.io.DataInputStream wavStream = new java.io.DataInputStream(new java.io.FileInputStream(wavFile));
+		wavStream.readFully(wav);
+		wavStream.close();
+		assertEquals("RIFF", new String(wav, 0, 4, "US-ASCII"));
+		ByteBuffer header = ByteBuffer.wrap(wav).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+		assertEquals(wav.length - 8, header.getInt(4));
+		assertEquals(AudioSink.DEFAULT_SAMPLE_RATE, header.getInt(24));
+		int audioSamples = header.getInt(40) / 2;
+		assertEquals(wav.length - 44, audioSamples * 2);
+		assertTrue("audio samples: " + audioSamples, audioSamples > 1.9 * AudioSink.DEFAULT_SAMPLE_RATE);
+		assertTrue("audio samples: " + audioSamples, audioSamples <= 2 * AudioSink.DEFAULT_SAMPLE_RATE);
+		int zeroCrossings = 0;
+		for (int i = AudioSink.DEFAULT_SAMPLE_RATE / 10 + 1; i < audioSamples; i++) {
+			if((header.getShort(44 + 2 * i) >= 0) != (header.getShort(44 + 2 * i - 2) >= 0))
+				zeroCrossings++;
+		}
+		double toneFrequency = zeroCrossings / 2.0 / (audioSamples - AudioSink.DEFAULT_SAMPLE_RATE / 10) * AudioSink.DEFAULT_SAMPLE_RATE;
+		assertEquals(1000, toneFrequency, 20);
+
+		// If the wav file can't be created, the audio sink stops and the other blocks must not wait for it forever:
+		source = new FileIQSource(iqFile.getAbsolutePath(), sampleRate, centerFrequency, packetSize, false,
+				FileIQSource.FILE_FORMAT_8BIT_SIGNED, true);
+		batchProcessor = new BatchProcessor(source, 1024);
+		assertTrue(batchProcessor.addChannel(centerFrequency + carrierOffset, Demodulator.DEMODULATION_NFM,
+				new java.io.File(wavFile.getParentFile(), "nonexistent/batch.wav")));
+		long startTime = System.currentTimeMillis();
+		assertFalse(batchProcessor.run());
+		assertTrue(System.currentTimeMillis() - startTime < 10000);
+
+		// The same for a processing loop that stopped (e.g. after an error while writing the spectrum file):
+		SyntheticIQSource endlessSource = new SyntheticIQSource(sampleRate, centerFrequency, packetSize, FileIQSource.FILE_FORMAT_8BIT_SIGNED);
+		assertTrue(endlessSource.open(null, null));
+		Scheduler scheduler = new Scheduler(1024, endlessSource);
+		scheduler.setLossless(true);
+		scheduler.setFftConsumer(new AnalyzerProcessingLoop(null, 1024, scheduler.getFftRingBuffer()));	// never started
+		scheduler.start();
+		scheduler.join(10000);
+		assertFalse(scheduler.isAlive());
+		assertFalse(scheduler.isRunning());
+		endlessSource.close();
+	}
+
+	public void testCommandLineRunner() throws Exception {
+		// 0.5 seconds of a carrier at -100 kHz, 8 bit unsigned at 1 Msps:
+		int sampleRate = 1000000;
+		byte[] content = new byte[sampleRate];
+		for (int i = 0; i < content.length / 2; i++) {
+			content[2 * i] = (byte) (128 + Math.round(100 * Math.cos(-2 * Math.PI * 100000 * i / sampleRate)));
+			content[2 * i + 1] = (byte) (128 + Math.round(100 * Math.sin(-2 * Math.PI * 100000 * i / sampleRate)));
+		}
+		java.io.File iqFile = java.io.File.createTempFile("cli", ".iq");
+		java.io.File spectrumFile = java.io.File.createTempFile("cli", ".spectrum");
+		java.io.File wavFile = java.io.File.createTempFile("cli", ".wav");
+		iqFile.deleteOnExit();
+		spectrumFile.deleteOnExit();
+		wavFile.deleteOnExit();
+		java.io.FileOutputStream outputStream = new java.io.FileOutputStream(iqFile);
+		outputStream.write(content);
+		outputStream.close();
+		java.io.ByteArrayOutputStream output = new java.io.ByteArrayOutputStream();
+		java.io.PrintStream out = new java.io.PrintStream(output);
+
+		// Invalid arguments:
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {}, out));
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {iqFile.getAbsolutePath()}, out));
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {"-r", "1000000", "-f", "s16", iqFile.getAbsolutePath()}, out));
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {"-r", "1000000", "-n", "1000", iqFile.getAbsolutePath()}, out));
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {"-r", "1000000", "-d", "100000000:xyz:a.wav", iqFile.getAbsolutePath()}, out));
+		assertEquals(CommandLineRunner.EXIT_USAGE, CommandLineRunner.run(new String[] {"-r", "1000000", "--demod"}, out));
+		assertTrue(output.toString().contains("Usage:"));
+
+		// Process the file:
+		output.reset();
+		assertEquals(CommandLineRunner.EXIT_SUCCESS, CommandLineRunner.run(new String[] {"--quiet", "--rate", "1000000",
+				"--frequency", "100000000", "--format", "u8", "--fft", "512", "--spectrum", spectrumFile.getAbsolutePath(),
+				"--demod", "99900000:am:10000:" + wavFile.getAbsolutePath(), iqFile.getAbsolutePath()}, out));
+		Log.setMinPriority(Log.DEBUG);
+		System.out.println("##### DONE (command line runner): " + output.toString().trim());
+		assertTrue(output.toString().startsWith("Processed " + content.length / 2 + " samples"));
+		int frames = content.length / 2 / 512;
+		assertEquals(frames * (8 + 4 + 4 + 512 * 4), spectrumFile.length());
+		assertTrue(wavFile.length() > 44);
+
+		// The wav file can't be created:
+		assertEquals(CommandLineRunner.EXIT_ERROR, CommandLineRunner.run(new String[] {"--quiet", "--rate", "1000000",
+				"--format", "u8", "--demod", "100000:nfm:" + new java.io.File(wavFile.getParentFile(), "nonexistent/cli.wav").getAbsolutePath(),
+				iqFile.getAbsolutePath()}, out));
+	}
+
+	public void testSyntheticIQSource() throws Exception {
+		int sampleRate = 2000000;
+		int packetSize = 16384;
+		int fftSize = 1024;
+		int[] formats = {FileIQSource.FILE_FORMAT_8BIT_SIGNED, FileIQSource.FILE_FORMAT_8BIT_UNSIGNED, FileIQSource.FILE_FORMAT_12BIT_SIGNED};
+		SamplePacket reference = null;		// first packet in the first format
+		for (int format : formats) {
+			// Not throttled: the tones are at their fft bins in every packet:
+			SyntheticIQSource source = new SyntheticIQSource(sampleRate, 100000000, packetSize, format);
+			source.addTone(250000, 0.5f);
+			source.addTone(-500000, 0.25f);
+			source.setNoiseAmplitude(0.01f);
+			assertTrue(source.open(null, null));
+			source.startSampling();
+			FFT fft = new FFT(fftSize);
+			SamplePacket samples = new SamplePacket(fftSize);
+			for (int p = 0; p < 20; p++) {
+				byte[] packet = source.getPacket(1000);
+				assertNotNull(packet);
+				samples.setSize(0);
+				source.fillPacketIntoSamplePacket(packet, samples);
+				source.returnPacket(packet);
+				assertEquals(fftSize, samples.size());
+				// all formats deliver the same signal (apart from the quantization):
+				if(p == 0 && reference == null) {
+					reference = new SamplePacket(fftSize);
+					samples.copyTo(reference);
+				} else if(p == 0) {
+					for (int i = 0; i < fftSize; i++) {
+						assertEquals("format " + format, reference.re(i), samples.re(i), 0.02f);
+						assertEquals("format " + format, reference.im(i), samples.im(i), 0.02f);
+					}
+				}
+				fft.fft(samples.re(), samples.im());
+				int peak = 0;
+				for (int i = 0; i < fftSize; i++) {
+					if(samples.re(i) * samples.re(i) + samples.im(i) * samples.im(i)
+							> samples.re(peak) * samples.re(peak) + samples.im(peak) * samples.im(peak))
+						peak = i;
+				}
+				assertEquals("format " + format, 250000 * fftSize / sampleRate, peak);
+				float second = (float) Math.hypot(samples.re(fftSize - 500000 * fftSize / sampleRate), samples.im(fftSize - 500000 * fftSize / sampleRate));
+				assertEquals("format " + format, 0.5, second / Math.hypot(samples.re(peak), samples.im(peak)), 0.05);
+			}
+			assertEquals(20, source.getDeliveredPackets());
+			source.close();
+		}
+
+		// Throttled: the queue runs full and the following packets are dropped if nobody reads them:
+		SyntheticIQSource source = new SyntheticIQSource(10000000, 100000000, packetSize, FileIQSource.FILE_FORMAT_8BIT_SIGNED);
+		source.setThrottled(true);
+		assertTrue(source.open(null, null));
+		source.startSampling();
+		Thread.sleep(300);	// 10 Msps = 1220 packets/s
+		assertEquals(SyntheticIQSource.QUEUE_SIZE, source.getQueueSize());
+		assertEquals(SyntheticIQSource.QUEUE_SIZE, source.getDeliveredPackets());
+		assertTrue("dropped: " + source.getDroppedPackets(), source.getDroppedPackets() > 100);
+		for (int i = 0; i < SyntheticIQSource.QUEUE_SIZE; i++) {
+			byte[] packet = source.getPacket(1000);
+			assertNotNull(packet);
+			source.returnPacket(packet);
+		}
+		assertNotNull(source.getPacket(1000));		// the producer delivers new packets
+		source.close();
+	}
+
+	public void testPipelineMetrics() throws Exception {
+		// Histogram: exact below 32us, at most 1/16 too high above:
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i);
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertEquals(10, new LatencyHistogram() {{ for (int i = 0; i < 20; i++) record(i < 10 ? 10 : 20); }}.getPercentile(50));
+		long[] percentiles = {50, 90, 99};
+		for (long percentile : percentiles) {
+			long value = histogram.getPercentile(percentile);
+			assertTrue(percentile + ": " + value, value >= percentile * 10 && value <= percentile * 10 * 17 / 16);
+		}
+		assertEquals(1000, histogram.getPercentile(100));
+		histogram.record(Long.MAX_VALUE / 2);		// huge values must not overflow the buckets
+		assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		histogram.recordSince(0);					// no timestamp
+		assertEquals(0, histogram.getCount());
+
+		// Counters and gauges:
+		PipelineMetrics.reset();
+		PipelineMetrics.counter("test.counter").add(5);
+		PipelineMetrics.counter("test.counter").increment();
+		assertEquals(6, PipelineMetrics.counter("test.counter").get());
+		RingBuffer<SamplePacket> ringBuffer = RingBuffer.createSamplePacketRingBuffer(4, 16);
+		PipelineMetrics.registerQueueGauge("queue.test", ringBuffer);
+		assertEquals(0, PipelineMetrics.getGaugeValue("queue.test"), 0.0001);
+		ringBuffer.claim();
+		ringBuffer.publish();
+		assertEquals(0.25, PipelineMetrics.getGaugeValue("queue.test"), 0.0001);
+		PipelineMetrics.unregisterGauge("queue.test");
+		assertTrue(Double.isNaN(PipelineMetrics.getGaugeValue("queue.test")));
+		PipelineMetrics.reset();
+		assertEquals(0, PipelineMetrics.counter("test.counter").get());
+
+		// Run the pipeline and check that all stages are counted and the latencies are measured:
+		int packetSize = 16384;
+		SyntheticIQSource source = new SyntheticIQSource(2000000, 100000000, packetSize, FileIQSource.FILE_FORMAT_8BIT_SIGNED);
+		source.addTone(250000, 0.5f);
+		source.setThrottled(true);
+		assertTrue(source.open(null, null));
+		Scheduler scheduler = new Scheduler(1024, source);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(null, 1024, scheduler.getFftRingBuffer());
+		AudioSink audioSink = new AudioSink(packetSize, AudioSink.DEFAULT_SAMPLE_RATE, new AudioOutput() {
+			@Override
+			public boolean open(int sampleRate) {
+				return true;
+			}
+
+			@Override
+			public boolean write(short[] samples, int offset, int length) {
+				return true;
+			}
+
+			@Override
+			public boolean close() {
+				return true;
+			}
+		});
+		Demodulator demodulator = new Demodulator(scheduler.getMainChannel(), packetSize, audioSink);
+		demodulator.setDemodulationMode(Demodulator.DEMODULATION_WFM);
+		scheduler.setChannelFrequency(100250000);
+		scheduler.setDemodulationActivated(true);
+		scheduler.setSquelchSatisfied(true);
+		demodulator.start();
+		scheduler.start();
+		processingLoop.start();
+		Thread.sleep(1500);
+		scheduler.stopScheduler();
+		processingLoop.stopLoop();
+		demodulator.stopDemodulator();
+		scheduler.join();
+		processingLoop.join();
+		demodulator.join();
+		audioSink.join();
+		source.close();
+
+		long in = PipelineMetrics.counter(PipelineMetrics.SCHEDULER_IN).get();
+		assertTrue("in: " + in, in > 0);
+		assertEquals(in, PipelineMetrics.counter(PipelineMetrics.FFT_IN).get() + PipelineMetrics.counter(PipelineMetrics.FFT_DROPPED).get());
+		assertEquals(in, PipelineMetrics.counter(PipelineMetrics.CHANNEL_IN).get());
+		assertTrue(PipelineMetrics.counter(PipelineMetrics.FFT_OUT).get() > 0);
+		assertTrue(PipelineMetrics.counter(PipelineMetrics.DECIMATOR_OUT).get() > 0);
+		assertTrue(PipelineMetrics.counter(PipelineMetrics.AUDIO_OUT).get() > 0);
+		LatencyHistogram fftLatency = PipelineMetrics.histogram(PipelineMetrics.LATENCY_FFT);
+		LatencyHistogram audioLatency = PipelineMetrics.histogram(PipelineMetrics.LATENCY_AUDIO);
+		assertEquals(PipelineMetrics.counter(PipelineMetrics.FFT_OUT).get(), fftLatency.getCount());
+		assertEquals(PipelineMetrics.counter(PipelineMetrics.AUDIO_OUT).get(), audioLatency.getCount());
+		assertTrue(fftLatency.getPercentile(50) > 0 && fftLatency.getMax() < 1000000);
+		assertTrue(audioLatency.getPercentile(50) > 0 && audioLatency.getMax() < 1000000);
+		for (String line : PipelineMetrics.getSummary())
+			System.out.println("##### " + line);
+		PipelineMetrics.reset();
+	}
+
+	public void testContinuousFft() throws Exception {
+		int fftSize = 1024;
+		int samples = 65536;
+		int sampleRate = 1000000;
+		SamplePacket stream = new SamplePacket(samples);
+		stream.setSampleRate(sampleRate);
+		stream.setFrequency(100000000);
+		stream.setSize(samples);
+		// noise floor plus a short burst (100 samples) at bin 100 (relative to the center):
+		java.util.Random random = new java.util.Random(42);
+		for (int i = 0; i < samples; i++) {
+			stream.re()[i] = (float) (random.nextGaussian() * 0.001);
+			stream.im()[i] = (float) (random.nextGaussian() * 0.001);
+		}
+		int burstStart = 40000;
+		for (int i = burstStart; i < burstStart + 100; i++) {
+			stream.re()[i] += (float) Math.cos(2 * Math.PI * 100 * i / fftSize);
+			stream.im()[i] += (float) Math.sin(2 * Math.PI * 100 * i / fftSize);
+		}
+
+		// number of ffts, independent of how the stream is split into packets:
+		float[] overlaps = {0, 0.25f, 0.5f, 0.75f};
+		int[] packetSizes = {samples, 16384, 1000, 333};
+		for (float overlap : overlaps) {
+			int hop = Math.round(fftSize * (1 - overlap));
+			float[] reference = null;
+			for (int packetSize : packetSizes) {
+				ContinuousFft continuousFft = new ContinuousFft(fftSize, overlap);
+				continuousFft.setIntegration(ContinuousFft.INTEGRATION_PEAK);
+				SamplePacket packet = new SamplePacket(packetSize);
+				for (int offset = 0; offset < samples; offset += packetSize) {
+					packet.setSize(0);
+					packet.setSampleRate(sampleRate);
+					packet.setFrequency(100000000);
+					System.arraycopy(stream.re(), offset, packet.re(), 0, Math.min(packetSize, samples - offset));
+					System.arraycopy(stream.im(), offset, packet.im(), 0, Math.min(packetSize, samples - offset));
+					packet.setSize(Math.min(packetSize, samples - offset));
+					continuousFft.process(packet);
+				}
+				assertEquals("overlap " + overlap, (samples - fftSize) / hop + 1, continuousFft.getIntegratedFfts());
+				float[] power = new float[fftSize];
+				assertTrue(continuousFft.getPowerSpectrum(power));
+				assertFalse(continuousFft.getPowerSpectrum(power));
+				if(reference == null)
+					reference = power;
+				else {
+					for (int i = 0; i < fftSize; i++)
+						assertEquals("overlap " + overlap + " packet size " + packetSize, reference[i], power[i], reference[i] * 0.001f);
+				}
+			}
+			// the burst is visible far above the noise (30 dB):
+			assertTrue("overlap " + overlap + ": " + reference[100], reference[100] > reference[fftSize / 4] * 1000);
+		}
+
+		// The average of a stationary tone has the same level as a single fft (AnalyzerProcessingLoop):
+		SamplePacket tone = new SamplePacket(samples);
+		tone.setSampleRate(sampleRate);
+		tone.setSize(samples);
+		for (int i = 0; i < samples; i++) {
+			tone.re()[i] = (float) (0.5 * Math.cos(2 * Math.PI * 100 * i / fftSize));
+			tone.im()[i] = (float) (0.5 * Math.sin(2 * Math.PI * 100 * i / fftSize));
+		}
+		ContinuousFft continuousFft = new ContinuousFft(fftSize, 0.5f);
+		continuousFft.process(tone);
+		float[] power = new float[fftSize];
+		assertTrue(continuousFft.getPowerSpectrum(power));
+		FFT fft = new FFT(fftSize);
+		float[] re = java.util.Arrays.copyOf(tone.re(), fftSize);
+		float[] im = java.util.Arrays.copyOf(tone.im(), fftSize);
+		fft.applyWindow(re, im);
+		fft.fft(re, im);
+		assertEquals(20 * Math.log10(Math.hypot(re[100], im[100]) / fftSize), 10 * Math.log10(power[100]) + PowerToDb.getFftOffset(fftSize), 0.01f);
+
+		// A new frequency discards the samples of the old one:
+		continuousFft.process(tone);
+		tone.setFrequency(200000000);
+		continuousFft.process(tone);
+		assertEquals((samples - fftSize) / (fftSize / 2) + 1, continuousFft.getIntegratedFfts());
+		assertEquals(200000000, continuousFft.getFrequency());
+		try {
+			new ContinuousFft(fftSize, 0.9f);
+			fail("overlap > 75% must be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// Worker threads produce the same frames as the calling thread (peak: identical, average:
+		// same sum in a different order):
+		for (int integration : new int[] {ContinuousFft.INTEGRATION_PEAK, ContinuousFft.INTEGRATION_AVERAGE}) {
+			ContinuousFft serial = new ContinuousFft(fftSize, 0.75f);
+			ContinuousFft parallel = new ContinuousFft(fftSize, 0.75f);
+			serial.setIntegration(integration);
+			parallel.setIntegration(integration);
+			parallel.startWorkers(3);
+			assertEquals(3, parallel.getWorkerCount());
+			SamplePacket packet = new SamplePacket(5000);
+			for (int offset = 0; offset < samples; offset += 5000) {
+				int size = Math.min(5000, samples - offset);
+				System.arraycopy(stream.re(), offset, packet.re(), 0, size);
+				System.arraycopy(stream.im(), offset, packet.im(), 0, size);
+				packet.setSize(size);
+				packet.setSampleRate(sampleRate);
+				packet.setFrequency(100000000);
+				serial.process(packet);
+				parallel.process(packet);
+				if(offset % 20000 == 0) {	// one frame every 4 packets
+					float[] expected = new float[fftSize];
+					float[] actual = new float[fftSize];
+					assertEquals(serial.getIntegratedFfts(), parallel.getIntegratedFfts());
+					assertEquals(serial.getPowerSpectrum(expected), parallel.getPowerSpectrum(actual));
+					for (int i = 0; i < fftSize; i++)
+						assertEquals("offset " + offset + " bin " + i, expected[i], actual[i], expected[i] * 1e-5f);
+				}
+			}
+			parallel.stopWorkers();
+			assertEquals(0, parallel.getWorkerCount());
+		}
+
+		// Pipeline: every packet of the source reaches the fft
+		PipelineMetrics.reset();
+		SyntheticIQSource source = new SyntheticIQSource(2000000, 100000000, 16384, FileIQSource.FILE_FORMAT_8BIT_SIGNED);
+		source.addTone(250000, 0.5f);
+		source.setThrottled(true);
+		assertTrue(source.open(null, null));
+		Scheduler scheduler = new Scheduler(fftSize, source);
+		scheduler.setContinuousFft(true);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(null, fftSize, scheduler.getFftRingBuffer());
+		processingLoop.setContinuousFft(true, 0.5f, ContinuousFft.INTEGRATION_AVERAGE);
+		processingLoop.setFftWorkers(2);
+		scheduler.start();
+		processingLoop.start();
+		Thread.sleep(1000);
+		scheduler.stopScheduler();
+		processingLoop.stopLoop();
+		scheduler.join();
+		processingLoop.join();
+		source.close();
+		long in = PipelineMetrics.counter(PipelineMetrics.SCHEDULER_IN).get();
+		assertTrue("in: " + in, in > 100);
+		assertEquals(0, PipelineMetrics.counter(PipelineMetrics.FFT_DROPPED).get());
+		assertEquals(in, PipelineMetrics.counter(PipelineMetrics.FFT_IN).get());
+		assertTrue(processingLoop.getProcessedFrames() > 0);
+		PipelineMetrics.reset();
+	}
+
+	public void testZoomFft() throws Exception {
+		int fftSize = 1024;
+		int samples = 1 << 20;
+		int sampleRate = 1000000;
+		long frequency = 100000000;
+		assertEquals(0, ZoomFft.getDecimationStages(sampleRate, 0));
+		assertEquals(0, ZoomFft.getDecimationStages(sampleRate, 300000));
+		assertEquals(1, ZoomFft.getDecimationStages(sampleRate, 250000));
+		assertEquals(8, ZoomFft.getDecimationStages(sampleRate, 1000));
+		assertEquals(ZoomFft.MAX_STAGES, ZoomFft.getDecimationStages(sampleRate, 1));
+
+		// two tones 30 Hz apart (0.03 bins of the full band) and a strong tone outside of the sub-band:
+		float[] re = new float[samples];
+		float[] im = new float[samples];
+		float[] reOut = new float[samples];
+		float[] imOut = new float[samples];
+		for (int i = 0; i < samples; i++) {
+			re[i] = (float) (0.5 * Math.cos(2 * Math.PI * 200000.0 * i / sampleRate) + 0.5 * Math.cos(2 * Math.PI * 200030.0 * i / sampleRate));
+			im[i] = (float) (0.5 * Math.sin(2 * Math.PI * 200000.0 * i / sampleRate) + 0.5 * Math.sin(2 * Math.PI * 200030.0 * i / sampleRate));
+			reOut[i] = (float) Math.cos(2 * Math.PI * 300000.0 * i / sampleRate);
+			imOut[i] = (float) Math.sin(2 * Math.PI * 300000.0 * i / sampleRate);
+		}
+
+		float[] power = new float[fftSize];
+		float[] outOfBandPower = new float[fftSize];
+		for (int packetSize : new int[] {16384, 4096}) {
+			ZoomFft zoomFft = new ZoomFft(fftSize, 0.5f);
+			ZoomFft outOfBand = new ZoomFft(fftSize, 0.5f);
+			zoomFft.setZoom(frequency + 200000, 1000);
+			outOfBand.setZoom(frequency + 200000, 1000);
+			SamplePacket packet = new SamplePacket(packetSize);
+			for (int offset = 0; offset < samples; offset += packetSize) {
+				// skip the first packets (settling of the filters):
+				if(offset == 8 * packetSize) {
+					zoomFft.getPowerSpectrum(power);
+					outOfBand.getPowerSpectrum(power);
+				}
+				packet.setSize(packetSize);
+				packet.setSampleRate(sampleRate);
+				packet.setFrequency(frequency);
+				System.arraycopy(re, offset, packet.re(), 0, packetSize);
+				System.arraycopy(im, offset, packet.im(), 0, packetSize);
+				zoomFft.process(packet);
+				System.arraycopy(reOut, offset, packet.re(), 0, packetSize);
+				System.arraycopy(imOut, offset, packet.im(), 0, packetSize);
+				outOfBand.process(packet);
+			}
+			assertEquals(256, zoomFft.getDecimation());
+			assertEquals(sampleRate / 256, zoomFft.getSampleRate());
+			// the center is aligned to 1/8 of the decimated rate:
+			assertEquals(0, (zoomFft.getFrequency() - frequency) % (sampleRate / 256 / ZoomFft.GRID_DIVISOR));
+			assertTrue(Math.abs(zoomFft.getFrequency() - frequency - 200000) <= sampleRate / 256 / ZoomFft.GRID_DIVISOR / 2);
+			assertTrue(zoomFft.getPowerSpectrum(power));
+			assertTrue(outOfBand.getPowerSpectrum(outOfBandPower));
+
+			// both tones are resolved at their bins (3.8 Hz per bin):
+			float hzPerBin = zoomFft.getSampleRate() / (float) fftSize;
+			int bin1 = (Math.round((frequency + 200000 - zoomFft.getFrequency()) / hzPerBin) + fftSize) % fftSize;
+			int bin2 = (Math.round((frequency + 200030 - zoomFft.getFrequency()) / hzPerBin) + fftSize) % fftSize;
+			int maxBin = 0;
+			for (int i = 0; i < fftSize; i++) {
+				if(power[i] > power[maxBin])
+					maxBin = i;
+			}
+			assertTrue("max at " + maxBin + " instead of " + bin1 + " or " + bin2, Math.abs(maxBin - bin1) <= 1 || Math.abs(maxBin - bin2) <= 1);
+			float valley = power[(bin1 + (bin2 - bin1) / 2 + fftSize) % fftSize];
+			assertTrue("valley: " + valley, valley < power[bin1] / 100 && valley < power[bin2] / 100);
+
+			// same level as in the full band (the gain of the half band filters is compensated):
+			double expectedDb = 20 * Math.log10(0.5 * FftWindow.getWindow(FftWindow.BLACKMAN, fftSize).getCoherentGain());
+			double measuredDb = 10 * Math.log10(power[maxBin]) + PowerToDb.getFftOffset(fftSize);
+			assertEquals(expectedDb, measuredDb, 1.5);
+
+			// the tone outside of the sub-band is suppressed by the half band filters (in the center
+			// half of the decimated band, which contains the requested span):
+			float maxOutOfBand = 0;
+			for (int i = 0; i < fftSize; i++) {
+				if(i < fftSize / 4 || i >= fftSize * 3 / 4)
+					maxOutOfBand = Math.max(maxOutOfBand, outOfBandPower[i]);
+			}
+			assertTrue("out of band: " + (10 * Math.log10(maxOutOfBand) + PowerToDb.getFftOffset(fftSize)) + " dB",
+					10 * Math.log10(maxOutOfBand) + PowerToDb.getFftOffset(fftSize) < -80);
+		}
+
+		// Without a zoom the samples are passed to the continuous fft unchanged:
+		ZoomFft zoomFft = new ZoomFft(fftSize, 0.5f);
+		ContinuousFft continuousFft = new ContinuousFft(fftSize, 0.5f);
+		SamplePacket packet = new SamplePacket(re, im, frequency, sampleRate, 65536);
+		zoomFft.process(packet);
+		continuousFft.process(packet);
+		float[] expected = new float[fftSize];
+		assertTrue(zoomFft.getPowerSpectrum(power));
+		assertTrue(continuousFft.getPowerSpectrum(expected));
+		assertEquals(1, zoomFft.getDecimation());
+		assertEquals(sampleRate, zoomFft.getSampleRate());
+		for (int i = 0; i < fftSize; i++)
+			assertEquals(expected[i], power[i], 0);
+
+		// Processing loop: the spectra of the zoomed sub-band are passed to the sink
+		final int[] drawnSampleRate = new int[1];
+		final long[] drawnFrequency = new long[1];
+		SyntheticIQSource source = new SyntheticIQSource(2000000, 100000000, 16384, FileIQSource.FILE_FORMAT_8BIT_SIGNED);
+		source.addTone(250000, 0.5f);
+		source.setThrottled(true);
+		assertTrue(source.open(null, null));
+		Scheduler scheduler = new Scheduler(fftSize, source);
+		scheduler.setContinuousFft(true);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(new SpectrumSink() {
+			@Override
+			public void draw(float[] mag, float[] latestMag, long frequency, int sampleRate, int frameRate, double load) {
+				drawnSampleRate[0] = sampleRate;
+				drawnFrequency[0] = frequency;
+			}
+		}, fftSize, scheduler.getFftRingBuffer());
+		processingLoop.setContinuousFft(true, 0.75f, ContinuousFft.INTEGRATION_AVERAGE);
+		processingLoop.setZoom(100250000, 2000);
+		scheduler.start();
+		processingLoop.start();
+		Thread.sleep(1500);
+		scheduler.stopScheduler();
+		processingLoop.stopLoop();
+		scheduler.join();
+		processingLoop.join();
+		source.close();
+		assertEquals(2000000 >> 8, drawnSampleRate[0]);
+		assertTrue("frequency: " + drawnFrequency[0], Math.abs(drawnFrequency[0] - 100250000) <= 2000000 >> 8 >> 4);
+	}
+
+	public void testPsdEstimator() throws Exception {
+		// The sliding average (running sum) must match the brute force average over many windows:
+		int bins = 64;
+		int length = 5;
+		java.util.Random random = new java.util.Random(7);
+		PsdEstimator psdEstimator = new PsdEstimator(length);
+		float[][] spectra = new float[50][bins];
+		for (int frame = 0; frame < spectra.length; frame++) {
+			for (int i = 0; i < bins; i++)
+				spectra[frame][i] = (float) Math.pow(10, random.nextInt(12) - 10);	// 1e-10 .. 10
+			float[] average = psdEstimator.add(spectra[frame], 100000000, 1000000);
+			assertEquals(Math.min(frame + 1, length), psdEstimator.getCount());
+			for (int i = 0; i < bins; i++) {
+				double expected = 0;
+				for (int j = Math.max(0, frame - length + 1); j <= frame; j++)
+					expected += spectra[j][i];
+				expected /= Math.min(frame + 1, length);
+				assertEquals("frame " + frame + " bin " + i, expected, average[i], expected * 1e-5);
+			}
+		}
+
+		// A new frequency discards the history:
+		float[] average = psdEstimator.add(spectra[0], 100100000, 1000000);
+		assertEquals(1, psdEstimator.getCount());
+		assertEquals(spectra[0][3], average[3], 0);
+
+		// Averaging in the linear domain is unbiased for noise (the dB average would be 2.5 dB too low):
+		psdEstimator = new PsdEstimator(1000);
+		double dbSum = 0;
+		for (int frame = 0; frame < 1000; frame++) {
+			float[] noise = new float[bins];
+			for (int i = 0; i < bins; i++) {
+				double re = random.nextGaussian();
+				double im = random.nextGaussian();
+				noise[i] = (float) (re * re + im * im);		// mean power: 2
+				dbSum += 10 * Math.log10(noise[i]);
+			}
+			average = psdEstimator.add(noise, 0, 1000000);
+		}
+		assertEquals(10 * Math.log10(2), 10 * Math.log10(average[10]), 0.3);
+		assertEquals(10 * Math.log10(2) - 2.5, dbSum / (1000 * bins), 0.1);
+
+		// The processing loop passes the average and the latest spectrum to the sink:
+		final java.util.List<float[][]> frames = new java.util.ArrayList<float[][]>();
+		SpectrumSink sink = new SpectrumSink() {
+			@Override
+			public void draw(float[] mag, float[] latestMag, long frequency, int sampleRate, int frameRate, double load) {
+				frames.add(new float[][] {mag.clone(), latestMag.clone(), mag == latestMag ? null : mag});
+			}
+		};
+		int fftSize = 256;
+		RingBuffer<SamplePacket> ringBuffer = RingBuffer.createSamplePacketRingBuffer(2, fftSize);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(sink, fftSize, ringBuffer);
+		processingLoop.setThrottled(false);
+		processingLoop.setAverageLength(3);
+		processingLoop.start();
+		for (int frame = 0; frame < 8; frame++) {
+			SamplePacket packet = ringBuffer.claim(1000);
+			packet.setSize(fftSize);
+			packet.setSampleRate(1000000);
+			float amplitude = frame < 4 ? 1 : 0.1f;		// -20 dB after 4 frames
+			for (int i = 0; i < fftSize; i++) {
+				packet.re()[i] = (float) (amplitude * Math.cos(2 * Math.PI * 10 * i / fftSize));
+				packet.im()[i] = (float) (amplitude * Math.sin(2 * Math.PI * 10 * i / fftSize));
+			}
+			ringBuffer.publish();
+		}
+		long startTime = System.currentTimeMillis();
+		while (processingLoop.getProcessedFrames() < 8 && System.currentTimeMillis() - startTime < 2000)
+			Thread.sleep(10);
+		processingLoop.stopLoop();
+		processingLoop.join();
+		assertEquals(8, frames.size());
+		int bin = fftSize / 2 + 10;
+		float loud = frames.get(3)[1][bin];
+		for (int frame = 0; frame < 8; frame++) {
+			assertNotNull(frames.get(frame)[2]);	// different arrays
+			assertEquals(frame < 4 ? loud : loud - 20, frames.get(frame)[1][bin], 0.01f);	// latest spectrum
+		}
+		// average of 4 frames: 3 loud + 1 quiet, ..., then only quiet ones
+		assertEquals(loud, frames.get(3)[0][bin], 0.01f);
+		assertEquals(loud + 10 * Math.log10((3 + 0.01) / 4), frames.get(4)[0][bin], 0.01f);
+		assertEquals(loud - 20, frames.get(7)[0][bin], 0.01f);
+	}
+
+	public void testPowerToDb() throws Exception {
+		// Accuracy over the whole dynamic range (many decades, random mantissas):
+		java.util.Random random = new java.util.Random(3);
+		float maxError = 0;
+		for (int exponent = -40; exponent <= 30; exponent++) {
+			for (int i = 0; i < 1000; i++) {
+				float power = (float) ((1 + random.nextDouble() * 9) * Math.pow(10, exponent));
+				if(power < Float.MIN_NORMAL || Float.isInfinite(power))
+					continue;
+				float error = (float) Math.abs(PowerToDb.toDb(power) - 10 * Math.log10(power));
+				maxError = Math.max(maxError, error);
+			}
+		}
+		// exact powers of two and the bounds of the mantissa:
+		for (int exponent = -120; exponent <= 120; exponent++) {
+			float power = (float) Math.pow(2, exponent);
+			maxError = Math.max(maxError, (float) Math.abs(PowerToDb.toDb(power) - 10 * Math.log10(power)));
+			power = Math.nextAfter(power * 2, 0);
+			maxError = Math.max(maxError, (float) Math.abs(PowerToDb.toDb(power) - 10 * Math.log10(power)));
+		}
+		System.out.println("##### PowerToDb: max. error " + maxError + " dB");
+		assertTrue("max. error: " + maxError, maxError < PowerToDb.MAX_ERROR_DB);
+
+		// Offset of the fft normalization:
+		assertEquals(-20 * Math.log10(1024), PowerToDb.getFftOffset(1024), 1e-4);
+
+		// Shifted conversion matches the modulo reference (DC in the center):
+		int size = 1024;
+		float[] power = new float[size];
+		for (int i = 0; i < size; i++)
+			power[i] = (float) Math.pow(10, random.nextInt(16) - 8) * (1 + random.nextFloat());
+		float[] db = new float[size];
+		float[] shifted = new float[size];
+		float offset = PowerToDb.getFftOffset(size);
+		PowerToDb.toDb(power, db, offset);
+		PowerToDb.toDbShifted(power, shifted, offset);
+		for (int i = 0; i < size; i++) {
+			assertEquals(10 * Math.log10(power[i]) + offset, db[i], PowerToDb.MAX_ERROR_DB);
+			assertEquals(db[i], shifted[(i + size / 2) % size], 0);
+		}
+	}
+
+	public void testFftWindow() throws Exception {
+		int fftSize = 4096;
+		// Tables are shared per (type, size):
+		assertSame(FftWindow.getWindow(FftWindow.HANN, fftSize), FftWindow.getWindow(FftWindow.HANN, fftSize));
+		assertSame(FftWindow.getKaiserWindow(fftSize, 5), FftWindow.getKaiserWindow(fftSize, 5));
+		assertNotSame(FftWindow.getKaiserWindow(fftSize, 5), FftWindow.getKaiserWindow(fftSize, 6));
+		assertSame(FftWindow.getWindow(FftWindow.BLACKMAN, fftSize), new FFT(fftSize).getFftWindow());
+
+		// getWindow() returns a copy; modifying it must not change the shared table:
+		float[] copy = new FFT(fftSize).getWindow();
+		assertNotSame(FftWindow.getWindow(FftWindow.BLACKMAN, fftSize).getCoefficients(), copy);
+		java.util.Arrays.fill(copy, 0);
+		assertEquals(1, FftWindow.getWindow(FftWindow.BLACKMAN, fftSize).getCoefficients()[fftSize / 2], 1e-2);
+
+		// The default window of the FFT class is still the Blackman window:
+		float[] blackman = new FFT(fftSize).getWindow();
+		for (int i = 0; i < fftSize; i++)
+			assertEquals(0.42 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)) + 0.08 * Math.cos(4 * Math.PI * i / (fftSize - 1)), blackman[i], 1e-6);
+
+		// Coherent gain and ENBW (bins) of the textbook windows:
+		double[][] expected = {	// type, coherent gain, enbw
+				{FftWindow.RECTANGULAR, 1, 1},
+				{FftWindow.HANN, 0.5, 1.5},
+				{FftWindow.HAMMING, 0.54, 1.363},
+				{FftWindow.BLACKMAN, 0.42, 1.727},
+				{FftWindow.BLACKMAN_HARRIS, 0.35875, 2.004},
+				{FftWindow.NUTTALL, 0.355768, 2.021},
+				{FftWindow.FLAT_TOP, 0.2156, 3.770}};
+		for (double[] values : expected) {
+			FftWindow window = FftWindow.getWindow((int) values[0], fftSize);
+			assertEquals(window.getName(), values[1], window.getCoherentGain(), 0.001);
+			assertEquals(window.getName(), values[2], window.getEnbw(), 0.005);
+		}
+		assertEquals(0, FftWindow.getKaiserWindow(fftSize, 0).getCorrectionDb(FftWindow.CORRECTION_AMPLITUDE), 1e-4);	// beta 0: rectangular
+		assertEquals(FftWindow.KAISER, FftWindow.getTypeByName("Kaiser"));
+		assertEquals(-1, FftWindow.getTypeByName("triangle"));
+
+		// With the amplitude correction a full scale tone reads 0 dB with every window. Between two
+		// bins (scalloping) the flat top window is still within 0.02 dB:
+		for (int type = 0; type < FftWindow.NAMES.length; type++) {
+			FftWindow window = FftWindow.getWindow(type, fftSize);
+			for (double bin : new double[] {100, 100.5}) {
+				float[] re = new float[fftSize];
+				float[] im = new float[fftSize];
+				for (int i = 0; i < fftSize; i++) {
+					re[i] = (float) Math.cos(2 * Math.PI * bin * i / fftSize);
+					im[i] = (float) Math.sin(2 * Math.PI * bin * i / fftSize);
+				}
+				window.apply(re, im);
+				new Radix4FFT(fftSize).fft(re, im);
+				float peak = -1000;
+				for (int i = 90; i < 110; i++)
+					peak = Math.max(peak, PowerToDb.toDb(re[i] * re[i] + im[i] * im[i]) + PowerToDb.getFftOffset(fftSize)
+							+ window.getCorrectionDb(FftWindow.CORRECTION_AMPLITUDE));
+				if(bin == 100)
+					assertEquals(window.getName(), 0, peak, 0.01);
+				else if(type == FftWindow.FLAT_TOP)
+					assertEquals(window.getName(), 0, peak, 0.02);
+				else if(type == FftWindow.RECTANGULAR)
+					assertEquals(window.getName(), -3.92, peak, 0.02);
+				else
+					assertTrue(window.getName() + ": " + peak, peak < -0.5 && peak > -3.5);
+			}
+		}
+
+		// With the noise correction white noise reads its power per rectangular bin with every window:
+		java.util.Random random = new java.util.Random(11);
+		for (int type : new int[] {FftWindow.RECTANGULAR, FftWindow.HANN, FftWindow.FLAT_TOP}) {
+			FftWindow window = FftWindow.getWindow(type, fftSize);
+			double sum = 0;
+			for (int frame = 0; frame < 20; frame++) {
+				float[] re = new float[fftSize];
+				float[] im = new float[fftSize];
+				for (int i = 0; i < fftSize; i++) {
+					re[i] = (float) (random.nextGaussian() * Math.sqrt(0.5));	// total power 1
+					im[i] = (float) (random.nextGaussian() * Math.sqrt(0.5));
+				}
+				window.apply(re, im);
+				new Radix4FFT(fftSize).fft(re, im);
+				for (int i = 0; i < fftSize; i++)
+					sum += re[i] * re[i] + im[i] * im[i];
+			}
+			double db = 10 * Math.log10(sum / (20 * fftSize)) + PowerToDb.getFftOffset(fftSize) + window.getCorrectionDb(FftWindow.CORRECTION_NOISE);
+			assertEquals(window.getName(), -10 * Math.log10(fftSize), db, 0.1);
+		}
+
+		// The processing loop applies the correction; the window can be changed while it is running:
+		final java.util.List<float[]> frames = new java.util.ArrayList<float[]>();
+		SpectrumSink sink = new SpectrumSink() {
+			@Override
+			public void draw(float[] mag, float[] latestMag, long frequency, int sampleRate, int frameRate, double load) {
+				synchronized (frames) {
+					frames.add(mag.clone());
+				}
+			}
+		};
+		RingBuffer<SamplePacket> ringBuffer = RingBuffer.createSamplePacketRingBuffer(2, fftSize);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(sink, fftSize, ringBuffer);
+		processingLoop.setThrottled(false);
+		processingLoop.setAverageLength(2);
+		processingLoop.start();
+		int[] types = {FftWindow.BLACKMAN, FftWindow.HANN, FftWindow.FLAT_TOP, FftWindow.KAISER};
+		for (int frame = 0; frame < types.length; frame++) {
+			processingLoop.setWindow(FftWindow.getWindow(types[frame], fftSize));
+			SamplePacket packet = ringBuffer.claim(1000);
+			packet.setSize(fftSize);
+			packet.setSampleRate(1000000);
+			for (int i = 0; i < fftSize; i++) {
+				packet.re()[i] = (float) (0.5 * Math.cos(2 * Math.PI * 10 * i / fftSize));
+				packet.im()[i] = (float) (0.5 * Math.sin(2 * Math.PI * 10 * i / fftSize));
+			}
+			ringBuffer.publish();
+			long startTime = System.currentTimeMillis();
+			while (processingLoop.getProcessedFrames() <= frame && System.currentTimeMillis() - startTime < 2000)
+				Thread.sleep(5);
+		}
+		processingLoop.stopLoop();
+		processingLoop.join();
+		assertEquals(types.length, frames.size());
+		for (int frame = 0; frame < types.length; frame++)
+			assertEquals("frame " + frame, 20 * Math.log10(0.5), frames.get(frame)[fftSize / 2 + 10], 0.01);
+	}
+
+	public void testDemodulationChannels() throws Exception {
+		// Two channels get the same converted samples (two tones) and have to shift their own tone to baseband.
+		// At 1 Msps the NCO is used, at 10 Msps the xlating filter:
+		int[] sampleRates = {1000000, 10000000};
+		long centerFrequency = 100000000;
+		long[] toneOffsets = {100000, -800000};
+		int samples = 65536;
+		for (int sampleRate : sampleRates) {
+			DemodulationChannel[] channels = new DemodulationChannel[toneOffsets.length];
+			for (int c = 0; c < channels.length; c++) {
+				channels[c] = new DemodulationChannel(centerFrequency + toneOffsets[c], samples, 4);
+				channels[c].setDemodulationActivated(true);
+				channels[c].setSquelchSatisfied(true);
+				assertTrue(channels[c].isActive());
+			}
+			SamplePacket converted = new SamplePacket(samples);
+			for (int p = 0; p < 2; p++) {
+				for (int i = 0; i < samples; i++) {
+					long t = (long) p * samples + i;
+					converted.re()[i] = 0;
+					converted.im()[i] = 0;
+					for (long offset : toneOffsets) {
+						converted.re()[i] += (float) Math.cos(2 * Math.PI * offset * t / sampleRate) / 2;
+						converted.im()[i] += (float) Math.sin(2 * Math.PI * offset * t / sampleRate) / 2;
+					}
+				}
+				converted.setSize(samples);
+				converted.setSampleRate(sampleRate);
+				converted.setFrequency(centerFrequency);
+				for (DemodulationChannel channel : channels)
+					channel.processSamples(converted);
+			}
+			for (int c = 0; c < channels.length; c++) {
+				RingBuffer<SamplePacket> ringBuffer = channels[c].getDemodRingBuffer();
+				ringBuffer.release(ringBuffer.acquire());		// skip the first packet (filter transient)
+				SamplePacket out = ringBuffer.acquire();
+				assertNotNull(out);
+				assertEquals(centerFrequency + toneOffsets[c], out.getFrequency());
+				// the own tone is at DC now (constant), the other tone is removed by the filter or averages out:
+				double sumRe = 0, sumIm = 0;
+				for (int i = 0; i < out.size(); i++) {
+					sumRe += out.re(i);
+					sumIm += out.im(i);
+				}
+				assertEquals("rate=" + sampleRate + " channel=" + c, 0.5, Math.hypot(sumRe, sumIm) / out.size(), 0.02);
+				if(sampleRate > 2000000)	// the xlating filter also removes the other tone (in its stop band):
+					assertEquals(0.5, Math.hypot(out.re(out.size() - 1), out.im(out.size() - 1)), 0.05);
+				ringBuffer.release(out);
+			}
+
+			// Empty buffers are not delivered to the demodulator:
+			converted.setSize(0);
+			assertTrue(channels[0].processSamples(converted));
+			assertEquals(0, channels[0].getDemodRingBuffer().size());
+		}
+	}
+
+	public void testPolyphaseChannelizer() {
+		// Compare every channel of the channelizer with mixing the channel to baseband and decimating it
+		// with the prototype filter (the reference output has an additional constant phase of w^(k*(D-1))):
+		java.util.Random random = new java.util.Random(11);
+		int m = 16;
+		int sampleRate = 1600000;
+		int samples = 4096;
+		SamplePacket in = new SamplePacket(samples);
+		in.setSize(samples);
+		in.setSampleRate(sampleRate);
+		in.setFrequency(100000000);
+		for (int i = 0; i < samples; i++) {
+			in.re()[i] = random.nextFloat() * 2 - 1;
+			in.im()[i] = random.nextFloat() * 2 - 1;
+		}
+		for (boolean oversampled : new boolean[] {false, true}) {
+			PolyphaseChannelizer channelizer = PolyphaseChannelizer.createChannelizer(m, oversampled, 40);
+			int decimation = channelizer.getDecimation();
+			assertEquals(oversampled ? m / 2 : m, decimation);
+			float[] taps = FirFilter.createLowPassTaps(1, 1, 0.4f / m, (oversampled ? 0.6f : 0.2f) / m, 40);
+			SamplePacket[] out = new SamplePacket[m];
+			for (int k = 0; k < m; k++)
+				out[k] = new SamplePacket(samples);
+			int offset = 0;
+			while (offset < samples)
+				offset += channelizer.process(in, out, offset, Math.min(random.nextInt(100) + 1, samples - offset));
+
+			for (int k = 0; k < m; k++) {
+				long channelOffset = channelizer.getChannelOffset(k, sampleRate);
+				assertEquals((k < m / 2 ? k : k - m) * sampleRate / m, channelOffset);
+				assertEquals(in.getFrequency() + channelOffset, out[k].getFrequency());
+				assertEquals(sampleRate / decimation, out[k].getSampleRate());
+				SamplePacket mixed = new SamplePacket(samples);
+				new NcoMixer().mix(in, mixed, in.getFrequency() + channelOffset);
+				SamplePacket refOut = new SamplePacket(samples);
+				new PolyphaseDecimator(taps, decimation).filter(mixed, refOut, 0, samples);
+				assertEquals(refOut.size(), out[k].size());
+				double phase = -2 * Math.PI * k * (decimation - 1) / m;
+				float phaseRe = (float) Math.cos(phase);
+				float phaseIm = (float) Math.sin(phase);
+				for (int i = 0; i < refOut.size(); i++) {
+					assertEquals("channel " + k + " out " + i, refOut.re(i), out[k].re(i) * phaseRe - out[k].im(i) * phaseIm, 1e-3f);
+					assertEquals("channel " + k + " out " + i, refOut.im(i), out[k].re(i) * phaseIm + out[k].im(i) * phaseRe, 1e-3f);
+				}
+			}
+		}
+	}
+
+	public void testPolyphaseChannelizerPerformance() {
+		// Cost per channel: PFB (all channels) vs. mixing + decimating FIR filter for each channel
+		int sampleRate = 20000000;
+		int samples = 262144;
+		int loopCycles = 10;
+		SamplePacket in = new SamplePacket(samples);
+		in.setSize(samples);
+		in.setSampleRate(sampleRate);
+		int[] channelCounts = {64, 256, 1024};
+		for (int m : channelCounts) {
+			PolyphaseChannelizer channelizer = PolyphaseChannelizer.createChannelizer(m, true, 40);
+			SamplePacket[] out = new SamplePacket[m];
+			for (int k = 0; k < m; k++)
+				out[k] = new SamplePacket(samples / channelizer.getDecimation() + 1);
+			long startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				for (int k = 0; k < m; k++)
+					out[k].setSize(0);
+				channelizer.process(in, out, 0, samples);
+			}
+			float pfbTime = (System.currentTimeMillis() - startTime) / (float) m;
+
+			// independent chains (only 4 channels are measured, the time is per channel):
+			int testChannels = 4;
+			SamplePacket mixed = new SamplePacket(samples);
+			SamplePacket filtered = new SamplePacket(samples);
+			FirFilter[] filters = new FirFilter[testChannels];
+			NcoMixer[] mixers = new NcoMixer[testChannels];
+			for (int k = 0; k < testChannels; k++) {
+				filters[k] = FirFilter.createLowPass(m / 2, 1, sampleRate, 0.4f * sampleRate / m, 0.6f * sampleRate / m, 40);
+				mixers[k] = new NcoMixer();
+			}
+			startTime = System.currentTimeMillis();
+			for (int i = 0; i < loopCycles; i++) {
+				for (int k = 0; k < testChannels; k++) {
+					mixed.setSize(0);
+					filtered.setSize(0);
+					mixers[k].mix(in, mixed, (long) k * sampleRate / m);
+					filters[k].filter(mixed, filtered, 0, mixed.size());
+				}
+			}
+			float chainTime = (System.currentTimeMillis() - startTime) / (float) testChannels;
+			System.out.println("Channelizer (" + m + " channels, " + channelizer.getNumberOfTaps() + " taps, "
+					+ loopCycles + " packets of " + samples + " samples @ 20 Msps): PFB: " + pfbTime
+					+ "ms per channel   mixer + FirFilter (" + filters[0].getNumberOfTaps() + " taps): " + chainTime + "ms per channel");
+		}
+	}
+
+	public void testDecimator() throws Exception {
+		// Feed a tone at +5 kHz into the decimator at various source rates and verify the output
+		// rate, the number of output samples and the frequency of the tone:
+		int[] inputRates = {250000, 1000000, 2400000, 3200000, 10000000, 20000000, 1234567};
+		int[] outputRates = {62500, 250000};
+		int packetSize = 65536;
+		int toneFrequency = 5000;
+		for (int outputRate : outputRates) {
+			for (int inputRate : inputRates) {
+				RingBuffer<SamplePacket> inputRingBuffer = RingBuffer.createSamplePacketRingBuffer(10, packetSize);
+				Decimator decimator = new Decimator(outputRate, packetSize, inputRingBuffer);
+				decimator.start();
+				int outputSamples = 0;
+				SamplePacket lastOutput = new SamplePacket(packetSize);
+				int packets = 4;
+				for (int p = 0; p < packets; p++) {
+					SamplePacket packet = inputRingBuffer.claim(1000);
+					assertNotNull(packet);
+					for (int i = 0; i < packetSize; i++) {
+						double phase = 2 * Math.PI * toneFrequency * ((long)p * packetSize + i) / inputRate;
+						packet.re()[i] = (float) Math.cos(phase);
+						packet.im()[i] = (float) Math.sin(phase);
+					}
+					packet.setSize(packetSize);
+					packet.setSampleRate(inputRate);
+					inputRingBuffer.publish();
+					SamplePacket output = decimator.getDecimatedPacket(5000);
+					assertNotNull(output);
+					assertEquals(outputRate, output.getSampleRate());
+					outputSamples += output.size();
+					lastOutput.setSize(output.size());
+					System.arraycopy(output.re(), 0, lastOutput.re(), 0, output.size());
+					System.arraycopy(output.im(), 0, lastOutput.im(), 0, output.size());
+					decimator.returnDecimatedPacket(output);
+				}
+				decimator.stopDecimator();
+				decimator.join();
+
+				double expectedSamples = (double) packets * packetSize * outputRate / inputRate;
+				assertEquals("samples (" + inputRate + " -> " + outputRate + ")", expectedSamples, outputSamples, expectedSamples * 0.01 + 2);
+
+				// the last half of the last packet should be a clean tone with amplitude 1 at +5 kHz:
+				int n = lastOutput.size();
+				double phaseDiff = 0;
+				for (int i = n/2 + 1; i < n; i++) {
+					double re = lastOutput.re(i)*lastOutput.re(i-1) + lastOutput.im(i)*lastOutput.im(i-1);
+					double im = lastOutput.im(i)*lastOutput.re(i-1) - lastOutput.re(i)*lastOutput.im(i-1);
+					phaseDiff += Math.atan2(im, re);
+					assertEquals("amplitude (" + inputRate + " -> " + outputRate + ")", 1.0,
+							Math.hypot(lastOutput.re(i), lastOutput.im(i)), 0.1);
+				}
+				double frequency = phaseDiff / (n - n/2 - 1) * outputRate / (2 * Math.PI);
+				assertEquals("frequency (" + inputRate + " -> " + outputRate + ")", toneFrequency, frequency, 50);
+			}
+		}
+	}
+
+	public void testRingBuffer() throws Exception {
+		// claim / publish / acquire / release in one thread:
+		RingBuffer<byte[]> ringBuffer = RingBuffer.createByteArrayRingBuffer(3, 4);
+		for (int i = 0; i < 3; i++) {
+			byte[] slot = ringBuffer.claim();
+			assertNotNull(slot);
+			assertSame(slot, ringBuffer.claim());		// claiming twice returns the same slot
+			slot[0] = (byte) i;
+			assertTrue(ringBuffer.publish());
+		}
+		assertNull(ringBuffer.claim());					// all slots are published
+		assertNull(ringBuffer.claim(10));
+		assertFalse(ringBuffer.publish());				// nothing claimed
+		byte[] slot = ringBuffer.acquire();
+		assertEquals(0, slot[0]);
+		assertFalse(ringBuffer.release(new byte[4]));	// not the acquired slot
+		assertTrue(ringBuffer.release(slot));
+		assertEquals(2, ringBuffer.size());
+		assertNotNull(ringBuffer.claim());				// the released slot is free again
+		assertTrue(ringBuffer.publish());
+
+		// flush: the consumer drops all published slots in its next acquire():
+		ringBuffer.flush();
+		assertNull(ringBuffer.acquire(10));
+		assertEquals(0, ringBuffer.size());
+		assertEquals(3, ringBuffer.remainingCapacity());
+
+		// publish(slot) exchanges the slot:
+		byte[] filled = {42, 0, 0, 0};
+		byte[] old = ringBuffer.claim();
+		assertTrue(ringBuffer.publish(filled));
+		assertNotSame(filled, old);
+		assertSame(filled, ringBuffer.acquire());
+		assertTrue(ringBuffer.release(filled));
+
+		// one producer and one consumer thread with every wait strategy:
+		for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values()) {
+			final int packets = 100000;
+			final RingBuffer<byte[]> threadRingBuffer = new RingBuffer<byte[]>(new byte[][] {new byte[4], new byte[4]}, waitStrategy);
+			Thread producer = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < packets; i++) {
+							byte[] packet = threadRingBuffer.claim(1000);
+							ByteBuffer.wrap(packet).putInt(i);
+							threadRingBuffer.publish();
+						}
+					} catch (InterruptedException e) {
+						fail("interrupted");
+					}
+				}
+			};
+			producer.start();
+			for (int i = 0; i < packets; i++) {
+				byte[] packet = threadRingBuffer.acquire(1000);
+				assertNotNull(waitStrategy.toString(), packet);
+				assertEquals(waitStrategy.toString(), i, ByteBuffer.wrap(packet).getInt());
+				threadRingBuffer.release(packet);
+			}
+			producer.join();
+		}
+	}
+
+	public void testRingBufferPerformance() throws Exception {
+		// Hand over 16 KiB packets from one thread to another (20 Msps with 8 bit samples are ~2500 packets per second):
+		final int packets = 100000;
+		final int packetSize = 16384;
+		final int queueSize = 4;
+
+		// Pair of ArrayBlockingQueues (filled packets / returned packets):
+		final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(queueSize);
+		final ArrayBlockingQueue<byte[]> returnQueue = new ArrayBlockingQueue<byte[]>(queueSize);
+		for (int i = 0; i < queueSize; i++)
+			returnQueue.offer(new byte[packetSize]);
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					for (int i = 0; i < packets; i++) {
+						byte[] packet = returnQueue.poll(1000, java.util.concurrent.TimeUnit.MILLISECONDS);
+						packet[0] = (byte) i;
+						queue.offer(packet);
+					}
+				} catch (InterruptedException e) {
+					fail("interrupted");
+				}
+			}
+		};
+		long startTime = System.nanoTime();
+		producer.start();
+		for (int i = 0; i < packets; i++) {
+			byte[] packet = queue.poll(1000, java.util.concurrent.TimeUnit.MILLISECONDS);
+			assertEquals((byte) i, packet[0]);
+			returnQueue.offer(packet);
+		}
+		producer.join();
+		long queueTime = System.nanoTime() - startTime;
+		System.out.println("##### ArrayBlockingQueue pair: " + queueTime / packets + "ns per packet");
+
+		for (RingBuffer.WaitStrategy waitStrategy : RingBuffer.WaitStrategy.values()) {
+			byte[][] slots = new byte[queueSize][];
+			for (int i = 0; i < queueSize; i++)
+				slots[i] = new byte[packetSize];
+			final RingBuffer<byte[]> ringBuffer = new RingBuffer<byte[]>(slots, waitStrategy);
+			producer = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < packets; i++) {
+							byte[] packet = ringBuffer.claim(1000);
+							packet[0] = (byte) i;
+							ringBuffer.publish();
+						}
+					} catch (InterruptedException e) {
+						fail("interrupted");
+					}
+				}
+			};
+			startTime = System.nanoTime();
+			producer.start();
+			for (int i = 0; i < packets; i++) {
+				byte[] packet = ringBuffer.acquire(1000);
+				assertEquals((byte) i, packet[0]);
+				ringBuffer.release(packet);
+			}
+			producer.join();
+			long ringBufferTime = System.nanoTime() - startTime;
+			System.out.println("##### RingBuffer (" + waitStrategy + "): " + ringBufferTime / packets + "ns per packet");
+		}
+	}
+
+	public void testRationalResampler() {
+		// Resample a tone and compare against the ideal tone at the output rate:
+		int inputRate = 150000;
+		int outputRate = 62500;
+		int toneFrequency = 3000;
+		RationalResampler resampler = RationalResampler.createResampler(inputRate, outputRate, 1, 0.3f*outputRate, 0.4f*outputRate, 40);
+		assertEquals(5, resampler.getInterpolation());
+		assertEquals(12, resampler.getDecimation());
+		int samples = 12000;
+		SamplePacket in = new SamplePacket(samples);
+		in.setSize(samples);
+		in.setSampleRate(inputRate);
+		for (int i = 0; i < samples; i++) {
+			in.re()[i] = (float) Math.cos(2 * Math.PI * toneFrequency * i / inputRate);
+			in.im()[i] = (float) Math.sin(2 * Math.PI * toneFrequency * i / inputRate);
+		}
+		SamplePacket out = new SamplePacket(samples);
+		assertEquals(samples, resampler.filter(in, out, 0, samples));
+		assertEquals(samples * 5 / 12, out.size());
+		assertEquals(outputRate, out.getSampleRate());
+
+		// the output is delayed by the group delay of the prototype filter (in output samples):
+		double delay = (resampler.getNumberOfTaps() - 1) / 2.0 / (5.0 * inputRate) * outputRate;
+		for (int m = out.size() / 2; m < out.size(); m++) {
+			double phase = 2 * Math.PI * toneFrequency * (m - delay) / outputRate;
+			assertEquals(Math.cos(phase), out.re(m), 0.02);
+			assertEquals(Math.sin(phase), out.im(m), 0.02);
+		}
+	}
+
+	public void testAudioSinkResampling() throws Exception {
+		// Feed demodulated audio (1 kHz tone) at the quadrature rates into the audio filter of the
+		// AudioSink and check that it is converted to the audio rate (48 kHz and 44.1 kHz):
+		int[] audioRates = {48000, 44100};
+		int[] inputRates = {31250, 62500, 250000};
+		int packetSize = 16384;
+		for (int audioRate : audioRates) {
+			AudioSink audioSink = new AudioSink(packetSize, audioRate, (AudioOutput) null);
+			for (int inputRate : inputRates) {
+				int inputSize = 8000;
+				SamplePacket in = new SamplePacket(packetSize);
+				SamplePacket out = new SamplePacket(packetSize);
+				int outputSamples = 0;
+				long startTime = System.nanoTime();
+				for (int p = 0; p < 10; p++) {
+					for (int i = 0; i < inputSize; i++)
+						in.re()[i] = (float) Math.sin(2 * Math.PI * 1000 * (p * inputSize + i) / inputRate);
+					in.setSize(inputSize);
+					in.setSampleRate(inputRate);
+					audioSink.applyAudioFilter(in, out);
+					assertEquals(audioRate, out.getSampleRate());
+					outputSamples += out.size();
+				}
+				System.out.println("AudioSink: " + inputRate + " -> " + audioRate + ": "
+						+ (System.nanoTime() - startTime) / 1000000f + "ms");
+				double expected = 10.0 * inputSize * audioRate / inputRate;
+				assertEquals(expected, outputSamples, 2);
+
+				// amplitude of the last packet should be 1:
+				float max = 0;
+				for (int i = out.size()/2; i < out.size(); i++)
+					max = Math.max(max, Math.abs(out.re(i)));
+				assertEquals(1, max, 0.05);
+			}
+		}
+
+		// Upsampling full packets: the output is larger than the packet size and must not be cut off
+		final long[] written = new long[1];
+		AudioSink audioSink = new AudioSink(packetSize, 48000, new AudioOutput() {
+			@Override
+			public boolean open(int sampleRate) {
+				return true;
+			}
+
+			@Override
+			public boolean write(short[] samples, int offset, int length) {
+				written[0] += length;
+				return true;
+			}
+
+			@Override
+			public boolean close() {
+				return true;
+			}
+		});
+		audioSink.start();
+		for (int p = 0; p < 4; p++) {
+			SamplePacket packet = audioSink.getPacketBuffer(1000);
+			assertNotNull(packet);
+			packet.setSize(packetSize);
+			packet.setSampleRate(31250);
+			assertTrue(audioSink.enqueuePacket(packet));
+		}
+		// The end of the stream stops the sink after all samples are written:
+		SamplePacket endOfStream = audioSink.getPacketBuffer(1000);
+		assertNotNull(endOfStream);
+		endOfStream.setSize(0);
+		endOfStream.setEndOfStream(true);
+		assertTrue(audioSink.enqueuePacket(endOfStream));
+		audioSink.join(5000);
+		assertFalse(audioSink.isAlive());
+		assertTrue(audioSink.isEndOfStreamReached());
+		assertFalse(audioSink.hasOutputError());
+		assertEquals(4.0 * packetSize * 48000 / 31250, written[0], 2);
+
+		// A WAV file whose header can't be written when it is closed is reported as output error:
+		java.io.File directory = java.io.File.createTempFile("audiosink", "");
+		assertTrue(directory.delete() && directory.mkdir());
+		java.io.File wavFile = new java.io.File(directory, "audio.wav");
+		audioSink = new AudioSink(packetSize, 48000, wavFile);
+		audioSink.start();
+		SamplePacket packet = audioSink.getPacketBuffer(1000);
+		packet.setSize(packetSize);
+		packet.setSampleRate(48000);
+		assertTrue(audioSink.enqueuePacket(packet));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (audioSink.getWrittenSamples() < packetSize && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertTrue(wavFile.delete() && directory.delete());	// the header can't be rewritten
+		endOfStream = audioSink.getPacketBuffer(1000);
+		endOfStream.setSize(0);
+		endOfStream.setEndOfStream(true);
+		assertTrue(audioSink.enqueuePacket(endOfStream));
+		audioSink.join(5000);
+		assertFalse(audioSink.isAlive());
+		assertTrue(audioSink.isEndOfStreamReached());
+		assertTrue(audioSink.hasOutputError());
+	}
+
 	public void testHalfBandLowPassFilter() {
 		int samples = 128;
 		float[] reIn = new float[samples];
@@ -277,6 +2316,129 @@ public class ApplicationTest extends ApplicationTestCase<Application> {
 		System.out.println("Averaged " + (time/iter) + "ms per iteration");
 	}
 
+	public void testRadix4FFT() throws Exception {
+		// Compare the radix-4 engine bin-by-bin against the reference radix-2 FFT:
+		java.util.Random random = new java.util.Random(42);
+		for (int N = 1; N <= 65536; N *= 2) {
+			FftEngine reference = new FFT(N);
+			FftEngine radix4 = new Radix4FFT(N);
+			assertEquals(N, radix4.getSize());
+			compareFftEngines(reference, radix4, random);
+		}
+
+		// Performance comparison:
+		int N = 65536;
+		int iter = 200;
+		float[] re = new float[N];
+		float[] im = new float[N];
+		FftEngine[] engines = {new FFT(N), new Radix4FFT(N)};
+		for (FftEngine engine : engines) {
+			long time = System.currentTimeMillis();
+			for (int i = 0; i < iter; i++)
+				engine.fft(re, im);
+			time = System.currentTimeMillis() - time;
+			System.out.println(engine.getClass().getSimpleName() + ": Averaged " + (time/(double)iter) + "ms per " + N + "-point FFT");
+		}
+	}
+
+	public void testParallelFFT() throws Exception {
+		// Compare the parallel (six-step) engine bin-by-bin against the serial radix-4 FFT. Odd and
+		// even powers of 2 give square and non-square decompositions:
+		java.util.Random random = new java.util.Random(42);
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		for (int N = ParallelFFT.MIN_PARALLEL_SIZE; N <= 1048576; N *= 2) {
+			ParallelFFT parallel = new ParallelFFT(N, pool);
+			assertTrue(parallel.isParallel());
+			assertEquals(N, parallel.getSize());
+			compareFftEngines(new Radix4FFT(N), parallel, random);
+			compareFftEngines(new Radix4FFT(N), parallel, random);	// buffers are reused
+		}
+
+		// Serial fallback for small sizes or a single thread:
+		assertFalse(new ParallelFFT(ParallelFFT.MIN_PARALLEL_SIZE / 2, pool).isParallel());
+		assertFalse(new ParallelFFT(ParallelFFT.MIN_PARALLEL_SIZE, new java.util.concurrent.ForkJoinPool(1)).isParallel());
+		compareFftEngines(new Radix4FFT(1024), new ParallelFFT(1024, pool), random);
+
+		// Scaling (only meaningful on a device with multiple cores):
+		int N = 262144;
+		int iter = 20;
+		float[] re = new float[N];
+		float[] im = new float[N];
+		FftEngine[] engines = {new Radix4FFT(N), new ParallelFFT(N, new java.util.concurrent.ForkJoinPool(2)),
+				new ParallelFFT(N, pool), new ParallelFFT(N, new java.util.concurrent.ForkJoinPool(8))};
+		for (FftEngine engine : engines) {
+			long time = System.currentTimeMillis();
+			for (int i = 0; i < iter; i++)
+				engine.fft(re, im);
+			time = System.currentTimeMillis() - time;
+			System.out.println("##### " + engine.getClass().getSimpleName() + ": Averaged " + (time/(double)iter) + "ms per " + N + "-point FFT");
+		}
+	}
+
+	public void testRealFFT() throws Exception {
+		// Compare the real-input FFT against the complex reference FFT with zeroed imaginary parts:
+		java.util.Random random = new java.util.Random(42);
+		for (int N = 2; N <= 65536; N *= 2) {
+			RealFFT realFFT = new RealFFT(N);
+			FFT reference = new FFT(N);
+			float[] x = new float[N];
+			float[] reRef = new float[N];
+			float[] imRef = new float[N];
+			float[] re = new float[realFFT.getOutputSize()];
+			float[] im = new float[realFFT.getOutputSize()];
+			for (int i = 0; i < N; i++) {
+				x[i] = reRef[i] = random.nextFloat() * 2 - 1;
+				imRef[i] = 0;
+			}
+			reference.fft(reRef, imRef);
+			realFFT.fft(x, re, im);
+
+			float maxError = (float) (1e-4 * Math.sqrt(N)) + 1e-5f;
+			for (int i = 0; i <= N/2; i++) {
+				assertEquals("N=" + N + " bin " + i + " (re)", reRef[i], re[i], maxError);
+				assertEquals("N=" + N + " bin " + i + " (im)", imRef[i], im[i], maxError);
+			}
+		}
+
+		// Performance comparison against the complex FFT of the same length:
+		int N = 65536;
+		int iter = 200;
+		float[] x = new float[N];
+		float[] re = new float[N];
+		float[] im = new float[N];
+		RealFFT realFFT = new RealFFT(N);
+		Radix4FFT complexFFT = new Radix4FFT(N);
+		long time = System.currentTimeMillis();
+		for (int i = 0; i < iter; i++)
+			complexFFT.fft(re, im);
+		System.out.println("Radix4FFT: Averaged " + ((System.currentTimeMillis() - time)/(double)iter) + "ms per " + N + "-point FFT");
+		time = System.currentTimeMillis();
+		for (int i = 0; i < iter; i++)
+			realFFT.fft(x, re, im);
+		System.out.println("RealFFT: Averaged " + ((System.currentTimeMillis() - time)/(double)iter) + "ms per " + N + "-point FFT");
+	}
+
+	protected static void compareFftEngines(FftEngine reference, FftEngine engine, java.util.Random random) {
+		int N = reference.getSize();
+		float[] reRef = new float[N];
+		float[] imRef = new float[N];
+		float[] re = new float[N];
+		float[] im = new float[N];
+		for (int i = 0; i < N; i++) {
+			reRef[i] = re[i] = random.nextFloat() * 2 - 1;
+			imRef[i] = im[i] = random.nextFloat() * 2 - 1;
+		}
+		reference.fft(reRef, imRef);
+		engine.fft(re, im);
+
+		// The magnitude of random input bins is in the order of sqrt(N). Allow a relative error of 1e-4:
+		float maxError = (float) (1e-4 * Math.sqrt(N)) + 1e-5f;
+		for (int i = 0; i < N; i++) {
+			assertEquals("N=" + N + " bin " + i + " (re)", reRef[i], re[i], maxError);
+			assertEquals("N=" + N + " bin " + i + " (im)", imRef[i], im[i], maxError);
+		}
+	}
+
 	protected static void beforeAfter(FFT fft, float[] re, float[] im) {
 		System.out.println("Before: ");
 		printReIm(re, im);
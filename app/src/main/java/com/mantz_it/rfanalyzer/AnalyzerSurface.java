@@ -44,7 +44,8 @@ import android.view.SurfaceView;
 public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callback,
 															ScaleGestureDetector.OnScaleGestureListener,
 															GestureDetector.OnGestureListener,
-															GestureDetector.OnDoubleTapListener {
+															GestureDetector.OnDoubleTapListener,
+															SpectrumSink {
 
 	// Gesture detectors to detect scaling, scrolling ...
 	private ScaleGestureDetector scaleGestureDetector = null;
@@ -96,9 +97,6 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 	public static final int FFT_DRAWING_TYPE_BAR = 1;	// draw as bars
 	public static final int FFT_DRAWING_TYPE_LINE = 2;	// draw as line
 
-	private int averageLength = 0;				// indicates whether or not peak hold points should be drawn
-	private float[][] historySamples;			// array that holds the last averageLength fft sample packets
-	private int oldesthistoryIndex;				// index in historySamples which holds the oldest samples
 	private float[] peaks;						// peak hold points
 	private float[][] peakHoldHistory;			// array that holds the last sample for peak hold
 	private int peakHoldHistoryIndex = 0;		// last index in peakHoldHistory
@@ -364,14 +362,6 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 		this.fftDrawingType = fftDrawingType;
 	}
 
-	/**
-	 * Will change the number of history packets used to calculate the average.
-	 * @param length	number of history packets; 0 for no averaging
-	 */
-	public void setAverageLength(int length) {
-		this.averageLength = length;
-	}
-
 	/**
 	 * @param length	the numbers of history samples to use when computing the peaks
 	 */
@@ -981,19 +971,25 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 	 * Will (re-)draw the given data set on the surface. Note that it actually only draws
 	 * a sub set of the fft data depending on the current settings of virtual frequency and sample rate.
 	 *
-	 * @param mag			array of magnitude values that represent the fft
+	 * @param mag			array of magnitude values that represent the fft (averaged by the processing loop)
+	 * @param latestMag		magnitude values of the latest fft without averaging (used for the waterfall)
 	 * @param frequency		center frequency
 	 * @param sampleRate	sample rate
 	 * @param frameRate 	current frame rate (FPS)
 	 * @param load			current load (percentage [0..1])
 	 */
-	public void draw(float[] mag, long frequency, int sampleRate, int frameRate, double load) {
+	@Override
+	public void draw(float[] mag, float[] latestMag, long frequency, int sampleRate, int frameRate, double load) {
 
 		if(virtualFrequency < 0)
 			virtualFrequency = frequency;
 		if(virtualSampleRate < 0)
 			virtualSampleRate = sampleRate;
 
+		// Let the processing loop zoom into the visible range (the next spectra will have a
+		// higher resolution and are mapped to the screen like any other frequency / sample rate):
+		rfControlInterface.updateVisibleRange(virtualFrequency, virtualSampleRate);
+
 		// Calculate the start and end index to draw mag according to frequency and sample rate and
 		// the virtual frequency and sample rate:
 		float samplesPerHz = (float) mag.length/ (float) sampleRate;	// indicates how many samples in mag cover 1 Hz
@@ -1002,38 +998,6 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 		int start = (int)((frequencyDiff - sampleRateDiff/2.0) * samplesPerHz);
 		int end = mag.length + (int)((frequencyDiff + sampleRateDiff/2.0) * samplesPerHz);
 
-		// Averaging
-		if(averageLength > 0) {
-			// verify that the history samples array is correctly initialized:
-			if(historySamples == null || historySamples.length != averageLength || historySamples[0].length != mag.length) {
-				historySamples = new float[averageLength][mag.length];
-				for (int i = 0; i < averageLength; i++) {
-					for (int j = 0; j < mag.length; j++) {
-						historySamples[i][j] = mag[j];
-					}
-				}
-				oldesthistoryIndex = 0;
-			}
-			// Check if the frequency or sample rate of the incoming signals is different from the ones before:
-			if(frequency != lastFrequency || sampleRate != lastSampleRate) {
-				for (int i = 0; i < averageLength; i++) {
-					for (int j = 0; j < mag.length; j++) {
-						historySamples[i][j] = mag[j];    // reset history. We could also shift and scale. But for now they are simply reset.
-					}
-				}
-			}
-			// calculate the averages (store them into mag). copy mag to oldest history index
-			float tmp;
-			for (int i = 0; i < mag.length; i++) {
-				tmp = mag[i];
-				for (int j = 0; j < historySamples.length; j++)
-					tmp += historySamples[j][i];
-				historySamples[oldesthistoryIndex][i] = mag[i];
-				mag[i] = tmp / (historySamples.length+1);
-			}
-			oldesthistoryIndex = (oldesthistoryIndex + 1) % historySamples.length;
-		}
-
 		// Autoscale
 		if(doAutoscaleInNextDraw) {
 			doAutoscaleInNextDraw = false;
@@ -1125,7 +1089,7 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 					// Draw all the components
 					drawFFTBackground(c);
 					drawFrequencyGrid(c);
-					drawFFT(c, mag, start, end);
+					drawFFT(c, mag, latestMag, start, end);
 					drawChannelSelector(c);
 					drawPowerGrid(c);
 					drawWaterfall(c);
@@ -1150,16 +1114,17 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 
 	/**
 	 * This method will draw the fft onto the canvas. It will also update the bitmap in
-	 * waterfallLines[waterfallLinesTopIndex] with the data from mag.
+	 * waterfallLines[waterfallLinesTopIndex] with the data from latestMag.
 	 * Important: start and end may be out of bounds of the mag array. This will cause black
 	 * padding.
 	 *
 	 * @param c			canvas of the surface view
 	 * @param mag		array of magnitude values that represent the fft
+	 * @param latestMag	magnitude values of the latest fft without averaging (for the waterfall)
 	 * @param start		first index to draw from mag (may be negative)
 	 * @param end		last index to draw from mag (may be > mag.length)
 	 */
-	private void drawFFT(Canvas c, float[] mag, int start, int end) {
+	private void drawFFT(Canvas c, float[] mag, float[] latestMag, int start, int end) {
 		float previousY		 = fftDataHeight;	// y coordinate of the previously processed pixel (only used with drawing type line)
 		float previousPeakY	 = fftDataHeight;	// y coordinate of the previously processed peak hold pixel
 		float currentY;							// y coordinate of the currently processed pixel
@@ -1169,14 +1134,10 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 		float scale 		= this.waterfallColorMap.length / dbDiff;	// scale for the color mapping of the waterfall
 		float avg;				// Used to calculate the average of multiple values in mag (horizontal average)
 		float peakAvg;			// Used to calculate the average of multiple values in peaks
-		float waterfallAvg;		// Used to calculate the average of multiple values in historySamples[oldestHistoryIndex-1].
+		float waterfallAvg;		// Used to calculate the average of multiple values in latestMag.
 								// This is used to ignore the time averaging in the waterfall plot
 		int counter;			// Used to calculate the average of multiple values in mag and peaks
-		int latestHistoryIndex = 0;
-
-		// latestHistoryIndex points to the current fft values inside the historySamples array and is used to calc waterfallAvg
-		if(historySamples != null)
-			latestHistoryIndex = oldesthistoryIndex==0 ? historySamples.length-1 : oldesthistoryIndex -1;
+		boolean averaged = latestMag != mag;	// true if mag is averaged over time
 
 		// Get a canvas from the bitmap of the current waterfall line and clear it:
 		Canvas newline = new Canvas(waterfallLines[waterfallLinesTopIndex]);
@@ -1200,14 +1161,14 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 				avg += mag[j + start];
 				if(peaks != null)
 					peakAvg += peaks[j + start];
-				if(this.averageLength > 0)
-					waterfallAvg += historySamples[latestHistoryIndex][j + start];
+				if(averaged)
+					waterfallAvg += latestMag[j + start];
 				counter++;
 			}
 			avg = avg / counter;
 			if(peaks != null)
 				peakAvg = peakAvg / counter;
-			if(this.averageLength > 0)
+			if(averaged)
 				waterfallAvg = waterfallAvg / counter;
 			else
 				waterfallAvg = avg;	// no difference between avg and waterfallAvg
@@ -1622,6 +1583,13 @@ public class AnalyzerSurface extends SurfaceView implements SurfaceHolder.Callba
 			textSmallPaint.getTextBounds(text, 0, text.length(), textBounds);
 			c.drawText(text, rightBorder - textBounds.width(), yPos + textBounds.height(), textSmallPaint);
 			yPos += textBounds.height() * 1.1f;
+
+			// Draw the pipeline metrics (drops, queue occupancy, latency)
+			for (String line : PipelineMetrics.getSummary()) {
+				textSmallPaint.getTextBounds(line, 0, line.length(), textBounds);
+				c.drawText(line, rightBorder - textBounds.width(), yPos + textBounds.height(), textSmallPaint);
+				yPos += textBounds.height() * 1.1f;
+			}
 		}
 	}
 }
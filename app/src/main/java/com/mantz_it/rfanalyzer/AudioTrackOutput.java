@@ -0,0 +1,83 @@
+package com.mantz_it.rfanalyzer;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.util.Log;
+
+/**
+ * <h1>RF Analyzer - Audio Track Output</h1>
+ *
+ * Module:      AudioTrackOutput.java
+ * Description: Audio output of an AudioSink that plays the samples with the AudioTrack API
+ *              of the Android system.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AudioTrackOutput implements AudioOutput {
+	private AudioTrack audioTrack = null;		// AudioTrack object that is used to pass audio samples to the Android system
+	private static final String LOGTAG = "AudioTrackOutput";
+
+	/**
+	 * Returns the native output sample rate of the Android audio system. If the AudioSink
+	 * runs at this rate, the AudioTrack doesn't have to resample internally.
+	 *
+	 * @return native output sample rate (typically 48000 or 44100) or AudioSink.DEFAULT_SAMPLE_RATE
+	 */
+	public static int getNativeSampleRate() {
+		int nativeSampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+		if(nativeSampleRate <= 0) {
+			Log.w(LOGTAG, "getNativeSampleRate: could not determine native sample rate. Using " + AudioSink.DEFAULT_SAMPLE_RATE);
+			return AudioSink.DEFAULT_SAMPLE_RATE;
+		}
+		return nativeSampleRate;
+	}
+
+	@Override
+	public boolean open(int sampleRate) {
+		// Create an instance of the AudioTrack class and start playback:
+		int bufferSize = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
+		this.audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+									AudioFormat.ENCODING_PCM_16BIT, bufferSize, AudioTrack.MODE_STREAM);
+		if(audioTrack.getState() != AudioTrack.STATE_INITIALIZED) {
+			Log.e(LOGTAG, "open: AudioTrack could not be initialized.");
+			audioTrack.release();
+			audioTrack = null;
+			return false;
+		}
+		audioTrack.play();
+		return true;
+	}
+
+	@Override
+	public boolean write(short[] samples, int offset, int length) {
+		return audioTrack != null && audioTrack.write(samples, offset, length) == length;
+	}
+
+	@Override
+	public boolean close() {
+		if(audioTrack != null) {
+			audioTrack.stop();
+			audioTrack.release();
+			audioTrack = null;
+		}
+		return true;
+	}
+}
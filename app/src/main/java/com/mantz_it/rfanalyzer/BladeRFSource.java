@@ -7,10 +7,8 @@ import android.os.Looper;
 import android.util.Log;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
@@ -26,8 +24,9 @@ public class BladeRFSource implements IQSourceInterface, Runnable {
 
     private final IQConverter iqConverter = new Signed12BitIQConverter();
 
-    private ArrayBlockingQueue<byte[]> queue = null;
-    private ArrayBlockingQueue<byte[]> pool = null;
+    // Delivers the sample buffers to the scheduler. The slots are empty at first; the USB thread
+    // publishes the buffers of completed requests and reuses the buffers of released slots:
+    private RingBuffer<byte[]> ringBuffer = null;
 
     private static final int queueSize = 1024;
 
@@ -37,9 +36,9 @@ public class BladeRFSource implements IQSourceInterface, Runnable {
     private boolean isSampling = false;
 
     @Override
-    public boolean open(Context context, com.mantz_it.rfanalyzer.IQSourceInterface.Callback callback) {
-        queue = new ArrayBlockingQueue<>(queueSize);
-        pool = new ArrayBlockingQueue<>(queueSize);
+    public boolean open(Object context, com.mantz_it.rfanalyzer.IQSourceInterface.Callback callback) {
+        ringBuffer = new RingBuffer<>(new byte[queueSize][], RingBuffer.getDefaultWaitStrategy());
+        PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_SOURCE, ringBuffer);
 
         Function<String, Void> openCallback = error -> {
             if (error == null) {
@@ -69,7 +68,7 @@ public class BladeRFSource implements IQSourceInterface, Runnable {
         };
 
         device = new Device();
-        return device.open(context, openCallback);
+        return device.open((Context) context, openCallback);
     }
 
     @Override
@@ -193,27 +192,23 @@ public class BladeRFSource implements IQSourceInterface, Runnable {
     @Override
     public byte[] getPacket(int timeout) {
         try {
-            return queue.poll(timeout, TimeUnit.MILLISECONDS);
+            return ringBuffer.acquire(timeout);
         } catch (InterruptedException e) {
-            Log.e(LOGTAG, "Interrupted while waiting on sample queue");
+            Log.e(LOGTAG, "Interrupted while waiting on sample ring buffer");
             return null;
         }
     }
 
     @Override
     public void returnPacket(byte[] buffer) {
-        if (buffer.length == getPacketSize()) {
-            pool.offer(buffer);
-        } else {
-            Log.w(LOGTAG, "Got a buffer with wrong size " + buffer.length);
-        }
+        ringBuffer.release(buffer);
     }
 
     @Override
     public void startSampling() {
         Log.i(LOGTAG, "Starting reception");
 
-        queue.clear();
+        ringBuffer.flush();
 
         if (device == null) {
             return;
@@ -260,14 +255,18 @@ public class BladeRFSource implements IQSourceInterface, Runnable {
 
                 ByteBuffer buffer = (ByteBuffer) request.getClientData();
 
-                if (!queue.offer(buffer.array())) {
-                    //Log.w(LOGTAG, "Sample queue is full");
-                }
-
-                byte[] bufferArray = pool.poll();
-                if (bufferArray == null) {
-                    //Log.w(LOGTAG, "Sample pool is empty");
-                    bufferArray = new byte[getPacketSize()];
+                byte[] bufferArray;
+                if (ringBuffer.remainingCapacity() > 0) {
+                    // exchange the filled buffer with the (released) buffer of the next slot:
+                    bufferArray = ringBuffer.claim();
+                    ringBuffer.publish(buffer.array());
+                    if (bufferArray == null || bufferArray.length != getPacketSize()) {
+                        bufferArray = new byte[getPacketSize()];
+                    }
+                } else {
+                    //Log.w(LOGTAG, "Sample ring buffer is full");
+                    bufferArray = buffer.array();   // drop the samples and reuse the buffer
+                    PipelineMetrics.counter(PipelineMetrics.SOURCE_DROPPED).increment();
                 }
 
                 if (!device.queueUSBRequest(request, bufferArray)) {
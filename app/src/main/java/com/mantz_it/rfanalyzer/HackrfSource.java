@@ -81,11 +81,11 @@ public class HackrfSource implements IQSourceInterface, HackrfCallbackInterface
 	}
 
 	@Override
-	public boolean open(Context context, Callback callback) {
+	public boolean open(Object context, Callback callback) {
 		int queueSize = 1000000;
 		this.callback = callback;
 		// Initialize the HackRF (i.e. open the USB device, which requires the user to give permissions)
-		return Hackrf.initHackrf(context, this, queueSize);
+		return Hackrf.initHackrf((Context) context, this, queueSize);
 	}
 
 	@Override
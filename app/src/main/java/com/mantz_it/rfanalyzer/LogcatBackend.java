@@ -0,0 +1,34 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Logcat Backend</h1>
+ *
+ * Module:      LogcatBackend.java
+ * Description: Backend for the Log of the core module that forwards all messages to the
+ *              Android log (logcat).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class LogcatBackend implements Log.Backend {
+	@Override
+	public void println(int priority, String tag, String msg) {
+		android.util.Log.println(priority, tag, msg);
+	}
+}
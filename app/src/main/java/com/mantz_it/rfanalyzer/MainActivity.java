@@ -82,6 +82,7 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 	private AnalyzerProcessingLoop analyzerProcessingLoop = null;
 	private IQSourceInterface source = null;
 	private Scheduler scheduler = null;
+	private SampleBufferArena sampleBufferArena = null;	// direct memory for the samples of memory mapped files (reused by every scheduler)
 	private Demodulator demodulator = null;
 	private SharedPreferences preferences = null;
 	private Bundle savedInstanceState = null;
@@ -90,6 +91,7 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 	private boolean running = false;
 	private File recordingFile = null;
 	private int demodulationMode = Demodulator.DEMODULATION_OFF;
+	private boolean zoomFftEnabled = true;	// zoom into the visible range instead of stretching the fft (continuous fft only)
 
 	private static final String LOGTAG = "MainActivity";
 	private static final String RECORDING_DIR = "RFAnalyzer";
@@ -107,6 +109,7 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		com.mantz_it.rfanalyzer.Log.setBackend(new LogcatBackend());	// forward the log of the signal processing blocks to logcat
 		setContentView(R.layout.activity_main);
 		this.savedInstanceState = savedInstanceState;
 
@@ -560,9 +563,11 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 						String fileName = preferences.getString(getString(R.string.pref_filesource_file), "");
 						int fileFormat = Integer.valueOf(preferences.getString(getString(R.string.pref_filesource_format), "0"));
 						boolean repeat = preferences.getBoolean(getString(R.string.pref_filesource_repeat), false);
+						boolean memoryMapped = preferences.getBoolean(getString(R.string.pref_filesource_memoryMapped), true);
 						if (freq != source.getFrequency() || sampRate != source.getSampleRate()
 								|| !fileName.equals(((FileIQSource) source).getFilename())
 								|| repeat != ((FileIQSource) source).isRepeat()
+								|| memoryMapped != ((FileIQSource) source).isMemoryMapped()
 								|| fileFormat != ((FileIQSource) source).getFileFormat()) {
 							source.close();
 							createSource();
@@ -638,7 +643,6 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 			analyzerSurface.setDisplayRelativeFrequencies(preferences.getBoolean(getString(R.string.pref_relativeFrequencies), false));
 			analyzerSurface.setWaterfallColorMapType(Integer.valueOf(preferences.getString(getString(R.string.pref_colorMapType),"4")));
 			analyzerSurface.setFftDrawingType(Integer.valueOf(preferences.getString(getString(R.string.pref_fftDrawingType),"2")));
-			analyzerSurface.setAverageLength(Integer.valueOf(preferences.getString(getString(R.string.pref_averaging),"0")));
 			analyzerSurface.setPeakHoldHistoryLength(Integer.valueOf(preferences.getString(getString(R.string.pref_peakHold), "30")));
 			analyzerSurface.setFftRatio(Float.valueOf(preferences.getString(getString(R.string.pref_spectrumWaterfallRatio), "0.5")));
 			analyzerSurface.setFontSize(Integer.valueOf(preferences.getString(getString(R.string.pref_fontSize),"2")));
@@ -646,6 +650,16 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 			analyzerSurface.setShowDebugInformation(preferences.getBoolean(getString(R.string.pref_showDebugInformation), false));
 		}
 
+		// Zoom into the visible range (continuous fft only, see updateVisibleRange()):
+		zoomFftEnabled = preferences.getBoolean(getString(R.string.pref_zoomFft), true);
+
+		// The averaging is done by the processing loop (in the linear power domain):
+		if(analyzerProcessingLoop != null) {
+			analyzerProcessingLoop.setAverageLength(Integer.valueOf(preferences.getString(getString(R.string.pref_averaging),"0")));
+			analyzerProcessingLoop.setWindow(FftWindow.getWindow(Integer.valueOf(preferences.getString(
+					getString(R.string.pref_fftWindow), getString(R.string.pref_fftWindow_default))), analyzerProcessingLoop.getFftSize()));
+		}
+
 		// Screen Orientation:
 		String screenOrientation = preferences.getString(getString(R.string.pref_screenOrientation), "auto");
 		if(screenOrientation.equals("auto"))
@@ -688,7 +702,8 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 						String filename = preferences.getString(getString(R.string.pref_filesource_file), "");
 						int fileFormat = Integer.valueOf(preferences.getString(getString(R.string.pref_filesource_format), "0"));
 						boolean repeat = preferences.getBoolean(getString(R.string.pref_filesource_repeat), false);
-						source = new FileIQSource(filename, sampleRate, frequency, 16384, repeat, fileFormat);
+						boolean memoryMapped = preferences.getBoolean(getString(R.string.pref_filesource_memoryMapped), true);
+						source = new FileIQSource(filename, sampleRate, frequency, 16384, repeat, fileFormat, memoryMapped);
 						break;
 			case HACKRF_SOURCE:
 						// Create HackrfSource
@@ -905,6 +920,11 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 		int fftSize = Integer.valueOf(preferences.getString(getString(R.string.pref_fftSize), "1024"));
 		int frameRate = Integer.valueOf(preferences.getString(getString(R.string.pref_frameRate), "1"));
 		boolean dynamicFrameRate = preferences.getBoolean(getString(R.string.pref_dynamicFrameRate), true);
+		int fftOverlap = Integer.valueOf(preferences.getString(getString(R.string.pref_fftOverlap), getString(R.string.pref_fftOverlap_default)));
+
+		// Ring buffers between the blocks are created with this wait strategy:
+		RingBuffer.setDefaultWaitStrategy(RingBuffer.WaitStrategy.valueOf(
+				preferences.getString(getString(R.string.pref_waitStrategy), getString(R.string.pref_waitStrategy_default))));
 
 		running = true;
 
@@ -925,11 +945,24 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 
 		// Create a new instance of Scheduler and Processing Loop:
 		scheduler = new Scheduler(fftSize, source);
+		scheduler.setContinuousFft(fftOverlap >= 0);	// -1: one fft per frame
+		if(source instanceof FileIQSource) {
+			// memory mapped files are converted into direct memory; keep it for the next scheduler:
+			if(sampleBufferArena == null || sampleBufferArena.getBlockSize() < source.getPacketSize() * 8)
+				sampleBufferArena = new SampleBufferArena(source.getPacketSize() * 8, 1);
+			scheduler.setSampleBufferArena(sampleBufferArena);
+		}
 		analyzerProcessingLoop = new AnalyzerProcessingLoop(
 				analyzerSurface, 			// Reference to the Analyzer Surface
 				fftSize,					// FFT size
-				scheduler.getFftOutputQueue(), // Reference to the input queue for the processing loop
-				scheduler.getFftInputQueue()); // Reference to the buffer-pool-return queue
+				scheduler.getFftRingBuffer()); // Reference to the input ring buffer for the processing loop
+		if(fftOverlap >= 0) {
+			analyzerProcessingLoop.setContinuousFft(true, fftOverlap / 100f, ContinuousFft.INTEGRATION_PEAK);
+			analyzerProcessingLoop.setFftWorkers(ContinuousFft.getDefaultWorkerCount());	// use the spare cores
+		}
+		analyzerProcessingLoop.setAverageLength(Integer.valueOf(preferences.getString(getString(R.string.pref_averaging),"0")));
+		analyzerProcessingLoop.setWindow(FftWindow.getWindow(Integer.valueOf(preferences.getString(
+				getString(R.string.pref_fftWindow), getString(R.string.pref_fftWindow_default))), fftSize));
 		if(dynamicFrameRate)
 			analyzerProcessingLoop.setDynamicFrameRate(true);
 		else {
@@ -944,7 +977,9 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 		scheduler.setChannelFrequency(analyzerSurface.getChannelFrequency());
 
 		// Start the demodulator thread:
-		demodulator = new Demodulator(scheduler.getDemodOutputQueue(), scheduler.getDemodInputQueue(), source.getPacketSize());
+		// (the audio sink uses the native rate of the device to avoid resampling in the audio system)
+		AudioSink audioSink = new AudioSink(source.getPacketSize(), AudioTrackOutput.getNativeSampleRate(), new AudioTrackOutput());
+		demodulator = new Demodulator(scheduler.getDemodRingBuffer(), source.getPacketSize(), audioSink);
 		demodulator.start();
 
 		// Set the demodulation mode (will configure the demodulator correctly)
@@ -1031,36 +1066,14 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 			return;
 		}
 
-		// (de-)activate demodulation in the scheduler and set the sample rate accordingly:
+		// (de-)activate demodulation in the scheduler:
 		if(mode == Demodulator.DEMODULATION_OFF) {
 			scheduler.setDemodulationActivated(false);
 		}
 		else {
-			if(recordingFile != null && source.getSampleRate() != Demodulator.INPUT_RATE) {
-				// We are recording at an incompatible sample rate right now.
-				Log.i(LOGTAG, "setDemodulationMode: Recording is running at " + source.getSampleRate() + " Sps. Can't start demodulation.");
-				runOnUiThread(new Runnable() {
-					@Override
-					public void run() {
-						Toast.makeText(MainActivity.this, "Recording is running at incompatible sample rate for demodulation!", Toast.LENGTH_LONG).show();
-					}
-				});
-				return;
-			}
-
-			// adjust sample rate of the source:
-			updateSampleRate(Demodulator.INPUT_RATE);
-
-			// Verify that the source supports the sample rate:
-			if(source.getSampleRate() != Demodulator.INPUT_RATE) {
-				Log.e(LOGTAG,"setDemodulationMode: cannot adjust source sample rate!");
-				Toast.makeText(MainActivity.this, "Source does not support the sample rate necessary for demodulation (" +
-						Demodulator.INPUT_RATE/1000000 + " Msps)", Toast.LENGTH_LONG).show();
-				scheduler.setDemodulationActivated(false);
-				mode = Demodulator.DEMODULATION_OFF;	// deactivate demodulation...
-			} else {
-				scheduler.setDemodulationActivated(true);
-			}
+			// The decimator of the demodulator handles any sample rate of the source, so there is no
+			// need to retune the source:
+			scheduler.setDemodulationActivated(true);
 		}
 
 		// set demodulation mode in demodulator:
@@ -1808,6 +1821,15 @@ public class MainActivity extends AppCompatActivity implements IQSourceInterface
 		return true;
 	}
 
+	@Override
+	public boolean updateVisibleRange(long frequency, int span) {
+		if(analyzerProcessingLoop != null) {
+			analyzerProcessingLoop.setZoom(frequency, zoomFftEnabled ? span : 0);
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public void updateSquelch(float newSquelch) {
 		analyzerSurface.setSquelch(newSquelch);
@@ -70,6 +70,16 @@ public interface RFControlInterface {
 	 */
 	public boolean updateSampleRate(int newSampleRate);
 
+	/**
+	 * Is called when the frequency range shown on the screen changes (e.g. horizontal zoom).
+	 * In continuous fft mode only this range is transformed (see AnalyzerProcessingLoop.setZoom())
+	 *
+	 * @param frequency		center frequency of the visible range
+	 * @param span			width of the visible range in Hz
+	 * @return true if success, false if analyzer not running
+	 */
+	public boolean updateVisibleRange(long frequency, int span);
+
 	/**
 	 * Is called to adjust the squelch level
 	 *
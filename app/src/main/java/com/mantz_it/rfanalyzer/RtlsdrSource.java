@@ -1,6 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.content.Context;
 import android.util.Log;
 
 import java.io.IOException;
@@ -68,8 +67,7 @@ public class RtlsdrSource implements IQSourceInterface {
 	private int tuner = RTLSDR_TUNER_UNKNOWN;
 	private String ipAddress = "127.0.0.1";
 	private int port = 1234;
-	private ArrayBlockingQueue<byte[]> queue = null;
-	private ArrayBlockingQueue<byte[]> returnQueue = null;
+	private RingBuffer<byte[]> ringBuffer = null;	// delivers the received packets to the scheduler
 	private long frequency = 0;
 	private int sampleRate = 0;
 	private int gain = 0;
@@ -113,11 +111,8 @@ public class RtlsdrSource implements IQSourceInterface {
 		this.ipAddress = ip;
 		this.port = port;
 
-		// Create queues and buffers:
-		queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
-		returnQueue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
-		for(int i = 0; i < QUEUE_SIZE; i++)
-			returnQueue.offer(new byte[PACKET_SIZE]);
+		// Create ring buffer and buffers:
+		ringBuffer = RingBuffer.createByteArrayRingBuffer(QUEUE_SIZE, PACKET_SIZE);
 
 		this.iqConverter = new Unsigned8BitIQConverter();
 	}
@@ -142,7 +137,7 @@ public class RtlsdrSource implements IQSourceInterface {
 	 * @return
 	 */
 	@Override
-	public boolean open(Context context, Callback callback) {
+	public boolean open(Object context, Callback callback) {
 		this.callback = callback;
 
 		// Start the command thread (this will perform the "open" procedure:
@@ -390,24 +385,24 @@ public class RtlsdrSource implements IQSourceInterface {
 
 	@Override
 	public byte[] getPacket(int timeout) {
-		if(queue != null) {
+		if(ringBuffer != null) {
 			try {
-				return queue.poll(timeout, TimeUnit.MILLISECONDS);
+				return ringBuffer.acquire(timeout);
 			} catch (InterruptedException e) {
-				Log.e(LOGTAG, "getPacket: Interrupted while polling packet from queue: " + e.getMessage());
+				Log.e(LOGTAG, "getPacket: Interrupted while waiting on ring buffer: " + e.getMessage());
 			}
 		} else {
-			Log.e(LOGTAG, "getPacket: Queue is null");
+			Log.e(LOGTAG, "getPacket: Ring buffer is null");
 		}
 		return null;
 	}
 
 	@Override
 	public void returnPacket(byte[] buffer) {
-		if(returnQueue != null) {
-			returnQueue.offer(buffer);
+		if(ringBuffer != null) {
+			ringBuffer.release(buffer);
 		} else {
-			Log.e(LOGTAG, "returnPacket: Return queue is null");
+			Log.e(LOGTAG, "returnPacket: Ring buffer is null");
 		}
 	}
 
@@ -421,7 +416,7 @@ public class RtlsdrSource implements IQSourceInterface {
 
 		if(isOpen()) {
 			// start ReceiverThread:
-			receiverThread = new ReceiverThread(inputStream, returnQueue, queue);
+			receiverThread = new ReceiverThread(inputStream, ringBuffer);
 			receiverThread.start();
 		}
 	}
@@ -454,17 +449,10 @@ public class RtlsdrSource implements IQSourceInterface {
 	}
 
 	/**
-	 * Will empty the queue
+	 * Will empty the queue (the packets are dropped by the consumer in its next getPacket() call)
 	 */
 	public void flushQueue() {
-		byte[] buffer;
-
-		for (int i = 0; i < QUEUE_SIZE; i++) {
-			buffer = queue.poll();
-			if(buffer == null)
-				return; // we are done; the queue is empty.
-			this.returnPacket(buffer);
-		}
+		ringBuffer.flush();
 	}
 
 	/**
@@ -503,19 +491,17 @@ public class RtlsdrSource implements IQSourceInterface {
 	}
 
 	/**
-	 * This thread will read samples from the socket and put them in the queue
+	 * This thread will read samples from the socket and publish them to the ring buffer
 	 */
 	private class ReceiverThread extends Thread {
 		public String threadName = null;	// We save the thread name to check against it in the stopSampling() method
 		private boolean stopRequested = false;
 		private InputStream inputStream = null;
-		private ArrayBlockingQueue<byte[]> inputQueue = null;
-		private ArrayBlockingQueue<byte[]> outputQueue = null;
+		private RingBuffer<byte[]> ringBuffer = null;
 
-		public ReceiverThread(InputStream inputStream, ArrayBlockingQueue<byte[]> inputQueue, ArrayBlockingQueue<byte[]> outputQueue) {
+		public ReceiverThread(InputStream inputStream, RingBuffer<byte[]> ringBuffer) {
 			this.inputStream 	= inputStream;
-			this.inputQueue 	= inputQueue;
-			this.outputQueue 	= outputQueue;
+			this.ringBuffer 	= ringBuffer;
 		}
 
 		public void stopReceiving() {
@@ -532,14 +518,14 @@ public class RtlsdrSource implements IQSourceInterface {
 
 			while(!stopRequested) {
 				try {
-					// if buffer is null we request a new buffer from the inputQueue:
+					// if buffer is null we claim a new buffer from the ring buffer:
 					if(buffer == null) {
-						buffer = inputQueue.poll(1000, TimeUnit.MILLISECONDS);
+						buffer = ringBuffer.claim(1000);
 						index = 0;
 					}
 
 					if(buffer == null) {
-						Log.e(LOGTAG, "ReceiverThread: Couldn't get buffer from input queue. stop.");
+						Log.e(LOGTAG, "ReceiverThread: Couldn't claim buffer from ring buffer. stop.");
 						this.stopRequested = true;
 						break;
 					}
@@ -555,8 +541,8 @@ public class RtlsdrSource implements IQSourceInterface {
 
 					index += bytesRead;
 					if(index == buffer.length) {
-						// buffer is full. Send it to the output queue:
-						outputQueue.offer(buffer);
+						// buffer is full. Publish it to the consumer:
+						ringBuffer.publish();
 						buffer = null;
 					}
 
@@ -575,9 +561,7 @@ public class RtlsdrSource implements IQSourceInterface {
 					break;
 				}
 			}
-			// check if we still hold a buffer and return it to the input queue:
-			if(buffer != null)
-				inputQueue.offer(buffer);
+			// a buffer we still hold stays claimed and is reused by the next receiver thread
 
 			Log.i(LOGTAG, "ReceiverThread stopped (Thread: " + this.getName() + ")");
 		}
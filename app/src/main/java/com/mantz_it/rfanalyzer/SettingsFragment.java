@@ -228,6 +228,14 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
 		listPref = (ListPreference) findPreference(getString(R.string.pref_fftSize));
 		listPref.setSummary(getString(R.string.pref_fftSize_summ, listPref.getEntry()));
 
+		// FFT overlap
+		listPref = (ListPreference) findPreference(getString(R.string.pref_fftOverlap));
+		listPref.setSummary(getString(R.string.pref_fftOverlap_summ, listPref.getEntry()));
+
+		// FFT window
+		listPref = (ListPreference) findPreference(getString(R.string.pref_fftWindow));
+		listPref.setSummary(getString(R.string.pref_fftWindow_summ, listPref.getEntry()));
+
 		// Color map type
 		listPref = (ListPreference) findPreference(getString(R.string.pref_colorMapType));
 		listPref.setSummary(getString(R.string.pref_colorMapType_summ, listPref.getEntry()));
@@ -264,6 +272,10 @@ public class SettingsFragment extends PreferenceFragment implements SharedPrefer
 		else
 			listPref.setSummary(getString(R.string.pref_frameRate_summ, listPref.getEntry()));
 
+		// Wait strategy
+		listPref = (ListPreference) findPreference(getString(R.string.pref_waitStrategy));
+		listPref.setSummary(getString(R.string.pref_waitStrategy_summ, listPref.getEntry()));
+
 		// Logfile
 		editTextPref = (EditTextPreference) findPreference(getString(R.string.pref_logfile));
 		editTextPref.setSummary(getString(R.string.pref_logfile_summ, editTextPref.getText()));
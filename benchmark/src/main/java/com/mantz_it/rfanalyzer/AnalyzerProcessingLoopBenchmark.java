@@ -0,0 +1,82 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Analyzer Processing Loop Benchmark</h1>
+ *
+ * Module:      AnalyzerProcessingLoopBenchmark.java
+ * Description: Benchmarks AnalyzerProcessingLoop.doProcessing() (window, fft and logarithmic
+ *              magnitude) for the fft sizes of the app. The samples are copied into the
+ *              packet before each call, because doProcessing() works in place.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyzerProcessingLoopBenchmark {
+	@Param({"1024", "4096", "16384", "65536", "262144"})
+	public int fftSize;
+
+	private AnalyzerProcessingLoop processingLoop;
+	private float[] inputRe;
+	private float[] inputIm;
+	private SamplePacket samples;
+
+	@Setup
+	public void setup() {
+		processingLoop = new AnalyzerProcessingLoop(null, fftSize, RingBuffer.createSamplePacketRingBuffer(2, fftSize));
+		inputRe = new float[fftSize];
+		inputIm = new float[fftSize];
+		Random random = new Random(42);
+		for (int i = 0; i < fftSize; i++) {
+			inputRe[i] = random.nextFloat() - 0.5f;
+			inputIm[i] = random.nextFloat() - 0.5f;
+		}
+		samples = new SamplePacket(fftSize);
+		samples.setSize(fftSize);
+	}
+
+	@Benchmark
+	public float doProcessing(SampleCounter counter) {
+		System.arraycopy(inputRe, 0, samples.re(), 0, fftSize);
+		System.arraycopy(inputIm, 0, samples.im(), 0, fftSize);
+		processingLoop.doProcessing(samples);
+		counter.samples += fftSize;
+		return samples.re()[0];
+	}
+}
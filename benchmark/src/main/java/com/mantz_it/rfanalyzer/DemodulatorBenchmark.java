@@ -0,0 +1,102 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Demodulator Benchmark</h1>
+ *
+ * Module:      DemodulatorBenchmark.java
+ * Description: Benchmarks the demodulation methods of the Demodulator (FM, AM and SSB) with one
+ *              packet of quadrature samples (62500 Sps) per invocation. The input is a FM
+ *              modulated tone so that the AGC of AM and SSB sees realistic levels.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemodulatorBenchmark {
+	private static final int PACKET_SIZE = 4096;
+	private static final int QUADRATURE_RATE = 62500;
+
+	private Demodulator fmDemodulator;
+	private Demodulator amDemodulator;
+	private Demodulator ssbDemodulator;
+	private SamplePacket input;
+	private SamplePacket output;
+
+	@Setup
+	public void setup() {
+		fmDemodulator = createDemodulator(Demodulator.DEMODULATION_NFM);
+		amDemodulator = createDemodulator(Demodulator.DEMODULATION_AM);
+		ssbDemodulator = createDemodulator(Demodulator.DEMODULATION_USB);
+		input = new SamplePacket(PACKET_SIZE);
+		output = new SamplePacket(PACKET_SIZE);
+		double phase = 0;
+		for (int i = 0; i < PACKET_SIZE; i++) {
+			phase += 2 * Math.PI * 3000 * Math.sin(2 * Math.PI * 1000 * i / QUADRATURE_RATE) / QUADRATURE_RATE;
+			input.re()[i] = (float) Math.cos(phase);
+			input.im()[i] = (float) Math.sin(phase);
+		}
+		input.setSize(PACKET_SIZE);
+		input.setSampleRate(QUADRATURE_RATE);
+	}
+
+	private static Demodulator createDemodulator(int demodulationMode) {
+		Demodulator demodulator = new Demodulator(RingBuffer.createSamplePacketRingBuffer(2, PACKET_SIZE), PACKET_SIZE, null);
+		demodulator.setDemodulationMode(demodulationMode);
+		return demodulator;
+	}
+
+	@Benchmark
+	public int demodulateFM(SampleCounter counter) {
+		fmDemodulator.demodulateFM(input, output, 3000);
+		counter.samples += PACKET_SIZE;
+		return output.size();
+	}
+
+	@Benchmark
+	public int demodulateAM(SampleCounter counter) {
+		amDemodulator.demodulateAM(input, output);
+		counter.samples += PACKET_SIZE;
+		return output.size();
+	}
+
+	@Benchmark
+	public int demodulateSSB(SampleCounter counter) {
+		ssbDemodulator.demodulateSSB(input, output, true);
+		counter.samples += PACKET_SIZE;
+		return output.size();
+	}
+}
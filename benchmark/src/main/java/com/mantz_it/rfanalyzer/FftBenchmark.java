@@ -0,0 +1,97 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - FFT Benchmark</h1>
+ *
+ * Module:      FftBenchmark.java
+ * Description: Benchmarks the FFT engines (FFT and Radix4FFT) for all fft sizes that the
+ *              app offers (1024 to 262144).
+ *
+ *              The input is copied into the work arrays before each transform, because the
+ *              fft works in place and repeated transforms would overflow. The copy is O(n) and
+ *              small compared to the O(n log n) of the fft.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FftBenchmark {
+	@Param({"1024", "4096", "16384", "65536", "262144"})
+	public int fftSize;
+
+	private FftEngine fft;
+	private FftEngine radix4Fft;
+	private float[] inputRe;
+	private float[] inputIm;
+	private float[] re;
+	private float[] im;
+
+	@Setup
+	public void setup() {
+		fft = new FFT(fftSize);
+		radix4Fft = new Radix4FFT(fftSize);
+		inputRe = new float[fftSize];
+		inputIm = new float[fftSize];
+		re = new float[fftSize];
+		im = new float[fftSize];
+		Random random = new Random(42);
+		for (int i = 0; i < fftSize; i++) {
+			inputRe[i] = random.nextFloat() - 0.5f;
+			inputIm[i] = random.nextFloat() - 0.5f;
+		}
+	}
+
+	@Benchmark
+	public float fft(SampleCounter counter) {
+		return transform(fft, counter);
+	}
+
+	@Benchmark
+	public float radix4Fft(SampleCounter counter) {
+		return transform(radix4Fft, counter);
+	}
+
+	private float transform(FftEngine engine, SampleCounter counter) {
+		System.arraycopy(inputRe, 0, re, 0, fftSize);
+		System.arraycopy(inputIm, 0, im, 0, fftSize);
+		engine.fft(re, im);
+		counter.samples += fftSize;
+		return re[0];
+	}
+}
@@ -0,0 +1,106 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Filter Benchmark</h1>
+ *
+ * Module:      FilterBenchmark.java
+ * Description: Benchmarks the FIR filters of the demodulation path with one packet of 16384
+ *              samples per invocation:
+ *              - FirFilter.filter() / filterReal() (the user filter of the Demodulator)
+ *              - ComplexFirFilter.filter() (the band pass of the SSB demodulation)
+ *
+ *              The transition width selects the length of the filters. The filters choose the
+ *              implementation themselves (overlap-save, polyphase decimator or direct form; see
+ *              OverlapSaveFilter.isFasterThanDirectForm()), so the parameters cover all paths.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	private static final int PACKET_SIZE = 16384;
+	private static final int SAMPLE_RATE = 250000;
+
+	@Param({"1", "4"})
+	public int decimation;
+
+	@Param({"25000", "2500"})	// 19 and 181 taps
+	public int transitionWidth;
+
+	private FirFilter firFilter;
+	private ComplexFirFilter complexFirFilter;
+	private SamplePacket input;
+	private SamplePacket output;
+
+	@Setup
+	public void setup() {
+		firFilter = FirFilter.createLowPass(decimation, 1, SAMPLE_RATE, 15000, transitionWidth, 40);
+		complexFirFilter = ComplexFirFilter.createBandPass(decimation, 1, SAMPLE_RATE, 200, 5000, transitionWidth, 40);
+		input = new SamplePacket(PACKET_SIZE);
+		output = new SamplePacket(PACKET_SIZE);
+		Random random = new Random(42);
+		for (int i = 0; i < PACKET_SIZE; i++) {
+			input.re()[i] = random.nextFloat() - 0.5f;
+			input.im()[i] = random.nextFloat() - 0.5f;
+		}
+		input.setSize(PACKET_SIZE);
+		input.setSampleRate(SAMPLE_RATE);
+	}
+
+	@Benchmark
+	public int firFilter(SampleCounter counter) {
+		output.setSize(0);
+		counter.samples += PACKET_SIZE;
+		return firFilter.filter(input, output, 0, PACKET_SIZE);
+	}
+
+	@Benchmark
+	public int firFilterReal(SampleCounter counter) {
+		output.setSize(0);
+		counter.samples += PACKET_SIZE;
+		return firFilter.filterReal(input, output, 0, PACKET_SIZE);
+	}
+
+	@Benchmark
+	public int complexFirFilter(SampleCounter counter) {
+		output.setSize(0);
+		counter.samples += PACKET_SIZE;
+		return complexFirFilter.filter(input, output, 0, PACKET_SIZE);
+	}
+}
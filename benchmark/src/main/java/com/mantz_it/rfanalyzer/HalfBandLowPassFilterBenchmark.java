@@ -0,0 +1,85 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Half Band Low Pass Filter Benchmark</h1>
+ *
+ * Module:      HalfBandLowPassFilterBenchmark.java
+ * Description: Benchmarks HalfBandLowPassFilter.filterN8() and filterN12() (the stages of the
+ *              Decimator) with one packet of 16384 samples per invocation.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HalfBandLowPassFilterBenchmark {
+	private static final int PACKET_SIZE = 16384;
+
+	private HalfBandLowPassFilter halfBandN8;
+	private HalfBandLowPassFilter halfBandN12;
+	private SamplePacket input;
+	private SamplePacket output;
+
+	@Setup
+	public void setup() {
+		halfBandN8 = new HalfBandLowPassFilter(8);
+		halfBandN12 = new HalfBandLowPassFilter(12);
+		input = new SamplePacket(PACKET_SIZE);
+		output = new SamplePacket(PACKET_SIZE / 2);
+		Random random = new Random(42);
+		for (int i = 0; i < PACKET_SIZE; i++) {
+			input.re()[i] = random.nextFloat() - 0.5f;
+			input.im()[i] = random.nextFloat() - 0.5f;
+		}
+		input.setSize(PACKET_SIZE);
+		input.setSampleRate(1000000);
+	}
+
+	@Benchmark
+	public int filterN8(SampleCounter counter) {
+		output.setSize(0);
+		counter.samples += PACKET_SIZE;
+		return halfBandN8.filterN8(input, output, 0, PACKET_SIZE);
+	}
+
+	@Benchmark
+	public int filterN12(SampleCounter counter) {
+		output.setSize(0);
+		counter.samples += PACKET_SIZE;
+		return halfBandN12.filterN12(input, output, 0, PACKET_SIZE);
+	}
+}
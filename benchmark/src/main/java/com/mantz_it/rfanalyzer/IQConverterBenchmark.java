@@ -0,0 +1,142 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - IQ Converter Benchmark</h1>
+ *
+ * Module:      IQConverterBenchmark.java
+ * Description: Benchmarks the fill and mix methods of the IQConverters (8 bit signed, 8 bit
+ *              unsigned and 12 bit signed) with one packet of 16384 bytes per invocation:
+ *              - fillPacketIntoSamplePacket() from byte[] and from ByteBuffer
+ *              - fillPacketIntoDirectSamplePacket()
+ *              - mixPacketIntoSamplePacket() with the NCO and with the lookup table mixer
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IQConverterBenchmark {
+	private static final int PACKET_SIZE = 16384;	// bytes
+	private static final int SAMPLE_RATE = 2000000;
+	private static final long FREQUENCY = 100000000;
+	private static final long CHANNEL_FREQUENCY = FREQUENCY + 312500;
+
+	@Param({"s8", "u8", "s12"})
+	public String format;
+
+	private IQConverter converter;
+	private IQConverter lookupTableConverter;
+	private byte[] packet;
+	private ByteBuffer packetBuffer;
+	private SamplePacket samplePacket;
+	private DirectSamplePacket directSamplePacket;
+	private int samplesPerPacket;
+
+	@Setup
+	public void setup() {
+		converter = createConverter();
+		lookupTableConverter = createConverter();
+		lookupTableConverter.setMixerMode(IQConverter.MIXER_LOOKUP_TABLE);
+		samplesPerPacket = format.equals("s12") ? PACKET_SIZE / 4 : PACKET_SIZE / 2;
+		packet = new byte[PACKET_SIZE];
+		Random random = new Random(42);
+		if(format.equals("s12")) {
+			// little endian 16 bit words with 12 bit values:
+			for (int i = 0; i < PACKET_SIZE; i += 2) {
+				int value = random.nextInt(4096) - 2048;
+				packet[i] = (byte) value;
+				packet[i + 1] = (byte) (value >> 8);
+			}
+		} else
+			random.nextBytes(packet);
+		packetBuffer = ByteBuffer.allocateDirect(PACKET_SIZE);
+		packetBuffer.put(packet);
+		packetBuffer.flip();
+		samplePacket = new SamplePacket(samplesPerPacket);
+		directSamplePacket = new DirectSamplePacket(samplesPerPacket, DirectSamplePacket.LAYOUT_SPLIT);
+	}
+
+	private IQConverter createConverter() {
+		IQConverter iqConverter;
+		if(format.equals("s8"))
+			iqConverter = new Signed8BitIQConverter();
+		else if(format.equals("u8"))
+			iqConverter = new Unsigned8BitIQConverter();
+		else
+			iqConverter = new Signed12BitIQConverter();
+		iqConverter.setFrequency(FREQUENCY);
+		iqConverter.setSampleRate(SAMPLE_RATE);
+		return iqConverter;
+	}
+
+	@Benchmark
+	public int fillByteArray(SampleCounter counter) {
+		samplePacket.setSize(0);
+		counter.samples += samplesPerPacket;
+		return converter.fillPacketIntoSamplePacket(packet, samplePacket);
+	}
+
+	@Benchmark
+	public int fillByteBuffer(SampleCounter counter) {
+		samplePacket.setSize(0);
+		counter.samples += samplesPerPacket;
+		return converter.fillPacketIntoSamplePacket(packetBuffer.duplicate(), samplePacket);
+	}
+
+	@Benchmark
+	public int fillDirectSamplePacket(SampleCounter counter) {
+		directSamplePacket.setSize(0);
+		counter.samples += samplesPerPacket;
+		return converter.fillPacketIntoDirectSamplePacket(packetBuffer.duplicate(), directSamplePacket);
+	}
+
+	@Benchmark
+	public int mixNco(SampleCounter counter) {
+		samplePacket.setSize(0);
+		counter.samples += samplesPerPacket;
+		return converter.mixPacketIntoSamplePacket(packet, samplePacket, CHANNEL_FREQUENCY);
+	}
+
+	@Benchmark
+	public int mixLookupTable(SampleCounter counter) {
+		samplePacket.setSize(0);
+		counter.samples += samplesPerPacket;
+		return lookupTableConverter.mixPacketIntoSamplePacket(packet, samplePacket, CHANNEL_FREQUENCY);
+	}
+}
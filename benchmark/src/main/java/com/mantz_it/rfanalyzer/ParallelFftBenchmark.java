@@ -0,0 +1,99 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Parallel FFT Benchmark</h1>
+ *
+ * Module:      ParallelFftBenchmark.java
+ * Description: Measures the scaling of ParallelFFT with the number of threads for the large
+ *              FFT sizes. 'threads' = 1 is the serial fallback (Radix4FFT) and the baseline:
+ *              ./gradlew :benchmark:run --args="ParallelFft" on a 4- and an 8-core machine.
+ *
+ *              The input is copied into the work arrays before each transform, because the
+ *              fft works in place and repeated transforms would overflow. The copy is O(n) and
+ *              small compared to the O(n log n) of the fft.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelFftBenchmark {
+	@Param({"131072", "262144", "1048576"})
+	public int fftSize;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private ForkJoinPool pool;
+	private FftEngine fft;
+	private float[] inputRe;
+	private float[] inputIm;
+	private float[] re;
+	private float[] im;
+
+	@Setup
+	public void setup() {
+		pool = new ForkJoinPool(threads);
+		fft = new ParallelFFT(fftSize, pool);
+		inputRe = new float[fftSize];
+		inputIm = new float[fftSize];
+		re = new float[fftSize];
+		im = new float[fftSize];
+		Random random = new Random(42);
+		for (int i = 0; i < fftSize; i++) {
+			inputRe[i] = random.nextFloat() - 0.5f;
+			inputIm[i] = random.nextFloat() - 0.5f;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public float parallelFft(SampleCounter counter) {
+		System.arraycopy(inputRe, 0, re, 0, fftSize);
+		System.arraycopy(inputIm, 0, im, 0, fftSize);
+		fft.fft(re, im);
+		counter.samples += fftSize;
+		return re[0];
+	}
+}
@@ -0,0 +1,258 @@
+package com.mantz_it.rfanalyzer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h1>RF Analyzer - Pipeline Ramp Benchmark</h1>
+ *
+ * Module:      PipelineRampBenchmark.java
+ * Description: End-to-end throughput test of the pipeline Scheduler -> AnalyzerProcessingLoop (fft)
+ *              and Scheduler -> Decimator -> Demodulator -> AudioSink with a SyntheticIQSource.
+ *
+ *              The source runs throttled (like real hardware) and the sample rate is ramped up
+ *              from 1 Msps to 61.44 Msps (HackRF: 20 Msps, bladeRF: 40 Msps). For every rate the
+ *              benchmark reports:
+ *              - the dropped packets of the source (scheduler too slow), of the demodulation
+ *                channel (demodulator too slow) and of the demodulator (audio sink too slow)
+ *              - the average occupancy of the queues between the stages
+ *              - the CPU time of each stage (in percent of one core)
+ *              - the 99th percentile of the latency until the spectrum is calculated and until
+ *                the audio is played (see PipelineMetrics)
+ *              The highest rate without dropped samples is the max. sustainable rate of this
+ *              machine. Note that the fft path drops samples by design (frame rate) unless the
+ *              continuous fft is enabled with an overlap (then its drops count as well).
+ *
+ *              Usage: PipelineRampBenchmark [s8|u8|s12] [seconds per rate] [fft size] [overlap in %] [fft workers]
+ *                     ./gradlew :benchmark:pipelineRamp --args="s12 5"
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PipelineRampBenchmark {
+	private static final long FREQUENCY = 100000000;
+	private static final int PACKET_SIZE = 16384;			// bytes
+	private static final int WARMUP_TIME = 1000;			// ms before the measurement starts (JIT)
+	private static final int SAMPLE_INTERVAL = 10;			// ms between two samples of the queue occupancy
+	private static final String[] FORMAT_NAMES = {"s8", "u8", "s12"};	// index = FileIQSource.FILE_FORMAT_*
+	private static final String[] STAGES = {"SyntheticIQSource", "Scheduler", "AnalyzerProcessingLoop", "Decimator",
+			"Demodulator", "AudioSink", "FftWorker"};
+	private static final String[] STAGE_LABELS = {"src", "sched", "fft", "decim", "demod", "audio", "fftw"};
+
+	public static void main(String[] args) throws InterruptedException {
+		int format = FileIQSource.FILE_FORMAT_8BIT_SIGNED;
+		int seconds = 3;
+		int fftSize = 1024;
+		int overlap = -1;		// -1: one fft per frame
+		int workers = 0;		// worker threads of the continuous fft
+		try {
+			if(args.length > 0) {
+				format = Arrays.asList(FORMAT_NAMES).indexOf(args[0]);
+				if(format < 0)
+					throw new IllegalArgumentException("invalid format: " + args[0]);
+			}
+			if(args.length > 1)
+				seconds = Integer.parseInt(args[1]);
+			if(args.length > 2)
+				fftSize = Integer.parseInt(args[2]);
+			if(args.length > 3)
+				overlap = Integer.parseInt(args[3]);
+			if(args.length > 4)
+				workers = Integer.parseInt(args[4]);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.err.println("Usage: PipelineRampBenchmark [s8|u8|s12] [seconds per rate] [fft size] [overlap in %] [fft workers]");
+			System.exit(2);
+		}
+		Log.setMinPriority(Log.WARN);
+
+		System.out.println(String.format(Locale.US, "Format: %s, packet size: %d bytes, fft size: %d, overlap: %s, fft workers: %d, %d s per rate, %d cores",
+				FORMAT_NAMES[format], PACKET_SIZE, fftSize, overlap < 0 ? "off" : overlap + "%", workers, seconds,
+				Runtime.getRuntime().availableProcessors()));
+		StringBuilder header = new StringBuilder("   Msps  delivered  drops: src  chan  demod   fft | queues %: src  fft demod audio | cpu %:");
+		for (String label : STAGE_LABELS)
+			header.append(String.format(Locale.US, " %5s", label));
+		header.append(" | p99 ms: fft audio");
+		System.out.println(header);
+
+		int maxSustainableRate = 0;
+		int[] rates = new SyntheticIQSource(1000000, FREQUENCY, PACKET_SIZE, format).getSupportedSampleRates();
+		for (int rate : rates) {
+			Result result = runPipeline(rate, format, fftSize, overlap, workers, seconds * 1000);
+			System.out.println(result);
+			if(result.sourceDrops == 0 && result.channelDrops == 0 && (overlap < 0 || result.fftDrops == 0))
+				maxSustainableRate = rate;
+		}
+		System.out.println(String.format(Locale.US, "Max. sustainable rate: %.2f Msps", maxSustainableRate / 1e6));
+	}
+
+	/**
+	 * Runs the pipeline at the given sample rate and measures it.
+	 *
+	 * @param sampleRate	sample rate of the source
+	 * @param format		wire format of the source (FileIQSource.FILE_FORMAT_*)
+	 * @param fftSize		fft size of the processing loop
+	 * @param overlap		overlap of the continuous fft in percent (-1: one fft per frame)
+	 * @param workers		worker threads of the continuous fft
+	 * @param duration		duration of the measurement (ms)
+	 * @return measured values
+	 */
+	private static Result runPipeline(int sampleRate, int format, int fftSize, int overlap, int workers, int duration) throws InterruptedException {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		Set<Thread> threadsBefore = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+
+		// Two tones and noise; the demodulated channel is on the first tone:
+		SyntheticIQSource source = new SyntheticIQSource(sampleRate, FREQUENCY, PACKET_SIZE, format);
+		source.addTone(sampleRate / 8, 0.3f);
+		source.addTone(-sampleRate / 5, 0.2f);
+		source.setNoiseAmplitude(0.05f);
+		source.setThrottled(true);
+		source.open(null, null);
+
+		Scheduler scheduler = new Scheduler(fftSize, source);
+		scheduler.setContinuousFft(overlap >= 0);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(null, fftSize, scheduler.getFftRingBuffer());
+		if(overlap >= 0) {
+			processingLoop.setContinuousFft(true, overlap / 100f, ContinuousFft.INTEGRATION_PEAK);
+			processingLoop.setFftWorkers(workers);
+		}
+		AudioSink audioSink = new AudioSink(PACKET_SIZE, AudioSink.DEFAULT_SAMPLE_RATE, new AudioOutput() {
+			@Override
+			public boolean open(int sampleRate) {
+				return true;
+			}
+
+			@Override
+			public boolean write(short[] samples, int offset, int length) {
+				return true;	// discard
+			}
+
+			@Override
+			public boolean close() {
+				return true;
+			}
+		});
+		Demodulator demodulator = new Demodulator(scheduler.getMainChannel(), PACKET_SIZE, audioSink);
+		demodulator.setDemodulationMode(Demodulator.DEMODULATION_WFM);
+		scheduler.setChannelFrequency(FREQUENCY + sampleRate / 8);
+		scheduler.setDemodulationActivated(true);
+		scheduler.setSquelchSatisfied(true);
+
+		demodulator.start();
+		scheduler.start();
+		processingLoop.start();
+		Thread.sleep(WARMUP_TIME);
+
+		// Measurement:
+		Result result = new Result(sampleRate);
+		Set<Thread> pipelineThreads = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+		pipelineThreads.removeAll(threadsBefore);
+		Map<Thread, Long> cpuTimeBefore = new HashMap<Thread, Long>();
+		for (Thread thread : pipelineThreads)
+			cpuTimeBefore.put(thread, threadMXBean.getThreadCpuTime(thread.getId()));
+		long deliveredBefore = source.getDeliveredPackets();
+		long sourceDropsBefore = source.getDroppedPackets();
+		long channelDropsBefore = scheduler.getMainChannel().getDroppedPackets();
+		long demodulatorDropsBefore = demodulator.getDroppedPackets();
+		PipelineMetrics.reset();
+		long startTime = System.nanoTime();
+		int occupancySamples = 0;
+		while (System.nanoTime() - startTime < duration * 1000000L) {
+			result.sourceQueue += (double) source.getQueueSize() / SyntheticIQSource.QUEUE_SIZE;
+			result.fftQueue += (double) scheduler.getFftRingBuffer().size() / scheduler.getFftRingBuffer().getCapacity();
+			result.demodQueue += (double) scheduler.getDemodRingBuffer().size() / scheduler.getDemodRingBuffer().getCapacity();
+			result.audioQueue += (double) audioSink.getRingBuffer().size() / audioSink.getRingBuffer().getCapacity();
+			occupancySamples++;
+			Thread.sleep(SAMPLE_INTERVAL);
+		}
+		long measuredTime = System.nanoTime() - startTime;
+		for (Thread thread : pipelineThreads) {
+			long cpuTime = threadMXBean.getThreadCpuTime(thread.getId());
+			if(cpuTime < 0 || !cpuTimeBefore.containsKey(thread))
+				continue;	// thread died or cpu time is not supported
+			String stage = thread.getClass() == Thread.class ? thread.getName() : thread.getClass().getSimpleName();
+			int index = Arrays.asList(STAGES).indexOf(stage);
+			if(index >= 0)
+				result.cpuLoad[index] += (double) (cpuTime - cpuTimeBefore.get(thread)) / measuredTime;
+		}
+		result.deliveredRate = (source.getDeliveredPackets() - deliveredBefore) * (PACKET_SIZE / (format == FileIQSource.FILE_FORMAT_12BIT_SIGNED ? 4 : 2))
+				/ (measuredTime / 1e9);
+		result.sourceDrops = source.getDroppedPackets() - sourceDropsBefore;
+		result.fftDrops = PipelineMetrics.counter(PipelineMetrics.FFT_DROPPED).get();
+		result.channelDrops = scheduler.getMainChannel().getDroppedPackets() - channelDropsBefore;
+		result.demodulatorDrops = demodulator.getDroppedPackets() - demodulatorDropsBefore;
+		result.fftLatency = PipelineMetrics.histogram(PipelineMetrics.LATENCY_FFT).getPercentile(99) / 1000.0;
+		result.audioLatency = PipelineMetrics.histogram(PipelineMetrics.LATENCY_AUDIO).getPercentile(99) / 1000.0;
+		result.sourceQueue /= occupancySamples;
+		result.fftQueue /= occupancySamples;
+		result.demodQueue /= occupancySamples;
+		result.audioQueue /= occupancySamples;
+
+		// Shut down:
+		scheduler.stopScheduler();
+		processingLoop.stopLoop();
+		demodulator.stopDemodulator();
+		scheduler.join();
+		processingLoop.join();
+		demodulator.join();
+		audioSink.join();
+		source.close();
+		return result;
+	}
+
+	/**
+	 * Measured values of one run
+	 */
+	private static class Result {
+		int sampleRate;
+		double deliveredRate;		// samples per second that reached the scheduler
+		long sourceDrops;
+		long channelDrops;
+		long demodulatorDrops;
+		long fftDrops;				// packets that did not reach the fft
+		double sourceQueue;			// average occupancy of the queues [0..1]
+		double fftQueue;
+		double demodQueue;
+		double audioQueue;
+		double[] cpuLoad = new double[STAGES.length];	// cpu time / wall time of each stage
+		double fftLatency;			// 99th percentile of the latencies (ms)
+		double audioLatency;
+
+		Result(int sampleRate) {
+			this.sampleRate = sampleRate;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder line = new StringBuilder(String.format(Locale.US, "%7.2f  %9.2f  %10d  %4d  %5d %5d | %13.0f %4.0f %5.0f %5.0f |       ",
+					sampleRate / 1e6, deliveredRate / 1e6, sourceDrops, channelDrops, demodulatorDrops, fftDrops,
+					sourceQueue * 100, fftQueue * 100, demodQueue * 100, audioQueue * 100));
+			for (double load : cpuLoad)
+				line.append(String.format(Locale.US, " %5.1f", load * 100));
+			line.append(String.format(Locale.US, " |        %5.1f %5.1f", fftLatency, audioLatency));
+			return line.toString();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Power To dB Benchmark</h1>
+ *
+ * Module:      PowerToDbBenchmark.java
+ * Description: Benchmarks the conversion of the fft power to the centered dB spectrum:
+ *              'legacy' is the former conversion of AnalyzerProcessingLoop (index modulo for
+ *              each bin, normalization and 20 * log10(sqrt()) in double), 'powerToDb' is
+ *              PowerToDb.toDbShifted() with the normalization as constant offset.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerToDbBenchmark {
+	@Param({"65536"})
+	public int bins;
+
+	private float[] re;
+	private float[] im;
+	private float[] power;
+	private float[] mag;
+	private float offset;
+
+	@Setup
+	public void setup() {
+		re = new float[bins];
+		im = new float[bins];
+		power = new float[bins];
+		mag = new float[bins];
+		offset = PowerToDb.getFftOffset(bins);
+		Random random = new Random(42);
+		for (int i = 0; i < bins; i++) {
+			re[i] = (random.nextFloat() - 0.5f) * bins;
+			im[i] = (random.nextFloat() - 0.5f) * bins;
+			power[i] = re[i] * re[i] + im[i] * im[i];
+		}
+	}
+
+	@Benchmark
+	public float legacy(SampleCounter counter) {
+		float realPower;
+		float imagPower;
+		for (int i = 0; i < bins; i++) {
+			int targetIndex = (i + bins / 2) % bins;
+			realPower = re[i] / bins;
+			realPower = realPower * realPower;
+			imagPower = im[i] / bins;
+			imagPower = imagPower * imagPower;
+			mag[targetIndex] = (float) (20 * Math.log10(Math.sqrt(realPower + imagPower)));
+		}
+		counter.samples += bins;
+		return mag[0];
+	}
+
+	@Benchmark
+	public float powerToDb(SampleCounter counter) {
+		PowerToDb.toDbShifted(power, mag, offset);
+		counter.samples += bins;
+		return mag[0];
+	}
+}
@@ -0,0 +1,91 @@
+package com.mantz_it.rfanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>RF Analyzer - Zoom FFT Benchmark</h1>
+ *
+ * Module:      ZoomFftBenchmark.java
+ * Description: Benchmarks two ways to get a resolution of 3.8 Hz per bin at 1 Msps (50% overlap):
+ *              'fullBand' is a ContinuousFft with 262144 bins over the whole band, 'zoom' is a
+ *              ZoomFft with 1024 bins over a sub-band of 1 kHz (mixer + 8 half band filters).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoomFftBenchmark {
+	private static final int SAMPLE_RATE = 1000000;
+	private static final int PACKET_SIZE = 16384;
+
+	private SamplePacket packet;
+	private ContinuousFft fullBand;
+	private ZoomFft zoom;
+	private float[] fullBandPower;
+	private float[] zoomPower;
+
+	@Setup
+	public void setup() {
+		packet = new SamplePacket(PACKET_SIZE);
+		Random random = new Random(42);
+		for (int i = 0; i < PACKET_SIZE; i++) {
+			packet.re()[i] = random.nextFloat() - 0.5f;
+			packet.im()[i] = random.nextFloat() - 0.5f;
+		}
+		packet.setSize(PACKET_SIZE);
+		packet.setSampleRate(SAMPLE_RATE);
+		packet.setFrequency(100000000);
+		fullBand = new ContinuousFft(262144, 0.5f);
+		fullBandPower = new float[262144];
+		zoom = new ZoomFft(1024, 0.5f);
+		zoom.setZoom(100200000, 1000);
+		zoomPower = new float[1024];
+	}
+
+	@Benchmark
+	public boolean fullBand(SampleCounter counter) throws InterruptedException {
+		fullBand.process(packet);
+		counter.samples += PACKET_SIZE;
+		return fullBand.getPowerSpectrum(fullBandPower);
+	}
+
+	@Benchmark
+	public boolean zoom(SampleCounter counter) throws InterruptedException {
+		zoom.process(packet);
+		counter.samples += PACKET_SIZE;
+		return zoom.getPowerSpectrum(zoomPower);
+	}
+}
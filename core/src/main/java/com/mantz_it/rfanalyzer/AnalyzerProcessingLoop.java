@@ -0,0 +1,500 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.IOException;
+
+/**
+ * <h1>RF Analyzer - Analyzer Processing Loop</h1>
+ *
+ * Module:      AnalyzerProcessingLoop.java
+ * Description: This Thread will fetch samples from the incoming ring buffer (provided by the scheduler),
+ *              do the signal processing (fft) and then forward the result to the SpectrumSink (AnalyzerSurface) at a
+ *              fixed rate. It stabilises the rate at which the fft is generated to give the
+ *              waterfall display a linear time scale.
+ *              For offline processing the loop can run unthrottled (as fast as the samples arrive)
+ *              and write the spectra to a SpectrumFileWriter instead of (or in addition to) drawing them.
+ *              In continuous fft mode the loop transforms all incoming samples with overlapping FFTs and
+ *              integrates them into each frame, so that short bursts between two frames are not lost.
+ *              Consecutive spectra are averaged in the linear power domain (see PsdEstimator) before
+ *              they are converted to dB.
+ *              If a zoom is set in continuous fft mode, only the visible sub-band is transformed
+ *              at a reduced sample rate (see ZoomFft), which gives narrower bins without retuning.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AnalyzerProcessingLoop extends Thread {
+	private int fftSize = 0;					// Size of the FFT
+	private int frameRate = 10;					// Frames per Second
+	private double load = 0;					// Time_for_processing_and_drawing / Time_per_Frame
+	private boolean dynamicFrameRate = true;	// Turns on and off the automatic frame rate control
+	private volatile boolean stopRequested = true;	// Will stop the thread when set to true
+	private volatile boolean endOfStreamReached = false;	// true if the loop stopped at the end of the stream
+	private boolean throttled = true;			// true: process at the frame rate; false: as fast as possible
+	private SpectrumFileWriter spectrumFileWriter = null;	// if not null, every spectrum is written to it
+	private volatile long processedFrames = 0;	// number of spectra calculated so far
+	private float[] mag = null;					// Magnitude of the frequency spectrum (averaged, in dB)
+	private float[] latestMag = null;			// Magnitude of the latest spectrum without averaging (in dB; == mag if averaging is off)
+	private float[] power = null;				// linear power of the latest spectrum (fft order, not normalized)
+	private float fftOffset;					// normalization of the fft in dB (see PowerToDb.getFftOffset())
+	private volatile FftWindow window;			// window of the fft (can be changed while running)
+	private volatile int powerCorrection = FftWindow.CORRECTION_AMPLITUDE;	// correction of the window gain in the dB stage
+	private FftWindow spectrumWindow = null;	// window of the spectra in psdEstimator
+	private volatile int averageLength = 0;		// number of previous spectra that are averaged with the latest one
+	private PsdEstimator psdEstimator = null;	// averages the spectra (null if averaging is off)
+	private PipelineMetrics.Counter outCounter = PipelineMetrics.counter(PipelineMetrics.FFT_OUT);
+	private LatencyHistogram latencyHistogram = PipelineMetrics.histogram(PipelineMetrics.LATENCY_FFT);
+
+	private static final String LOGTAG = "AnalyzerProcessingLoop";
+	private static final int MAX_FRAMERATE = 30;		// Upper limit for the automatic frame rate control
+	private static final double LOW_THRESHOLD = 0.65;	// at every load value below this threshold we increase the frame rate
+	private static final double HIGH_THRESHOLD = 0.85;	// at every load value above this threshold we decrease the frame rate
+
+	private SpectrumSink view;
+	private FftEngine fftEngine = null;			// used to calculate the fft
+	private RingBuffer<SamplePacket> inputRingBuffer = null;	// ring buffer that delivers sample packets
+	private ZoomFft continuousFft = null;		// if not null: integrate all samples of a frame (see setContinuousFft())
+	private int fftWorkers = 0;					// number of worker threads of the continuous fft (see setFftWorkers())
+	private long busyTime = 0;					// time (ns) spent on integrating the current frame (continuous fft)
+
+	/**
+	 * Constructor. Will initialize the member attributes.
+	 *
+	 * @param view			sink for the spectra, e.g. the AnalyzerSurface (may be null for offline processing)
+	 * @param fftSize		Size of the FFT
+	 * @param inputRingBuffer	ring buffer that delivers sample packets
+	 */
+	public AnalyzerProcessingLoop(SpectrumSink view, int fftSize, RingBuffer<SamplePacket> inputRingBuffer) {
+		this.view = view;
+
+		// Check if fftSize is a power of 2
+		int order = (int)(Math.log(fftSize) / Math.log(2));
+		if(fftSize != (1<<order))
+			throw new IllegalArgumentException("FFT size must be power of 2");
+		this.fftSize = fftSize;
+
+		this.window = FftWindow.getWindow(FftWindow.BLACKMAN, fftSize);
+		this.fftEngine = new ParallelFFT(fftSize);	// multi-threaded for large sizes, otherwise Radix4FFT
+		this.mag = new float[fftSize];
+		this.latestMag = mag;
+		this.power = new float[fftSize];
+		this.fftOffset = PowerToDb.getFftOffset(fftSize);
+		this.inputRingBuffer = inputRingBuffer;
+	}
+
+	public int getFrameRate() {
+		return frameRate;
+	}
+
+	public void setFrameRate(int frameRate) {
+		this.frameRate = frameRate;
+	}
+
+	public boolean isDynamicFrameRate() {
+		return dynamicFrameRate;
+	}
+
+	public void setDynamicFrameRate(boolean dynamicFrameRate) {
+		this.dynamicFrameRate = dynamicFrameRate;
+	}
+
+	public int getFftSize() { return fftSize; }
+
+	public int getAverageLength() {
+		return averageLength;
+	}
+
+	/**
+	 * Will change the number of previous spectra that are averaged with the latest one. The
+	 * average is calculated in the linear power domain; the waterfall shows the latest spectrum.
+	 *
+	 * @param averageLength		number of previous spectra; 0 for no averaging
+	 */
+	public void setAverageLength(int averageLength) {
+		this.averageLength = averageLength;
+	}
+
+	public FftWindow getWindow() {
+		return window;
+	}
+
+	/**
+	 * Will change the window of the fft. Can be called while the loop is running; the window
+	 * tables are cached (see FftWindow), so switching does not allocate anything.
+	 *
+	 * @param window		window of the fft size (see FftWindow.getWindow())
+	 */
+	public void setWindow(FftWindow window) {
+		if(window.getSize() != fftSize)
+			throw new IllegalArgumentException("Window size must match the FFT size");
+		this.window = window;
+	}
+
+	public int getPowerCorrection() {
+		return powerCorrection;
+	}
+
+	/**
+	 * Will change the correction of the window gain that is applied to the spectrum in dB
+	 * (see FftWindow.getCorrectionDb()). Default is FftWindow.CORRECTION_AMPLITUDE: a full scale
+	 * tone reads 0 dB with every window.
+	 *
+	 * @param powerCorrection	FftWindow.CORRECTION_NONE, CORRECTION_AMPLITUDE or CORRECTION_NOISE
+	 */
+	public void setPowerCorrection(int powerCorrection) {
+		if(powerCorrection < FftWindow.CORRECTION_NONE || powerCorrection > FftWindow.CORRECTION_NOISE)
+			throw new IllegalArgumentException("Invalid correction: " + powerCorrection);
+		this.powerCorrection = powerCorrection;
+	}
+
+	public boolean isThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * If throttling is disabled, the loop processes every packet as soon as it arrives instead of
+	 * keeping the frame rate (offline processing).
+	 *
+	 * @param throttled		true to process at the frame rate (default); false for no delay
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	/**
+	 * @return true if the continuous fft is enabled
+	 */
+	public boolean isContinuousFft() {
+		return continuousFft != null;
+	}
+
+	/**
+	 * In continuous fft mode the loop calculates overlapping FFTs over all incoming samples and
+	 * integrates them into each frame (see ContinuousFft) instead of transforming one buffer per
+	 * frame. The scheduler must deliver all samples (Scheduler.setContinuousFft(true)).
+	 * Must be set before the loop is started.
+	 *
+	 * @param continuous	true to enable the continuous fft
+	 * @param overlap		overlap of consecutive FFTs [0..ContinuousFft.MAX_OVERLAP]
+	 * @param integration	ContinuousFft.INTEGRATION_AVERAGE or ContinuousFft.INTEGRATION_PEAK
+	 */
+	public void setContinuousFft(boolean continuous, float overlap, int integration) {
+		if(continuous) {
+			continuousFft = new ZoomFft(fftSize, overlap);
+			continuousFft.setIntegration(integration);
+			continuousFft.setWindow(window);
+		} else
+			continuousFft = null;
+	}
+
+	/**
+	 * Will change the sub-band that is transformed in continuous fft mode: it is shifted to
+	 * baseband and decimated before the fft, so the spectrum covers (at least twice) the span
+	 * with fftSize bins (see ZoomFft). Can be called while the loop is running; has no effect
+	 * if the continuous fft is disabled.
+	 *
+	 * @param frequency		center frequency of the sub-band (e.g. the frequency shown in the center of the screen)
+	 * @param span			width of the sub-band in Hz (e.g. the bandwidth shown on the screen); 0 for no zoom
+	 */
+	public void setZoom(long frequency, int span) {
+		if(continuousFft != null)
+			continuousFft.setZoom(frequency, span);
+	}
+
+	public int getFftWorkers() {
+		return fftWorkers;
+	}
+
+	/**
+	 * In continuous fft mode the FFTs of consecutive segments can be calculated by worker threads
+	 * (each with its own FFT instance). The loop then only cuts the segments and reassembles the
+	 * spectra of each frame in order before averaging and drawing (see ContinuousFft.startWorkers()).
+	 * Must be set before the loop is started.
+	 *
+	 * @param fftWorkers	number of worker threads; 0 to calculate the ffts in the loop thread
+	 *                      (see ContinuousFft.getDefaultWorkerCount())
+	 */
+	public void setFftWorkers(int fftWorkers) {
+		this.fftWorkers = fftWorkers;
+	}
+
+	/**
+	 * @param spectrumFileWriter	writer to which every spectrum is written (null to disable)
+	 */
+	public void setSpectrumFileWriter(SpectrumFileWriter spectrumFileWriter) {
+		this.spectrumFileWriter = spectrumFileWriter;
+	}
+
+	/**
+	 * @return number of spectra that were calculated so far
+	 */
+	public long getProcessedFrames() {
+		return processedFrames;
+	}
+
+	/**
+	 * Will start the processing loop
+	 */
+	@Override
+	public void start() {
+		this.stopRequested = false;
+		super.start();
+	}
+
+	/**
+	 * Will set the stopRequested flag so that the processing loop will terminate
+	 */
+	public void stopLoop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * @return true if loop is running; false if not.
+	 */
+	public boolean isRunning() {
+		return !stopRequested;
+	}
+
+	/**
+	 * @return true if the loop stopped because it received the end of the stream (see SamplePacket.isEndOfStream())
+	 */
+	public boolean isEndOfStreamReached() {
+		return endOfStreamReached;
+	}
+
+	@Override
+	public void run() {
+		Log.i(LOGTAG,"Processing loop started. (Thread: " + this.getName() + ")");
+		long startTime;		// timestamp when signal processing is started
+		long sleepTime;		// time (in ms) to sleep before the next run to meet the frame rate
+		long frequency;		// center frequency of the incoming samples
+		int sampleRate;		// sample rate of the incoming samples
+		long timestamp;		// reception time of the incoming samples (for the latency metrics)
+		long drawStartTime;	// timestamp (ns) when the results are written / drawn
+
+		if(continuousFft != null)
+			continuousFft.startWorkers(fftWorkers);
+
+		while(!stopRequested) {
+			// store the current timestamp
+			startTime = System.currentTimeMillis();
+
+			if(continuousFft != null) {
+				// integrate all samples that arrive until the frame is due:
+				try {
+					if(!integrateFrame(startTime))
+						continue;
+					updateSpectrum(continuousFft.getFrequency(), continuousFft.getSampleRate(), continuousFft.getWindow());
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting on input ring buffer. stop.");
+					this.stopLoop();
+					break;
+				}
+				frequency = continuousFft.getFrequency();
+				sampleRate = continuousFft.getSampleRate();
+				timestamp = continuousFft.getTimestamp();
+			} else {
+				// fetch the next samples from the ring buffer:
+				SamplePacket samples;
+				try {
+					samples = inputRingBuffer.acquire(1000 / frameRate);
+					if (samples == null) {
+						Log.d(LOGTAG, "run: Timeout while waiting on input data. skip.");
+						continue;
+					}
+				} catch (InterruptedException e) {
+					Log.e(LOGTAG, "run: Interrupted while waiting on input ring buffer. stop.");
+					this.stopLoop();
+					break;
+				}
+				if(samples.isEndOfStream()) {
+					samples.setEndOfStream(false);
+					inputRingBuffer.release(samples);
+					endOfStreamReached = true;
+					this.stopLoop();
+					break;
+				}
+
+				frequency = samples.getFrequency();
+				sampleRate = samples.getSampleRate();
+				timestamp = samples.getTimestamp();
+
+				// do the signal processing:
+				this.doProcessing(samples);
+
+				// return samples to the buffer pool
+				inputRingBuffer.release(samples);
+			}
+			processedFrames++;
+
+			drawStartTime = System.nanoTime();
+
+			// Write the results to the file:
+			if(spectrumFileWriter != null) {
+				try {
+					spectrumFileWriter.write(mag, frequency, sampleRate);
+				} catch (IOException e) {
+					Log.e(LOGTAG, "run: Error while writing the spectrum file: " + e.getMessage() + ". stop.");
+					this.stopLoop();
+					break;
+				}
+			}
+
+			// Push the results on the surface:
+			if(view != null)
+				view.draw(mag, latestMag, frequency, sampleRate, frameRate, load);
+			outCounter.increment();
+			latencyHistogram.recordSince(timestamp);
+
+			if(!throttled)
+				continue;
+
+			if(continuousFft != null) {
+				// The frame already took its whole time. load = (integration + drawing time) / frame duration
+				busyTime += System.nanoTime() - drawStartTime;
+				load = busyTime / 1000000.0 / (1000.0 / frameRate);
+
+				// Automatic frame rate control (drawing less frames leaves more time for the ffts):
+				if(dynamicFrameRate && load < LOW_THRESHOLD && frameRate < MAX_FRAMERATE)
+					frameRate++;
+				if(dynamicFrameRate && load > HIGH_THRESHOLD && frameRate > 1)
+					frameRate--;
+				continue;
+			}
+
+			// Calculate the remaining time in this frame (according to the frame rate) and sleep
+			// for that time:
+			sleepTime = (1000/frameRate)-(System.currentTimeMillis() - startTime);
+			try {
+				if (sleepTime > 0) {
+					// load = processing_time / frame_duration
+					load = (System.currentTimeMillis() - startTime) / (1000.0 / frameRate);
+
+					// Automatic frame rate control:
+					if(dynamicFrameRate && load < LOW_THRESHOLD && frameRate < MAX_FRAMERATE)
+						frameRate++;
+					if(dynamicFrameRate && load > HIGH_THRESHOLD && frameRate > 1)
+						frameRate--;
+
+					//Log.d(LOGTAG,"FrameRate: " + frameRate + ";  Load: " + load + "; Sleep for " + sleepTime + "ms.");
+					sleep(sleepTime);
+				}
+				else {
+					// Automatic frame rate control:
+					if(dynamicFrameRate && frameRate > 1)
+						frameRate--;
+
+					//Log.d(LOGTAG, "Couldn't meet requested frame rate!");
+					load = 1;
+				}
+			} catch (Exception e) {
+				Log.e(LOGTAG,"Error while calling sleep()");
+			}
+		}
+		if(continuousFft != null)
+			continuousFft.stopWorkers();
+		this.stopRequested = true;
+		Log.i(LOGTAG,"Processing loop stopped. (Thread: " + this.getName() + ")");
+	}
+
+	/**
+	 * Integrates the incoming packets into the continuous fft until the frame is due (throttled)
+	 * or a packet has completed at least one FFT (not throttled) and writes the power spectrum to power.
+	 * The processing time is stored in busyTime. At the end of the stream the loop is stopped (the
+	 * FFTs that were completed so far are still returned).
+	 *
+	 * @param startTime		start of the frame (System.currentTimeMillis())
+	 * @return false if no FFT was completed in this frame
+	 */
+	private boolean integrateFrame(long startTime) throws InterruptedException {
+		long frameEnd = startTime + 1000 / frameRate;
+		busyTime = 0;
+		continuousFft.setWindow(window);
+		do {
+			int timeout = throttled ? (int) (frameEnd - System.currentTimeMillis()) : 1000;
+			SamplePacket samples = inputRingBuffer.acquire(Math.max(1, timeout));
+			if(samples == null)
+				continue;
+			if(samples.isEndOfStream()) {
+				samples.setEndOfStream(false);
+				inputRingBuffer.release(samples);
+				endOfStreamReached = true;
+				this.stopLoop();
+				break;
+			}
+			long processingStart = System.nanoTime();
+			continuousFft.process(samples);
+			inputRingBuffer.release(samples);
+			busyTime += System.nanoTime() - processingStart;
+			if(!throttled && continuousFft.getIntegratedFfts() > 0)
+				break;
+		} while (!stopRequested && throttled && System.currentTimeMillis() < frameEnd);
+		return continuousFft.getPowerSpectrum(power);
+	}
+
+	/**
+	 * This method will do the signal processing (fft) on the given samples
+	 *
+	 * @param samples	input samples for the signal processing
+	 */
+	public void doProcessing(SamplePacket samples) {
+		float[] re=samples.re(), im=samples.im();
+		// Multiply the samples with a Window function:
+		FftWindow window = this.window;
+		window.apply(re, im);
+
+		// Calculate the fft:
+		this.fftEngine.fft(re, im);
+
+		// Calculate the power = re^2 + im^2
+		// (the normalization to the fft size and the flipping of both halves is done in updateSpectrum())
+		for (int i = 0; i < fftSize; i++)
+			power[i] = re[i] * re[i] + im[i] * im[i];
+		updateSpectrum(samples.getFrequency(), samples.getSampleRate(), window);
+	}
+
+	/**
+	 * Averages the power spectrum (if enabled) and converts it to the logarithmic magnitude
+	 * in mag (and latestMag). Both halves of the fft are flipped to draw it centered on the screen.
+	 *
+	 * @param frequency		center frequency of the spectrum
+	 * @param sampleRate	sample rate of the spectrum
+	 * @param window		window that was used for the spectrum
+	 */
+	private void updateSpectrum(long frequency, int sampleRate, FftWindow window) {
+		float offset = fftOffset + window.getCorrectionDb(powerCorrection);
+		int averageLength = this.averageLength;
+		if(averageLength <= 0) {
+			psdEstimator = null;
+			latestMag = mag;
+			PowerToDb.toDbShifted(power, mag, offset);
+			return;
+		}
+		if(psdEstimator == null)
+			psdEstimator = new PsdEstimator(averageLength + 1);
+		else if(psdEstimator.getLength() != averageLength + 1)
+			psdEstimator.setLength(averageLength + 1);
+		else if(window != spectrumWindow)
+			psdEstimator.reset();		// the raw power of different windows must not be averaged
+		spectrumWindow = window;
+		if(latestMag == mag)
+			latestMag = new float[fftSize];
+		PowerToDb.toDbShifted(power, latestMag, offset);
+		PowerToDb.toDbShifted(psdEstimator.add(power, frequency, sampleRate), mag, offset);
+	}
+}
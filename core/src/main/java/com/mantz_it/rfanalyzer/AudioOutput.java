@@ -0,0 +1,57 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Audio Output</h1>
+ *
+ * Module:      AudioOutput.java
+ * Description: Destination of the audio samples of an AudioSink. The AudioSink does the rate
+ *              conversion and calls the methods of this interface from its own thread.
+ *              Implementations are the AudioTrackOutput of the app (plays the audio) and the
+ *              WavFileWriter (writes it to a file).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public interface AudioOutput {
+
+	/**
+	 * Prepares the output. Is called by the AudioSink thread before the first write().
+	 *
+	 * @param sampleRate	sample rate of the audio samples
+	 * @return false if an error occurred
+	 */
+	public boolean open(int sampleRate);
+
+	/**
+	 * Outputs mono 16 bit samples.
+	 *
+	 * @param samples	audio samples
+	 * @param offset	index of the first sample
+	 * @param length	number of samples
+	 * @return false if an error occurred
+	 */
+	public boolean write(short[] samples, int offset, int length);
+
+	/**
+	 * Stops the output and releases its resources. Is called by the AudioSink thread when it stops.
+	 *
+	 * @return false if an error occurred (e.g. the output is incomplete)
+	 */
+	public boolean close();
+}
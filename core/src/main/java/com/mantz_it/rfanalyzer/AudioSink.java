@@ -0,0 +1,304 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.File;
+
+/**
+ * <h1>RF Analyzer - Audio Sink</h1>
+ *
+ * Module:      AudioSink.java
+ * Description: This class implements the interface to the audio output (see AudioOutput).
+ *              It will run in a separate thread and buffer incoming sample packets
+ *              in a ring buffer. Input packets are demodulated (real) signals.
+ *              This class will resample the incoming sample rate (any rate) to the
+ *              audio rate with a RationalResampler.
+ *              The output is either the audio system of the device (AudioTrackOutput of the app)
+ *              or a WAV file (WavFileWriter, offline processing).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class AudioSink extends Thread {
+	private AudioOutput output = null;			// destination of the audio samples
+	private volatile long writtenSamples = 0;	// number of audio samples played / written so far
+	private volatile boolean stopRequested = true;
+	private volatile boolean endOfStreamReached = false;	// true if the sink stopped at the end of the stream
+	private volatile boolean outputError = false;	// true if the output could not be opened, written or closed
+	private RingBuffer<SamplePacket> ringBuffer = null;	// Ring buffer that holds incoming samples and available buffers
+	private int packetSize;		// packet size of the incoming sample packets
+	private int sampleRate;		// audio sample rate of the AudioSink
+	private static final int QUEUE_SIZE = 2;	// This results in a double buffer. see Scheduler...
+	private static final String LOGTAG = "AudioSink";
+	private PipelineMetrics.Counter outCounter = PipelineMetrics.counter(PipelineMetrics.AUDIO_OUT);
+	private LatencyHistogram latencyHistogram = PipelineMetrics.histogram(PipelineMetrics.LATENCY_AUDIO);
+	private RationalResampler audioResampler = null;	// Used to convert the incoming signal rate to the audio rate
+	private static final int AUDIO_MAX_FREQUENCY = 15000;	// highest audio frequency that passes the resampler
+	private static final int AUDIO_FILTER_ATTENUATION = 30;
+	public static final int DEFAULT_SAMPLE_RATE = 48000;	// used if the native output rate can't be determined
+
+	/**
+	 * Constructor. Will create a new AudioSink.
+	 *
+	 * @param packetSize	size of the incoming packets
+	 * @param sampleRate	sample rate of the audio signal
+	 * @param output		destination of the audio (opened when the thread starts, closed when it stops)
+	 */
+	public AudioSink (int packetSize, int sampleRate, AudioOutput output) {
+		this.packetSize = packetSize;
+		this.sampleRate = sampleRate;
+		this.output = output;
+
+		// Create the ring buffer and fill it with buffers
+		this.ringBuffer = RingBuffer.createSamplePacketRingBuffer(QUEUE_SIZE, packetSize);
+		PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_AUDIO, ringBuffer);
+	}
+
+	/**
+	 * Constructor. Will create a new AudioSink that writes the audio to a WAV file instead
+	 * of playing it. The file is created when the thread starts and closed when it stops.
+	 *
+	 * @param packetSize	size of the incoming packets
+	 * @param sampleRate	sample rate of the WAV file
+	 * @param wavFile		output file
+	 */
+	public AudioSink (int packetSize, int sampleRate, File wavFile) {
+		this(packetSize, sampleRate, new WavFileWriter(wavFile));
+	}
+
+	/**
+	 * @return audio sample rate of the AudioSink
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Starts the thread
+	 */
+	@Override
+	public synchronized void start() {
+		stopRequested = false;
+		super.start();
+	}
+
+	/**
+	 * Stops the thread
+	 */
+	public void stopSink () {
+		stopRequested = true;
+	}
+
+	/**
+	 * @return true if the sink is running; false if it was stopped or failed (e.g. the output could not be opened)
+	 */
+	public boolean isRunning() {
+		return !stopRequested;
+	}
+
+	/**
+	 * @return true if the sink stopped because it received the end of the stream (see SamplePacket.isEndOfStream())
+	 */
+	public boolean isEndOfStreamReached() {
+		return endOfStreamReached;
+	}
+
+	/**
+	 * @return true if the output could not be opened, written or closed (e.g. the header of a
+	 *         WAV file could not be written). Valid after the thread has stopped.
+	 */
+	public boolean hasOutputError() {
+		return outputError;
+	}
+
+	/**
+	 * @return number of audio samples that were played / written to the file so far
+	 */
+	public long getWrittenSamples() {
+		return writtenSamples;
+	}
+
+	/**
+	 * @return ring buffer that delivers the packets to this sink
+	 */
+	public RingBuffer<SamplePacket> getRingBuffer() {
+		return ringBuffer;
+	}
+
+	/**
+	 * @return size of the packets that are offered by getPacketBuffer()
+	 */
+	public int getPacketSize() {
+		return packetSize;
+	}
+
+	/**
+	 * The AudioSink allocates the buffers for audio playback. Use this method to request
+	 * a free buffer. This method will block if no buffer is available.
+	 *
+	 * @param timeout	max time this method will block
+	 * @return free buffer or null if no buffer available
+	 */
+	public SamplePacket getPacketBuffer(int timeout) {
+		try {
+			return ringBuffer.claim(timeout);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG,"getPacketBuffer: Interrupted. return null...");
+			return null;
+		}
+	}
+
+	/**
+	 * Enqueues a packet buffer for being played on the audio track.
+	 *
+	 * @param packet	the packet buffer from getPacketBuffer() filled with samples
+	 * @return true if success, false if error
+	 */
+	public boolean enqueuePacket(SamplePacket packet) {
+		if(packet == null) {
+			Log.e(LOGTAG, "enqueuePacket: Packet is null.");
+			return false;
+		}
+		if(!ringBuffer.publish()) {
+			Log.e(LOGTAG, "enqueuePacket: Packet was not requested by getPacketBuffer().");
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void run() {
+		SamplePacket packet;
+		SamplePacket filteredPacket;
+		SamplePacket tempPacket = new SamplePacket(packetSize);
+		float[] floatPacket;
+		short[] shortPacket = new short[packetSize];
+
+		Log.i(LOGTAG,"AudioSink started. (Thread: " + this.getName() + ")");
+
+		// start audio playback:
+		if(!output.open(sampleRate)) {
+			Log.e(LOGTAG, "run: Could not open the audio output! stop");
+			outputError = true;
+			stopRequested = true;
+		}
+
+		// Continuously write the data from the ring buffer to the audio track:
+		while (!stopRequested) {
+			try {
+				// Get the next packet from the ring buffer
+				packet = ringBuffer.acquire(1000);
+
+				if(packet == null) {
+					//Log.d(LOGTAG, "run: Queue is empty. skip this round");
+					continue;
+				}
+
+				// all samples are written: stop
+				if(packet.isEndOfStream()) {
+					packet.setEndOfStream(false);
+					ringBuffer.release(packet);
+					endOfStreamReached = true;
+					break;
+				}
+
+				// apply audio filter (sample rate conversion)
+				if(packet.getSampleRate() != this.sampleRate) {
+					// when upsampling, the output is larger than the incoming packets:
+					if(updateResampler(packet.getSampleRate()) && tempPacket.capacity() < audioResampler.getMaxOutputSize(packetSize))
+						tempPacket = new SamplePacket(audioResampler.getMaxOutputSize(packetSize));
+					applyAudioFilter(packet, tempPacket);
+					filteredPacket = tempPacket;
+				}
+				else
+					filteredPacket = packet;
+
+				// Convert doubles to shorts [expect doubles to be in [-1...1]
+				floatPacket = filteredPacket.re();
+				if(shortPacket.length < filteredPacket.size())
+					shortPacket = new short[filteredPacket.capacity()];
+				for (int i = 0; i < filteredPacket.size(); i++) {
+					shortPacket[i] = (short) (floatPacket[i] * 32767);
+				}
+
+				// Write it to the audio output:
+				if(!output.write(shortPacket, 0, filteredPacket.size())) {
+					Log.e(LOGTAG,"run: write() returned with error! stop");
+					outputError = true;
+					stopRequested = true;
+				}
+				writtenSamples += filteredPacket.size();
+				outCounter.increment();
+				latencyHistogram.recordSince(packet.getTimestamp());
+
+				// Release the buffer
+				ringBuffer.release(packet);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting on ring buffer. stop");
+				stopRequested = true;
+			}
+		}
+
+		// stop audio playback:
+		if(!output.close()) {
+			Log.e(LOGTAG, "run: Error while closing the audio output!");
+			outputError = true;
+		}
+		this.stopRequested = true;
+		Log.i(LOGTAG,"AudioSink stopped. (Thread: " + this.getName() + ")");
+	}
+
+	/**
+	 * Will (re-)create the resampler if the incoming sample rate changed.
+	 *
+	 * @param inputSampleRate	sample rate of the incoming samples (quadrature rate)
+	 * @return false if the incoming sample rate is not supported
+	 */
+	private boolean updateResampler(int inputSampleRate) {
+		if(audioResampler != null && audioResampler.getInputSampleRate() == inputSampleRate)
+			return true;
+		// Pass band ends below the nyquist frequency of the lower rate; stop band starts at it:
+		float lowerRate = Math.min(inputSampleRate, sampleRate);
+		float cutOff = Math.min(AUDIO_MAX_FREQUENCY, 0.3f * lowerRate);
+		audioResampler = RationalResampler.createResampler(inputSampleRate, sampleRate, 1, cutOff,
+				0.5f * lowerRate - cutOff, AUDIO_FILTER_ATTENUATION);
+		if(audioResampler == null) {
+			Log.e(LOGTAG,"updateResampler: incoming sample rate is not supported: " + inputSampleRate);
+			return false;
+		}
+		Log.d(LOGTAG,"updateResampler: created audio resampler " + inputSampleRate + " -> " + sampleRate
+				+ " (L=" + audioResampler.getInterpolation() + " M=" + audioResampler.getDecimation()
+				+ ") with " + audioResampler.getNumberOfTaps() + " Taps.");
+		return true;
+	}
+
+	/**
+	 * Will filter the real array contained in input and resample it to the audio rate.
+	 * The resampler is (re-)created whenever the incoming sample rate changes.
+	 *
+	 * @param input		incoming (unfiltered) samples at the incoming rate (quadrature rate)
+	 * @param output	outgoing (filtered, resampled) samples at audio rate
+	 */
+	public void applyAudioFilter(SamplePacket input, SamplePacket output) {
+		output.setSize(0);	// mark buffer as empty
+		if(!updateResampler(input.getSampleRate()))
+			return;
+		if (audioResampler.filterReal(input, output, 0, input.size()) < input.size()) {
+			Log.e(LOGTAG, "applyAudioFilter: [audioResampler] could not filter all samples from input packet.");
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>RF Analyzer - Batch Processor</h1>
+ *
+ * Module:      BatchProcessor.java
+ * Description: Processes an IQ file offline, as fast as the CPU allows. The file is driven through
+ *              the usual blocks (Scheduler -> AnalyzerProcessingLoop / DemodulationChannel -> Demodulator
+ *              -> AudioSink), but all of them run unthrottled and in lossless mode: instead of dropping
+ *              samples when a block is too slow, the blocks in front of it wait (back-pressure).
+ *              The spectra are written to a SpectrumFileWriter and the audio of every channel to
+ *              a WAV file. At the end of the file the Scheduler marks the end of the stream: every
+ *              block processes the samples that are still queued, passes the mark on and stops, so
+ *              run() just joins the threads. If one of the blocks stops early (e.g. a file can't be
+ *              written), the blocks in front of it stop waiting for it and run() returns false.
+ *
+ *              Usage:
+ *                  BatchProcessor batch = new BatchProcessor(fileSource, 1024);
+ *                  batch.setSpectrumFile(new File("spectra.bin"));
+ *                  batch.addChannel(97200000, Demodulator.DEMODULATION_WFM, new File("channel.wav"));
+ *                  batch.run();	// blocks until the end of the file
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class BatchProcessor implements IQSourceInterface.Callback {
+	private FileIQSource source;
+	private int fftSize;
+	private File spectrumFile = null;					// output file for the spectra (null: no spectra)
+	private int audioSampleRate = AudioSink.DEFAULT_SAMPLE_RATE;	// sample rate of the WAV files
+	private float fftOverlap = -1;						// overlap of the continuous fft (< 0: consecutive ffts without overlap)
+	private int fftWindow = FftWindow.BLACKMAN;			// window type of the fft (see FftWindow)
+	private int fftWorkers = 0;							// worker threads of the continuous fft
+	private long zoomFrequency = 0;						// center of the zoomed sub-band of the continuous fft
+	private int zoomSpan = 0;							// width of the zoomed sub-band (0: no zoom)
+	private List<ChannelSettings> channelSettings = new ArrayList<ChannelSettings>();	// all channels that are demodulated
+	private long elapsedTime = 0;						// duration of the last run (ms)
+	private long processedFrames = 0;					// number of spectra of the last run
+	private static final String LOGTAG = "BatchProcessor";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param source	file source (must not repeat; throttling is turned off by run())
+	 * @param fftSize	size of the FFT (power of 2, max. number of samples in one packet of the source)
+	 */
+	public BatchProcessor(FileIQSource source, int fftSize) {
+		this.source = source;
+		this.fftSize = fftSize;
+	}
+
+	/**
+	 * @param spectrumFile	file to which the spectra are written (see SpectrumFileWriter); null for none
+	 */
+	public void setSpectrumFile(File spectrumFile) {
+		this.spectrumFile = spectrumFile;
+	}
+
+	/**
+	 * @param audioSampleRate	sample rate of the WAV files
+	 */
+	public void setAudioSampleRate(int audioSampleRate) {
+		this.audioSampleRate = audioSampleRate;
+	}
+
+	/**
+	 * Enables the continuous fft: consecutive FFTs overlap and one spectrum (the average of all
+	 * FFTs) is written per packet of the source (see ContinuousFft).
+	 *
+	 * @param fftOverlap	overlap [0..ContinuousFft.MAX_OVERLAP]; negative to disable (one spectrum per fftSize samples)
+	 */
+	public void setFftOverlap(float fftOverlap) {
+		this.fftOverlap = fftOverlap;
+	}
+
+	/**
+	 * @param fftWorkers	number of threads that calculate the ffts of the continuous fft
+	 *                      (0: the processing loop calculates them, see AnalyzerProcessingLoop.setFftWorkers())
+	 */
+	public void setFftWorkers(int fftWorkers) {
+		this.fftWorkers = fftWorkers;
+	}
+
+	/**
+	 * Zooms the continuous fft into a sub-band: the spectra are calculated at a reduced sample
+	 * rate around the given frequency (see ZoomFft). Requires the continuous fft (setFftOverlap()).
+	 *
+	 * @param zoomFrequency	center frequency of the sub-band
+	 * @param zoomSpan		width of the sub-band in Hz (0: no zoom)
+	 */
+	public void setZoom(long zoomFrequency, int zoomSpan) {
+		this.zoomFrequency = zoomFrequency;
+		this.zoomSpan = zoomSpan;
+	}
+
+	/**
+	 * @param fftWindow		window type of the fft (e.g. FftWindow.BLACKMAN)
+	 */
+	public void setFftWindow(int fftWindow) {
+		this.fftWindow = fftWindow;
+	}
+
+	/**
+	 * Adds a channel that is demodulated with the default channel width of the mode.
+	 *
+	 * @param frequency				frequency of the channel
+	 * @param demodulationMode		Demodulator.DEMODULATION_AM, ...
+	 * @param wavFile				file to which the audio is written
+	 * @return false if the demodulation mode is invalid
+	 */
+	public boolean addChannel(long frequency, int demodulationMode, File wavFile) {
+		return addChannel(frequency, demodulationMode, 0, wavFile);
+	}
+
+	/**
+	 * Adds a channel that is demodulated.
+	 *
+	 * @param frequency				frequency of the channel
+	 * @param demodulationMode		Demodulator.DEMODULATION_AM, ...
+	 * @param channelWidth			channel width (see Demodulator.setChannelWidth()); 0 for the default
+	 * @param wavFile				file to which the audio is written
+	 * @return false if the demodulation mode is invalid
+	 */
+	public boolean addChannel(long frequency, int demodulationMode, int channelWidth, File wavFile) {
+		if(demodulationMode <= Demodulator.DEMODULATION_OFF || demodulationMode > Demodulator.DEMODULATION_USB) {
+			Log.e(LOGTAG, "addChannel: invalid demodulation mode: " + demodulationMode);
+			return false;
+		}
+		channelSettings.add(new ChannelSettings(frequency, demodulationMode, channelWidth, wavFile));
+		return true;
+	}
+
+	/**
+	 * @return duration of the last run in ms
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return number of spectra that were calculated in the last run
+	 */
+	public long getProcessedFrames() {
+		return processedFrames;
+	}
+
+	/**
+	 * @return duration of the recording divided by the processing time of the last run
+	 */
+	public double getRealTimeFactor() {
+		double recordingTime = (double) source.getTotalSamples() / source.getSampleRate();
+		return elapsedTime > 0 ? recordingTime * 1000 / elapsedTime : 0;
+	}
+
+	/**
+	 * Processes the whole file. Blocks until all samples are processed and all files are closed.
+	 *
+	 * @return false if an error occurred
+	 */
+	public boolean run() {
+		if(source.isRepeat()) {
+			Log.e(LOGTAG, "run: The file source must not repeat the file.");
+			return false;
+		}
+		source.setThrottled(false);
+		if(!source.open(null, this))
+			return false;
+
+		SpectrumFileWriter spectrumFileWriter = null;
+		if(spectrumFile != null) {
+			try {
+				spectrumFileWriter = new SpectrumFileWriter(spectrumFile);
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while creating the spectrum file: " + e.getMessage());
+				source.close();
+				return false;
+			}
+		}
+
+		// Create the blocks:
+		Scheduler scheduler = new Scheduler(fftSize, source);
+		scheduler.setLossless(true);
+		scheduler.setContinuousFft(fftOverlap >= 0);
+		AnalyzerProcessingLoop processingLoop = new AnalyzerProcessingLoop(null, fftSize, scheduler.getFftRingBuffer());
+		scheduler.setFftConsumer(processingLoop);
+		processingLoop.setWindow(FftWindow.getWindow(fftWindow, fftSize));
+		if(fftOverlap >= 0) {
+			processingLoop.setContinuousFft(true, fftOverlap, ContinuousFft.INTEGRATION_AVERAGE);
+			processingLoop.setFftWorkers(fftWorkers);
+			processingLoop.setZoom(zoomFrequency, zoomSpan);
+		}
+		processingLoop.setThrottled(false);
+		processingLoop.setSpectrumFileWriter(spectrumFileWriter);
+		List<Demodulator> demodulators = new ArrayList<Demodulator>();
+		for (int i = 0; i < channelSettings.size(); i++) {
+			ChannelSettings settings = channelSettings.get(i);
+			DemodulationChannel channel;
+			if(i == 0) {
+				channel = scheduler.getMainChannel();
+				channel.setFrequency(settings.frequency);
+				channel.setSquelchSatisfied(true);
+			} else
+				channel = scheduler.addChannel(settings.frequency);
+			AudioSink audioSink = new AudioSink(source.getPacketSize(), audioSampleRate, settings.wavFile);
+			Demodulator demodulator = new Demodulator(channel.getDemodRingBuffer(), source.getPacketSize(), audioSink);
+			demodulator.setLossless(true);
+			channel.setConsumer(demodulator);
+			demodulator.setDemodulationMode(settings.demodulationMode);
+			if(settings.channelWidth > 0 && !demodulator.setChannelWidth(settings.channelWidth))
+				Log.w(LOGTAG, "run: invalid channel width " + settings.channelWidth + " for channel " + i + ". Using the default.");
+			channel.setDemodulationActivated(true);
+			demodulators.add(demodulator);
+		}
+
+		// Process the file:
+		long startTime = System.currentTimeMillis();
+		for (Demodulator demodulator : demodulators)
+			demodulator.start();
+		processingLoop.start();
+		scheduler.start();
+		boolean success = true;
+		try {
+			// The scheduler stops at the end of the file (or if a block stopped) and marks the end of
+			// the stream. Every block processes the queued samples, passes the mark on and stops:
+			scheduler.join();
+			processingLoop.join();
+			for (Demodulator demodulator : demodulators) {
+				demodulator.join();
+				demodulator.getAudioSink().join();
+			}
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "run: Interrupted while processing the file.");
+			scheduler.stopScheduler();
+			processingLoop.stopLoop();
+			for (Demodulator demodulator : demodulators)
+				demodulator.stopDemodulator();
+			success = false;
+		}
+
+		// Every block must have reached the end of the stream and all files must be complete:
+		if(!processingLoop.isEndOfStreamReached()) {
+			Log.e(LOGTAG, "run: The processing loop stopped before the file was processed completely.");
+			success = false;
+		}
+		for (int i = 0; i < demodulators.size(); i++) {
+			AudioSink audioSink = demodulators.get(i).getAudioSink();
+			if(!demodulators.get(i).isEndOfStreamReached() || !audioSink.isEndOfStreamReached()) {
+				Log.e(LOGTAG, "run: The demodulation of channel " + i + " stopped before the file was processed completely.");
+				success = false;
+			}
+			if(audioSink.hasOutputError()) {
+				Log.e(LOGTAG, "run: Error while writing " + channelSettings.get(i).wavFile + ".");
+				success = false;
+			}
+		}
+		elapsedTime = System.currentTimeMillis() - startTime;
+		processedFrames = processingLoop.getProcessedFrames();
+		if(spectrumFileWriter != null) {
+			try {
+				spectrumFileWriter.close();
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while closing the spectrum file: " + e.getMessage());
+				success = false;
+			}
+		}
+		source.close();
+		Log.i(LOGTAG, "run: Processed " + source.getTotalSamples() + " samples in " + elapsedTime + " ms ("
+				+ String.format("%.1f", getRealTimeFactor()) + "x real time).");
+		return success;
+	}
+
+	/**
+	 * Settings of a channel that was added with addChannel()
+	 */
+	private static class ChannelSettings {
+		long frequency;
+		int demodulationMode;
+		int channelWidth;
+		File wavFile;
+
+		ChannelSettings(long frequency, int demodulationMode, int channelWidth, File wavFile) {
+			this.frequency = frequency;
+			this.demodulationMode = demodulationMode;
+			this.channelWidth = channelWidth;
+			this.wavFile = wavFile;
+		}
+	}
+
+	@Override
+	public void onIQSourceReady(IQSourceInterface source) {
+		Log.i(LOGTAG, "onIQSourceReady: " + source.getName());
+	}
+
+	@Override
+	public void onIQSourceError(IQSourceInterface source, String message) {
+		// End of File is expected; the scheduler stops when there are no more packets.
+		Log.i(LOGTAG, "onIQSourceError: " + message);
+	}
+}
@@ -0,0 +1,167 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Channelizer</h1>
+ *
+ * Module:      Channelizer.java
+ * Description: This Thread splits a wideband signal into evenly spaced channels with a
+ *              PolyphaseChannelizer. It reads converted (not shifted) samples from an input
+ *              ring buffer and delivers the baseband signal of every opened channel through a
+ *              DemodulationChannel, so a Demodulator can be attached to each of them.
+ *
+ *              Typical setup: a pass through channel of the Scheduler feeds the Channelizer:
+ *                  DemodulationChannel wideband = scheduler.addChannel(0);
+ *                  wideband.setPassThrough(true);
+ *                  wideband.setDemodulationActivated(true);
+ *                  channelizer = new Channelizer(PolyphaseChannelizer.createChannelizer(1024, true, 40), packetSize,
+ *                                                wideband.getDemodRingBuffer());
+ *                  demodulator = new Demodulator(channelizer.openChannel(5), packetSize, audioSink);
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Channelizer extends Thread {
+	private PolyphaseChannelizer channelizer;
+	private DemodulationChannel[] channels;		// opened channels (null if the channel is not opened)
+	private SamplePacket[] channelBuffers;		// buffers that are currently filled (null if not opened or no buffer available)
+	private int packetSize;						// packet size of the channel buffers
+	private boolean stopRequested = true;
+	private RingBuffer<SamplePacket> inputRingBuffer;	// ring buffer that delivers the incoming sample packets
+	private static final int CHANNEL_QUEUE_SIZE = 4;
+	private static final String LOGTAG = "Channelizer";
+
+	/**
+	 * Constructor. Will create a new Channelizer block.
+	 *
+	 * @param channelizer		PolyphaseChannelizer that is used to split the signal
+	 * @param packetSize		size of the packets that are delivered to the channels
+	 * @param inputRingBuffer	ring buffer that delivers incoming sample packets
+	 */
+	public Channelizer(PolyphaseChannelizer channelizer, int packetSize, RingBuffer<SamplePacket> inputRingBuffer) {
+		this.channelizer = channelizer;
+		this.packetSize = packetSize;
+		this.inputRingBuffer = inputRingBuffer;
+		this.channels = new DemodulationChannel[channelizer.getNumberOfChannels()];
+		this.channelBuffers = new SamplePacket[channelizer.getNumberOfChannels()];
+	}
+
+	/**
+	 * Opens a channel. The returned DemodulationChannel delivers the baseband signal of the
+	 * channel (see PolyphaseChannelizer for the channel numbering). It is activated and its
+	 * squelch is open by default.
+	 *
+	 * @param channel	channel index (0 .. M-1)
+	 * @return DemodulationChannel that delivers the samples of the channel
+	 */
+	public synchronized DemodulationChannel openChannel(int channel) {
+		if(channels[channel] == null) {
+			DemodulationChannel demodulationChannel = new DemodulationChannel(0, packetSize, CHANNEL_QUEUE_SIZE);
+			demodulationChannel.setDemodulationActivated(true);
+			demodulationChannel.setSquelchSatisfied(true);
+			channels[channel] = demodulationChannel;
+		}
+		return channels[channel];
+	}
+
+	/**
+	 * Closes a channel that was opened with openChannel().
+	 *
+	 * @param channel	channel index (0 .. M-1)
+	 */
+	public synchronized void closeChannel(int channel) {
+		channels[channel] = null;
+	}
+
+	@Override
+	public synchronized void start() {
+		this.stopRequested = false;
+		super.start();
+	}
+
+	public void stopChannelizer() {
+		this.stopRequested = true;
+	}
+
+	@Override
+	public void run() {
+		SamplePacket inputSamples;
+
+		Log.i(LOGTAG,"Channelizer started. (Thread: " + this.getName() + ")");
+
+		while (!stopRequested) {
+			// Get a packet from the input ring buffer:
+			try {
+				inputSamples = inputRingBuffer.acquire(1000);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting on input ring buffer! stop.");
+				this.stopRequested = true;
+				break;
+			}
+
+			// Verify the input sample packet is not null:
+			if (inputSamples == null)
+				continue;
+
+			// Split the packet. If a channel buffer is full, it is delivered and replaced:
+			int consumed = 0;
+			while (consumed < inputSamples.size()) {
+				fetchChannelBuffers();
+				consumed += channelizer.process(inputSamples, channelBuffers, consumed, inputSamples.size() - consumed);
+				if(consumed < inputSamples.size())
+					deliverChannelBuffers(true);
+			}
+			deliverChannelBuffers(false);
+
+			// release inputSamples back to the input ring buffer:
+			inputRingBuffer.release(inputSamples);
+		}
+
+		this.stopRequested = true;
+		Log.i(LOGTAG,"Channelizer stopped. (Thread: " + this.getName() + ")");
+	}
+
+	/**
+	 * Gets a buffer for every active channel that doesn't have one.
+	 */
+	private synchronized void fetchChannelBuffers() {
+		for (int k = 0; k < channels.length; k++) {
+			if(channelBuffers[k] == null && channels[k] != null && channels[k].isActive())
+				channelBuffers[k] = channels[k].getBuffer();
+		}
+	}
+
+	/**
+	 * Delivers the channel buffers to the channels.
+	 *
+	 * @param onlyFull	if true, only buffers that are full are delivered
+	 */
+	private synchronized void deliverChannelBuffers(boolean onlyFull) {
+		for (int k = 0; k < channels.length; k++) {
+			SamplePacket buffer = channelBuffers[k];
+			// empty buffers are kept for the next packet:
+			if(buffer == null || buffer.size() == 0 || (onlyFull && buffer.size() < buffer.capacity()))
+				continue;
+			if(channels[k] != null) {
+				channels[k].setFrequency(buffer.getFrequency());
+				channels[k].deliverBuffer(buffer);
+			}
+			channelBuffers[k] = null;
+		}
+	}
+}
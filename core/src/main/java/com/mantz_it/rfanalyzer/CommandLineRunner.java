@@ -0,0 +1,227 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <h1>RF Analyzer - Command Line Runner</h1>
+ *
+ * Module:      CommandLineRunner.java
+ * Description: Runs the signal processing pipeline of RF Analyzer on a plain JVM (e.g. on a Linux
+ *              server). Reads an IQ file, writes the spectra (see SpectrumFileWriter) and
+ *              demodulates any number of channels to WAV files (see BatchProcessor).
+ *
+ *              Example:
+ *                  java -jar core.jar --rate 2000000 --frequency 97000000 --format s8 \
+ *                       --spectrum spectra.bin --demod 97200000:wfm:channel.wav recording.iq
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class CommandLineRunner {
+	public static final int EXIT_SUCCESS = 0;
+	public static final int EXIT_ERROR = 1;			// processing failed
+	public static final int EXIT_USAGE = 2;			// invalid arguments
+	private static final String[] FORMAT_NAMES = {"s8", "u8", "s12"};	// index = FileIQSource.FILE_FORMAT_*
+	private static final String[] MODE_NAMES = {"off", "am", "nfm", "wfm", "lsb", "usb"};	// index = Demodulator.DEMODULATION_*
+	private static final String USAGE =
+			"Usage: CommandLineRunner [options] <iq file>\n" +
+			"  -r, --rate <Sps>           sample rate of the recording (required)\n" +
+			"  -c, --frequency <Hz>       center frequency of the recording (default: 0)\n" +
+			"  -f, --format <s8|u8|s12>   sample format (default: s8)\n" +
+			"  -n, --fft <size>           fft size (power of 2, default: 1024)\n" +
+			"  -o, --overlap <percent>    continuous fft with 0-75% overlap; one averaged spectrum per packet\n" +
+			"  -j, --workers <count>      threads for the ffts of the continuous fft (default: 0)\n" +
+			"  -z, --zoom <Hz>:<span>     zoom the continuous fft into the sub-band <Hz> +/- <span>/2\n" +
+			"  -w, --window <name>        fft window: blackman, hann, hamming, blackman-harris, flattop,\n" +
+			"                             kaiser, nuttall or rectangular (default: blackman)\n" +
+			"  -p, --packet-size <bytes>  size of the packets read from the file (default: 16384)\n" +
+			"  -s, --spectrum <file>      write the spectra to this file (without --overlap: one spectrum\n" +
+			"                             per <size> samples)\n" +
+			"  -d, --demod <Hz>:<am|nfm|wfm|lsb|usb>[:<width>]:<wav file>\n" +
+			"                             demodulate a channel (can be given multiple times)\n" +
+			"  -a, --audio-rate <Sps>     sample rate of the wav files (default: 48000)\n" +
+			"  -q, --quiet                only log warnings and errors\n";
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out));
+	}
+
+	/**
+	 * Parses the arguments and processes the file.
+	 *
+	 * @param args		command line arguments
+	 * @param out		stream for the usage and the summary
+	 * @return EXIT_SUCCESS, EXIT_ERROR or EXIT_USAGE
+	 */
+	public static int run(String[] args, PrintStream out) {
+		int sampleRate = 0;
+		long frequency = 0;
+		int fileFormat = FileIQSource.FILE_FORMAT_8BIT_SIGNED;
+		int fftSize = 1024;
+		int fftOverlap = -1;
+		int fftWindow = FftWindow.BLACKMAN;
+		int fftWorkers = 0;
+		long zoomFrequency = 0;
+		int zoomSpan = 0;
+		int packetSize = 16384;
+		int audioRate = AudioSink.DEFAULT_SAMPLE_RATE;
+		String spectrumFile = null;
+		String iqFile = null;
+		List<String> channels = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if(arg.equals("-q") || arg.equals("--quiet")) {
+					Log.setMinPriority(Log.WARN);
+					continue;
+				}
+				if(!arg.startsWith("-")) {
+					if(iqFile != null)
+						return usage(out, "more than one input file given");
+					iqFile = arg;
+					continue;
+				}
+				if(i + 1 >= args.length)
+					return usage(out, "missing value for " + arg);
+				String value = args[++i];
+				if(arg.equals("-r") || arg.equals("--rate"))
+					sampleRate = Integer.parseInt(value);
+				else if(arg.equals("-c") || arg.equals("--frequency"))
+					frequency = Long.parseLong(value);
+				else if(arg.equals("-f") || arg.equals("--format")) {
+					fileFormat = indexOf(FORMAT_NAMES, value);
+					if(fileFormat < 0)
+						return usage(out, "invalid format: " + value);
+				}
+				else if(arg.equals("-n") || arg.equals("--fft"))
+					fftSize = Integer.parseInt(value);
+				else if(arg.equals("-o") || arg.equals("--overlap"))
+					fftOverlap = Integer.parseInt(value);
+				else if(arg.equals("-j") || arg.equals("--workers"))
+					fftWorkers = Integer.parseInt(value);
+				else if(arg.equals("-z") || arg.equals("--zoom")) {
+					String[] parts = value.split(":");
+					if(parts.length != 2)
+						return usage(out, "invalid zoom: " + value);
+					zoomFrequency = Long.parseLong(parts[0]);
+					zoomSpan = Integer.parseInt(parts[1]);
+				}
+				else if(arg.equals("-w") || arg.equals("--window")) {
+					fftWindow = FftWindow.getTypeByName(value);
+					if(fftWindow < 0)
+						return usage(out, "invalid window: " + value);
+				}
+				else if(arg.equals("-p") || arg.equals("--packet-size"))
+					packetSize = Integer.parseInt(value);
+				else if(arg.equals("-s") || arg.equals("--spectrum"))
+					spectrumFile = value;
+				else if(arg.equals("-d") || arg.equals("--demod"))
+					channels.add(value);
+				else if(arg.equals("-a") || arg.equals("--audio-rate"))
+					audioRate = Integer.parseInt(value);
+				else
+					return usage(out, "unknown option: " + arg);
+			}
+		} catch (NumberFormatException e) {
+			return usage(out, "invalid number: " + e.getMessage());
+		}
+
+		// Verify the arguments:
+		if(iqFile == null)
+			return usage(out, "no input file given");
+		if(!new File(iqFile).isFile())
+			return usage(out, "input file not found: " + iqFile);
+		if(sampleRate <= 0)
+			return usage(out, "the sample rate is required");
+		int bytesPerSample = fileFormat == FileIQSource.FILE_FORMAT_12BIT_SIGNED ? 4 : 2;
+		if(fftOverlap < 0 && (fftSize < 2 || Integer.bitCount(fftSize) != 1 || fftSize > packetSize / bytesPerSample))
+			return usage(out, "fft size must be a power of 2 and fit into one packet (" + packetSize / bytesPerSample + " samples)");
+		if(fftOverlap >= 0 && (fftSize < 2 || Integer.bitCount(fftSize) != 1))
+			return usage(out, "fft size must be a power of 2");
+		if(fftOverlap > ContinuousFft.MAX_OVERLAP * 100)
+			return usage(out, "invalid overlap: " + fftOverlap);
+		if(fftWorkers < 0)
+			return usage(out, "invalid number of workers: " + fftWorkers);
+		if(zoomSpan < 0 || (zoomSpan > 0 && fftOverlap < 0))
+			return usage(out, "the zoom requires a span > 0 and the continuous fft (--overlap)");
+		if(audioRate <= 0)
+			return usage(out, "invalid audio rate: " + audioRate);
+
+		FileIQSource source = new FileIQSource(iqFile, sampleRate, frequency, packetSize, false, fileFormat, true);
+		BatchProcessor batchProcessor = new BatchProcessor(source, fftSize);
+		batchProcessor.setAudioSampleRate(audioRate);
+		batchProcessor.setFftWindow(fftWindow);
+		batchProcessor.setFftWorkers(fftWorkers);
+		batchProcessor.setZoom(zoomFrequency, zoomSpan);
+		if(fftOverlap >= 0)
+			batchProcessor.setFftOverlap(fftOverlap / 100f);
+		if(spectrumFile != null)
+			batchProcessor.setSpectrumFile(new File(spectrumFile));
+		for (String channel : channels) {
+			// <frequency>:<mode>[:<width>]:<file>
+			String[] parts = channel.split(":", 3);
+			if(parts.length < 3)
+				return usage(out, "invalid channel: " + channel);
+			int mode = indexOf(MODE_NAMES, parts[1]);
+			String wavFile = parts[2];
+			int channelWidth = 0;
+			int separator = wavFile.indexOf(':');
+			try {
+				if(separator > 0 && wavFile.substring(0, separator).matches("[0-9]+")) {
+					channelWidth = Integer.parseInt(wavFile.substring(0, separator));
+					wavFile = wavFile.substring(separator + 1);
+				}
+				if(mode <= Demodulator.DEMODULATION_OFF
+						|| !batchProcessor.addChannel(Long.parseLong(parts[0]), mode, channelWidth, new File(wavFile)))
+					return usage(out, "invalid channel: " + channel);
+			} catch (NumberFormatException e) {
+				return usage(out, "invalid channel: " + channel);
+			}
+		}
+
+		// Process the file:
+		if(!batchProcessor.run()) {
+			out.println("Processing of " + iqFile + " failed.");
+			return EXIT_ERROR;
+		}
+		out.println(String.format(Locale.US, "Processed %d samples (%.1f s) in %.1f s: %.1fx real time, %d spectra, %d channels.",
+				source.getTotalSamples(), (double) source.getTotalSamples() / sampleRate, batchProcessor.getElapsedTime() / 1000.0,
+				batchProcessor.getRealTimeFactor(), batchProcessor.getProcessedFrames(), channels.size()));
+		return EXIT_SUCCESS;
+	}
+
+	private static int usage(PrintStream out, String error) {
+		out.println("Error: " + error);
+		out.print(USAGE);
+		return EXIT_USAGE;
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if(names[i].equalsIgnoreCase(name))
+				return i;
+		}
+		return -1;
+	}
+}
@@ -1,7 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.util.Log;
-
 /**
  * <h1>RF Analyzer - complex FIR Filter</h1>
  *
@@ -42,6 +40,7 @@ public class ComplexFirFilter {
 	private float highCutOffFrequency;
 	private float transitionWidth;
 	private float attenuation;
+	private OverlapSaveFilter overlapSaveFilter = null;	// used instead of the direct form for long filters
 	private static final String LOGTAG = "ComplexFirFilter";
 
 	/**
@@ -72,6 +71,10 @@ public class ComplexFirFilter {
 		this.highCutOffFrequency = highCutOffFrequency;
 		this.transitionWidth = transitionWidth;
 		this.attenuation = attenuation;
+
+		// Use fast convolution if it is faster than the direct form:
+		if(OverlapSaveFilter.isFasterThanDirectForm(tapsReal.length, decimation))
+			this.overlapSaveFilter = new OverlapSaveFilter(tapsReal, tapsImag, decimation);
 	}
 
 	/**
@@ -81,6 +84,13 @@ public class ComplexFirFilter {
 		return tapsReal.length;
 	}
 
+	/**
+	 * @return true if this filter uses fast convolution (overlap-save) instead of the direct form
+	 */
+	public boolean isOverlapSave() {
+		return overlapSaveFilter != null;
+	}
+
 	public int getDecimation() {
 		return decimation;
 	}
@@ -119,6 +129,9 @@ public class ComplexFirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		if(overlapSaveFilter != null)
+			return overlapSaveFilter.filter(in, out, offset, length);
+
 		int index;
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
@@ -0,0 +1,365 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Continuous FFT</h1>
+ *
+ * Module:      ContinuousFft.java
+ * Description: Calculates FFTs over every incoming sample (instead of one FFT per frame) and
+ *              integrates their power until the next spectrum is displayed. Consecutive FFTs
+ *              overlap by 0 - 75% of the FFT size, so that a short burst is never lost at the
+ *              edges of the window. The integration is done in the linear power domain either as
+ *              average (INTEGRATION_AVERAGE) or as maximum of each bin (INTEGRATION_PEAK, every
+ *              burst within the frame is visible at its full power).
+ *
+ *              The incoming packets must be contiguous (see Scheduler.setContinuousFft()). Samples
+ *              that do not fill a whole FFT yet are kept for the next packet. If the frequency or
+ *              the sample rate changes, the kept samples and the integrated power are discarded.
+ *
+ *              With startWorkers() the FFTs are calculated by worker threads (see FftWorker): the
+ *              calling thread only cuts and windows the segments and dispatches them round robin.
+ *              getPowerSpectrum() waits until all segments of the frame are integrated and
+ *              combines the spectra of the workers in a fixed order, so the frames are passed on
+ *              in order and contain exactly the same FFTs as without workers.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class ContinuousFft {
+	public static final int INTEGRATION_AVERAGE = 0;	// mean power of all FFTs of the frame
+	public static final int INTEGRATION_PEAK = 1;		// max. power of each bin over all FFTs of the frame
+	public static final float MAX_OVERLAP = 0.75f;
+
+	private int fftSize;
+	private int hopSize;				// number of new samples between two FFTs: fftSize * (1 - overlap)
+	private volatile int integration = INTEGRATION_AVERAGE;
+	private FftWindow window;			// window of the ffts
+	private FftWorker[] workers = null;	// if not null: the ffts are calculated by these threads
+	private int nextWorker = 0;			// worker that gets the next segment
+	private FftEngine fftEngine;		// used to calculate the fft
+	private float[] historyRe;			// samples that are not yet transformed (the overlap of the last fft + new samples)
+	private float[] historyIm;
+	private int historySize = 0;
+	private float[] re;					// scratch buffers of the fft
+	private float[] im;
+	private float[] power;				// integrated power of each bin (fft order, not normalized)
+	private int integratedFfts = 0;		// number of FFTs in power
+	private long frequency = 0;			// center frequency of the samples
+	private int sampleRate = 0;			// sample rate of the samples
+	private long timestamp = 0;			// timestamp of the latest packet that went into power
+	private static final String LOGTAG = "ContinuousFft";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fftSize		size of the FFT (power of 2)
+	 * @param overlap		overlap of consecutive FFTs [0..MAX_OVERLAP]
+	 */
+	public ContinuousFft(int fftSize, float overlap) {
+		int order = (int)(Math.log(fftSize) / Math.log(2));
+		if(fftSize != (1<<order))
+			throw new IllegalArgumentException("FFT size must be power of 2");
+		this.fftSize = fftSize;
+		this.window = FftWindow.getWindow(FftWindow.BLACKMAN, fftSize);
+		this.fftEngine = new ParallelFFT(fftSize);
+		this.historyRe = new float[fftSize];
+		this.historyIm = new float[fftSize];
+		this.re = new float[fftSize];
+		this.im = new float[fftSize];
+		this.power = new float[fftSize];
+		setOverlap(overlap);
+	}
+
+	public int getFftSize() {
+		return fftSize;
+	}
+
+	public float getOverlap() {
+		return 1 - (float) hopSize / fftSize;
+	}
+
+	/**
+	 * Changes the overlap. Takes effect with the next FFT.
+	 *
+	 * @param overlap		overlap of consecutive FFTs [0..MAX_OVERLAP]
+	 */
+	public void setOverlap(float overlap) {
+		if(overlap < 0 || overlap > MAX_OVERLAP)
+			throw new IllegalArgumentException("Overlap must be between 0 and " + MAX_OVERLAP);
+		this.hopSize = Math.max(1, Math.round(fftSize * (1 - overlap)));
+	}
+
+	public FftWindow getWindow() {
+		return window;
+	}
+
+	/**
+	 * Changes the window. Takes effect with the next FFT.
+	 *
+	 * @param window		window of the fft size (see FftWindow.getWindow())
+	 */
+	public void setWindow(FftWindow window) {
+		if(window.getSize() != fftSize)
+			throw new IllegalArgumentException("Window size must match the FFT size");
+		this.window = window;
+	}
+
+	/**
+	 * @return number of worker threads (0: the ffts are calculated by the calling thread)
+	 */
+	public int getWorkerCount() {
+		return workers == null ? 0 : workers.length;
+	}
+
+	/**
+	 * Starts worker threads that calculate the FFTs in parallel (each with its own FFT instance
+	 * and buffers). Must be called before the first packet is processed.
+	 *
+	 * @param count		number of worker threads (0: calculate the ffts in the calling thread)
+	 */
+	public void startWorkers(int count) {
+		stopWorkers();
+		if(count <= 0)
+			return;
+		workers = new FftWorker[count];
+		for (int i = 0; i < count; i++) {
+			workers[i] = new FftWorker(this, i);
+			workers[i].start();
+		}
+		nextWorker = 0;
+	}
+
+	/**
+	 * Stops the worker threads (if any) and waits until they are terminated. Segments that were
+	 * not yet integrated are discarded.
+	 */
+	public void stopWorkers() {
+		if(workers == null)
+			return;
+		for (FftWorker worker : workers)
+			worker.stopWorker();
+		for (FftWorker worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "stopWorkers: Interrupted while waiting for " + worker.getName());
+			}
+		}
+		workers = null;
+		integratedFfts = 0;
+	}
+
+	/**
+	 * @return a reasonable number of workers for this device: one per core that is not used by
+	 *         the other blocks of the pipeline (source, scheduler, processing loop); 0 on devices
+	 *         with less than 4 cores
+	 */
+	public static int getDefaultWorkerCount() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		return cores < 4 ? 0 : cores - 2;
+	}
+
+	public int getIntegration() {
+		return integration;
+	}
+
+	/**
+	 * @param integration	INTEGRATION_AVERAGE or INTEGRATION_PEAK
+	 */
+	public void setIntegration(int integration) {
+		if(integration != INTEGRATION_AVERAGE && integration != INTEGRATION_PEAK)
+			throw new IllegalArgumentException("Invalid integration: " + integration);
+		this.integration = integration;
+	}
+
+	/**
+	 * @return number of FFTs that were integrated since the last call to getPowerSpectrum()
+	 */
+	public int getIntegratedFfts() {
+		return integratedFfts;
+	}
+
+	/**
+	 * @return center frequency of the integrated samples
+	 */
+	public long getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * @return sample rate of the integrated samples
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return timestamp (System.nanoTime()) of the latest packet that was integrated; 0 if unknown
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Discards the kept samples and the integrated power.
+	 */
+	public void reset() throws InterruptedException {
+		historySize = 0;
+		integratedFfts = 0;
+		for (int i = 0; i < fftSize; i++)
+			power[i] = 0;
+		if(workers != null) {
+			for (FftWorker worker : workers) {
+				float[] workerPower = worker.awaitPower();
+				for (int i = 0; i < fftSize; i++)
+					workerPower[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Calculates all FFTs that can be completed with the given samples and integrates them.
+	 *
+	 * @param samples		next packet of the (contiguous) sample stream
+	 */
+	public void process(SamplePacket samples) throws InterruptedException {
+		if(samples.getFrequency() != frequency || samples.getSampleRate() != sampleRate) {
+			reset();
+			frequency = samples.getFrequency();
+			sampleRate = samples.getSampleRate();
+		}
+		timestamp = samples.getTimestamp();
+
+		float[] reIn = samples.re();
+		float[] imIn = samples.im();
+		int size = samples.size();
+		int index = 0;
+		while (index < size) {
+			// fill the history up to the fft size:
+			int count = Math.min(fftSize - historySize, size - index);
+			System.arraycopy(reIn, index, historyRe, historySize, count);
+			System.arraycopy(imIn, index, historyIm, historySize, count);
+			historySize += count;
+			index += count;
+			if(historySize < fftSize)
+				break;
+
+			// transform it and keep the overlapping part for the next fft:
+			if(workers != null)
+				dispatch();
+			else {
+				System.arraycopy(historyRe, 0, re, 0, fftSize);
+				System.arraycopy(historyIm, 0, im, 0, fftSize);
+				transform();
+			}
+			int overlapSize = fftSize - hopSize;
+			System.arraycopy(historyRe, fftSize - overlapSize, historyRe, 0, overlapSize);
+			System.arraycopy(historyIm, fftSize - overlapSize, historyIm, 0, overlapSize);
+			historySize = overlapSize;
+		}
+	}
+
+	/**
+	 * Windows and transforms the scratch buffers and integrates the power of each bin.
+	 */
+	private void transform() {
+		window.apply(re, im);
+		fftEngine.fft(re, im);
+		integrate(re, im, power, integration);
+		integratedFfts++;
+	}
+
+	/**
+	 * Windows the history into a segment of the next worker and passes it on.
+	 */
+	private void dispatch() throws InterruptedException {
+		FftWorker worker = workers[nextWorker];
+		nextWorker = (nextWorker + 1) % workers.length;
+		SamplePacket segment = worker.claimSegment();
+		if(segment == null) {
+			Log.e(LOGTAG, "dispatch: " + worker.getName() + " is stopped. Segment discarded.");
+			return;
+		}
+		float[] coefficients = window.getCoefficients();
+		float[] segmentRe = segment.re();
+		float[] segmentIm = segment.im();
+		for (int i = 0; i < fftSize; i++) {
+			segmentRe[i] = coefficients[i] * historyRe[i];
+			segmentIm[i] = coefficients[i] * historyIm[i];
+		}
+		segment.setSize(fftSize);
+		worker.publishSegment();
+		integratedFfts++;
+	}
+
+	/**
+	 * Integrates the power of the transformed samples into the power spectrum.
+	 *
+	 * @param re			real parts of the fft
+	 * @param im			imaginary parts of the fft
+	 * @param power			integrated power of each bin (will be updated)
+	 * @param integration	INTEGRATION_AVERAGE (sum) or INTEGRATION_PEAK (maximum)
+	 */
+	static void integrate(float[] re, float[] im, float[] power, int integration) {
+		int size = power.length;
+		if(integration == INTEGRATION_PEAK) {
+			for (int i = 0; i < size; i++)
+				power[i] = Math.max(power[i], re[i] * re[i] + im[i] * im[i]);
+		} else {
+			for (int i = 0; i < size; i++)
+				power[i] += re[i] * re[i] + im[i] * im[i];
+		}
+	}
+
+	/**
+	 * Returns the integrated power spectrum and starts the integration of the next one.
+	 *
+	 * @param power		destination for the linear power of each bin (fft order and not normalized
+	 *                  like AnalyzerProcessingLoop, see PowerToDb; fftSize values)
+	 * @return false if no FFT was integrated since the last call (power is not changed)
+	 */
+	public boolean getPowerSpectrum(float[] power) throws InterruptedException {
+		if(integratedFfts == 0)
+			return false;
+
+		// combine the spectra of the workers (always in the same order):
+		if(workers != null) {
+			for (FftWorker worker : workers) {
+				float[] workerPower = worker.awaitPower();
+				if(integration == INTEGRATION_PEAK) {
+					for (int i = 0; i < fftSize; i++)
+						this.power[i] = Math.max(this.power[i], workerPower[i]);
+				} else {
+					for (int i = 0; i < fftSize; i++)
+						this.power[i] += workerPower[i];
+				}
+				for (int i = 0; i < fftSize; i++)
+					workerPower[i] = 0;
+			}
+		}
+
+		// divide by the number of ffts (average):
+		float scale = integration == INTEGRATION_AVERAGE ? 1f / integratedFfts : 1;
+		for (int i = 0; i < fftSize; i++) {
+			power[i] = this.power[i] * scale;
+			this.power[i] = 0;
+		}
+		integratedFfts = 0;
+		return true;
+	}
+}
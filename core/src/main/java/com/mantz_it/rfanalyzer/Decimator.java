@@ -0,0 +1,266 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Decimator</h1>
+ *
+ * Module:      Decimator.java
+ * Description: This class implements a decimation block used to downsample the incoming signal
+ *              to the sample rate used by the demodulation routines. It will run in a separate thread.
+ *              It works with any input sample rate: The filter chain is planned for the rate of
+ *              the incoming packets and consists of a cascade of half band filters (each
+ *              decimating by 2) followed by a rational resampler that hits the output rate.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Decimator extends Thread {
+	private int outputSampleRate;	// sample rate at the output of the decimator block
+	private int packetSize;			// packet size of the incoming packets
+	private volatile boolean stopRequested = true;
+	private static final String LOGTAG = "Decimator";
+
+	private static final int OUTPUT_QUEUE_SIZE = 2;		// Double Buffer
+	private RingBuffer<SamplePacket> inputRingBuffer;	// ring buffer that delivers the incoming sample packets
+	private RingBuffer<SamplePacket> outputRingBuffer;	// ring buffer that delivers the decimated sample packets
+
+	// DOWNSAMPLING:
+	private int inputSampleRate = 0;				// input rate for which the current filter chain was planned
+	private int plannedOutputSampleRate = 0;		// output rate for which the current filter chain was planned
+	private HalfBandLowPassFilter[] halfBandFilters = null;	// cascade of half band filters (decimation by 2 each)
+	private RationalResampler resampler = null;		// final stage: resample to the output rate (null if not necessary)
+	private SamplePacket tmpDownsampledSamples;
+	private SamplePacket tmpDownsampledSamples2;
+	private static final float RESAMPLER_CUT_OFF = 0.3f;		// cut off of the final stage (relative to the output rate)
+	private static final float RESAMPLER_TRANSITION = 0.4f;		// transition width of the final stage (relative to the output rate)
+	private static final int RESAMPLER_ATTENUATION = 30;		// attenuation of the final stage in dB
+	private PipelineMetrics.Counter outCounter = PipelineMetrics.counter(PipelineMetrics.DECIMATOR_OUT);
+
+	/**
+	 * Constructor. Will create a new Decimator block.
+	 *
+	 * @param outputSampleRate		// sample rate to which the incoming samples should be decimated
+	 * @param packetSize			// packet size of the incoming sample packets
+	 * @param inputRingBuffer		// ring buffer that delivers incoming sample packets
+	 */
+	public Decimator (int outputSampleRate, int packetSize, RingBuffer<SamplePacket> inputRingBuffer) {
+		this.outputSampleRate = outputSampleRate;
+		this.packetSize = packetSize;
+		this.inputRingBuffer = inputRingBuffer;
+
+		// Create output ring buffer:
+		this.outputRingBuffer = RingBuffer.createSamplePacketRingBuffer(OUTPUT_QUEUE_SIZE, packetSize);
+
+		// Create local buffers:
+		this.tmpDownsampledSamples = new SamplePacket(packetSize);
+		this.tmpDownsampledSamples2 = new SamplePacket(packetSize);
+	}
+
+	public int getOutputSampleRate() {
+		return outputSampleRate;
+	}
+
+	public void setOutputSampleRate(int outputSampleRate) {
+		this.outputSampleRate = outputSampleRate;
+	}
+
+	public SamplePacket getDecimatedPacket(int timeout) {
+		try {
+			return outputRingBuffer.acquire(timeout);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "getPacket: Interrupted while waiting on ring buffer");
+			return null;
+		}
+	}
+
+	public void returnDecimatedPacket(SamplePacket packet) {
+		outputRingBuffer.release(packet);
+	}
+
+	@Override
+	public synchronized void start() {
+		this.stopRequested = false;
+		super.start();
+	}
+
+	public void stopDecimator() {
+		this.stopRequested = true;
+	}
+
+	@Override
+	public void run() {
+		SamplePacket inputSamples;
+		SamplePacket outputSamples;
+
+		Log.i(LOGTAG,"Decimator started. (Thread: " + this.getName() + ")");
+
+		while (!stopRequested) {
+			// Get a packet from the input ring buffer:
+			try {
+				inputSamples = inputRingBuffer.acquire(1000);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting on input ring buffer! stop.");
+				this.stopRequested = true;
+				break;
+			}
+
+			// Verify the input sample packet is not null:
+			if (inputSamples == null) {
+				//Log.d(LOGTAG, "run: Input sample is null. skip this round...");
+				continue;
+			}
+
+			// Pass the end of the stream on to the demodulator and stop:
+			if (inputSamples.isEndOfStream()) {
+				inputSamples.setEndOfStream(false);
+				inputRingBuffer.release(inputSamples);
+				publishEndOfStream();
+				break;
+			}
+
+			// Verify the output sample rate (demodulation might be turned off):
+			if (outputSampleRate <= 1) {
+				inputRingBuffer.release(inputSamples);
+				continue;
+			}
+
+			// Claim a packet from the output ring buffer:
+			try {
+				outputSamples = outputRingBuffer.claim(1000);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting on output ring buffer! stop.");
+				this.stopRequested = true;
+				break;
+			}
+
+			// Verify the output sample packet is not null:
+			if (outputSamples == null) {
+				Log.d(LOGTAG, "run: Output sample is null. skip this round...");
+				continue;
+			}
+
+			// downsampling
+			downsampling(inputSamples, outputSamples);
+			outputSamples.setTimestamp(inputSamples.getTimestamp());
+
+			// release inputSamples back to the input ring buffer:
+			inputRingBuffer.release(inputSamples);
+
+			// publish the outputSamples to the output ring buffer
+			outputRingBuffer.publish();
+			outCounter.increment();
+		}
+
+		this.stopRequested = true;
+		Log.i(LOGTAG,"Decimator stopped. (Thread: " + this.getName() + ")");
+	}
+
+	/**
+	 * Publishes an empty packet that marks the end of the stream to the output ring buffer.
+	 * Waits until the demodulator has freed a buffer (or stopped).
+	 */
+	private void publishEndOfStream() {
+		try {
+			SamplePacket outputSamples = null;
+			while (outputSamples == null && !stopRequested)
+				outputSamples = outputRingBuffer.claim(1000);
+			if (outputSamples == null)
+				return;
+			outputSamples.setSize(0);
+			outputSamples.setEndOfStream(true);
+			outputRingBuffer.publish();
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "publishEndOfStream: Interrupted while waiting on output ring buffer!");
+		}
+	}
+
+	/**
+	 * Will plan the filter chain that converts inputSampleRate to outputSampleRate:
+	 * As many half band filters as possible are used (as long as the rate after the filter
+	 * is at least twice the output rate). The remaining ratio (between 2 and 4, or any ratio
+	 * if the input rate is already low) is done by a rational resampler.
+	 *
+	 * @param inputSampleRate		sample rate of the incoming samples
+	 * @param outputSampleRate		sample rate of the outgoing samples
+	 */
+	private void planFilterChain(int inputSampleRate, int outputSampleRate) {
+		int rate = inputSampleRate;
+		int numberOfHalfBandFilters = 0;
+		while (rate / 2 >= 2 * outputSampleRate) {
+			rate /= 2;
+			numberOfHalfBandFilters++;
+		}
+		halfBandFilters = new HalfBandLowPassFilter[numberOfHalfBandFilters];
+		for (int i = 0; i < numberOfHalfBandFilters; i++)
+			halfBandFilters[i] = new HalfBandLowPassFilter(8);
+
+		// Each half band filter amplifies the signal by 2. The final stage compensates this:
+		resampler = null;
+		if(rate != outputSampleRate) {
+			resampler = RationalResampler.createResampler(rate, outputSampleRate, 1f / (1 << numberOfHalfBandFilters),
+					RESAMPLER_CUT_OFF * outputSampleRate, RESAMPLER_TRANSITION * outputSampleRate, RESAMPLER_ATTENUATION);
+		}
+		if(resampler == null && rate != outputSampleRate) {
+			Log.e(LOGTAG, "planFilterChain: Could not create resampler from " + rate + " Sps to " + outputSampleRate + " Sps.");
+		}
+
+		this.inputSampleRate = inputSampleRate;
+		this.plannedOutputSampleRate = outputSampleRate;
+		Log.d(LOGTAG, "planFilterChain: " + inputSampleRate + " Sps -> " + numberOfHalfBandFilters + " half band filters -> "
+				+ rate + " Sps -> " + (resampler == null ? "no resampler" : ("resampler L=" + resampler.getInterpolation()
+				+ " M=" + resampler.getDecimation() + " (" + resampler.getNumberOfTaps() + " taps)")) + " -> " + outputSampleRate + " Sps");
+	}
+
+	/**
+	 * Will decimate the input samples to the outputSampleRate and store them in output
+	 *
+	 * @param input		incoming samples at the incoming rate (input rate)
+	 * @param output	outgoing (decimated) samples at output rate (quadrature rate)
+	 */
+	private void downsampling(SamplePacket input, SamplePacket output) {
+		// Verify that the filter chain is still correct configured:
+		if(halfBandFilters == null || input.getSampleRate() != inputSampleRate || outputSampleRate != plannedOutputSampleRate)
+			planFilterChain(input.getSampleRate(), outputSampleRate);
+
+		// apply the half band filters (alternating between the two tmp buffers):
+		SamplePacket current = input;
+		for (int i = 0; i < halfBandFilters.length; i++) {
+			SamplePacket next = current == tmpDownsampledSamples ? tmpDownsampledSamples2 : tmpDownsampledSamples;
+			next.setSize(0);	// mark buffer as empty
+			if (halfBandFilters[i].filterN8(current, next, 0, current.size()) < current.size()) {
+				Log.e(LOGTAG, "downsampling: [halfBandFilter " + i + "] could not filter all samples from input packet.");
+			}
+			current = next;
+		}
+
+		// apply the resampler (or just copy the samples if no resampling is necessary):
+		output.setSize(0);	// mark buffer as empty
+		if(resampler != null) {
+			if (resampler.filter(current, output, 0, current.size()) < current.size()) {
+				Log.e(LOGTAG, "downsampling: [resampler] could not filter all samples from input packet.");
+			}
+		} else {
+			int count = Math.min(current.size(), output.capacity());
+			System.arraycopy(current.re(), 0, output.re(), 0, count);
+			System.arraycopy(current.im(), 0, output.im(), 0, count);
+			output.setSize(count);
+			output.setSampleRate(current.getSampleRate());
+		}
+		output.setFrequency(input.getFrequency());
+	}
+}
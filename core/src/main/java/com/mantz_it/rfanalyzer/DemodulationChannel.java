@@ -0,0 +1,317 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Demodulation Channel</h1>
+ *
+ * Module:      DemodulationChannel.java
+ * Description: This class represents one channel that is demodulated from the IQ stream of the
+ *              source. The Scheduler converts every packet of the source only once and hands the
+ *              converted samples to all active channels. Each channel shifts its frequency to
+ *              baseband (NcoMixer or FrequencyXlatingFirFilter for high source rates) and delivers
+ *              the result through its own ring buffer to its own Demodulator, which does the
+ *              decimation, filtering, demodulation and audio output with its own settings.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class DemodulationChannel {
+	private long frequency;								// Shift frequency to this value when passing packets to demodulator
+	private boolean demodulationActivated = false;		// Indicates if samples should be forwarded to the demodulator queues or not.
+	private boolean squelchSatisfied = false;			// indicates whether the current signal is strong enough to cross the squelch threshold
+	private boolean passThrough = false;				// if true, the samples are delivered without shifting (e.g. to a Channelizer)
+	private volatile boolean lossless = false;			// if true, getBuffer() waits for the demodulator instead of dropping samples
+	private volatile Demodulator consumer = null;		// consumer of the demod ring buffer (lossless mode gives up if it stopped)
+	private volatile long droppedPackets = 0;			// packets that could not be delivered because the demodulator was too slow
+	private PipelineMetrics.Counter inCounter = PipelineMetrics.counter(PipelineMetrics.CHANNEL_IN);
+	private PipelineMetrics.Counter droppedCounter = PipelineMetrics.counter(PipelineMetrics.CHANNEL_DROPPED);
+	private RingBuffer<SamplePacket> demodRingBuffer = null;	// Ring buffer that delivers samples to the Demodulator block
+	private NcoMixer ncoMixer = new NcoMixer();			// Shifts the samples for low source rates
+	private FrequencyXlatingFirFilter xlatingFilter = null;	// Shifts and decimates the samples for high source rates
+	private int xlatingFailedSampleRate = 0;			// source rate for which no xlatingFilter could be created
+	private static final String LOGTAG = "DemodulationChannel";
+
+	// If the source rate is at least twice this rate, the samples for the demodulator are shifted and decimated
+	// in one step by the xlatingFilter (to a rate between XLATING_MIN_OUTPUT_RATE and 2*XLATING_MIN_OUTPUT_RATE).
+	// This avoids mixing every single sample at the full source rate. The pass band is wide enough for all
+	// demodulation modes; the Decimator will do the rest:
+	private static final int XLATING_MIN_OUTPUT_RATE = 1000000;
+	private static final float XLATING_CUT_OFF = 0.2f;			// relative to the output rate
+	private static final int XLATING_ATTENUATION = 30;
+
+	/**
+	 * Constructor. Creates the demod ring buffer and allocates the buffer packets.
+	 *
+	 * @param frequency		frequency of the channel
+	 * @param packetSize	size of the buffer packets (number of samples)
+	 * @param queueSize		number of buffer packets
+	 */
+	public DemodulationChannel(long frequency, int packetSize, int queueSize) {
+		this.frequency = frequency;
+		this.demodRingBuffer = RingBuffer.createSamplePacketRingBuffer(queueSize, packetSize);
+	}
+
+	/**
+	 * @return ring buffer that delivers the baseband samples of this channel (the Demodulator is its consumer)
+	 */
+	public RingBuffer<SamplePacket> getDemodRingBuffer() {
+		return demodRingBuffer;
+	}
+
+	public long getFrequency() {
+		return frequency;
+	}
+
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	public boolean isDemodulationActivated() {
+		return demodulationActivated;
+	}
+
+	public void setDemodulationActivated(boolean demodulationActivated) {
+		this.demodulationActivated = demodulationActivated;
+	}
+
+	public boolean isSquelchSatisfied() {
+		return squelchSatisfied;
+	}
+
+	/**
+	 * Has to be called when the signal strength of the channel crosses the squelch threshold
+	 *
+	 * @param squelchSatisfied	true: the signal is now stronger than the threshold; false: signal is now weaker
+	 */
+	public void setSquelchSatisfied(boolean squelchSatisfied) {
+		this.squelchSatisfied = squelchSatisfied;
+	}
+
+	public boolean isPassThrough() {
+		return passThrough;
+	}
+
+	/**
+	 * If pass through is enabled, the samples are delivered unchanged (full bandwidth, not shifted).
+	 * This is used to feed wideband consumers like the Channelizer.
+	 *
+	 * @param passThrough	true to deliver the samples unchanged
+	 */
+	public void setPassThrough(boolean passThrough) {
+		this.passThrough = passThrough;
+	}
+
+	public boolean isLossless() {
+		return lossless;
+	}
+
+	/**
+	 * In lossless mode getBuffer() blocks until the demodulator has freed a buffer instead of
+	 * flushing the ring buffer. This is used for offline processing (see BatchProcessor).
+	 *
+	 * @param lossless	true to wait for the demodulator (back-pressure); false to drop samples
+	 */
+	public void setLossless(boolean lossless) {
+		this.lossless = lossless;
+	}
+
+	/**
+	 * In lossless mode getBuffer() only waits as long as the consumer of the demod ring buffer
+	 * is running. Without a consumer it waits until a buffer is available.
+	 *
+	 * @param consumer	demodulator that consumes the demod ring buffer (null for none)
+	 */
+	public void setConsumer(Demodulator consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * @return number of packets that were dropped because the demodulator was too slow
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets;
+	}
+
+	/**
+	 * @return true if samples are currently forwarded to the demodulator of this channel
+	 */
+	public boolean isActive() {
+		return demodulationActivated && squelchSatisfied;
+	}
+
+	/**
+	 * Will shift the channel to baseband and deliver the samples to the demodulator. If the
+	 * demodulator is too slow, the ring buffer is flushed.
+	 *
+	 * @param samples	converted (but not yet shifted) samples of the source
+	 * @return false if the samples were dropped (see getBuffer())
+	 */
+	public boolean processSamples(SamplePacket samples) {
+		inCounter.increment();
+		SamplePacket demodBuffer = getBuffer();
+		if (demodBuffer != null) {
+			demodBuffer.setTimestamp(samples.getTimestamp());
+			if(passThrough) {
+				samples.copyTo(demodBuffer);
+			} else if(samples.getSampleRate() >= 2 * XLATING_MIN_OUTPUT_RATE && xlateIntoSamplePacket(samples, demodBuffer)) {
+				// the spectrum was shifted and decimated in one step
+			} else {
+				// shift the spectrum:
+				ncoMixer.mix(samples, demodBuffer, frequency);
+			}
+			if(demodBuffer.size() > 0)
+				deliverBuffer(demodBuffer);		// an empty buffer stays claimed and is reused by the next packet
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param sampleRate	sample rate of the source
+	 * @return true if packets with this sample rate can be passed to processSamples(DirectSamplePacket)
+	 *         (the channel is shifted and decimated by the xlatingFilter); false if they have to be
+	 *         passed as SamplePacket (pass through or mixer)
+	 */
+	public boolean acceptsDirectSamples(int sampleRate) {
+		return !passThrough && sampleRate >= 2 * XLATING_MIN_OUTPUT_RATE && updateXlatingFilter(sampleRate);
+	}
+
+	/**
+	 * Same as processSamples(SamplePacket) for samples in direct memory (memory mapped files, see
+	 * Scheduler). The xlatingFilter reads the samples directly, so the samples at the full source
+	 * rate are never copied to the heap. Must only be called if acceptsDirectSamples() returned
+	 * true for the sample rate of the packet.
+	 *
+	 * @param samples	converted (but not yet shifted) samples of the source
+	 * @return false if the samples were dropped (see getBuffer())
+	 */
+	public boolean processSamples(DirectSamplePacket samples) {
+		inCounter.increment();
+		SamplePacket demodBuffer = getBuffer();
+		if (demodBuffer != null) {
+			demodBuffer.setTimestamp(samples.getTimestamp());
+			xlatingFilter.setShiftFrequency(frequency - samples.getFrequency());
+			xlatingFilter.filter(samples, demodBuffer, 0, samples.size());
+			if(demodBuffer.size() > 0)
+				deliverBuffer(demodBuffer);		// an empty buffer stays claimed and is reused by the next packet
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Claims an empty buffer from the demod ring buffer. If no buffer is available (the
+	 * demodulator is too slow), the ring buffer is flushed and null is returned. In lossless
+	 * mode this method waits until a buffer is available instead (null if interrupted or if the
+	 * consumer stopped, see setConsumer()).
+	 * Blocks that produce baseband samples for this channel themselves (e.g. the Channelizer)
+	 * use this together with deliverBuffer() instead of processSamples().
+	 *
+	 * @return empty buffer or null if no buffer is available
+	 */
+	public SamplePacket getBuffer() {
+		// Claim a free buffer from the demod ring buffer
+		SamplePacket demodBuffer = demodRingBuffer.claim();
+		try {
+			while (demodBuffer == null && lossless && (consumer == null || consumer.isRunning()))
+				demodBuffer = demodRingBuffer.claim(1000);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "getBuffer: Interrupted while waiting on the demod ring buffer.");
+			return null;
+		}
+		if (demodBuffer == null && lossless) {
+			Log.e(LOGTAG, "getBuffer: The demodulator stopped. Drop the samples.");
+			droppedPackets++;
+			droppedCounter.increment();
+			return null;
+		}
+		if (demodBuffer != null) {
+			demodBuffer.setSize(0);    // mark buffer as empty
+			return demodBuffer;
+		}
+		Log.d(LOGTAG, "getBuffer: Flush the demod ring buffer because demodulator is too slow!");
+		droppedPackets++;
+		droppedCounter.increment();
+		demodRingBuffer.flush();	// the demodulator will drop the queued packets
+		return null;
+	}
+
+	/**
+	 * Delivers a (filled) buffer from getBuffer() to the demodulator.
+	 *
+	 * @param demodBuffer	buffer filled with baseband samples
+	 */
+	public void deliverBuffer(SamplePacket demodBuffer) {
+		demodRingBuffer.publish();    // deliver packet
+	}
+
+	/**
+	 * Delivers an empty packet that marks the end of the stream (see SamplePacket.isEndOfStream()).
+	 * The demodulator processes the queued packets, passes the mark on to its AudioSink and stops.
+	 *
+	 * @return false if no buffer was available (see getBuffer())
+	 */
+	public boolean deliverEndOfStream() {
+		SamplePacket demodBuffer = getBuffer();
+		if(demodBuffer == null)
+			return false;
+		demodBuffer.setEndOfStream(true);
+		deliverBuffer(demodBuffer);
+		return true;
+	}
+
+	/**
+	 * Will shift the channel to baseband and decimate the signal with the xlatingFilter.
+	 *
+	 * @param samples		converted samples of the source
+	 * @param samplePacket	sample packet that is filled with the shifted and decimated samples
+	 * @return false if no filter can be created for the source rate (samplePacket is not changed)
+	 */
+	private boolean xlateIntoSamplePacket(SamplePacket samples, SamplePacket samplePacket) {
+		if(!updateXlatingFilter(samples.getSampleRate()))
+			return false;
+		xlatingFilter.setShiftFrequency(frequency - samples.getFrequency());
+		xlatingFilter.filter(samples, samplePacket, 0, samples.size());
+		return true;
+	}
+
+	/**
+	 * (Re-)creates the xlatingFilter if the source rate changed.
+	 *
+	 * @param sampleRate	sample rate of the source
+	 * @return false if no filter can be created for the source rate
+	 */
+	private boolean updateXlatingFilter(int sampleRate) {
+		if(xlatingFilter == null || xlatingFilter.getSampleRate() != sampleRate) {
+			if(sampleRate == xlatingFailedSampleRate)
+				return false;
+			int decimation = sampleRate / XLATING_MIN_OUTPUT_RATE;
+			int outputRate = sampleRate / decimation;
+			xlatingFilter = FrequencyXlatingFirFilter.createLowPass(decimation, 1, sampleRate, XLATING_CUT_OFF * outputRate,
+					(1 - 2 * XLATING_CUT_OFF) * outputRate, XLATING_ATTENUATION);
+			if(xlatingFilter == null) {
+				Log.e(LOGTAG, "updateXlatingFilter: could not create xlating filter for " + sampleRate + " Sps. Using the mixer instead.");
+				xlatingFailedSampleRate = sampleRate;
+				return false;
+			}
+			Log.d(LOGTAG, "updateXlatingFilter: created xlating filter with " + xlatingFilter.getNumberOfTaps()
+					+ " taps. Decimation=" + decimation + " Output rate=" + outputRate);
+		}
+		return true;
+	}
+}
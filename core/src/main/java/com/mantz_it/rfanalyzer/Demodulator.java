@@ -1,8 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.util.Log;
-
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -10,7 +7,7 @@ import java.util.concurrent.TimeUnit;
  *
  * Module:      Demodulator.java
  * Description: This class implements demodulation of various analog radio modes (FM, AM, SSB).
- *              It runs as a separate thread. It will read raw complex samples from a queue,
+ *              It runs as a separate thread. It will read raw complex samples from a ring buffer,
  *              process them (channel selection, filtering, demodulating) and forward the to
  *              an AudioSink thread.
  *
@@ -34,21 +31,24 @@ import java.util.concurrent.TimeUnit;
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
  */
 public class Demodulator extends Thread {
-	private boolean stopRequested = true;
+	private volatile boolean stopRequested = true;
+	private volatile boolean endOfStreamReached = false;	// true if the demodulator stopped at the end of the stream
+	private volatile boolean lossless = false;		// true: wait for the audio sink instead of dropping samples
+	private volatile long droppedPackets = 0;		// demodulated packets that were dropped because the audio sink was too slow
 	private static final String LOGTAG = "Demodulator";
-	private static final int AUDIO_RATE = 31250;	// Even though this is not a proper audio rate, the Android system can
-													// handle it properly and it is a integer fraction of the input rate (1MHz).
-	// The quadrature rate is the sample rate that is used for the demodulation:
-	private static final int[] QUADRATURE_RATE = {	1,				// off; this value is not 0 to avoid divide by zero errors!
-													2*AUDIO_RATE,	// AM
-													2*AUDIO_RATE,	// nFM
-													8*AUDIO_RATE,	// wFM
-													2*AUDIO_RATE,	// LSB
-													2*AUDIO_RATE};	// USB
-	public static final int INPUT_RATE = 1000000;	// Expected rate of the incoming samples
+	private PipelineMetrics.Counter outCounter = PipelineMetrics.counter(PipelineMetrics.DEMODULATOR_OUT);
+	private PipelineMetrics.Counter droppedCounter = PipelineMetrics.counter(PipelineMetrics.DEMODULATOR_DROPPED);
+	// The quadrature rate is the sample rate that is used for the demodulation. It is independent
+	// from the audio rate, because the AudioSink resamples to the audio rate:
+	private static final int[] QUADRATURE_RATE = {	1,			// off; this value is not 0 to avoid divide by zero errors!
+													62500,		// AM
+													62500,		// nFM
+													250000,		// wFM
+													62500,		// LSB
+													62500};		// USB
 
 	// DECIMATION
-	private Decimator decimator;	// will do INPUT_RATE --> QUADRATURE_RATE
+	private Decimator decimator;	// will do input rate (any rate of the source) --> QUADRATURE_RATE
 
 	// FILTERING (This is the channel filter controlled by the user)
 	private static final int USER_FILTER_ATTENUATION = 20;
@@ -82,31 +82,68 @@ public class Demodulator extends Thread {
 	public int demodulationMode;
 
 	// AUDIO OUTPUT
-	private AudioSink audioSink = null;		// Will do QUADRATURE_RATE --> AUDIO_RATE and audio output
+	private AudioSink audioSink = null;		// Will do QUADRATURE_RATE --> audio rate and audio output
 
 	/**
-	 * Constructor. Creates a new demodulator block reading its samples from the given input queue and
-	 * returning the buffers to the given output queue. Expects input samples to be at baseband (mixing
-	 * is done by the scheduler)
+	 * Constructor. Creates a new demodulator block reading its samples from the given input ring
+	 * buffer. Expects input samples to be at baseband (mixing is done by the scheduler)
 	 *
-	 * @param inputQueue	Queue that delivers received baseband signals
-	 * @param outputQueue	Queue to return used buffers from the inputQueue
-	 * @param packetSize	Size of the packets in the input queue
+	 * @param inputRingBuffer	Ring buffer that delivers received baseband signals
+	 * @param packetSize		Size of the packets in the input ring buffer
+	 * @param audioSink			AudioSink for the demodulated signal (started and stopped by the demodulator),
+	 *                          e.g. playing on the device or writing to a WAV file
 	 */
-	public Demodulator (ArrayBlockingQueue<SamplePacket> inputQueue, ArrayBlockingQueue<SamplePacket> outputQueue, int packetSize) {
+	public Demodulator (RingBuffer<SamplePacket> inputRingBuffer, int packetSize, AudioSink audioSink) {
 		// Create internal sample buffers:
 		// Note that we create the buffers for the case that there is no downsampling necessary
 		// All other cases with input decimation > 1 are also possible because they only need
 		// smaller buffers.
 		this.quadratureSamples = new SamplePacket(packetSize);
-
-		// Create Audio Sink
-		this.audioSink = new AudioSink(packetSize, AUDIO_RATE);
+		this.audioSink = audioSink;
 
 		// Create Decimator block
-		// Note that the decimator directly reads from the inputQueue and also returns processed packets to the
-		// output queue.
-		this.decimator = new Decimator(QUADRATURE_RATE[demodulationMode], packetSize, inputQueue, outputQueue);
+		// Note that the decimator directly reads from the input ring buffer and also releases the processed packets.
+		this.decimator = new Decimator(QUADRATURE_RATE[demodulationMode], packetSize, inputRingBuffer);
+	}
+
+	/**
+	 * Constructor. Creates a new demodulator block for the given channel of the scheduler.
+	 *
+	 * @param channel		DemodulationChannel that delivers the baseband signal
+	 * @param packetSize	Size of the packets in the ring buffer of the channel
+	 * @param audioSink		AudioSink for the demodulated signal
+	 */
+	public Demodulator (DemodulationChannel channel, int packetSize, AudioSink audioSink) {
+		this(channel.getDemodRingBuffer(), packetSize, audioSink);
+	}
+
+	/**
+	 * @return the AudioSink of this demodulator
+	 */
+	public AudioSink getAudioSink() {
+		return audioSink;
+	}
+
+	public boolean isLossless() {
+		return lossless;
+	}
+
+	/**
+	 * In lossless mode the demodulator waits for the AudioSink to free a buffer instead of
+	 * dropping the demodulated samples (used for offline processing, see BatchProcessor). If the
+	 * AudioSink stops (e.g. because its output could not be opened), the demodulator stops as well.
+	 *
+	 * @param lossless	true to wait for the audio sink; false to drop samples if it is too slow
+	 */
+	public void setLossless(boolean lossless) {
+		this.lossless = lossless;
+	}
+
+	/**
+	 * @return number of packets that were dropped because the audio sink was too slow
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets;
 	}
 
 	/**
@@ -170,6 +207,21 @@ public class Demodulator extends Thread {
 		stopRequested = true;
 	}
 
+	/**
+	 * @return true if the demodulator is running; false if it was stopped or its audio sink failed (lossless mode)
+	 */
+	public boolean isRunning() {
+		return !stopRequested;
+	}
+
+	/**
+	 * @return true if the demodulator stopped because it received the end of the stream (see
+	 *         SamplePacket.isEndOfStream()). The audio sink then stops on its own after the last samples.
+	 */
+	public boolean isEndOfStreamReached() {
+		return endOfStreamReached;
+	}
+
 	@Override
 	public void run() {
 		SamplePacket inputSamples = null;
@@ -195,19 +247,43 @@ public class Demodulator extends Thread {
 			}
 
 			// filtering		[sample rate is QUADRATURE_RATE]
-			applyUserFilter(inputSamples, quadratureSamples);		// The result from filtering is stored in quadratureSamples
+			boolean endOfStream = inputSamples.isEndOfStream();
+			if(endOfStream)
+				inputSamples.setEndOfStream(false);
+			else {
+				applyUserFilter(inputSamples, quadratureSamples);		// The result from filtering is stored in quadratureSamples
+				quadratureSamples.setTimestamp(inputSamples.getTimestamp());
+			}
 
 			// return input samples to the decimator block:
 			decimator.returnDecimatedPacket(inputSamples);
 
-			// get buffer from audio sink
+			// get buffer from audio sink (in lossless mode: wait until the sink has freed one)
 			audioBuffer = audioSink.getPacketBuffer(1000);
+			while(audioBuffer == null && lossless && !stopRequested && audioSink.isRunning())
+				audioBuffer = audioSink.getPacketBuffer(1000);
+			if(audioBuffer == null && lossless && !stopRequested) {
+				Log.e(LOGTAG, "run: The audio sink stopped. stop.");
+				stopRequested = true;
+				break;
+			}
 
 			if(audioBuffer == null) {
 				Log.d(LOGTAG, "run: Audio buffer is null. skip this round...");
+				droppedPackets++;
+				droppedCounter.increment();
 				continue;
 			}
 
+			// Pass the end of the stream on to the audio sink and stop:
+			if(endOfStream) {
+				audioBuffer.setSize(0);
+				audioBuffer.setEndOfStream(true);
+				audioSink.enqueuePacket(audioBuffer);
+				endOfStreamReached = true;
+				break;
+			}
+
 			// demodulate		[sample rate is QUADRATURE_RATE]
 			switch (demodulationMode) {
 				case DEMODULATION_OFF:
@@ -237,12 +313,15 @@ public class Demodulator extends Thread {
 					Log.e(LOGTAG, "run: invalid demodulationMode: " + demodulationMode);
 			}
 
-			// play audio		[sample rate is QUADRATURE_RATE]
+			// play audio		[sample rate is QUADRATURE_RATE or QUADRATURE_RATE/2 (SSB); AudioSink converts to audio rate]
+			audioBuffer.setTimestamp(quadratureSamples.getTimestamp());
 			audioSink.enqueuePacket(audioBuffer);
+			outCounter.increment();
 		}
 
-		// Stop the audio sink thread:
-		audioSink.stopSink();
+		// Stop the audio sink thread (at the end of the stream it stops after the last samples):
+		if(!endOfStreamReached)
+			audioSink.stopSink();
 
 		// Stop the decimator thread:
 		decimator.stopDecimator();
@@ -290,7 +369,7 @@ public class Demodulator extends Thread {
 	 * @param input		incoming (modulated) samples
 	 * @param output	outgoing (demodulated) samples
 	 */
-	private void demodulateFM(SamplePacket input, SamplePacket output, int maxDeviation) {
+	void demodulateFM(SamplePacket input, SamplePacket output, int maxDeviation) {
 		float[] reIn = input.re();
 		float[] imIn = input.im();
 		float[] reOut = output.re();
@@ -327,7 +406,7 @@ public class Demodulator extends Thread {
 	 * @param input		incoming (modulated) samples
 	 * @param output	outgoing (demodulated) samples
 	 */
-	private void demodulateAM(SamplePacket input, SamplePacket output) {
+	void demodulateAM(SamplePacket input, SamplePacket output) {
 		float[] reIn = input.re();
 		float[] imIn = input.im();
 		float[] reOut = output.re();
@@ -361,7 +440,7 @@ public class Demodulator extends Thread {
 	 * @param output	outgoing (demodulated) samples
 	 * @param upperBand	if true: USB; if false: LSB
 	 */
-	private void demodulateSSB(SamplePacket input, SamplePacket output, boolean upperBand) {
+	void demodulateSSB(SamplePacket input, SamplePacket output, boolean upperBand) {
 		float[] reOut = output.re();
 
 		// complex band pass:
@@ -369,7 +448,7 @@ public class Demodulator extends Thread {
 				|| (upperBand && (((int) bandPassFilter.getHighCutOffFrequency()) != userFilterCutOff))
 				|| (!upperBand && (((int) bandPassFilter.getLowCutOffFrequency()) != -userFilterCutOff))) {
 			// We have to (re-)create the band pass filter:
-			this.bandPassFilter = ComplexFirFilter.createBandPass(	2,		// Decimate by 2; => AUDIO_RATE
+			this.bandPassFilter = ComplexFirFilter.createBandPass(	2,		// Decimate by 2; AudioSink will resample to audio rate
 																	1,
 																	input.getSampleRate(),
 																	upperBand ? 200f : -userFilterCutOff,
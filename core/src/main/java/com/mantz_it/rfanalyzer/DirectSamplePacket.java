@@ -0,0 +1,323 @@
+package com.mantz_it.rfanalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * <h1>RF Analyzer - Direct Sample Packet</h1>
+ *
+ * Module:      DirectSamplePacket.java
+ * Description: Variant of the SamplePacket that stores its samples in direct (off-heap) memory
+ *              instead of two float arrays. The memory is either allocated by the packet itself
+ *              or taken from a SampleBufferArena (and returned with free()). Two layouts are
+ *              supported:
+ *              - LAYOUT_SPLIT:        all real parts followed by all imaginary parts
+ *              - LAYOUT_INTERLEAVED:  re, im, re, im, ... (the format native code and GPU APIs expect)
+ *
+ *              The IQConverters fill it directly from the (direct) bytes of a source and the
+ *              FrequencyXlatingFirFilter reads from it, so the samples at the full source rate never
+ *              have to be stored on the Java heap.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class DirectSamplePacket {
+	private ByteBuffer block;			// backing memory
+	private SampleBufferArena arena;	// arena the block was taken from (null if allocated by the packet)
+	private FloatBuffer re;				// real parts (LAYOUT_SPLIT) or interleaved samples (LAYOUT_INTERLEAVED)
+	private FloatBuffer im;				// imaginary parts (LAYOUT_SPLIT) or null
+	private int layout;
+	private int capacity;				// max. number of samples
+	private long frequency;				// center frequency
+	private int sampleRate;				// sample rate
+	private int size;					// number of samples in this packet
+	private long timestamp;				// System.nanoTime() when the (oldest) samples were received from the source; 0 if unknown
+
+	public static final int LAYOUT_SPLIT = 0;
+	public static final int LAYOUT_INTERLEAVED = 1;
+
+	/**
+	 * Constructor. Allocates direct memory for the given number of samples.
+	 *
+	 * @param capacity	max. number of samples in this packet
+	 * @param layout	LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 */
+	public DirectSamplePacket(int capacity, int layout) {
+		this(ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()), null, layout);
+	}
+
+	/**
+	 * Constructor. Takes a block from the arena. The packet can hold blockSize/8 samples.
+	 * Use free() to return the block to the arena.
+	 *
+	 * @param arena		arena that provides the memory
+	 * @param layout	LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 * @throws IllegalStateException if the arena has no free block
+	 */
+	public DirectSamplePacket(SampleBufferArena arena, int layout) {
+		this(allocateBlock(arena), arena, layout);
+	}
+
+	private DirectSamplePacket(ByteBuffer block, SampleBufferArena arena, int layout) {
+		if(layout != LAYOUT_SPLIT && layout != LAYOUT_INTERLEAVED)
+			throw new IllegalArgumentException("invalid layout: " + layout);
+		this.block = block;
+		this.arena = arena;
+		this.layout = layout;
+		this.capacity = block.capacity() / 8;
+		if(layout == LAYOUT_SPLIT) {
+			block.clear().limit(capacity * 4);
+			this.re = block.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+			block.clear().position(capacity * 4).limit(capacity * 8);
+			this.im = block.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+			block.clear();
+		} else {
+			this.re = block.asFloatBuffer();
+			this.im = null;
+		}
+	}
+
+	private static ByteBuffer allocateBlock(SampleBufferArena arena) {
+		ByteBuffer block = arena.allocate();
+		if(block == null)
+			throw new IllegalStateException("no free block in the arena");
+		return block;
+	}
+
+	/**
+	 * Returns the memory to the arena (if it was taken from an arena). The packet must not
+	 * be used afterwards.
+	 */
+	public void free() {
+		if(arena != null && block != null)
+			arena.release(block);
+		block = null;
+		re = null;
+		im = null;
+		capacity = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return LAYOUT_SPLIT or LAYOUT_INTERLEAVED
+	 */
+	public int getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return the backing direct memory (e.g. to pass it to native code)
+	 */
+	public ByteBuffer getBuffer() {
+		return block;
+	}
+
+	/**
+	 * @return view of the real parts (LAYOUT_SPLIT) or of the interleaved samples (LAYOUT_INTERLEAVED)
+	 */
+	public FloatBuffer re() {
+		return re;
+	}
+
+	/**
+	 * @return view of the imaginary parts (LAYOUT_SPLIT) or null (LAYOUT_INTERLEAVED)
+	 */
+	public FloatBuffer im() {
+		return im;
+	}
+
+	/**
+	 * Returns the real part at the specified index
+	 *
+	 * @param i		index
+	 * @return real part of the sample with the given index
+	 */
+	public float re(int i) {
+		return layout == LAYOUT_SPLIT ? re.get(i) : re.get(2 * i);
+	}
+
+	/**
+	 * Returns the imaginary part at the specified index
+	 *
+	 * @param i		index
+	 * @return imaginary part of the sample with the given index
+	 */
+	public float im(int i) {
+		return layout == LAYOUT_SPLIT ? im.get(i) : re.get(2 * i + 1);
+	}
+
+	/**
+	 * Sets the sample at the specified index
+	 *
+	 * @param i		index
+	 * @param re	real part
+	 * @param im	imaginary part
+	 */
+	public void set(int i, float re, float im) {
+		if(layout == LAYOUT_SPLIT) {
+			this.re.put(i, re);
+			this.im.put(i, im);
+		} else {
+			this.re.put(2 * i, re);
+			this.re.put(2 * i + 1, im);
+		}
+	}
+
+	/**
+	 * @return max. number of samples in this packet
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of samples in this packet
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sets a new size (number of samples in this packet)
+	 * @param size	number of (valid) samples in this packet
+	 */
+	public void setSize(int size) {
+		this.size = Math.min(size, capacity);
+	}
+
+	/**
+	 * @return center frequency at which these samples where recorded
+	 */
+	public long getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * @return sample rate at which these samples were recorded
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Sets the center frequency for this sample packet
+	 * @param frequency		center frequency at which these samples were recorded
+	 */
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	/**
+	 * Sets the sample rate for this sample packet
+	 * @param sampleRate		sample rate at which these samples were recorded
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * @return System.nanoTime() when the (oldest) samples of this packet were received from the source
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Sets the timestamp for this sample packet
+	 * @param timestamp		System.nanoTime() when the samples were received from the source
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Appends the samples of this packet to a (heap) SamplePacket (as far as there is space left)
+	 * and copies sample rate and frequency. The timestamp is copied if the destination was
+	 * empty (it always refers to the oldest samples).
+	 *
+	 * @param destination	packet to which the samples are appended
+	 * @return number of copied samples
+	 */
+	public int copyTo(SamplePacket destination) {
+		return copyTo(destination, 0);
+	}
+
+	/**
+	 * Same as copyTo(SamplePacket) but starts at the given sample of this packet. This is used
+	 * to distribute one packet over several smaller packets.
+	 *
+	 * @param destination	packet to which the samples are appended
+	 * @param offset		index of the first sample that is copied
+	 * @return number of copied samples
+	 */
+	public int copyTo(SamplePacket destination, int offset) {
+		int count = Math.min(size - offset, destination.capacity() - destination.size());
+		int start = destination.size();
+		if(start == 0)
+			destination.setTimestamp(timestamp);
+		if(layout == LAYOUT_SPLIT) {
+			// bulk copies:
+			re.clear().position(offset);
+			re.get(destination.re(), start, count);
+			im.clear().position(offset);
+			im.get(destination.im(), start, count);
+		} else {
+			float[] reOut = destination.re(), imOut = destination.im();
+			for (int i = 0; i < count; i++) {
+				reOut[start + i] = re.get(2 * (offset + i));
+				imOut[start + i] = re.get(2 * (offset + i) + 1);
+			}
+		}
+		destination.setSize(start + count);
+		destination.setSampleRate(sampleRate);
+		destination.setFrequency(frequency);
+		return count;
+	}
+
+	/**
+	 * Appends the samples of a (heap) SamplePacket to this packet (as far as there is space left)
+	 * and copies sample rate and frequency.
+	 *
+	 * @param source	packet from which the samples are copied
+	 * @return number of copied samples
+	 */
+	public int copyFrom(SamplePacket source) {
+		int count = Math.min(source.size(), capacity - size);
+		if(layout == LAYOUT_SPLIT) {
+			// bulk copies:
+			re.clear().position(size);
+			re.put(source.re(), 0, count);
+			im.clear().position(size);
+			im.put(source.im(), 0, count);
+		} else {
+			float[] reIn = source.re(), imIn = source.im();
+			for (int i = 0; i < count; i++) {
+				re.put(2 * (size + i), reIn[i]);
+				re.put(2 * (size + i) + 1, imIn[i]);
+			}
+		}
+		if(size == 0)
+			timestamp = source.getTimestamp();
+		size += count;
+		sampleRate = source.getSampleRate();
+		frequency = source.getFrequency();
+		return count;
+	}
+}
@@ -22,8 +22,11 @@
 
 package com.mantz_it.rfanalyzer;
 
-
-public class FFT {
+/**
+ * Reference (radix-2) implementation of the FftEngine interface. See Radix4FFT for a faster
+ * implementation that uses precomputed plans.
+ */
+public class FFT implements FftEngine {
 
 	int n, m;
 
@@ -31,7 +34,7 @@ public class FFT {
 	float[] cos;
 	float[] sin;
 
-	float[] window;
+	FftWindow window;
 
 	public FFT(int n) {
 		this.n = n;
@@ -65,23 +68,41 @@ public class FFT {
 	}
 
 	protected void makeWindow() {
-		// Make a blackman window:
+		// Use a blackman window by default (the table is shared with all other users, see FftWindow):
 		// w(n)=0.42-0.5cos{(2*PI*n)/(N-1)}+0.08cos{(4*PI*n)/(N-1)};
-		window = new float[n];
-		for(int i = 0; i < window.length; i++)
-			window[i] = (float) (0.42 - 0.5 * Math.cos(2*Math.PI*i/(n-1))
-					+ 0.08 * Math.cos(4*Math.PI*i/(n-1)));
+		window = FftWindow.getWindow(FftWindow.BLACKMAN, n);
 	}
 
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	/**
+	 * @return a copy of the window coefficients (the table itself is shared with all other users
+	 *         of the window; use getFftWindow() to access it without copying)
+	 */
 	public float[] getWindow() {
+		return window.getCoefficients().clone();
+	}
+
+	public FftWindow getFftWindow() {
 		return window;
 	}
 
+	/**
+	 * Changes the window that is used by applyWindow(). Does not allocate anything.
+	 *
+	 * @param window	window of the same size as the FFT (see FftWindow.getWindow())
+	 */
+	public void setFftWindow(FftWindow window) {
+		if(window.getSize() != n)
+			throw new IllegalArgumentException("Window size must match the FFT size");
+		this.window = window;
+	}
+
 	public void applyWindow(float[] re, float[] im) {
-		for (int i = 0; i < window.length; i++) {
-			re[i] = window[i] * re[i];
-			im[i] = window[i] * im[i];
-		}
+		window.apply(re, im);
 	}
 
 
@@ -104,6 +125,7 @@ public class FFT {
 	 *   Permission to copy and use this program is granted
 	 *   as long as this header is included.
 	 ****************************************************************/
+	@Override
 	public void fft(float[] x, float[] y)
 	{
 		int i,j,k,n1,n2,a;
@@ -0,0 +1,46 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - FFT Engine</h1>
+ *
+ * Module:      FftEngine.java
+ * Description: This interface represents an implementation of the complex forward FFT.
+ *              It allows the signal processing blocks to switch between different FFT
+ *              algorithms (e.g. the radix-2 reference implementation in FFT and the
+ *              radix-4 implementation in Radix4FFT) without changing their code.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public interface FftEngine {
+
+	/**
+	 * @return length of the FFT (number of complex samples)
+	 */
+	public int getSize();
+
+	/**
+	 * Calculates the in-place forward FFT (exp(-j*2*PI*k*n/N)) of the given complex samples.
+	 * The result is not normalized and is stored in natural order.
+	 *
+	 * @param re	real parts of the input samples (will be overwritten with the result)
+	 * @param im	imaginary parts of the input samples (will be overwritten with the result)
+	 */
+	public void fft(float[] re, float[] im);
+}
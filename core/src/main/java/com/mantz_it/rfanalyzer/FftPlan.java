@@ -0,0 +1,200 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.HashMap;
+
+/**
+ * <h1>RF Analyzer - FFT Plan</h1>
+ *
+ * Module:      FftPlan.java
+ * Description: This class holds all precomputed tables that are needed by the Radix4FFT
+ *              for a specific FFT size: The bit-reversal permutation (as a list of swap
+ *              pairs) and the twiddle factors of each radix-4 stage laid out in the order
+ *              in which they are accessed. It also holds the post-processing twiddles that
+ *              are used by the RealFFT, which computes a real-input FFT of length 2*size
+ *              with a complex FFT of this size. Plans are immutable and cached per size,
+ *              so all FFT instances of the same size share the same tables.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FftPlan {
+	private final int size;						// FFT size
+	private final int log2Size;					// size = 2^log2Size
+	private final boolean leadingRadix2Stage;	// true if log2Size is odd (one radix-2 stage before the radix-4 stages)
+	private final int[] swapA;					// bit-reversal: index pairs (swapA[i], swapB[i]) have to be swapped
+	private final int[] swapB;
+	private final int[] stageQuarterSizes;		// quarter size (h) of the butterfly groups of every radix-4 stage
+	private final int[] stageOffsets;			// start index of each stage within the twiddles array
+	private final float[] twiddles;				// per stage and per j: re(w), im(w), re(w^2), im(w^2), re(w^3), im(w^3)
+	private final float[] realTwiddlesRe;		// exp(-j*2*PI*k/(2*size)) for k = 0 .. size/2 (used by RealFFT)
+	private final float[] realTwiddlesIm;
+
+	private static final HashMap<Integer, FftPlan> planCache = new HashMap<Integer, FftPlan>();
+
+	/**
+	 * Returns the (cached) plan for the given FFT size. The plan is created on the first
+	 * request and then reused by all subsequent callers.
+	 *
+	 * @param size	FFT size (must be a power of 2)
+	 * @return plan for the given size
+	 */
+	public static FftPlan getPlan(int size) {
+		synchronized (planCache) {
+			FftPlan plan = planCache.get(size);
+			if(plan == null) {
+				plan = new FftPlan(size);
+				planCache.put(size, plan);
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Private Constructor. Use getPlan() to get a (cached) instance.
+	 *
+	 * @param size	FFT size (must be a power of 2)
+	 */
+	private FftPlan(int size) {
+		if(size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("FFT length must be power of 2");
+		this.size = size;
+		this.log2Size = Integer.numberOfTrailingZeros(size);
+		this.leadingRadix2Stage = (log2Size & 1) == 1;
+
+		// Bit-reversal permutation. Only store the pairs that actually have to be swapped:
+		int pairs = 0;
+		int[] reversed = new int[size];
+		for (int i = 0; i < size; i++) {
+			reversed[i] = log2Size == 0 ? 0 : Integer.reverse(i) >>> (32 - log2Size);
+			if(i < reversed[i])
+				pairs++;
+		}
+		swapA = new int[pairs];
+		swapB = new int[pairs];
+		pairs = 0;
+		for (int i = 0; i < size; i++) {
+			if(i < reversed[i]) {
+				swapA[pairs] = i;
+				swapB[pairs] = reversed[i];
+				pairs++;
+			}
+		}
+
+		// Twiddle factors for the radix-4 stages. A stage with quarter size h combines
+		// groups of 4*h samples and needs w^1, w^2 and w^3 with w = exp(-j*2*PI*k/(4*h))
+		int stages = (log2Size - (leadingRadix2Stage ? 1 : 0)) / 2;
+		stageQuarterSizes = new int[stages];
+		stageOffsets = new int[stages];
+		int twiddleCount = 0;
+		int h = leadingRadix2Stage ? 2 : 1;
+		for (int s = 0; s < stages; s++) {
+			stageQuarterSizes[s] = h;
+			stageOffsets[s] = twiddleCount;
+			twiddleCount += 6 * h;
+			h *= 4;
+		}
+		twiddles = new float[twiddleCount];
+		for (int s = 0; s < stages; s++) {
+			h = stageQuarterSizes[s];
+			int offset = stageOffsets[s];
+			for (int k = 0; k < h; k++) {
+				double phi = -2 * Math.PI * k / (4.0 * h);
+				twiddles[offset + 6*k]     = (float) Math.cos(phi);
+				twiddles[offset + 6*k + 1] = (float) Math.sin(phi);
+				twiddles[offset + 6*k + 2] = (float) Math.cos(2 * phi);
+				twiddles[offset + 6*k + 3] = (float) Math.sin(2 * phi);
+				twiddles[offset + 6*k + 4] = (float) Math.cos(3 * phi);
+				twiddles[offset + 6*k + 5] = (float) Math.sin(3 * phi);
+			}
+		}
+
+		// Post-processing twiddles for a real-input FFT of length 2*size:
+		realTwiddlesRe = new float[size/2 + 1];
+		realTwiddlesIm = new float[size/2 + 1];
+		for (int k = 0; k <= size/2; k++) {
+			double phi = -2 * Math.PI * k / (2.0 * size);
+			realTwiddlesRe[k] = (float) Math.cos(phi);
+			realTwiddlesIm[k] = (float) Math.sin(phi);
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getLog2Size() {
+		return log2Size;
+	}
+
+	/**
+	 * @return true if a single radix-2 stage has to be done before the radix-4 stages (log2(size) is odd)
+	 */
+	public boolean hasLeadingRadix2Stage() {
+		return leadingRadix2Stage;
+	}
+
+	/**
+	 * @return first indices of the index pairs that have to be swapped for the bit-reversal
+	 */
+	public int[] getSwapA() {
+		return swapA;
+	}
+
+	/**
+	 * @return second indices of the index pairs that have to be swapped for the bit-reversal
+	 */
+	public int[] getSwapB() {
+		return swapB;
+	}
+
+	/**
+	 * @return quarter size of the butterfly groups for each radix-4 stage
+	 */
+	public int[] getStageQuarterSizes() {
+		return stageQuarterSizes;
+	}
+
+	/**
+	 * @return start index of each radix-4 stage within the twiddle table
+	 */
+	public int[] getStageOffsets() {
+		return stageOffsets;
+	}
+
+	/**
+	 * @return twiddle table (see class description for the layout)
+	 */
+	public float[] getTwiddles() {
+		return twiddles;
+	}
+
+	/**
+	 * @return real parts of the post-processing twiddles of a real-input FFT of length 2*size
+	 */
+	public float[] getRealTwiddlesRe() {
+		return realTwiddlesRe;
+	}
+
+	/**
+	 * @return imaginary parts of the post-processing twiddles of a real-input FFT of length 2*size
+	 */
+	public float[] getRealTwiddlesIm() {
+		return realTwiddlesIm;
+	}
+}
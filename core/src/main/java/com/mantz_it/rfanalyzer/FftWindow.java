@@ -0,0 +1,257 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.HashMap;
+
+/**
+ * <h1>RF Analyzer - FFT Window</h1>
+ *
+ * Module:      FftWindow.java
+ * Description: This class holds the coefficients of a window function for a specific FFT size
+ *              together with its correction factors:
+ *              - coherent gain (mean of the coefficients): the window attenuates the amplitude
+ *                of a tone by this factor.
+ *              - equivalent noise bandwidth (ENBW, in bins): each bin collects the noise of
+ *                ENBW rectangular bins.
+ *              Windows are immutable and cached per (type, size), so all FFT instances of the
+ *              same size share the same coefficient table and switching the window at runtime
+ *              does not allocate anything after the first use.
+ *              The corrections are applied in the dB stage (see getCorrectionDb() and PowerToDb)
+ *              instead of scaling the coefficients, so the windows keep their textbook form.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FftWindow {
+	public static final int BLACKMAN = 0;			// classic Blackman (3 terms); the former default of the app
+	public static final int HANN = 1;
+	public static final int HAMMING = 2;
+	public static final int BLACKMAN_HARRIS = 3;	// 4 terms, -92 dB side lobes
+	public static final int FLAT_TOP = 4;			// 5 terms, amplitude error < 0.01 dB between two bins
+	public static final int KAISER = 5;				// side lobes adjustable by beta
+	public static final int NUTTALL = 6;			// 4 terms, continuous first derivative
+	public static final int RECTANGULAR = 7;		// no window
+	public static final String[] NAMES = {"blackman", "hann", "hamming", "blackman-harris", "flattop", "kaiser", "nuttall", "rectangular"};	// index = type
+	public static final double DEFAULT_KAISER_BETA = 8.6;
+
+	public static final int CORRECTION_NONE = 0;		// raw power (relative to a rectangular window: attenuated by the window)
+	public static final int CORRECTION_AMPLITUDE = 1;	// a full scale tone reads 0 dB (independent of the window)
+	public static final int CORRECTION_NOISE = 2;		// noise reads its power per rectangular bin (independent of the window)
+
+	// coefficients of the cosine-sum windows: w(i) = a0 - a1*cos(x) + a2*cos(2x) - a3*cos(3x) + a4*cos(4x)
+	private static final double[][] COSINE_TERMS = {
+			{0.42, 0.5, 0.08},										// BLACKMAN
+			{0.5, 0.5},												// HANN
+			{0.54, 0.46},											// HAMMING
+			{0.35875, 0.48829, 0.14128, 0.01168},					// BLACKMAN_HARRIS
+			{0.21557895, 0.41663158, 0.277263158, 0.083578947, 0.006947368},	// FLAT_TOP
+			null,													// KAISER
+			{0.355768, 0.487396, 0.144232, 0.012604},				// NUTTALL
+			{1}};													// RECTANGULAR
+
+	private final int type;				// one of the type constants
+	private final int size;				// number of coefficients (FFT size)
+	private final double beta;			// beta of the Kaiser window (0 for other types)
+	private final float[] coefficients;
+	private final double coherentGain;	// sum(w) / size
+	private final double enbw;			// size * sum(w^2) / sum(w)^2 (in bins)
+
+	private static final HashMap<String, FftWindow> windowCache = new HashMap<String, FftWindow>();
+
+	/**
+	 * Returns the (cached) window of the given type and size. The Kaiser window uses
+	 * DEFAULT_KAISER_BETA (see getKaiserWindow()).
+	 *
+	 * @param type		one of the type constants (e.g. BLACKMAN)
+	 * @param size		number of coefficients (FFT size)
+	 * @return window for the given type and size
+	 */
+	public static FftWindow getWindow(int type, int size) {
+		return getWindow(type, size, type == KAISER ? DEFAULT_KAISER_BETA : 0);
+	}
+
+	/**
+	 * Returns the (cached) Kaiser window of the given size.
+	 *
+	 * @param size		number of coefficients (FFT size)
+	 * @param beta		shape parameter (>= 0): larger values give lower side lobes and a wider main lobe
+	 * @return Kaiser window for the given size and beta
+	 */
+	public static FftWindow getKaiserWindow(int size, double beta) {
+		if(beta < 0)
+			throw new IllegalArgumentException("Beta must not be negative");
+		return getWindow(KAISER, size, beta);
+	}
+
+	private static FftWindow getWindow(int type, int size, double beta) {
+		if(type < 0 || type >= NAMES.length)
+			throw new IllegalArgumentException("Invalid window type: " + type);
+		if(size < 1)
+			throw new IllegalArgumentException("Window size must be positive");
+		String key = type + ":" + size + ":" + beta;
+		synchronized (windowCache) {
+			FftWindow window = windowCache.get(key);
+			if(window == null) {
+				window = new FftWindow(type, size, beta);
+				windowCache.put(key, window);
+			}
+			return window;
+		}
+	}
+
+	/**
+	 * Private Constructor. Use getWindow() to get a (cached) instance.
+	 *
+	 * @param type		one of the type constants
+	 * @param size		number of coefficients
+	 * @param beta		beta of the Kaiser window
+	 */
+	private FftWindow(int type, int size, double beta) {
+		this.type = type;
+		this.size = size;
+		this.beta = beta;
+		this.coefficients = new float[size];
+
+		// symmetric windows (like the former Blackman window of the FFT class):
+		double denominator = Math.max(1, size - 1);
+		double kaiserNorm = besselI0(beta);
+		for (int i = 0; i < size; i++) {
+			double w;
+			if(type == KAISER) {
+				double r = 2 * i / denominator - 1;
+				w = besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / kaiserNorm;
+			} else {
+				double[] terms = COSINE_TERMS[type];
+				w = 0;
+				for (int k = 0; k < terms.length; k++)
+					w += (k % 2 == 0 ? 1 : -1) * terms[k] * Math.cos(2 * Math.PI * k * i / denominator);
+			}
+			coefficients[i] = (float) w;
+		}
+
+		double sum = 0;
+		double squareSum = 0;
+		for (float w : coefficients) {
+			sum += w;
+			squareSum += w * w;
+		}
+		this.coherentGain = sum / size;
+		this.enbw = size * squareSum / (sum * sum);
+	}
+
+	/**
+	 * Modified Bessel function of the first kind, order 0 (power series).
+	 */
+	private static double besselI0(double x) {
+		double sum = 1;
+		double term = 1;
+		double halfX = x / 2;
+		for (int k = 1; k < 500 && term > sum * 1e-17; k++) {
+			term *= (halfX / k) * (halfX / k);
+			sum += term;
+		}
+		return sum;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getName() {
+		return NAMES[type];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return beta of the Kaiser window (0 for other types)
+	 */
+	public double getBeta() {
+		return beta;
+	}
+
+	/**
+	 * @return the coefficients (shared by all users of this window; must not be modified)
+	 */
+	public float[] getCoefficients() {
+		return coefficients;
+	}
+
+	/**
+	 * @return coherent gain: mean of the coefficients (1 for the rectangular window)
+	 */
+	public double getCoherentGain() {
+		return coherentGain;
+	}
+
+	/**
+	 * @return equivalent noise bandwidth in bins (1 for the rectangular window)
+	 */
+	public double getEnbw() {
+		return enbw;
+	}
+
+	/**
+	 * Returns the offset that has to be added to the dB values of a spectrum calculated with
+	 * this window (and normalized by the FFT size, see PowerToDb.getFftOffset()).
+	 *
+	 * @param correction	CORRECTION_NONE, CORRECTION_AMPLITUDE or CORRECTION_NOISE
+	 * @return offset in dB
+	 */
+	public float getCorrectionDb(int correction) {
+		switch (correction) {
+			case CORRECTION_NONE:
+				return 0;
+			case CORRECTION_AMPLITUDE:
+				// tone power is attenuated by coherentGain^2
+				return (float) (-20 * Math.log10(coherentGain));
+			case CORRECTION_NOISE:
+				// noise power per bin is attenuated by coherentGain^2 and widened by enbw
+				return (float) (-20 * Math.log10(coherentGain) - 10 * Math.log10(enbw));
+			default:
+				throw new IllegalArgumentException("Invalid correction: " + correction);
+		}
+	}
+
+	/**
+	 * Multiplies the samples with the window.
+	 *
+	 * @param re	real parts (at least size values)
+	 * @param im	imaginary parts (at least size values)
+	 */
+	public void apply(float[] re, float[] im) {
+		for (int i = 0; i < size; i++) {
+			re[i] = coefficients[i] * re[i];
+			im[i] = coefficients[i] * im[i];
+		}
+	}
+
+	/**
+	 * @param name	name of the window (see NAMES)
+	 * @return type of the window or -1 if the name is unknown
+	 */
+	public static int getTypeByName(String name) {
+		for (int i = 0; i < NAMES.length; i++) {
+			if(NAMES[i].equalsIgnoreCase(name))
+				return i;
+		}
+		return -1;
+	}
+}
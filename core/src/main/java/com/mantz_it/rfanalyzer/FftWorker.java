@@ -0,0 +1,121 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - FFT Worker</h1>
+ *
+ * Module:      FftWorker.java
+ * Description: Worker thread of the ContinuousFft. It owns an FFT engine, a small queue of
+ *              (already windowed) segments and its own integrated power spectrum. The
+ *              ContinuousFft dispatches consecutive segments round robin to its workers and
+ *              combines the power spectra of all workers in a fixed order when a frame is
+ *              complete (see ContinuousFft.startWorkers()).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FftWorker extends Thread {
+	private ContinuousFft owner;
+	private FftEngine fftEngine;				// own instance (not shared with other workers)
+	private RingBuffer<SamplePacket> inputRingBuffer;	// windowed segments of the owner
+	private float[] power;						// integrated power of the processed segments (fft order, not normalized)
+	private long dispatchedSegments = 0;		// number of segments published by the owner (owner thread only)
+	private long processedSegments = 0;			// number of integrated segments (guarded by this)
+	private volatile boolean stopRequested = false;
+
+	private static final String LOGTAG = "FftWorker";
+	public static final int QUEUE_SIZE = 4;		// number of segments that can wait for each worker
+
+	/**
+	 * Constructor.
+	 *
+	 * @param owner		continuous fft that dispatches the segments
+	 * @param index		index of the worker (used for the thread name)
+	 */
+	public FftWorker(ContinuousFft owner, int index) {
+		super("FftWorker-" + index);
+		this.owner = owner;
+		this.fftEngine = new ParallelFFT(owner.getFftSize());
+		this.inputRingBuffer = RingBuffer.createSamplePacketRingBuffer(QUEUE_SIZE, owner.getFftSize());
+		this.power = new float[owner.getFftSize()];
+	}
+
+	/**
+	 * Waits for a free slot in the queue of this worker. Called by the owner.
+	 *
+	 * @return empty segment that has to be filled and published (publishSegment()); null if the worker is stopped
+	 */
+	public SamplePacket claimSegment() throws InterruptedException {
+		SamplePacket segment = inputRingBuffer.claim();
+		while (segment == null && !stopRequested)
+			segment = inputRingBuffer.claim(1000);
+		return segment;
+	}
+
+	/**
+	 * Passes the claimed segment to the worker. Called by the owner.
+	 */
+	public void publishSegment() {
+		dispatchedSegments++;
+		inputRingBuffer.publish();
+	}
+
+	/**
+	 * Waits until all published segments are integrated. Called by the owner; afterwards the
+	 * power spectrum can be read and cleared until the next segment is published.
+	 *
+	 * @return integrated power of the processed segments
+	 */
+	public synchronized float[] awaitPower() throws InterruptedException {
+		while (processedSegments < dispatchedSegments && !stopRequested)
+			wait(100);
+		return power;
+	}
+
+	/**
+	 * Will set the stopRequested flag so that the worker will terminate
+	 */
+	public void stopWorker() {
+		this.stopRequested = true;
+	}
+
+	@Override
+	public void run() {
+		Log.i(LOGTAG, "Worker started. (Thread: " + this.getName() + ")");
+		while (!stopRequested) {
+			SamplePacket segment;
+			try {
+				segment = inputRingBuffer.acquire(100);
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "run: Interrupted while waiting on input ring buffer. stop.");
+				break;
+			}
+			if(segment == null)
+				continue;
+			fftEngine.fft(segment.re(), segment.im());
+			ContinuousFft.integrate(segment.re(), segment.im(), power, owner.getIntegration());
+			inputRingBuffer.release(segment);
+			synchronized (this) {
+				processedSegments++;
+				notifyAll();
+			}
+		}
+		this.stopRequested = true;
+		Log.i(LOGTAG, "Worker stopped. (Thread: " + this.getName() + ")");
+	}
+}
@@ -0,0 +1,620 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <h1>RF Analyzer - File Source of IQ samples</h1>
+ *
+ * Module:      FileIQSource.java
+ * Description: Simple source of IQ sampling by reading from IQ files generated by the
+ *              HackRF. Just for testing.
+ *              In memory mapped mode the file is mapped into memory (in regions of up to
+ *              MAX_REGION_SIZE bytes) instead of being read through a stream. Packets are then
+ *              served as views of the mapped region by getPacketBuffer() (no system call and no
+ *              copy per packet; the Scheduler converts them directly into a DirectSamplePacket),
+ *              getPacket() copies them.
+ *              Seeking to any sample is O(1) and the source rewinds at the end of the file without
+ *              reopening it.
+ *              If the file cannot be mapped (e.g. no address space left in a 32 bit process), the
+ *              source falls back to stream mode.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FileIQSource implements IQSourceInterface {
+	private Callback callback = null;
+	private boolean repeat = false;
+	private int sampleRate = 0;
+	private long frequency = 0;
+	private int packetSize = 0;
+	private long sleepTime = 0;			// min. time (in us) between two getPacket() calls to simulate the sample rate
+	private boolean throttled = true;	// true: simulate the sample rate of real hardware
+	private long lastAccessTime = 0;	// timestamp of the last getPacket() call
+	private byte[] buffer = null;
+	private File file = null;
+	private String filename = null;
+	private FileInputStream fileInputStream = null;
+	private BufferedInputStream bufferedInputStream = null;
+	private boolean memoryMapped = false;		// memory mapped mode was requested
+	private boolean mapped = false;				// the file is actually mapped (false after a fall back to stream mode)
+	private FileChannel fileChannel = null;		// channel of the file (memory mapped mode)
+	private MappedByteBuffer mappedRegion = null;	// currently mapped part of the file (memory mapped mode)
+	private ByteBuffer packetView = null;		// view of mappedRegion that is positioned on the next packet
+	private long regionStart = 0;				// file offset of mappedRegion
+	private long fileSize = 0;					// size of the file in bytes
+	private long filePosition = 0;				// file offset of the next packet
+	private volatile long seekPosition = -1;	// file offset requested by seek (applied by getPacket()); -1 if none
+	private int bytesPerSample;
+	private IQConverter iqConverter;
+	private int fileFormat;
+	private static final String LOGTAG = "FileIQSource";
+	private static final long MAX_REGION_SIZE = 128L << 20;	// max. number of bytes that are mapped at once
+	public static final int FILE_FORMAT_8BIT_SIGNED = 0;
+	public static final int FILE_FORMAT_8BIT_UNSIGNED = 1;
+	public static final int FILE_FORMAT_12BIT_SIGNED = 2;
+
+	public FileIQSource(String filename, int sampleRate, long frequency, int packetSize, boolean repeat, int fileFormat) {
+		this(filename, sampleRate, frequency, packetSize, repeat, fileFormat, false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param filename		path of the IQ file
+	 * @param sampleRate	sample rate of the recording
+	 * @param frequency		center frequency of the recording
+	 * @param packetSize	size of the packets returned by getPacket() in bytes
+	 * @param repeat		true to start from the beginning at the end of the file
+	 * @param fileFormat	FILE_FORMAT_8BIT_SIGNED, ...
+	 * @param memoryMapped	true to map the file into memory instead of reading it through a stream
+	 */
+	public FileIQSource(String filename, int sampleRate, long frequency, int packetSize, boolean repeat, int fileFormat,
+						boolean memoryMapped) {
+		this.filename = filename;
+		this.file = new File(filename);
+		this.repeat = repeat;
+		this.memoryMapped = memoryMapped;
+		this.fileFormat = fileFormat;
+		this.sampleRate = sampleRate;
+		this.frequency = frequency;
+		this.packetSize = packetSize;
+		this.buffer = new byte[packetSize];
+		this.sleepTime = 1000000L * packetSize / 2 / sampleRate; // note: half packet size because of I and Q samples
+
+		switch (fileFormat) {
+			case FILE_FORMAT_8BIT_SIGNED:
+				iqConverter = new Signed8BitIQConverter();
+				break;
+			case FILE_FORMAT_8BIT_UNSIGNED:
+				iqConverter = new Unsigned8BitIQConverter();
+				break;
+			case FILE_FORMAT_12BIT_SIGNED:
+				iqConverter = new Signed12BitIQConverter();
+				break;
+			default:
+				Log.e(LOGTAG, "constructor: Invalid file format: " + fileFormat);
+				break;
+		}
+		iqConverter.setFrequency(frequency);
+		iqConverter.setSampleRate(sampleRate);
+		this.bytesPerSample = fileFormat == FILE_FORMAT_12BIT_SIGNED ? 4 : 2;
+	}
+
+	private void reportError(String msg) {
+		if(callback != null)
+			callback.onIQSourceError(this,msg);
+		else
+			Log.e(LOGTAG,"Callback is null when reporting Error (" + msg + ")");
+	}
+
+	@Override
+	public boolean open(Object context, Callback callback) {
+		this.callback = callback;
+		// open the file
+		try {
+			this.fileSize = file.length();
+			this.filePosition = 0;
+			this.seekPosition = -1;
+			this.mapped = memoryMapped && openMapped();
+			if(!mapped) {
+				this.fileInputStream = new FileInputStream(file);
+				this.bufferedInputStream = new BufferedInputStream(fileInputStream);
+			}
+			callback.onIQSourceReady(this);
+			return true;
+		}catch (IOException e) {
+			Log.e(LOGTAG, "open: Error while opening file: " + e.getMessage());
+			reportError("Error while opening file: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Opens the file channel and maps the first region of the file. On failure everything that
+	 * was opened is closed again.
+	 *
+	 * @return false if the file could not be mapped
+	 */
+	private boolean openMapped() {
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+			this.fileChannel = randomAccessFile.getChannel();
+			this.fileSize = fileChannel.size();
+			mapRegion(0);
+			return true;
+		} catch (IOException e) {
+			Log.w(LOGTAG, "openMapped: Could not map the file (" + e.getMessage() + "). Use stream mode.");
+			try {
+				if(randomAccessFile != null)
+					randomAccessFile.close();	// closes the channel as well
+			} catch (IOException e2) {
+				Log.e(LOGTAG, "openMapped: Error while closing file: " + e2.getMessage());
+			}
+			fileChannel = null;
+			mappedRegion = null;
+			packetView = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Continues in stream mode at filePosition if a region of the file could not be mapped.
+	 *
+	 * @param e		error of the mapping
+	 */
+	private void switchToStream(IOException e) throws IOException {
+		Log.w(LOGTAG, "switchToStream: Could not map the file (" + e.getMessage() + "). Use stream mode.");
+		fileChannel.close();
+		fileChannel = null;
+		mappedRegion = null;
+		packetView = null;
+		mapped = false;
+		this.fileInputStream = new FileInputStream(file);
+		fileInputStream.getChannel().position(filePosition);
+		this.bufferedInputStream = new BufferedInputStream(fileInputStream);
+	}
+
+	@Override
+	public boolean isOpen() {
+		if(mapped)
+			return fileChannel != null && fileChannel.isOpen();
+		if(bufferedInputStream == null)
+			return false;
+		try {
+			if(bufferedInputStream.available() > 0)
+				return true;
+		} catch (IOException e) {
+
+		}
+		return false;
+	}
+
+	@Override
+	public boolean close() {
+		// close the file
+		try {
+			if(bufferedInputStream != null)
+				bufferedInputStream.close();
+			if(fileChannel != null)
+				fileChannel.close();
+			mappedRegion = null;
+			packetView = null;
+			return true;
+		} catch (IOException e) {
+			Log.e(LOGTAG, "stopSampling: Error while closing file: " + e.getMessage());
+			reportError("Unexpected error while closing file: " + e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "IQ-File: " + file.getName();
+	}
+
+	/**
+	 * @return the file name of the file
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return true if repeat is enabled; false if not
+	 */
+	public boolean isRepeat() {
+		return repeat;
+	}
+
+	/**
+	 * @return the format of the file: FILE_FORMAT_8BIT_SIGNED, ...
+	 */
+	public int getFileFormat() {
+		return fileFormat;
+	}
+
+	/**
+	 * @return true if memory mapped mode was requested (see isMapped()); false for stream mode
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * @return true if the file is actually mapped into memory; false if it is read through a
+	 *         stream (requested or because the mapping failed)
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * @return true if getPacket() simulates the sample rate of real hardware
+	 */
+	public boolean isThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * If throttling is disabled, getPacket() returns the packets as fast as possible instead of
+	 * simulating the sample rate. Used for offline processing (see BatchProcessor).
+	 *
+	 * @param throttled		true to simulate the sample rate (default); false for no delay
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	/**
+	 * @return number of samples in the file
+	 */
+	public long getTotalSamples() {
+		return (fileSize > 0 ? fileSize : file.length()) / bytesPerSample;
+	}
+
+	/**
+	 * @return index of the first sample of the next packet returned by getPacket()
+	 */
+	public long getSamplePosition() {
+		long position = seekPosition;
+		if(position < 0)
+			position = filePosition;
+		if(repeat && position + packetSize > fileSize)
+			position = 0;		// next packet will be read after the rewind
+		return position / bytesPerSample;
+	}
+
+	/**
+	 * Moves the read position to the given sample. The position is applied by the next call to
+	 * getPacket(), so this method can be called from any thread. In memory mapped mode this is
+	 * O(1); in stream mode the stream has to be repositioned and its buffer is discarded.
+	 *
+	 * @param sampleIndex	index of the sample at which the next packet should start
+	 * @return false if the index is outside of the file
+	 */
+	public boolean seekToSample(long sampleIndex) {
+		if(sampleIndex < 0 || sampleIndex >= getTotalSamples()) {
+			Log.e(LOGTAG, "seekToSample: index " + sampleIndex + " is outside of the file.");
+			return false;
+		}
+		this.seekPosition = sampleIndex * bytesPerSample;
+		return true;
+	}
+
+	/**
+	 * Moves the read position to the given time (relative to the start of the recording).
+	 *
+	 * @param milliseconds	time (in ms) at which the next packet should start
+	 * @return false if the time is outside of the file
+	 */
+	public boolean seekToTime(long milliseconds) {
+		return seekToSample(milliseconds * sampleRate / 1000);
+	}
+
+	@Override
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public void setSampleRate(int sampleRate) {
+		Log.e(LOGTAG,"Setting the sample rate is not supported on a file source");
+	}
+
+	@Override
+	public long getFrequency() {
+		return frequency;
+	}
+
+	@Override
+	public void setFrequency(long frequency) {
+		Log.e(LOGTAG,"Setting the frequency is not supported on a file source");
+	}
+
+	@Override
+	public long getMaxFrequency() {
+		return frequency;
+	}
+
+	@Override
+	public long getMinFrequency() {
+		return frequency;
+	}
+
+	@Override
+	public int getMaxSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getMinSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public int getNextHigherOptimalSampleRate(int sampleRate) {
+		return this.sampleRate;
+	}
+
+	@Override
+	public int getNextLowerOptimalSampleRate(int sampleRate) {
+		return this.sampleRate;
+	}
+
+	@Override
+	public int[] getSupportedSampleRates() {
+		return new int[] {this.sampleRate};
+	}
+
+	@Override
+	public int getPacketSize() {
+		return packetSize;
+	}
+
+	@Override
+	public byte[] getPacket(int timeout) {
+		if(mapped ? packetView == null : bufferedInputStream == null)
+			return null;
+
+		final long now = System.nanoTime();
+
+		try {
+			throttleAndSeek(now, timeout);
+
+			// Copy the samples out of the mapped region:
+			if(mapped) {
+				ByteBuffer view = nextMappedPacket();
+				if(mapped) {
+					if(view == null)
+						return null;
+					view.get(buffer);
+					filePosition += buffer.length;
+					lastAccessTime = now;
+					return buffer;
+				}
+			}
+			return readPacket(now);
+		} catch (IOException e) {
+			Log.e(LOGTAG, "getPacket: Error while reading from file: " + e.getMessage());
+			reportError("Unexpected error while reading file: " + e.getMessage());
+			return null;
+		} catch (InterruptedException e) {
+			Log.w(LOGTAG, "getPacket: Interrupted while sleeping!");
+			return null;
+		}
+	}
+
+	/**
+	 * Same as getPacket(), but in memory mapped mode the packet is not copied: the returned buffer is
+	 * a view of the mapped file, positioned on the packet (its remaining bytes). It is only valid
+	 * until the next call to getPacket() or getPacketBuffer(). Use fillPacketIntoSamplePacket(ByteBuffer, ...)
+	 * to convert it. In stream mode the packet is read as usual and wrapped into a ByteBuffer.
+	 *
+	 * @param timeout	max. time to wait for the packet (in ms)
+	 * @return view of the next packet or null on error / end of file
+	 */
+	public ByteBuffer getPacketBuffer(int timeout) {
+		if(!mapped) {
+			byte[] packet = getPacket(timeout);
+			return packet == null ? null : ByteBuffer.wrap(packet);
+		}
+		if(packetView == null)
+			return null;
+
+		final long now = System.nanoTime();
+
+		try {
+			throttleAndSeek(now, timeout);
+			ByteBuffer view = nextMappedPacket();
+			if(!mapped) {
+				byte[] packet = readPacket(now);
+				return packet == null ? null : ByteBuffer.wrap(packet);
+			}
+			if(view == null)
+				return null;
+			filePosition += packetSize;
+			lastAccessTime = now;
+			return view;
+		} catch (IOException e) {
+			Log.e(LOGTAG, "getPacketBuffer: Error while reading from file: " + e.getMessage());
+			reportError("Unexpected error while reading file: " + e.getMessage());
+			return null;
+		} catch (InterruptedException e) {
+			Log.w(LOGTAG, "getPacketBuffer: Interrupted while sleeping!");
+			return null;
+		}
+	}
+
+	/**
+	 * Sleeps to simulate the sample rate of real hardware (if throttled) and applies a pending seek.
+	 *
+	 * @param now		System.nanoTime() at the start of the current call
+	 * @param timeout	max. time to sleep (in ms)
+	 */
+	private void throttleAndSeek(long now, int timeout) throws IOException, InterruptedException {
+		// Simulate sample rate of real hardware:
+		final long sleep = Math.min(this.sleepTime * 1000 - (now - lastAccessTime), timeout * 1000000L);
+		final long sleepMillis = sleep / 1000000;
+		final long sleepNanos = sleep - sleepMillis * 1000000;
+
+		if(throttled && sleep > 0) {
+			Thread.sleep(sleepMillis, (int) sleepNanos);
+		}
+
+		// Apply a pending seek:
+		long position = seekPosition;
+		if(position >= 0) {
+			seekPosition = -1;
+			filePosition = position;
+			if(!mapped) {
+				fileInputStream.getChannel().position(position);
+				bufferedInputStream = new BufferedInputStream(fileInputStream);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next packet from the stream into buffer (stream mode). Rewinds at the end of the
+	 * file if repeat is enabled.
+	 *
+	 * @param now		System.nanoTime() at the start of the current call
+	 * @return buffer or null at the end of the file
+	 */
+	private byte[] readPacket(long now) throws IOException {
+		if(bufferedInputStream.read(buffer, 0 , buffer.length) != buffer.length) {
+			if (repeat) {
+				// rewind and try again:
+				Log.i(LOGTAG,"getPacket: End of File. Rewind!");
+				bufferedInputStream.close();
+				this.fileInputStream = new FileInputStream(file);
+				this.bufferedInputStream = new BufferedInputStream(fileInputStream);
+				filePosition = 0;
+				if (bufferedInputStream.read(buffer, 0, buffer.length) != buffer.length)
+					return null;
+			} else {
+				Log.i(LOGTAG, "getPacket: End of File");
+				reportError("End of File");
+				return null;
+			}
+		}
+		filePosition += buffer.length;
+		lastAccessTime = now;
+		return buffer;
+	}
+
+	/**
+	 * Maps the part of the file that starts at the given offset (max. MAX_REGION_SIZE bytes).
+	 *
+	 * @param start		file offset of the region
+	 */
+	private void mapRegion(long start) throws IOException {
+		long size = Math.min(fileSize - start, MAX_REGION_SIZE);
+		mappedRegion = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		packetView = mappedRegion.duplicate();
+		regionStart = start;
+	}
+
+	/**
+	 * Positions packetView on the packet at filePosition. Handles the end of the file (rewind
+	 * if repeat is enabled) and maps the next region of the file if the packet is not inside
+	 * of the current one.
+	 *
+	 * @return packetView or null at the end of the file or if the source switched to stream
+	 *         mode because the region could not be mapped (see switchToStream())
+	 */
+	private ByteBuffer nextMappedPacket() throws IOException {
+		if(filePosition + packetSize > fileSize) {
+			if(repeat && packetSize <= fileSize) {
+				Log.i(LOGTAG, "getPacket: End of File. Rewind!");
+				filePosition = 0;
+			} else {
+				Log.i(LOGTAG, "getPacket: End of File");
+				reportError("End of File");
+				return null;
+			}
+		}
+		if(filePosition < regionStart || filePosition + packetSize > regionStart + mappedRegion.capacity()) {
+			try {
+				mapRegion(filePosition);
+			} catch (IOException e) {
+				switchToStream(e);
+				return null;
+			}
+		}
+		int offset = (int) (filePosition - regionStart);
+		packetView.limit(offset + packetSize);
+		packetView.position(offset);
+		return packetView;
+	}
+
+	@Override
+	public void returnPacket(byte[] buffer) {
+		// do nothing
+	}
+
+	@Override
+	public void startSampling() {
+		// nothing to do here...
+	}
+
+	@Override
+	public void stopSampling() {
+		// nothing to do here...
+	}
+
+	@Override
+	public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
+		return this.iqConverter.fillPacketIntoSamplePacket(packet, samplePacket);
+	}
+
+	/**
+	 * Converts a packet that was returned by getPacketBuffer() (from its position to its limit).
+	 *
+	 * @param packet		packet that was returned by getPacketBuffer()
+	 * @param samplePacket	SamplePacket that should be filled with samples from the packet.
+	 * @return the number of samples filled into the samplePacket.
+	 */
+	public int fillPacketIntoSamplePacket(ByteBuffer packet, SamplePacket samplePacket) {
+		return this.iqConverter.fillPacketIntoSamplePacket(packet, samplePacket);
+	}
+
+	/**
+	 * Converts a packet that was returned by getPacketBuffer() into direct memory (the samples
+	 * are not stored on the Java heap, see DirectSamplePacket).
+	 *
+	 * @param packet		packet that was returned by getPacketBuffer()
+	 * @param samplePacket	DirectSamplePacket that should be filled with samples from the packet.
+	 * @return the number of samples filled into the samplePacket.
+	 */
+	public int fillPacketIntoDirectSamplePacket(ByteBuffer packet, DirectSamplePacket samplePacket) {
+		return this.iqConverter.fillPacketIntoDirectSamplePacket(packet, samplePacket);
+	}
+
+	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		return this.iqConverter.mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
+	}
+}
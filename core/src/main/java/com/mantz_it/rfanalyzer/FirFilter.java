@@ -1,7 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.util.Log;
-
 /**
  * <h1>RF Analyzer - FIR Filter</h1>
  *
@@ -40,6 +38,8 @@ public class FirFilter {
 	private float cutOffFrequency;
 	private float transitionWidth;
 	private float attenuation;
+	private OverlapSaveFilter overlapSaveFilter = null;	// used instead of the direct form for long filters
+	private PolyphaseDecimator polyphaseDecimator = null;	// used instead of the direct form for decimation > 1
 	private static final String LOGTAG = "FirFilter";
 
 	/**
@@ -63,6 +63,12 @@ public class FirFilter {
 		this.cutOffFrequency = cutOffFrequency;
 		this.transitionWidth = transitionWidth;
 		this.attenuation = attenuation;
+
+		// Use fast convolution if it is faster than the direct form:
+		if(OverlapSaveFilter.isFasterThanDirectForm(taps.length, decimation))
+			this.overlapSaveFilter = new OverlapSaveFilter(taps, null, decimation);
+		else if(decimation > 1)
+			this.polyphaseDecimator = new PolyphaseDecimator(taps, decimation);
 	}
 
 	/**
@@ -72,6 +78,20 @@ public class FirFilter {
 		return taps.length;
 	}
 
+	/**
+	 * @return true if this filter uses fast convolution (overlap-save) instead of the direct form
+	 */
+	public boolean isOverlapSave() {
+		return overlapSaveFilter != null;
+	}
+
+	/**
+	 * @return true if this filter uses the polyphase decimator kernel instead of the direct form
+	 */
+	public boolean isPolyphaseDecimator() {
+		return polyphaseDecimator != null;
+	}
+
 	public int getDecimation() {
 		return decimation;
 	}
@@ -106,6 +126,11 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		if(overlapSaveFilter != null)
+			return overlapSaveFilter.filter(in, out, offset, length);
+		if(polyphaseDecimator != null)
+			return polyphaseDecimator.filter(in, out, offset, length);
+
 		int index;
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
@@ -164,6 +189,11 @@ public class FirFilter {
 	 * @return number of samples consumed from the input packet
 	 */
 	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		if(overlapSaveFilter != null)
+			return overlapSaveFilter.filterReal(in, out, offset, length);
+		if(polyphaseDecimator != null)
+			return polyphaseDecimator.filterReal(in, out, offset, length);
+
 		int index;
 		int indexOut = out.size();
 		int outputCapacity = out.capacity();
@@ -228,19 +258,44 @@ public class FirFilter {
 										  float cutoff_freq,      // Hz BEGINNING of transition band
 										  float transition_width, // Hz width of transition band
 										  float attenuation_dB)   // attenuation dB
+	{
+		float[] taps = createLowPassTaps(gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
+		if(taps == null)
+			return null;
+		return new FirFilter(taps, decimation, gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
+	}
+
+	/**
+	 * FROM GNU Radio firdes::low_pass_2:
+	 *
+	 * Will calculate the taps for the specified low pass filter. This is used by createLowPass()
+	 * and by other blocks that need low pass taps (e.g. the RationalResampler).
+	 *
+	 * @param gain					filter pass band gain
+	 * @param sampling_freq			sample rate
+	 * @param cutoff_freq			cut off frequency (end of pass band)
+	 * @param transition_width		width from end of pass band to start stop band
+	 * @param attenuation_dB		attenuation of stop band
+	 * @return filter taps or null if the parameters are invalid
+	 */
+	public static float[] createLowPassTaps(float gain,
+											float sampling_freq,    // Hz
+											float cutoff_freq,      // Hz BEGINNING of transition band
+											float transition_width, // Hz width of transition band
+											float attenuation_dB)   // attenuation dB
 	{
 		if (sampling_freq <= 0.0) {
-			Log.e(LOGTAG,"createLowPass: firdes check failed: sampling_freq > 0");
+			Log.e(LOGTAG,"createLowPassTaps: firdes check failed: sampling_freq > 0");
 			return null;
 		}
 
 		if (cutoff_freq <= 0.0 || cutoff_freq > sampling_freq / 2) {
-			Log.e(LOGTAG, "createLowPass: firdes check failed: 0 < fa <= sampling_freq / 2");
+			Log.e(LOGTAG, "createLowPassTaps: firdes check failed: 0 < fa <= sampling_freq / 2");
 			return null;
 		}
 
 		if (transition_width <= 0) {
-			Log.e(LOGTAG,"createLowPass: firdes check failed: transition_width > 0");
+			Log.e(LOGTAG,"createLowPassTaps: firdes check failed: transition_width > 0");
 			return null;
 		}
 
@@ -280,7 +335,7 @@ public class FirFilter {
 		for (int i = 0; i < ntaps; i++)
 			taps[i] *= actualGain;
 
-		return new FirFilter(taps, decimation, gain, sampling_freq, cutoff_freq, transition_width, attenuation_dB);
+		return taps;
 	}
 
 	/**
@@ -0,0 +1,287 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Frequency Translating FIR Filter</h1>
+ *
+ * Module:      FrequencyXlatingFirFilter.java
+ * Description: This class implements a decimating low pass filter that also shifts the
+ *              spectrum of the signal (frequency translating or 'xlating' filter). Mixing a
+ *              channel at the offset w down to baseband and low pass filtering it with the
+ *              taps h[k] is the same as filtering the unmixed signal with the band pass taps
+ *              h[k]*exp(j*w*k) and multiplying the output by exp(-j*w*n):
+ *
+ *                  y[n] = sum h[k] * x[n-k] * exp(-j*w*(n-k)) = exp(-j*w*n) * sum (h[k]*exp(j*w*k)) * x[n-k]
+ *
+ *              So the rotation is only done for the samples that survive the decimation
+ *              instead of mixing every input sample. The filter kernel works like the
+ *              PolyphaseDecimator (only the decimated outputs are calculated, mirrored delay
+ *              line). The rotator is a complex phasor that is renormalized periodically.
+ *              The input can either be a SamplePacket or a DirectSamplePacket (off-heap samples).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class FrequencyXlatingFirFilter {
+	private float[] lowPassTaps;		// prototype low pass filter
+	private float[] tapsReal;			// band pass taps (low pass taps shifted to the channel) in reversed order
+	private float[] tapsImag;
+	private float[] delaysReal;			// mirrored delay line (length 2*N)
+	private float[] delaysImag;
+	private int delayIndex = 0;			// position of the oldest sample in the delay line
+	private int decimation;
+	private int decimationCounter = 1;	// same meaning as in FirFilter
+	private int sampleRate;				// sample rate of the incoming samples
+	private long shiftFrequency = 0;	// offset of the channel relative to the center frequency of the incoming samples
+	private float rotatorReal = 1;		// current value of exp(-j*w*n)
+	private float rotatorImag = 0;
+	private float rotatorStepReal = 1;	// exp(-j*w*decimation)
+	private float rotatorStepImag = 0;
+	private int renormalizationCounter = 0;
+	private static final int RENORMALIZATION_INTERVAL = 512;	// outputs between two renormalizations of the rotator
+	private static final String LOGTAG = "FrequencyXlatingFirFilter";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lowPassTaps	taps of the low pass filter (at baseband)
+	 * @param decimation	decimation factor
+	 * @param sampleRate	sample rate of the incoming samples
+	 */
+	public FrequencyXlatingFirFilter(float[] lowPassTaps, int decimation, int sampleRate) {
+		int ntaps = lowPassTaps.length;
+		this.lowPassTaps = lowPassTaps;
+		this.tapsReal = new float[ntaps];
+		this.tapsImag = new float[ntaps];
+		this.delaysReal = new float[2 * ntaps];
+		this.delaysImag = new float[2 * ntaps];
+		this.decimation = decimation;
+		this.sampleRate = sampleRate;
+		calculateTaps();
+	}
+
+	/**
+	 * Will create a frequency translating low pass filter with the given properties.
+	 *
+	 * @param decimation		decimation factor
+	 * @param gain				pass band gain
+	 * @param sampleRate		sample rate of the incoming samples
+	 * @param cutOffFrequency	cut off frequency (end of pass band) in Hz
+	 * @param transitionWidth	width from end of pass band to start stop band in Hz
+	 * @param attenuation		attenuation of stop band in dB
+	 * @return instance of FrequencyXlatingFirFilter or null if the filter parameters are invalid
+	 */
+	public static FrequencyXlatingFirFilter createLowPass(int decimation, float gain, int sampleRate, float cutOffFrequency,
+														  float transitionWidth, float attenuation) {
+		float[] taps = FirFilter.createLowPassTaps(gain, sampleRate, cutOffFrequency, transitionWidth, attenuation);
+		if(taps == null) {
+			Log.e(LOGTAG, "createLowPass: could not create low pass taps.");
+			return null;
+		}
+		return new FrequencyXlatingFirFilter(taps, decimation, sampleRate);
+	}
+
+	public int getNumberOfTaps() {
+		return lowPassTaps.length;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public long getShiftFrequency() {
+		return shiftFrequency;
+	}
+
+	/**
+	 * Sets the frequency that should be shifted to baseband. Will recalculate the band pass
+	 * taps if the frequency changed.
+	 *
+	 * @param shiftFrequency	offset of the channel relative to the center frequency of the incoming samples (in Hz)
+	 */
+	public void setShiftFrequency(long shiftFrequency) {
+		if(shiftFrequency != this.shiftFrequency) {
+			this.shiftFrequency = shiftFrequency;
+			calculateTaps();
+		}
+	}
+
+	/**
+	 * Shifts the low pass taps to the current shift frequency and calculates the rotator step.
+	 */
+	private void calculateTaps() {
+		double omega = 2 * Math.PI * shiftFrequency / sampleRate;
+		int ntaps = lowPassTaps.length;
+		for (int k = 0; k < ntaps; k++) {
+			tapsReal[ntaps - 1 - k] = (float) (lowPassTaps[k] * Math.cos(omega * k));
+			tapsImag[ntaps - 1 - k] = (float) (lowPassTaps[k] * Math.sin(omega * k));
+		}
+		rotatorStepReal = (float) Math.cos(-omega * decimation);
+		rotatorStepImag = (float) Math.sin(-omega * decimation);
+	}
+
+	/**
+	 * Shifts, filters and decimates the samples from the input sample packet and appends the
+	 * output to the output sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		int ntaps = tapsReal.length;
+		int indexOut = out.size();
+		int outputCapacity = out.capacity();
+		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+		float[] dReal = delaysReal, dImag = delaysImag;
+		int i = 0;
+
+		while (i < length) {
+			// Push all samples that don't produce an output into the delay line:
+			int nextOutput = decimationCounter == 0 ? 0 : Math.max(decimation - decimationCounter, 1);
+			int count = Math.min(nextOutput, length - i);
+			for (int j = 0; j < count; j++) {
+				dReal[delayIndex] = dReal[delayIndex + ntaps] = reIn[offset + i + j];
+				dImag[delayIndex] = dImag[delayIndex + ntaps] = imIn[offset + i + j];
+				delayIndex++;
+				if(delayIndex >= ntaps)
+					delayIndex = 0;
+			}
+			i += count;
+			decimationCounter = count == nextOutput ? 0 : decimationCounter + count;
+			if(i == length)
+				break;
+
+			// The next sample produces an output. First check if we have enough space in the output buffers:
+			if(indexOut == outputCapacity)
+				break;
+			dReal[delayIndex] = dReal[delayIndex + ntaps] = reIn[offset + i];
+			dImag[delayIndex] = dImag[delayIndex + ntaps] = imIn[offset + i];
+			delayIndex++;
+			if(delayIndex >= ntaps)
+				delayIndex = 0;
+			i++;
+
+			// Calculate the result:
+			calculateOutput(reOut, imOut, indexOut++);
+
+			// update counter:
+			decimationCounter = decimation > 1 ? 1 : 0;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+		out.setFrequency(in.getFrequency() + shiftFrequency);	// the output is centered at the channel
+		return i;				// We return the number of consumed samples from the input buffers
+	}
+
+	/**
+	 * Same as filter(SamplePacket, SamplePacket, int, int) but reads the samples from a
+	 * DirectSamplePacket (any layout). Only the decimated output is stored on the Java heap.
+	 *
+	 * @param in		input sample packet (direct memory)
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(DirectSamplePacket in, SamplePacket out, int offset, int length) {
+		int ntaps = tapsReal.length;
+		int indexOut = out.size();
+		int outputCapacity = out.capacity();
+		float[] reOut = out.re(), imOut = out.im();
+		float[] dReal = delaysReal, dImag = delaysImag;
+		int i = 0;
+
+		while (i < length) {
+			// Push all samples that don't produce an output into the delay line:
+			int nextOutput = decimationCounter == 0 ? 0 : Math.max(decimation - decimationCounter, 1);
+			int count = Math.min(nextOutput, length - i);
+			for (int j = 0; j < count; j++) {
+				dReal[delayIndex] = dReal[delayIndex + ntaps] = in.re(offset + i + j);
+				dImag[delayIndex] = dImag[delayIndex + ntaps] = in.im(offset + i + j);
+				delayIndex++;
+				if(delayIndex >= ntaps)
+					delayIndex = 0;
+			}
+			i += count;
+			decimationCounter = count == nextOutput ? 0 : decimationCounter + count;
+			if(i == length)
+				break;
+
+			// The next sample produces an output. First check if we have enough space in the output buffers:
+			if(indexOut == outputCapacity)
+				break;
+			dReal[delayIndex] = dReal[delayIndex + ntaps] = in.re(offset + i);
+			dImag[delayIndex] = dImag[delayIndex + ntaps] = in.im(offset + i);
+			delayIndex++;
+			if(delayIndex >= ntaps)
+				delayIndex = 0;
+			i++;
+
+			// Calculate the result:
+			calculateOutput(reOut, imOut, indexOut++);
+
+			// update counter:
+			decimationCounter = decimation > 1 ? 1 : 0;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+		out.setFrequency(in.getFrequency() + shiftFrequency);	// the output is centered at the channel
+		return i;				// We return the number of consumed samples from the input buffers
+	}
+
+	/**
+	 * Calculates one output sample from the delay line (complex taps), shifts it to baseband
+	 * and advances the rotator. The window [delayIndex, delayIndex+ntaps) holds the last ntaps samples.
+	 *
+	 * @param reOut		real parts of the output
+	 * @param imOut		imaginary parts of the output
+	 * @param indexOut	index of the output sample
+	 */
+	private void calculateOutput(float[] reOut, float[] imOut, int indexOut) {
+		int ntaps = tapsReal.length;
+		float[] tReal = tapsReal, tImag = tapsImag;
+		float[] dReal = delaysReal, dImag = delaysImag;
+		float sumReal = 0;
+		float sumImag = 0;
+		float tmp;
+		for (int k = 0; k < ntaps; k++) {
+			sumReal += tReal[k] * dReal[delayIndex + k] - tImag[k] * dImag[delayIndex + k];
+			sumImag += tReal[k] * dImag[delayIndex + k] + tImag[k] * dReal[delayIndex + k];
+		}
+
+		// Shift the output to baseband:
+		reOut[indexOut] = sumReal * rotatorReal - sumImag * rotatorImag;
+		imOut[indexOut] = sumReal * rotatorImag + sumImag * rotatorReal;
+		tmp = rotatorReal * rotatorStepReal - rotatorImag * rotatorStepImag;
+		rotatorImag = rotatorReal * rotatorStepImag + rotatorImag * rotatorStepReal;
+		rotatorReal = tmp;
+		if(++renormalizationCounter >= RENORMALIZATION_INTERVAL) {
+			// rounding errors would let the magnitude of the rotator drift away from 1:
+			tmp = (float) (1 / Math.sqrt(rotatorReal * rotatorReal + rotatorImag * rotatorImag));
+			rotatorReal *= tmp;
+			rotatorImag *= tmp;
+			renormalizationCounter = 0;
+		}
+	}
+}
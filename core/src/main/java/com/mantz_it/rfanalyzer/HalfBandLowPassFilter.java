@@ -1,7 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.util.Log;
-
 /**
  * <h1>RF Analyzer - Half Band Low Pass Filter</h1>
  *
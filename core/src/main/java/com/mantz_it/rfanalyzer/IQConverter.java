@@ -0,0 +1,175 @@
+package com.mantz_it.rfanalyzer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <h1>RF Analyzer - IQ Converter</h1>
+ *
+ * Module:      IQConverter.java
+ * Description: This class implements methods to convert the raw input data of IQ sources (bytes)
+ *              to SamplePackets. It has also methods to do converting and down-mixing at the same
+ *              time.
+ *
+ *              Two mixers are available (see setMixerMode()):
+ *              - MIXER_NCO (default): numerically controlled oscillator (see NcoMixer). The samples
+ *                are converted and then rotated by a complex phasor. This gives exact frequency
+ *                resolution and needs no tables, so retuning allocates nothing.
+ *              - MIXER_LOOKUP_TABLE: two dimensional lookup tables that hold the product of every
+ *                possible raw value with one or more cycles of the cosine. The mix frequency is
+ *                approximated by the table length (calcOptimalCosineLength()) and the tables are
+ *                regenerated on every retune.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public abstract class IQConverter {
+	protected long frequency = 0;						// Baseband frequency of the converted samples (is put into the SamplePacket)
+	protected int sampleRate = 0;						// Sample rate of the converted samples (is put into the SamplePacket)
+	protected float[] lookupTable = null;				// Lookup table to transform IQ bytes into doubles
+	protected float[][] cosineRealLookupTable = null;	// Lookup table to transform IQ bytes into frequency shifted doubles
+	protected float[][] cosineImagLookupTable = null;	// Lookup table to transform IQ bytes into frequency shifted doubles
+	protected int cosineFrequency;						// Frequency of the cosine that is mixed to the signal
+	protected int cosineIndex;							// current index within the cosine
+	protected static final int MAX_COSINE_LENGTH = 500;	// Max length of the cosine lookup table
+	protected int mixerMode = MIXER_NCO;				// mixer that is used by mixPacketIntoSamplePacket()
+	protected NcoMixer ncoMixer = new NcoMixer();		// mixer for MIXER_NCO
+
+	public static final int MIXER_LOOKUP_TABLE = 0;
+	public static final int MIXER_NCO = 1;
+
+	public IQConverter() {
+		generateLookupTable();
+	}
+
+	public long getFrequency() {
+		return frequency;
+	}
+
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(int sampleRate) {
+		if(this.sampleRate != sampleRate) {
+			this.sampleRate = sampleRate;
+			if(mixerMode == MIXER_LOOKUP_TABLE)
+				generateMixerLookupTable(cosineFrequency);
+		}
+	}
+
+	public int getMixerMode() {
+		return mixerMode;
+	}
+
+	/**
+	 * Selects the mixer that is used by mixPacketIntoSamplePacket(). If the NCO is selected,
+	 * the lookup tables of the other mixer are released.
+	 *
+	 * @param mixerMode		MIXER_NCO or MIXER_LOOKUP_TABLE
+	 */
+	public void setMixerMode(int mixerMode) {
+		if(mixerMode != MIXER_NCO && mixerMode != MIXER_LOOKUP_TABLE)
+			throw new IllegalArgumentException("invalid mixer mode: " + mixerMode);
+		this.mixerMode = mixerMode;
+		if(mixerMode == MIXER_NCO) {
+			cosineRealLookupTable = null;
+			cosineImagLookupTable = null;
+		}
+	}
+
+	protected int calcOptimalCosineLength() {
+		// look for the best fitting array size to hold one or more full cosine cycles:
+		double cycleLength = sampleRate / Math.abs((double)cosineFrequency);
+		int bestLength = (int) cycleLength;
+		double bestLengthError = Math.abs(bestLength-cycleLength);
+		for (int i = 1; i*cycleLength < MAX_COSINE_LENGTH ; i++) {
+			if(Math.abs(i*cycleLength - (int)(i*cycleLength)) < bestLengthError) {
+				bestLength = (int)(i*cycleLength);
+				bestLengthError = Math.abs(bestLength - (i*cycleLength));
+			}
+		}
+		return bestLength;
+	}
+
+	public abstract int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket);
+
+	/**
+	 * Same as fillPacketIntoSamplePacket(byte[], SamplePacket) but reads the raw bytes from a
+	 * ByteBuffer (e.g. a block of a SampleBufferArena or a memory mapped file). The bytes from
+	 * position to limit are converted. The position of the buffer is not changed.
+	 *
+	 * @param packet			buffer that holds the raw bytes of the source
+	 * @param samplePacket		SamplePacket that should be filled with samples from the packet
+	 * @return the number of samples filled into the samplePacket
+	 */
+	public abstract int fillPacketIntoSamplePacket(ByteBuffer packet, SamplePacket samplePacket);
+
+	/**
+	 * Will convert the raw bytes of a ByteBuffer into a DirectSamplePacket. Both are usually in
+	 * direct memory, so the samples at full source rate are never stored on the Java heap.
+	 * The position of the buffer is not changed.
+	 *
+	 * @param packet			buffer that holds the raw bytes of the source
+	 * @param samplePacket		DirectSamplePacket that should be filled with samples from the packet
+	 * @return the number of samples filled into the samplePacket
+	 */
+	public abstract int fillPacketIntoDirectSamplePacket(ByteBuffer packet, DirectSamplePacket samplePacket);
+
+	/**
+	 * Will convert the samples in packet and shift their spectrum, so that channelFrequency
+	 * ends up at baseband. Uses the mixer selected by setMixerMode().
+	 *
+	 * @param packet			packet that was returned by the source
+	 * @param samplePacket		SamplePacket that should be filled with samples from the packet.
+	 * @param channelFrequency	frequency to which the spectrum of the signal should be shifted
+	 * @return the number of samples filled into the samplePacket and shifted by mixFrequency.
+	 */
+	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		if(mixerMode == MIXER_LOOKUP_TABLE)
+			return mixPacketWithLookupTable(packet, samplePacket, channelFrequency);
+
+		int startIndex = samplePacket.size();
+		int count = fillPacketIntoSamplePacket(packet, samplePacket);
+		ncoMixer.mix(samplePacket.re(), samplePacket.im(), startIndex, samplePacket.re(), samplePacket.im(), startIndex,
+				count, frequency - channelFrequency, sampleRate);
+		samplePacket.setFrequency(channelFrequency);		// update the frequency
+		return count;
+	}
+
+	/**
+	 * Will convert the samples in packet and shift their spectrum using the lookup tables
+	 * (see generateMixerLookupTable()).
+	 *
+	 * @param packet			packet that was returned by the source
+	 * @param samplePacket		SamplePacket that should be filled with samples from the packet.
+	 * @param channelFrequency	frequency to which the spectrum of the signal should be shifted
+	 * @return the number of samples filled into the samplePacket and shifted by mixFrequency.
+	 */
+	protected abstract int mixPacketWithLookupTable(byte[] packet, SamplePacket samplePacket, long channelFrequency);
+
+	protected abstract void generateLookupTable();
+
+	protected abstract void generateMixerLookupTable(int mixFrequency);
+
+
+}
@@ -1,7 +1,5 @@
 package com.mantz_it.rfanalyzer;
 
-import android.content.Context;
-
 /**
  * <h1>RF Analyzer - IQ Source Interface</h1>
  *
@@ -35,11 +33,12 @@ public interface IQSourceInterface {
 	 * callback function onIQSourceReady() from the Callback interface to notify the application
 	 * when the IQSource is ready to use.
 	 *
-	 * @param context		needed to open external devices
+	 * @param context		needed to open external devices (an android.content.Context in the app;
+	 *                      sources that don't need it, like the FileIQSource, accept null)
 	 * @param callback		reference to a class that implements the Callback interface for notification
 	 * @return false if an error occurred.
 	 */
-	public boolean open(Context context, Callback callback);
+	public boolean open(Object context, Callback callback);
 
 	/**
 	 * Will return true if the source is opened and ready to use
@@ -0,0 +1,143 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <h1>RF Analyzer - Latency Histogram</h1>
+ *
+ * Module:      LatencyHistogram.java
+ * Description: Lock-free histogram for latencies (in microseconds) with a fixed relative
+ *              precision, similar to the HdrHistogram: values below SUB_BUCKET_COUNT are
+ *              counted exactly, larger values in buckets of SUB_BUCKET_COUNT/2 linear sub buckets
+ *              per power of two (the error is at most 1/16 = 6%). Recording a value is a few
+ *              shifts and one atomic increment and never allocates, so it can be called by the
+ *              pipeline threads for every packet.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;		// 32
+	private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;		// 16
+	private static final int MAX_SHIFT = 63 - SUB_BUCKET_BITS + 1;
+	private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param value		latency in microseconds (negative values are counted as 0)
+	 */
+	public void record(long value) {
+		if(value < 0)
+			value = 0;
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max;
+		while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value));
+	}
+
+	/**
+	 * Records the time since the given timestamp.
+	 *
+	 * @param startTime		timestamp from System.nanoTime(). 0 is ignored (no timestamp).
+	 */
+	public void recordSince(long startTime) {
+		if(startTime != 0)
+			record((System.nanoTime() - startTime) / 1000);
+	}
+
+	private static int indexOf(long value) {
+		if(value < SUB_BUCKET_COUNT)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;	// >= 1
+		int subBucket = (int) (value >>> shift);		// [SUB_BUCKET_HALF .. SUB_BUCKET_COUNT-1]
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+	}
+
+	/**
+	 * @return the highest value that falls into the bucket with the given index
+	 */
+	private static long highestValueOf(int index) {
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * @return mean of the recorded values (0 if empty)
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalValue.get() / count;
+	}
+
+	/**
+	 * @return highest recorded value (exact)
+	 */
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/**
+	 * Returns the value below which the given percentage of the recorded values fall. The
+	 * result is the upper end of the bucket (never lower than the real percentile).
+	 *
+	 * @param percentile	percentage [0..100]
+	 * @return value at the percentile (0 if empty)
+	 */
+	public long getPercentile(double percentile) {
+		long count = totalCount.get();
+		if(count == 0)
+			return 0;
+		long threshold = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long sum = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			sum += counts.get(i);
+			if(sum >= threshold)
+				return Math.min(highestValueOf(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears the histogram. Values that are recorded at the same time may be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+}
@@ -0,0 +1,108 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Log</h1>
+ *
+ * Module:      Log.java
+ * Description: Logging facade of the core module. It has the same interface as android.util.Log
+ *              (which the signal processing blocks used before they were moved to the core
+ *              module), but the output goes to an exchangeable Backend. By default the messages
+ *              are printed to System.err; the app installs a backend that forwards them to logcat.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Log {
+	// Priorities (same values as in android.util.Log):
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	private static volatile Backend backend = new ConsoleBackend();
+	private static volatile int minPriority = DEBUG;	// messages with a lower priority are discarded
+
+	/**
+	 * Receives all log messages.
+	 */
+	public interface Backend {
+		/**
+		 * @param priority	DEBUG, INFO, WARN or ERROR
+		 * @param tag		tag of the message (LOGTAG of the class)
+		 * @param msg		message
+		 */
+		void println(int priority, String tag, String msg);
+	}
+
+	/**
+	 * Default backend: prints the messages to System.err (format: "E/Tag: message")
+	 */
+	public static class ConsoleBackend implements Backend {
+		private static final char[] PRIORITY_LETTERS = {'V', 'V', 'V', 'D', 'I', 'W', 'E'};
+
+		@Override
+		public void println(int priority, String tag, String msg) {
+			System.err.println(PRIORITY_LETTERS[Math.min(priority, ERROR)] + "/" + tag + ": " + msg);
+		}
+	}
+
+	/**
+	 * @param backend	backend that receives all messages from now on (null discards all messages)
+	 */
+	public static void setBackend(Backend backend) {
+		Log.backend = backend;
+	}
+
+	public static Backend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @param minPriority	messages with a lower priority (DEBUG, INFO, ...) are discarded
+	 */
+	public static void setMinPriority(int minPriority) {
+		Log.minPriority = minPriority;
+	}
+
+	public static int getMinPriority() {
+		return minPriority;
+	}
+
+	public static void d(String tag, String msg) {
+		println(DEBUG, tag, msg);
+	}
+
+	public static void i(String tag, String msg) {
+		println(INFO, tag, msg);
+	}
+
+	public static void w(String tag, String msg) {
+		println(WARN, tag, msg);
+	}
+
+	public static void e(String tag, String msg) {
+		println(ERROR, tag, msg);
+	}
+
+	private static void println(int priority, String tag, String msg) {
+		Backend backend = Log.backend;
+		if(backend != null && priority >= minPriority)
+			backend.println(priority, tag, msg);
+	}
+}
@@ -0,0 +1,111 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - NCO Mixer</h1>
+ *
+ * Module:      NcoMixer.java
+ * Description: This class implements a mixer based on a numerically controlled oscillator.
+ *              The samples are multiplied by a complex phasor that is updated by a recurrence
+ *              (one complex multiplication per sample). The phasor is renormalized periodically
+ *              and resynced to an exact (double) phase accumulator at the start of every call.
+ *              This gives exact frequency resolution and needs no tables, so changing the
+ *              frequency allocates nothing.
+ *
+ *              It is used by the IQConverter (MIXER_NCO) and by the DemodulationChannels of
+ *              the Scheduler to mix already converted samples.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class NcoMixer {
+	private double phase = 0;			// phase of the oscillator at the start of the next call
+	private static final int RENORMALIZATION_INTERVAL = 1024;	// samples between two renormalizations of the phasor
+
+	/**
+	 * @return phase of the oscillator (in radians) at the start of the next call
+	 */
+	public double getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Will multiply the input samples with exp(j*2*PI*mixFrequency*t/sampleRate) and store
+	 * the result in the output arrays. Input and output may be the same arrays (in place).
+	 *
+	 * @param reIn			real parts of the input samples
+	 * @param imIn			imaginary parts of the input samples
+	 * @param inOffset		index of the first input sample
+	 * @param reOut			real parts of the output samples
+	 * @param imOut			imaginary parts of the output samples
+	 * @param outOffset		index of the first output sample
+	 * @param count			number of samples
+	 * @param mixFrequency	frequency of the oscillator
+	 * @param sampleRate	sample rate of the samples
+	 */
+	public void mix(float[] reIn, float[] imIn, int inOffset, float[] reOut, float[] imOut, int outOffset, int count,
+					long mixFrequency, int sampleRate) {
+		double phaseIncrement = 2 * Math.PI * mixFrequency / sampleRate;
+		float stepReal = (float) Math.cos(phaseIncrement);
+		float stepImag = (float) Math.sin(phaseIncrement);
+		float phasorReal = (float) Math.cos(phase);
+		float phasorImag = (float) Math.sin(phase);
+		float sampleReal, sampleImag, gain;
+		int renormalizationCounter = 0;
+		for (int i = 0; i < count; i++) {
+			sampleReal = reIn[inOffset + i];
+			sampleImag = imIn[inOffset + i];
+			reOut[outOffset + i] = sampleReal * phasorReal - sampleImag * phasorImag;
+			imOut[outOffset + i] = sampleImag * phasorReal + sampleReal * phasorImag;
+
+			// rotate the phasor by one step:
+			gain = phasorReal * stepReal - phasorImag * stepImag;
+			phasorImag = phasorReal * stepImag + phasorImag * stepReal;
+			phasorReal = gain;
+			if(++renormalizationCounter == RENORMALIZATION_INTERVAL) {
+				// rounding errors let the magnitude drift away from 1. Because it is always very close
+				// to 1, the first order approximation of 1/sqrt(x) (around 1) is good enough:
+				gain = 1.5f - 0.5f * (phasorReal * phasorReal + phasorImag * phasorImag);
+				phasorReal *= gain;
+				phasorImag *= gain;
+				renormalizationCounter = 0;
+			}
+		}
+		// advance the exact phase accumulator (the phasor is resynced to it in the next call):
+		phase = Math.IEEEremainder(phase + count * phaseIncrement, 2 * Math.PI);
+	}
+
+	/**
+	 * Will shift the spectrum of the samples in the input packet so that channelFrequency
+	 * ends up at baseband and append the result to the output packet. Stops automatically
+	 * if the output packet is full.
+	 *
+	 * @param in				input sample packet
+	 * @param out				output sample packet
+	 * @param channelFrequency	frequency that should be shifted to baseband
+	 * @return number of samples consumed from the input packet
+	 */
+	public int mix(SamplePacket in, SamplePacket out, long channelFrequency) {
+		int count = Math.min(in.size(), out.capacity() - out.size());
+		mix(in.re(), in.im(), 0, out.re(), out.im(), out.size(), count, in.getFrequency() - channelFrequency, in.getSampleRate());
+		out.setSize(out.size() + count);				// update the size of the sample packet
+		out.setSampleRate(in.getSampleRate());			// update the sample rate
+		out.setFrequency(channelFrequency);				// update the frequency
+		return count;
+	}
+}
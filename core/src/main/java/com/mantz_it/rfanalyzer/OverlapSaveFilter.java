@@ -0,0 +1,270 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.Arrays;
+
+/**
+ * <h1>RF Analyzer - Overlap-Save Filter</h1>
+ *
+ * Module:      OverlapSaveFilter.java
+ * Description: This class implements FIR filtering by fast convolution (overlap-save method).
+ *              The input is collected in blocks of L samples (the last taps-1 samples of the
+ *              previous block are kept as history), transformed with a Radix4FFT, multiplied
+ *              with the spectrum of the filter taps and transformed back. The cost per sample
+ *              grows with log(taps) instead of taps, so this is much faster than the direct
+ *              form for long filters.
+ *
+ *              It is used by FirFilter and ComplexFirFilter if the number of taps per output
+ *              sample exceeds OVERLAP_SAVE_CROSSOVER and has exactly the same contract as
+ *              their filter() methods (including decimation). If a block is only partially
+ *              filled at the end of a filter() call, it is kept for the next call and only the
+ *              outputs of the new samples are calculated right away (in the direct form if that
+ *              is cheaper than transforming the whole block). So there is no additional latency
+ *              and calls with short packets don't transform the same samples over and over.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class OverlapSaveFilter {
+	private int numberOfTaps;			// length of the filter
+	private int blockSize;				// FFT size (L)
+	private int historyLength;			// number of samples kept from the previous block (taps - 1)
+	private int fill;					// number of valid samples in the block buffer
+	private int emitted;				// samples of the block buffer whose outputs are already calculated
+	private float[] blockReal;			// time domain input block (history + new samples)
+	private float[] blockImag;
+	private float[] workReal;			// work buffers for the fft
+	private float[] workImag;
+	private float[] tapsSpectrumReal;	// fft of the zero padded taps (scaled by 1/L for the inverse fft)
+	private float[] tapsSpectrumImag;
+	private float[] tapsReal;			// taps for the direct form (partially filled blocks)
+	private float[] tapsImag;
+	private int fftCost;				// rough number of multiplications to process one block
+	private FftEngine fftEngine;
+	private int decimation;
+	private int decimationCounter = 1;	// same meaning as in FirFilter / ComplexFirFilter
+
+	// Filters with more taps per output sample than this are calculated with overlap-save:
+	public static final int OVERLAP_SAVE_CROSSOVER = 16;
+
+	/**
+	 * Constructor. Will calculate the spectrum of the taps.
+	 *
+	 * @param tapsReal		real parts of the filter taps
+	 * @param tapsImag		imaginary parts of the filter taps (null for real taps)
+	 * @param decimation	decimation factor
+	 */
+	public OverlapSaveFilter(float[] tapsReal, float[] tapsImag, int decimation) {
+		if(tapsImag != null && tapsReal.length != tapsImag.length)
+			throw new IllegalArgumentException("real and imag filter taps have to be of the same length!");
+		this.numberOfTaps = tapsReal.length;
+		this.decimation = decimation;
+		this.historyLength = numberOfTaps - 1;
+
+		// Use a block size of 4 to 8 times the filter length. This keeps the overhead of the
+		// history small while the FFT size stays reasonable:
+		this.blockSize = Integer.highestOneBit(numberOfTaps) * 8;
+		this.fftEngine = new Radix4FFT(blockSize);
+		this.blockReal = new float[blockSize];
+		this.blockImag = new float[blockSize];
+		this.workReal = new float[blockSize];
+		this.workImag = new float[blockSize];
+		this.fill = historyLength;
+		this.emitted = historyLength;
+		this.fftCost = 2 * blockSize * (Integer.numberOfTrailingZeros(blockSize) + 1);
+		this.tapsReal = tapsReal.clone();
+		this.tapsImag = tapsImag == null ? new float[numberOfTaps] : tapsImag.clone();
+
+		// Calculate the spectrum of the taps:
+		this.tapsSpectrumReal = new float[blockSize];
+		this.tapsSpectrumImag = new float[blockSize];
+		for (int i = 0; i < numberOfTaps; i++) {
+			tapsSpectrumReal[i] = tapsReal[i] / blockSize;
+			tapsSpectrumImag[i] = tapsImag == null ? 0 : tapsImag[i] / blockSize;
+		}
+		fftEngine.fft(tapsSpectrumReal, tapsSpectrumImag);
+	}
+
+	/**
+	 * Returns true if the overlap-save method is faster than the direct form for a filter
+	 * with the given properties.
+	 *
+	 * @param numberOfTaps	length of the filter
+	 * @param decimation	decimation factor
+	 * @return true if overlap-save should be used
+	 */
+	public static boolean isFasterThanDirectForm(int numberOfTaps, int decimation) {
+		return numberOfTaps / decimation > OVERLAP_SAVE_CROSSOVER;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Filters the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, true);
+	}
+
+	/**
+	 * Filters the real parts of the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, false);
+	}
+
+	private int filter(SamplePacket in, SamplePacket out, int offset, int length, boolean complex) {
+		float[] reIn = in.re(), imIn = in.im();
+
+		// Calculate how many input samples can be consumed before the output packet is full.
+		// The next output is generated by the first sample that sees a decimation counter of 0:
+		int firstOutput = decimationCounter == 0 ? 0 : Math.max(decimation - decimationCounter, 1);
+		long maxConsumed = firstOutput + (long) (out.capacity() - out.size()) * decimation;
+		int consumed = (int) Math.min(length, maxConsumed);
+
+		int processed = 0;
+		while (processed < consumed) {
+			// Fill the block with new samples:
+			int count = Math.min(blockSize - fill, consumed - processed);
+			System.arraycopy(reIn, offset + processed, blockReal, fill, count);
+			if(complex)
+				System.arraycopy(imIn, offset + processed, blockImag, fill, count);
+			else
+				Arrays.fill(blockImag, fill, fill + count, 0);
+			fill += count;
+			processed += count;
+
+			// Process the block if it is full. If this was the last chunk of input, calculate the
+			// outputs of the new samples now and keep the block for the next call:
+			if(fill == blockSize)
+				processBlock(out, complex);
+			else if(processed == consumed) {
+				if((long) (fill - emitted + decimation - 1) / decimation * numberOfTaps < fftCost)
+					processDirect(out, complex);
+				else
+					processBlock(out, complex);
+			}
+		}
+
+		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+		return consumed;			// We return the number of consumed samples from the input buffers
+	}
+
+	/**
+	 * Will calculate the outputs of the samples that were added to the (partially filled) block
+	 * buffer since the last outputs in the direct form and append them to out (according to
+	 * the decimation).
+	 *
+	 * @param out		output sample packet
+	 * @param complex	if false, only the real parts of the output are written
+	 */
+	private void processDirect(SamplePacket out, boolean complex) {
+		int indexOut = out.size();
+		float[] reOut = out.re(), imOut = out.im();
+		float sumReal, sumImag;
+		for (int i = emitted; i < fill; i++) {
+			if(decimationCounter == 0) {
+				sumReal = 0;
+				sumImag = 0;
+				for (int k = 0; k < numberOfTaps; k++) {
+					sumReal += tapsReal[k] * blockReal[i - k] - tapsImag[k] * blockImag[i - k];
+					sumImag += tapsReal[k] * blockImag[i - k] + tapsImag[k] * blockReal[i - k];
+				}
+				reOut[indexOut] = sumReal;
+				if(complex)
+					imOut[indexOut] = sumImag;
+				indexOut++;
+			}
+			decimationCounter++;
+			if(decimationCounter >= decimation)
+				decimationCounter = 0;
+		}
+		out.setSize(indexOut);
+		emitted = fill;
+	}
+
+	/**
+	 * Will filter the samples in the block buffer and append the outputs of the samples that
+	 * have no output yet (according to the decimation) to out. If the block is full, the
+	 * history for the next block is kept; otherwise the block stays in the buffer.
+	 *
+	 * @param out		output sample packet
+	 * @param complex	if false, only the real parts of the output are written
+	 */
+	private void processBlock(SamplePacket out, boolean complex) {
+		// Copy the block into the work buffers. If the block is only partially filled, the
+		// remaining samples are set to 0 (they would only affect outputs that are not used):
+		System.arraycopy(blockReal, 0, workReal, 0, fill);
+		System.arraycopy(blockImag, 0, workImag, 0, fill);
+		if(fill < blockSize) {
+			Arrays.fill(workReal, fill, blockSize, 0);
+			Arrays.fill(workImag, fill, blockSize, 0);
+		}
+
+		// Fast convolution:
+		fftEngine.fft(workReal, workImag);
+		float re, im;
+		for (int i = 0; i < blockSize; i++) {
+			re = workReal[i] * tapsSpectrumReal[i] - workImag[i] * tapsSpectrumImag[i];
+			im = workReal[i] * tapsSpectrumImag[i] + workImag[i] * tapsSpectrumReal[i];
+			workReal[i] = re;
+			workImag[i] = im;
+		}
+		// inverse fft by swapping real and imaginary parts (scaling is already in the taps):
+		fftEngine.fft(workImag, workReal);
+
+		// Append every Mth output (M = decimation) of the new samples to the output packet:
+		int indexOut = out.size();
+		float[] reOut = out.re(), imOut = out.im();
+		for (int i = emitted; i < fill; i++) {
+			if(decimationCounter == 0) {
+				reOut[indexOut] = workReal[i];
+				if(complex)
+					imOut[indexOut] = workImag[i];
+				indexOut++;
+			}
+			decimationCounter++;
+			if(decimationCounter >= decimation)
+				decimationCounter = 0;
+		}
+		out.setSize(indexOut);
+		emitted = fill;
+
+		// keep the last taps-1 samples as history for the next block:
+		if(fill == blockSize) {
+			System.arraycopy(blockReal, fill - historyLength, blockReal, 0, historyLength);
+			System.arraycopy(blockImag, fill - historyLength, blockImag, 0, historyLength);
+			fill = historyLength;
+			emitted = historyLength;
+		}
+	}
+}
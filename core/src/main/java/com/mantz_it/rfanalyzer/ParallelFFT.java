@@ -0,0 +1,277 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>RF Analyzer - Parallel FFT</h1>
+ *
+ * Module:      ParallelFFT.java
+ * Description: This class implements the FftEngine interface for very large FFT sizes by
+ *              splitting the transform across the threads of a fork-join pool (four-step /
+ *              six-step decomposition). With N = N1 * N2, n = N2*n1 + n2 and k = k1 + N1*k2:
+ *
+ *              1. N2 FFTs of length N1 over the columns x[N2*n1 + n2] (gathered into rows)
+ *              2. multiplication with the twiddle factors exp(-j*2*PI*n2*k1/N)
+ *              3. N1 FFTs of length N2 over the results of step 2 (gathered into rows) and
+ *                 scattered into the natural output order X[k1 + N1*k2]
+ *
+ *              The transposes of the six-step algorithm are fused into the gather / scatter of
+ *              steps 1 and 3. Each step is split into one contiguous range of rows per thread;
+ *              the rows are small enough to stay in the cache and are transformed by Radix4FFT.
+ *              Blocks of BLOCK_SIZE rows are gathered at once, so that each access to the
+ *              large arrays reads or writes BLOCK_SIZE contiguous values.
+ *
+ *              Below MIN_PARALLEL_SIZE (or if the pool has only one thread) the transform is
+ *              done by a serial Radix4FFT, so this engine can be used for every size.
+ *              All buffers are allocated in the constructor; one instance must only be used by
+ *              one thread at a time.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class ParallelFFT implements FftEngine {
+	public static final int MIN_PARALLEL_SIZE = 131072;	// smaller FFTs are calculated by the serial engine
+	private static final int BLOCK_SIZE = 16;			// number of rows that are gathered / scattered together
+
+	private int n;					// FFT size
+	private int n1;					// number of rows of the first step (length of the first FFTs)
+	private int n2;					// length of the second FFTs
+	private ForkJoinPool pool;		// null: serial
+	private Radix4FFT serialFft;	// used below MIN_PARALLEL_SIZE
+	private Radix4FFT fft1;			// FFT of length n1
+	private Radix4FFT fft2;			// FFT of length n2
+	private float[] twiddlesRe;		// exp(-j*2*PI*column*k1/n) at index column*n1 + k1 (order of access)
+	private float[] twiddlesIm;
+	private float[] scratchRe;		// result of step 2: row n2 holds the N1 values k1
+	private float[] scratchIm;
+	private StepAction[] actions;	// one action per thread (reused for every transform)
+	private RecursiveAction rootAction;
+	private float[] re;				// arrays of the current transform
+	private float[] im;
+	private int step;				// current step (1 or 3) of the current transform
+
+	private static ForkJoinPool defaultPool = null;
+	private static final HashMap<Integer, float[][]> twiddleCache = new HashMap<Integer, float[][]>();
+
+	/**
+	 * Constructor. Uses the default pool (one thread per available core).
+	 *
+	 * @param n		FFT size (must be a power of 2)
+	 */
+	public ParallelFFT(int n) {
+		this(n, getDefaultPool());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param n		FFT size (must be a power of 2)
+	 * @param pool	pool that calculates the parts of the transform
+	 */
+	public ParallelFFT(int n, ForkJoinPool pool) {
+		if(n < 1 || Integer.bitCount(n) != 1)
+			throw new IllegalArgumentException("FFT length must be power of 2");
+		this.n = n;
+		if(n < MIN_PARALLEL_SIZE || pool.getParallelism() < 2) {
+			this.serialFft = new Radix4FFT(n);
+			return;
+		}
+		this.pool = pool;
+		int log2Size = Integer.numberOfTrailingZeros(n);
+		this.n1 = 1 << (log2Size / 2);
+		this.n2 = n / n1;
+		this.fft1 = new Radix4FFT(n1);
+		this.fft2 = new Radix4FFT(n2);
+		float[][] twiddles = getTwiddles(n1, n2);
+		this.twiddlesRe = twiddles[0];
+		this.twiddlesIm = twiddles[1];
+		this.scratchRe = new float[n];
+		this.scratchIm = new float[n];
+		this.actions = new StepAction[pool.getParallelism()];
+		for (int i = 0; i < actions.length; i++)
+			actions[i] = new StepAction(i, actions.length);
+		this.rootAction = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		};
+	}
+
+	/**
+	 * @return the shared pool with one thread per available core
+	 */
+	public static synchronized ForkJoinPool getDefaultPool() {
+		if(defaultPool == null)
+			defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return defaultPool;
+	}
+
+	/**
+	 * Returns the (cached) twiddle factors of step 2: exp(-j*2*PI*column*k1/n) at index
+	 * column*n1 + k1 for column = 0 .. n2-1 and k1 = 0 .. n1-1.
+	 */
+	private static float[][] getTwiddles(int n1, int n2) {
+		int n = n1 * n2;
+		synchronized (twiddleCache) {
+			float[][] twiddles = twiddleCache.get(n);
+			if(twiddles == null) {
+				twiddles = new float[2][n];
+				for (int column = 0; column < n2; column++) {
+					for (int k1 = 0; k1 < n1; k1++) {
+						double phi = -2 * Math.PI * ((long) column * k1) / n;
+						twiddles[0][column * n1 + k1] = (float) Math.cos(phi);
+						twiddles[1][column * n1 + k1] = (float) Math.sin(phi);
+					}
+				}
+				twiddleCache.put(n, twiddles);
+			}
+			return twiddles;
+		}
+	}
+
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	/**
+	 * @return true if the transform is split across multiple threads (false: serial fallback)
+	 */
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	@Override
+	public void fft(float[] re, float[] im) {
+		if(pool == null) {
+			serialFft.fft(re, im);
+			return;
+		}
+		this.re = re;
+		this.im = im;
+		runStep(1);
+		runStep(3);
+		this.re = null;
+		this.im = null;
+	}
+
+	/**
+	 * Runs one step in all actions and waits until they are finished.
+	 *
+	 * @param step		1: column FFTs and twiddle factors; 3: row FFTs
+	 */
+	private void runStep(int step) {
+		this.step = step;
+		for (StepAction action : actions)
+			action.reinitialize();
+		rootAction.reinitialize();
+		pool.invoke(rootAction);
+	}
+
+	/**
+	 * Calculates one contiguous range of the rows of the current step.
+	 */
+	private class StepAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int index;			// index of this action
+		private int count;			// number of actions
+		private float[][] rowsRe = new float[BLOCK_SIZE][];	// gathered rows (length n2 >= n1)
+		private float[][] rowsIm = new float[BLOCK_SIZE][];
+
+		StepAction(int index, int count) {
+			this.index = index;
+			this.count = count;
+			for (int j = 0; j < BLOCK_SIZE; j++) {
+				rowsRe[j] = new float[n2];
+				rowsIm[j] = new float[n2];
+			}
+		}
+
+		@Override
+		protected void compute() {
+			if(step == 1)
+				columnFfts(n2 * index / count, n2 * (index + 1) / count);
+			else
+				rowFfts(n1 * index / count, n1 * (index + 1) / count);
+		}
+
+		/**
+		 * Steps 1 and 2 for the columns start .. end-1
+		 */
+		private void columnFfts(int start, int end) {
+			for (int block = start; block < end; block += BLOCK_SIZE) {
+				int blockSize = Math.min(BLOCK_SIZE, end - block);
+				// gather the columns x[n2*i + block .. block+blockSize-1] into rows:
+				for (int i = 0; i < n1; i++) {
+					int base = n2 * i + block;
+					for (int j = 0; j < blockSize; j++) {
+						rowsRe[j][i] = re[base + j];
+						rowsIm[j][i] = im[base + j];
+					}
+				}
+				for (int j = 0; j < blockSize; j++) {
+					float[] rowRe = rowsRe[j];
+					float[] rowIm = rowsIm[j];
+					fft1.fft(rowRe, rowIm);
+					// multiply with exp(-j*2*PI*column*k1/n) and store the row contiguously:
+					int column = block + j;
+					int offset = column * n1;
+					for (int k1 = 0; k1 < n1; k1++) {
+						float wr = twiddlesRe[offset + k1];
+						float wi = twiddlesIm[offset + k1];
+						scratchRe[offset + k1] = wr * rowRe[k1] - wi * rowIm[k1];
+						scratchIm[offset + k1] = wr * rowIm[k1] + wi * rowRe[k1];
+					}
+				}
+			}
+		}
+
+		/**
+		 * Step 3 for the rows (k1) start .. end-1
+		 */
+		private void rowFfts(int start, int end) {
+			for (int block = start; block < end; block += BLOCK_SIZE) {
+				int blockSize = Math.min(BLOCK_SIZE, end - block);
+				// gather scratch[n1*column + block .. block+blockSize-1] into rows:
+				for (int column = 0; column < n2; column++) {
+					int base = n1 * column + block;
+					for (int j = 0; j < blockSize; j++) {
+						rowsRe[j][column] = scratchRe[base + j];
+						rowsIm[j][column] = scratchIm[base + j];
+					}
+				}
+				for (int j = 0; j < blockSize; j++)
+					fft2.fft(rowsRe[j], rowsIm[j]);
+				// scatter to X[k1 + n1*k2]:
+				for (int k2 = 0; k2 < n2; k2++) {
+					int base = n1 * k2 + block;
+					for (int j = 0; j < blockSize; j++) {
+						re[base + j] = rowsRe[j][k2];
+						im[base + j] = rowsIm[j][k2];
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>RF Analyzer - Pipeline Metrics</h1>
+ *
+ * Module:      PipelineMetrics.java
+ * Description: Global registry of the metrics of the signal processing pipeline:
+ *              - counters: packets in / out / dropped of each stage
+ *              - gauges: occupancy of the queues between the stages [0..1]
+ *              - latency histograms: time from the reception of a packet (Scheduler) until the
+ *                spectrum is drawn (LATENCY_FFT) and until the audio is played (LATENCY_AUDIO)
+ *
+ *              The blocks register their metrics by name (see the constants). Counters and
+ *              histograms are created on first use and can be updated from any thread without
+ *              locking. The AnalyzerSurface shows a summary (getSummary()) together with the
+ *              other debug information.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PipelineMetrics {
+	// Counters (packets):
+	public static final String SOURCE_DROPPED = "source.dropped";		// dropped by the source (scheduler too slow)
+	public static final String SCHEDULER_IN = "scheduler.in";			// packets received from the source
+	public static final String FFT_IN = "fft.in";						// packets passed to the fft ring buffer
+	public static final String FFT_DROPPED = "fft.dropped";			// packets not passed to the fft (no free buffer)
+	public static final String FFT_OUT = "fft.out";					// calculated spectra
+	public static final String CHANNEL_IN = "channel.in";				// packets processed by the demodulation channels
+	public static final String CHANNEL_DROPPED = "channel.dropped";	// packets dropped by the channels (demodulator too slow)
+	public static final String DECIMATOR_OUT = "decimator.out";		// decimated packets
+	public static final String DEMODULATOR_OUT = "demodulator.out";	// demodulated packets passed to the audio sink
+	public static final String DEMODULATOR_DROPPED = "demodulator.dropped";	// demodulated packets dropped (audio sink too slow)
+	public static final String AUDIO_OUT = "audio.out";				// packets written to the audio output
+
+	// Gauges (queue occupancy):
+	public static final String QUEUE_SOURCE = "queue.source";
+	public static final String QUEUE_FFT = "queue.fft";
+	public static final String QUEUE_DEMODULATOR = "queue.demodulator";
+	public static final String QUEUE_AUDIO = "queue.audio";
+
+	// Latency histograms (microseconds):
+	public static final String LATENCY_FFT = "latency.fft";
+	public static final String LATENCY_AUDIO = "latency.audio";
+
+	private static final Map<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+	private static final Map<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Monotonic counter
+	 */
+	public static class Counter {
+		private final AtomicLong count = new AtomicLong();
+
+		public void increment() {
+			count.incrementAndGet();
+		}
+
+		public void add(long value) {
+			count.addAndGet(value);
+		}
+
+		public long get() {
+			return count.get();
+		}
+
+		void reset() {
+			count.set(0);
+		}
+	}
+
+	/**
+	 * Value that is read when the metrics are displayed (e.g. the size of a queue)
+	 */
+	public static interface Gauge {
+		public double getValue();
+	}
+
+	/**
+	 * @param name		name of the counter (e.g. FFT_DROPPED)
+	 * @return the counter with this name (created on first use)
+	 */
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if(counter == null) {
+			synchronized (counters) {
+				counter = counters.get(name);
+				if(counter == null) {
+					counter = new Counter();
+					counters.put(name, counter);
+				}
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * @param name		name of the histogram (e.g. LATENCY_FFT)
+	 * @return the latency histogram with this name (created on first use)
+	 */
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if(histogram == null) {
+			synchronized (histograms) {
+				histogram = histograms.get(name);
+				if(histogram == null) {
+					histogram = new LatencyHistogram();
+					histograms.put(name, histogram);
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Registers a gauge. A gauge with the same name is replaced (e.g. when the pipeline is
+	 * restarted with new queues).
+	 *
+	 * @param name		name of the gauge (e.g. QUEUE_FFT)
+	 * @param gauge		gauge
+	 */
+	public static void registerGauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Registers a gauge that reports the occupancy [0..1] of a ring buffer.
+	 *
+	 * @param name			name of the gauge (e.g. QUEUE_FFT)
+	 * @param ringBuffer	ring buffer
+	 */
+	public static void registerQueueGauge(String name, final RingBuffer<?> ringBuffer) {
+		registerGauge(name, new Gauge() {
+			@Override
+			public double getValue() {
+				return (double) ringBuffer.size() / ringBuffer.getCapacity();
+			}
+		});
+	}
+
+	/**
+	 * Removes a gauge (e.g. when the queue it observes is discarded).
+	 *
+	 * @param name		name of the gauge
+	 */
+	public static void unregisterGauge(String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * @param name		name of the gauge
+	 * @return current value of the gauge or NaN if no gauge with this name is registered
+	 */
+	public static double getGaugeValue(String name) {
+		Gauge gauge = gauges.get(name);
+		return gauge == null ? Double.NaN : gauge.getValue();
+	}
+
+	/**
+	 * Resets all counters and histograms (the gauges show current values).
+	 */
+	public static void reset() {
+		for (Counter counter : counters.values())
+			counter.reset();
+		for (LatencyHistogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+	/**
+	 * @return human readable summary of all metrics (one line per group) for the debug overlay and the log
+	 */
+	public static List<String> getSummary() {
+		List<String> lines = new ArrayList<String>();
+		lines.add(String.format(Locale.US, "in %d  fft %d/%d (drop %d)  src drop %d",
+				counter(SCHEDULER_IN).get(), counter(FFT_OUT).get(), counter(FFT_IN).get(),
+				counter(FFT_DROPPED).get(), counter(SOURCE_DROPPED).get()));
+		lines.add(String.format(Locale.US, "chan %d (drop %d)  dec %d  demod %d (drop %d)  audio %d",
+				counter(CHANNEL_IN).get(), counter(CHANNEL_DROPPED).get(), counter(DECIMATOR_OUT).get(),
+				counter(DEMODULATOR_OUT).get(), counter(DEMODULATOR_DROPPED).get(), counter(AUDIO_OUT).get()));
+		StringBuilder queues = new StringBuilder("queues");
+		for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+			if(entry.getKey().startsWith("queue."))
+				queues.append(String.format(Locale.US, "  %s %.0f%%", entry.getKey().substring(6), entry.getValue().getValue() * 100));
+		}
+		lines.add(queues.toString());
+		for (String name : new String[] {LATENCY_FFT, LATENCY_AUDIO}) {
+			LatencyHistogram histogram = histogram(name);
+			lines.add(String.format(Locale.US, "%s ms: p50 %.1f  p99 %.1f  max %.1f  (n=%d)", name.substring(8),
+					histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0,
+					histogram.getMax() / 1000.0, histogram.getCount()));
+		}
+		return lines;
+	}
+}
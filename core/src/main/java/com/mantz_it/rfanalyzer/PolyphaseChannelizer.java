@@ -0,0 +1,226 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Polyphase Channelizer</h1>
+ *
+ * Module:      PolyphaseChannelizer.java
+ * Description: This class implements a polyphase filter bank (PFB) channelizer. It splits a
+ *              signal into M evenly spaced channels (spacing sampleRate/M) with only one
+ *              prototype low pass filter and one M-point FFT per output step. Channel k is
+ *              centered at k*sampleRate/M (channels k >= M/2 are the negative frequencies) and
+ *              is delivered at baseband.
+ *
+ *              For each output step the prototype filter h (length M*P) is split into M branches
+ *              of P taps. Branch r calculates u[r] = sum_p h[p*M+r] * x[n-p*M-r] and the channel
+ *              outputs are y[k] = exp(-j*2*PI*k*n/M) * sum_r u[r] * exp(j*2*PI*k*r/M), i.e. an
+ *              inverse FFT of u. The FFT is done with a Radix4FFT (inverse by swapping real and
+ *              imaginary parts).
+ *
+ *              Two modes are supported:
+ *              - critically sampled: one output step every M samples (channel rate = sampleRate/M)
+ *              - 2x oversampled: one output step every M/2 samples (channel rate = 2*sampleRate/M).
+ *                The transition band of the prototype filter can then end at the channel spacing
+ *                without aliasing. The factor exp(-j*2*PI*k*n/M) becomes (-1)^(k*m) for output step m.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PolyphaseChannelizer {
+	private int numberOfChannels;		// M
+	private int decimation;				// M (critically sampled) or M/2 (oversampled)
+	private int tapsPerBranch;			// P
+	private float[] taps;				// prototype filter (zero padded to M*P)
+	private float[] delaysReal;			// mirrored delay line (length 2*M*P)
+	private float[] delaysImag;
+	private int delayIndex = 0;			// position of the oldest sample in the delay line
+	private int decimationCounter = 0;	// number of samples since the last output step
+	private int outputCounter = 0;		// number of output steps (only the parity is needed)
+	private float[] fftReal;			// branch outputs / channel outputs
+	private float[] fftImag;
+	private FftEngine fftEngine;
+	private static final String LOGTAG = "PolyphaseChannelizer";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numberOfChannels	number of channels M (must be a power of 2)
+	 * @param oversampled		true for 2x oversampling (decimation M/2), false for critical sampling
+	 * @param prototypeTaps		prototype low pass filter (cut off at about half the channel spacing)
+	 */
+	public PolyphaseChannelizer(int numberOfChannels, boolean oversampled, float[] prototypeTaps) {
+		if(numberOfChannels < 2 || Integer.bitCount(numberOfChannels) != 1)
+			throw new IllegalArgumentException("number of channels must be a power of 2 and at least 2");
+		this.numberOfChannels = numberOfChannels;
+		this.decimation = oversampled ? numberOfChannels / 2 : numberOfChannels;
+		this.tapsPerBranch = (prototypeTaps.length + numberOfChannels - 1) / numberOfChannels;
+		int length = tapsPerBranch * numberOfChannels;
+		this.taps = new float[length];
+		System.arraycopy(prototypeTaps, 0, taps, 0, prototypeTaps.length);
+		this.delaysReal = new float[2 * length];
+		this.delaysImag = new float[2 * length];
+		this.fftReal = new float[numberOfChannels];
+		this.fftImag = new float[numberOfChannels];
+		this.fftEngine = new Radix4FFT(numberOfChannels);
+	}
+
+	/**
+	 * Will create a channelizer with a prototype filter for the given number of channels.
+	 * The pass band ends at 0.4 times the channel spacing. In oversampled mode the stop band
+	 * starts at the channel spacing (no aliasing into the pass band), otherwise at 0.6 times
+	 * the channel spacing (adjacent channels overlap in the transition band).
+	 *
+	 * @param numberOfChannels	number of channels M (must be a power of 2)
+	 * @param oversampled		true for 2x oversampling (decimation M/2), false for critical sampling
+	 * @param attenuation		attenuation of stop band in dB
+	 * @return instance of PolyphaseChannelizer or null if the filter parameters are invalid
+	 */
+	public static PolyphaseChannelizer createChannelizer(int numberOfChannels, boolean oversampled, float attenuation) {
+		// The filter is designed for a normalized sample rate of 1 (channel spacing 1/M):
+		float spacing = 1f / numberOfChannels;
+		float cutOff = 0.4f * spacing;
+		float transition = (oversampled ? 0.6f : 0.2f) * spacing;
+		float[] taps = FirFilter.createLowPassTaps(1, 1, cutOff, transition, attenuation);
+		if(taps == null) {
+			Log.e(LOGTAG, "createChannelizer: could not create prototype filter.");
+			return null;
+		}
+		return new PolyphaseChannelizer(numberOfChannels, oversampled, taps);
+	}
+
+	public int getNumberOfChannels() {
+		return numberOfChannels;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @return length of the prototype filter (including zero padding)
+	 */
+	public int getNumberOfTaps() {
+		return taps.length;
+	}
+
+	/**
+	 * Returns the offset of the center of a channel relative to the center frequency of the input.
+	 *
+	 * @param channel		channel index (0 .. M-1)
+	 * @param sampleRate	sample rate of the input
+	 * @return offset in Hz (channels >= M/2 have negative offsets)
+	 */
+	public long getChannelOffset(int channel, int sampleRate) {
+		int k = channel < numberOfChannels / 2 ? channel : channel - numberOfChannels;
+		return (long) k * sampleRate / numberOfChannels;
+	}
+
+	/**
+	 * Splits the samples from the input sample packet into the channels and appends the output of
+	 * channel k to out[k]. Channels with out[k] == null are calculated but not stored. Stops
+	 * automatically if one of the output packets is full.
+	 *
+	 * @param in		input sample packet
+	 * @param out		output sample packets (length M, entries may be null)
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int process(SamplePacket in, SamplePacket[] out, int offset, int length) {
+		int m = numberOfChannels;
+		int n = taps.length;
+		float[] reIn = in.re(), imIn = in.im();
+		float[] dReal = delaysReal, dImag = delaysImag;
+		float sumReal, sumImag;
+		int i = 0;
+
+		while (i < length) {
+			// Push all samples that don't trigger an output step into the delay line:
+			int count = Math.min(decimation - 1 - decimationCounter, length - i);
+			for (int j = 0; j < count; j++) {
+				dReal[delayIndex] = dReal[delayIndex + n] = reIn[offset + i + j];
+				dImag[delayIndex] = dImag[delayIndex + n] = imIn[offset + i + j];
+				delayIndex++;
+				if(delayIndex >= n)
+					delayIndex = 0;
+			}
+			i += count;
+			decimationCounter += count;
+			if(i == length)
+				break;
+
+			// The next sample triggers an output step. First check if we have enough space in the output buffers:
+			boolean full = false;
+			for (int k = 0; k < m; k++) {
+				if(out[k] != null && out[k].size() == out[k].capacity())
+					full = true;
+			}
+			if(full)
+				break;
+			dReal[delayIndex] = dReal[delayIndex + n] = reIn[offset + i];
+			dImag[delayIndex] = dImag[delayIndex + n] = imIn[offset + i];
+			delayIndex++;
+			if(delayIndex >= n)
+				delayIndex = 0;
+			i++;
+			decimationCounter = 0;
+
+			// Branch filters. The newest sample is at newest, x[n-j] is at newest-j:
+			int newest = delayIndex + n - 1;
+			for (int r = 0; r < m; r++) {
+				sumReal = 0;
+				sumImag = 0;
+				for (int j = r; j < n; j += m) {
+					sumReal += taps[j] * dReal[newest - j];
+					sumImag += taps[j] * dImag[newest - j];
+				}
+				fftReal[r] = sumReal;
+				fftImag[r] = sumImag;
+			}
+
+			// inverse FFT by swapping real and imaginary parts:
+			fftEngine.fft(fftImag, fftReal);
+
+			// Write the channel outputs (in oversampled mode odd channels are negated on odd output steps):
+			boolean negateOdd = decimation != m && (outputCounter & 1) == 1;
+			for (int k = 0; k < m; k++) {
+				if(out[k] == null)
+					continue;
+				int index = out[k].size();
+				if(negateOdd && (k & 1) == 1) {
+					out[k].re()[index] = -fftReal[k];
+					out[k].im()[index] = -fftImag[k];
+				} else {
+					out[k].re()[index] = fftReal[k];
+					out[k].im()[index] = fftImag[k];
+				}
+				out[k].setSize(index + 1);
+			}
+			outputCounter++;
+		}
+
+		// update sample rate and frequency of the output packets:
+		for (int k = 0; k < m; k++) {
+			if(out[k] != null) {
+				out[k].setSampleRate(in.getSampleRate() / decimation);
+				out[k].setFrequency(in.getFrequency() + getChannelOffset(k, in.getSampleRate()));
+			}
+		}
+		return i;			// We return the number of consumed samples from the input buffers
+	}
+}
@@ -0,0 +1,155 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Polyphase Decimator</h1>
+ *
+ * Module:      PolyphaseDecimator.java
+ * Description: This class implements a decimating FIR filter kernel. It is used by FirFilter
+ *              for decimation > 1 (if the filter is not long enough for overlap-save).
+ *
+ *              Compared to the direct form in FirFilter it has two advantages:
+ *              - Only the outputs that survive the decimation are calculated. The input
+ *                samples in between are just pushed into the delay line (this is the
+ *                commutator of a polyphase decimator: every input sample reaches exactly
+ *                one phase of the filter per output).
+ *              - The delay line is stored twice (mirrored). Each sample is written to
+ *                index i and i+N, so the last N samples are always available as one
+ *                contiguous window and the inner loop needs no wrap-around check.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PolyphaseDecimator {
+	private float[] reversedTaps;		// taps in reversed order (oldest sample first)
+	private float[] delaysReal;			// mirrored delay line (length 2*N)
+	private float[] delaysImag;
+	private int delayIndex = 0;			// position of the oldest sample in the delay line
+	private int decimation;
+	private int decimationCounter = 1;	// same meaning as in FirFilter
+
+	/**
+	 * Constructor.
+	 *
+	 * @param taps			filter taps
+	 * @param decimation	decimation factor
+	 */
+	public PolyphaseDecimator(float[] taps, int decimation) {
+		int ntaps = taps.length;
+		this.reversedTaps = new float[ntaps];
+		for (int i = 0; i < ntaps; i++)
+			reversedTaps[i] = taps[ntaps - 1 - i];
+		this.delaysReal = new float[2 * ntaps];
+		this.delaysImag = new float[2 * ntaps];
+		this.decimation = decimation;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * Filters the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, true);
+	}
+
+	/**
+	 * Filters the real parts of the samples from the input sample packet and appends filter output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, false);
+	}
+
+	private int filter(SamplePacket in, SamplePacket out, int offset, int length, boolean complex) {
+		int ntaps = reversedTaps.length;
+		int indexOut = out.size();
+		int outputCapacity = out.capacity();
+		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+		float[] taps = reversedTaps;
+		float[] dReal = delaysReal, dImag = delaysImag;
+		int i = 0;
+
+		while (i < length) {
+			// Push all samples that don't produce an output into the delay line:
+			int nextOutput = decimationCounter == 0 ? 0 : Math.max(decimation - decimationCounter, 1);
+			int count = Math.min(nextOutput, length - i);
+			for (int j = 0; j < count; j++) {
+				dReal[delayIndex] = dReal[delayIndex + ntaps] = reIn[offset + i + j];
+				if(complex)
+					dImag[delayIndex] = dImag[delayIndex + ntaps] = imIn[offset + i + j];
+				delayIndex++;
+				if(delayIndex >= ntaps)
+					delayIndex = 0;
+			}
+			i += count;
+			decimationCounter = count == nextOutput ? 0 : decimationCounter + count;
+			if(i == length)
+				break;
+
+			// The next sample produces an output. First check if we have enough space in the output buffers:
+			if(indexOut == outputCapacity) {
+				out.setSize(indexOut);	// update size of output sample packet
+				out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+				return i;    // We return the number of consumed samples from the input buffers
+			}
+			dReal[delayIndex] = dReal[delayIndex + ntaps] = reIn[offset + i];
+			if(complex)
+				dImag[delayIndex] = dImag[delayIndex + ntaps] = imIn[offset + i];
+			delayIndex++;
+			if(delayIndex >= ntaps)
+				delayIndex = 0;
+			i++;
+
+			// Calculate the result. The window [delayIndex, delayIndex+ntaps) holds the last ntaps samples:
+			float sumReal = 0;
+			float sumImag = 0;
+			if(complex) {
+				for (int k = 0; k < ntaps; k++) {
+					sumReal += taps[k] * dReal[delayIndex + k];
+					sumImag += taps[k] * dImag[delayIndex + k];
+				}
+				imOut[indexOut] = sumImag;
+			} else {
+				for (int k = 0; k < ntaps; k++)
+					sumReal += taps[k] * dReal[delayIndex + k];
+			}
+			reOut[indexOut] = sumReal;
+			indexOut++;
+
+			// update counter:
+			decimationCounter = decimation > 1 ? 1 : 0;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(in.getSampleRate()/decimation);	// update the sample rate of the output sample packet
+		return length;			// We return the number of consumed samples from the input buffers
+	}
+}
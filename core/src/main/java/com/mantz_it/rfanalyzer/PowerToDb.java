@@ -0,0 +1,115 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Power To dB</h1>
+ *
+ * Module:      PowerToDb.java
+ * Description: Converts the power of the fft bins to dB: 10 * log10(power) + offset
+ *
+ *              The logarithm is approximated in float: the exponent of the IEEE 754
+ *              representation is the integer part of log2(x), the mantissa m in [1,2) is mapped by
+ *              a polynomial of 4th order (least squares fit on Chebyshev nodes). The error is below
+ *              MAX_ERROR_DB for all positive normal numbers, far below what can be seen on the screen.
+ *              Because the input is the power (re^2 + im^2), no square root is needed, and the
+ *              normalization of the fft (1/fftSize for re and im) is a constant offset in dB
+ *              (see getFftOffset()).
+ *
+ *              toDbShifted() also swaps the two halves of the spectrum (to draw DC in the center)
+ *              with two contiguous loops instead of an index modulo for each bin.
+ *              Nothing is allocated; the methods can be called for every frame.
+ *
+ *              Note: 0 results in about -383 dB instead of -Infinity; negative numbers, NaN and
+ *              Infinity give undefined results.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PowerToDb {
+	public static final float MAX_ERROR_DB = 0.001f;		// max. absolute error of toDb() in dB
+
+	private static final float DB_PER_OCTAVE = 3.0103f;		// 10 * log10(2)
+	// log2(1 + u) for u in [0,1):
+	private static final float C0 = 1.0018903e-4f;
+	private static final float C1 = 1.4373022f;
+	private static final float C2 = -0.6729342f;
+	private static final float C3 = 0.3154676f;
+	private static final float C4 = -0.0800109f;
+
+	/**
+	 * Approximates log2(x).
+	 *
+	 * @param x		positive number
+	 * @return log2(x) with an absolute error below 1.2e-4
+	 */
+	public static float fastLog2(float x) {
+		int bits = Float.floatToRawIntBits(x);
+		int exponent = ((bits >>> 23) & 0xff) - 127;
+		float u = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000) - 1;	// mantissa - 1 in [0,1)
+		return exponent + (C0 + u * (C1 + u * (C2 + u * (C3 + u * C4))));
+	}
+
+	/**
+	 * @param power		positive number
+	 * @return approximately 10 * log10(power)
+	 */
+	public static float toDb(float power) {
+		return DB_PER_OCTAVE * fastLog2(power);
+	}
+
+	/**
+	 * Returns the offset that normalizes the power of an unnormalized fft: the magnitude of
+	 * the bins is divided by fftSize, so the power by fftSize^2.
+	 *
+	 * @param fftSize	size of the fft
+	 * @return -20 * log10(fftSize)
+	 */
+	public static float getFftOffset(int fftSize) {
+		return (float) (-20 * Math.log10(fftSize));
+	}
+
+	/**
+	 * Converts the power to dB: db[i] = 10 * log10(power[i]) + offset
+	 *
+	 * @param power		power of each bin
+	 * @param db		destination (at least power.length values, may be the same array as power)
+	 * @param offset	offset in dB (e.g. getFftOffset())
+	 */
+	public static void toDb(float[] power, float[] db, float offset) {
+		for (int i = 0; i < power.length; i++)
+			db[i] = DB_PER_OCTAVE * fastLog2(power[i]) + offset;
+	}
+
+	/**
+	 * Converts the power to dB and swaps both halves of the spectrum, so that DC is in the
+	 * center: db[(i + n/2) % n] = 10 * log10(power[i]) + offset
+	 *
+	 * @param power		power of each bin (in fft order, power.length must be even)
+	 * @param db		destination (at least power.length values, must not be the same array as power)
+	 * @param offset	offset in dB (e.g. getFftOffset())
+	 */
+	public static void toDbShifted(float[] power, float[] db, float offset) {
+		int half = power.length / 2;
+		// positive frequencies to the upper half:
+		for (int i = 0; i < half; i++)
+			db[half + i] = DB_PER_OCTAVE * fastLog2(power[i]) + offset;
+		// negative frequencies to the lower half:
+		for (int i = half; i < power.length; i++)
+			db[i - half] = DB_PER_OCTAVE * fastLog2(power[i]) + offset;
+	}
+}
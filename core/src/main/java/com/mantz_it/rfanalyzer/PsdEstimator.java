@@ -0,0 +1,140 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - PSD Estimator</h1>
+ *
+ * Module:      PsdEstimator.java
+ * Description: Averages consecutive power spectra (Welch's method): the power of the windowed
+ *              (and possibly overlapping, see ContinuousFft) segments is averaged in the linear
+ *              domain and converted to dB only once for the display. Averaging dB values instead
+ *              would underestimate noise by 2.5 dB and smear signals of changing level.
+ *
+ *              The average covers the last 'length' spectra (sliding window). It is updated with
+ *              a running sum, i.e. with one addition and one subtraction per bin and frame. To
+ *              prevent rounding errors from accumulating, the sum is recalculated from the history
+ *              once per window (amortized O(1) per bin as well).
+ *              The history is discarded if the frequency, the sample rate or the size of the
+ *              spectra changes.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class PsdEstimator {
+	private int length;					// number of spectra in the average
+	private float[][] history = null;	// the last 'length' spectra (ring)
+	private int newestIndex = -1;		// index of the newest spectrum in history
+	private int count = 0;				// number of valid spectra in history (<= length)
+	private double[] sum = null;		// sum of the spectra in history
+	private float[] average = null;		// sum / count
+	private long frequency = 0;			// center frequency of the spectra in history
+	private int sampleRate = 0;			// sample rate of the spectra in history
+
+	/**
+	 * Constructor.
+	 *
+	 * @param length		number of spectra to average (>= 1; 1 means no averaging)
+	 */
+	public PsdEstimator(int length) {
+		setLength(length);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Changes the number of averaged spectra. This discards the history.
+	 *
+	 * @param length		number of spectra to average (>= 1; 1 means no averaging)
+	 */
+	public void setLength(int length) {
+		if(length < 1)
+			throw new IllegalArgumentException("Length must be at least 1");
+		this.length = length;
+		this.history = null;
+	}
+
+	/**
+	 * @return number of spectra in the current average
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Discards the history.
+	 */
+	public void reset() {
+		history = null;
+	}
+
+	/**
+	 * Adds a spectrum and updates the average.
+	 *
+	 * @param power			linear power of each bin
+	 * @param frequency		center frequency of the spectrum
+	 * @param sampleRate	sample rate of the spectrum
+	 * @return average power of each bin over the last 'length' spectra (valid until the next call)
+	 */
+	public float[] add(float[] power, long frequency, int sampleRate) {
+		int size = power.length;
+		if(history == null || history[0].length != size || frequency != this.frequency || sampleRate != this.sampleRate) {
+			if(history == null || history[0].length != size || history.length != length) {
+				history = new float[length][size];
+				sum = new double[size];
+				average = new float[size];
+			}
+			for (int i = 0; i < size; i++)
+				sum[i] = 0;
+			newestIndex = -1;
+			count = 0;
+			this.frequency = frequency;
+			this.sampleRate = sampleRate;
+		}
+
+		// replace the oldest spectrum (if the history is full) by the new one:
+		newestIndex = (newestIndex + 1) % length;
+		float[] oldest = history[newestIndex];
+		boolean full = count == length;
+		if(!full)
+			count++;
+		if(full && newestIndex == 0) {
+			// recalculate the sum once per window to get rid of the accumulated rounding errors:
+			System.arraycopy(power, 0, oldest, 0, size);
+			for (int i = 0; i < size; i++)
+				sum[i] = 0;
+			for (float[] spectrum : history) {
+				for (int i = 0; i < size; i++)
+					sum[i] += spectrum[i];
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				if(full)
+					sum[i] -= oldest[i];
+				sum[i] += power[i];
+				oldest[i] = power[i];
+			}
+		}
+
+		float scale = 1f / count;
+		for (int i = 0; i < size; i++)
+			average[i] = (float) (sum[i] * scale);
+		return average;
+	}
+}
@@ -0,0 +1,136 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Radix-4 FFT</h1>
+ *
+ * Module:      Radix4FFT.java
+ * Description: This class implements an in-place radix-4 decimation-in-time FFT. It uses a
+ *              precomputed (and shared) FftPlan that holds the bit-reversal permutation and
+ *              the twiddle factors of each stage in the order they are accessed. If log2(N)
+ *              is odd, a single radix-2 stage is done first.
+ *
+ *              Compared to the radix-2 implementation in FFT, this needs half the number of
+ *              passes over the data, 25% less complex multiplications and no index
+ *              computations for the bit-reversal.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Radix4FFT implements FftEngine {
+	private int n;			// FFT size
+	private FftPlan plan;	// precomputed tables for this size
+
+	/**
+	 * Constructor. Will get the (cached) plan for the given size.
+	 *
+	 * @param n		FFT size (must be a power of 2)
+	 */
+	public Radix4FFT(int n) {
+		this.n = n;
+		this.plan = FftPlan.getPlan(n);
+	}
+
+	@Override
+	public int getSize() {
+		return n;
+	}
+
+	/**
+	 * @return the plan that is used by this FFT instance
+	 */
+	public FftPlan getPlan() {
+		return plan;
+	}
+
+	@Override
+	public void fft(float[] re, float[] im) {
+		float t;
+
+		// Bit-reverse (swap pairs are precomputed):
+		int[] swapA = plan.getSwapA();
+		int[] swapB = plan.getSwapB();
+		for (int i = 0; i < swapA.length; i++) {
+			int a = swapA[i];
+			int b = swapB[i];
+			t = re[a];	re[a] = re[b];	re[b] = t;
+			t = im[a];	im[a] = im[b];	im[b] = t;
+		}
+
+		// Leading radix-2 stage (only if log2(n) is odd). All twiddle factors are 1:
+		if(plan.hasLeadingRadix2Stage()) {
+			for (int k = 0; k < n; k += 2) {
+				t = re[k+1];
+				re[k+1] = re[k] - t;
+				re[k] = re[k] + t;
+				t = im[k+1];
+				im[k+1] = im[k] - t;
+				im[k] = im[k] + t;
+			}
+		}
+
+		// Radix-4 stages:
+		float[] tw = plan.getTwiddles();
+		int[] quarterSizes = plan.getStageQuarterSizes();
+		int[] offsets = plan.getStageOffsets();
+		float w1r, w1i, w2r, w2i, w3r, w3i;
+		float a0r, a0i, b1r, b1i, b2r, b2i, b3r, b3i;
+		float s0r, s0i, d0r, d0i, s1r, s1i, d1r, d1i;
+		for (int s = 0; s < quarterSizes.length; s++) {
+			int h = quarterSizes[s];
+			int groupSize = 4*h;
+			int offset = offsets[s];
+			for (int g = 0; g < n; g += groupSize) {
+				int tIndex = offset;
+				for (int i0 = g; i0 < g + h; i0++) {
+					int i1 = i0 + h;
+					int i2 = i1 + h;
+					int i3 = i2 + h;
+					w1r = tw[tIndex];
+					w1i = tw[tIndex+1];
+					w2r = tw[tIndex+2];
+					w2i = tw[tIndex+3];
+					w3r = tw[tIndex+4];
+					w3i = tw[tIndex+5];
+					tIndex += 6;
+
+					// Because the input is in bit-reversed order, the sample at i1 is
+					// multiplied with w^2 and the sample at i2 with w^1:
+					a0r = re[i0];
+					a0i = im[i0];
+					b1r = w2r*re[i1] - w2i*im[i1];
+					b1i = w2r*im[i1] + w2i*re[i1];
+					b2r = w1r*re[i2] - w1i*im[i2];
+					b2i = w1r*im[i2] + w1i*re[i2];
+					b3r = w3r*re[i3] - w3i*im[i3];
+					b3i = w3r*im[i3] + w3i*re[i3];
+
+					// 4-point DFT:
+					s0r = a0r + b1r;	s0i = a0i + b1i;
+					d0r = a0r - b1r;	d0i = a0i - b1i;
+					s1r = b2r + b3r;	s1i = b2i + b3i;
+					d1r = b2r - b3r;	d1i = b2i - b3i;
+					re[i0] = s0r + s1r;	im[i0] = s0i + s1i;
+					re[i2] = s0r - s1r;	im[i2] = s0i - s1i;
+					re[i1] = d0r + d1i;	im[i1] = d0i - d1r;		// d0 - j*d1
+					re[i3] = d0r - d1i;	im[i3] = d0i + d1r;		// d0 + j*d1
+				}
+			}
+		}
+	}
+}
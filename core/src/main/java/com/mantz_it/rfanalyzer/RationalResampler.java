@@ -0,0 +1,299 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.HashMap;
+
+/**
+ * <h1>RF Analyzer - Rational Resampler</h1>
+ *
+ * Module:      RationalResampler.java
+ * Description: This class implements a polyphase resampler that changes the sample rate by
+ *              the rational factor L/M (interpolation L, decimation M). Conceptually the input
+ *              is upsampled by L (zero stuffing), low pass filtered and downsampled by M. The
+ *              polyphase implementation only calculates the outputs that are needed: each
+ *              output is the dot product of one of the L sub filters (phases) of the prototype
+ *              filter with the last K input samples. Like the PolyphaseDecimator it uses a
+ *              mirrored delay line, so the inner loop has no wrap-around check.
+ *
+ *              The filter banks (the prototype filter split into its L phases) are immutable
+ *              and cached per ratio and filter design, so recreating a resampler (e.g. when
+ *              the Decimator or the AudioSink see a new input rate) does not redesign the
+ *              filter if the same conversion was used before.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class RationalResampler {
+	private int interpolation;			// L
+	private int decimation;				// M
+	private int inputSampleRate;		// sample rate of the incoming samples
+	private int outputSampleRate;		// nominal sample rate of the outgoing samples
+	private int tapsPerPhase;			// K
+	private float[] phaseTaps;			// L sub filters of length K (each in reversed order)
+	private float[] delaysReal;			// mirrored delay line (length 2*K)
+	private float[] delaysImag;
+	private int delayIndex = 0;			// position of the oldest sample in the delay line
+	private int phase = 0;				// phase of the next output (position in the upsampled signal relative to the newest input)
+	private static final String LOGTAG = "RationalResampler";
+
+	public static final int MAX_INTERPOLATION = 1024;	// larger ratios are approximated
+
+	// Cache for the filter banks. Key is built by getFilterBankKey():
+	private static final HashMap<String, float[]> filterBankCache = new HashMap<String, float[]>();
+
+	/**
+	 * Constructor. Creates a resampler with the given prototype filter.
+	 *
+	 * @param interpolation		interpolation factor L
+	 * @param decimation		decimation factor M
+	 * @param prototypeTaps		low pass filter designed for the upsampled rate (gain should include the factor L)
+	 * @param inputSampleRate	sample rate of the incoming samples
+	 * @param outputSampleRate	(nominal) sample rate of the outgoing samples
+	 */
+	public RationalResampler(int interpolation, int decimation, float[] prototypeTaps, int inputSampleRate, int outputSampleRate) {
+		this(createFilterBank(interpolation, prototypeTaps), interpolation, decimation, inputSampleRate, outputSampleRate);
+	}
+
+	/**
+	 * Private Constructor. Creates a resampler that uses an existing (cached) filter bank.
+	 *
+	 * @param filterBank		L sub filters of equal length (see createFilterBank())
+	 * @param interpolation		interpolation factor L
+	 * @param decimation		decimation factor M
+	 * @param inputSampleRate	sample rate of the incoming samples
+	 * @param outputSampleRate	(nominal) sample rate of the outgoing samples
+	 */
+	private RationalResampler(float[] filterBank, int interpolation, int decimation, int inputSampleRate, int outputSampleRate) {
+		if(decimation < 1)
+			throw new IllegalArgumentException("interpolation and decimation must be positive");
+		this.interpolation = interpolation;
+		this.decimation = decimation;
+		this.inputSampleRate = inputSampleRate;
+		this.outputSampleRate = outputSampleRate;
+		this.phaseTaps = filterBank;
+		this.tapsPerPhase = filterBank.length / interpolation;
+		this.delaysReal = new float[2 * tapsPerPhase];
+		this.delaysImag = new float[2 * tapsPerPhase];
+	}
+
+	/**
+	 * Splits the prototype filter into L phases: phase p has the taps h[p], h[p+L], h[p+2L], ...
+	 * Each phase is stored in reversed order (oldest sample first) and padded with zeros.
+	 *
+	 * @param interpolation		interpolation factor L
+	 * @param prototypeTaps		low pass filter designed for the upsampled rate
+	 * @return filter bank (L sub filters of length K)
+	 */
+	private static float[] createFilterBank(int interpolation, float[] prototypeTaps) {
+		if(interpolation < 1)
+			throw new IllegalArgumentException("interpolation and decimation must be positive");
+		int tapsPerPhase = (prototypeTaps.length + interpolation - 1) / interpolation;
+		float[] filterBank = new float[interpolation * tapsPerPhase];
+		for (int p = 0; p < interpolation; p++) {
+			for (int k = 0; k < tapsPerPhase; k++) {
+				int index = p + k * interpolation;
+				filterBank[p * tapsPerPhase + tapsPerPhase - 1 - k] = index < prototypeTaps.length ? prototypeTaps[index] : 0;
+			}
+		}
+		return filterBank;
+	}
+
+	/**
+	 * Will create a resampler from inputRate to outputRate with a low pass filter with the
+	 * given properties. If the ratio outputRate/inputRate cannot be expressed with an
+	 * interpolation factor <= MAX_INTERPOLATION, the closest possible ratio is used.
+	 * The filter bank is taken from the cache if the same conversion was created before.
+	 *
+	 * @param inputRate			sample rate of the incoming samples
+	 * @param outputRate		sample rate of the outgoing samples
+	 * @param gain				pass band gain
+	 * @param cutOffFrequency	cut off frequency (end of pass band) in Hz
+	 * @param transitionWidth	width from end of pass band to start stop band in Hz
+	 * @param attenuation		attenuation of stop band in dB
+	 * @return instance of RationalResampler or null if the filter parameters are invalid
+	 */
+	public static RationalResampler createResampler(int inputRate, int outputRate, float gain, float cutOffFrequency,
+													 float transitionWidth, float attenuation) {
+		if(inputRate <= 0 || outputRate <= 0) {
+			Log.e(LOGTAG, "createResampler: invalid sample rates: " + inputRate + " -> " + outputRate);
+			return null;
+		}
+
+		// Find L and M:
+		long gcd = gcd(inputRate, outputRate);
+		int interpolation = (int) (outputRate / gcd);
+		int decimation = (int) (inputRate / gcd);
+		if(interpolation > MAX_INTERPOLATION) {
+			double ratio = outputRate / (double) inputRate;
+			double bestError = Double.MAX_VALUE;
+			for (int l = 1; l <= MAX_INTERPOLATION; l++) {
+				int m = (int) Math.max(1, Math.round(l / ratio));
+				double error = Math.abs(l / (double) m - ratio);
+				if(error < bestError) {
+					bestError = error;
+					interpolation = l;
+					decimation = m;
+				}
+			}
+			Log.d(LOGTAG, "createResampler: approximate " + inputRate + " -> " + outputRate + " with L=" + interpolation + " M=" + decimation);
+		}
+
+		// The filter design only depends on the ratio, not on the absolute rates. So the key is
+		// built with cut off and transition relative to the input rate:
+		String key = getFilterBankKey(interpolation, decimation, gain, cutOffFrequency / inputRate,
+				transitionWidth / inputRate, attenuation);
+		float[] filterBank;
+		synchronized (filterBankCache) {
+			filterBank = filterBankCache.get(key);
+			if(filterBank == null) {
+				float[] taps = FirFilter.createLowPassTaps(gain * interpolation, (float) inputRate * interpolation,
+						cutOffFrequency, transitionWidth, attenuation);
+				if(taps == null)
+					return null;
+				filterBank = createFilterBank(interpolation, taps);
+				filterBankCache.put(key, filterBank);
+				Log.d(LOGTAG, "createResampler: created filter bank " + key + " with " + filterBank.length + " taps.");
+			}
+		}
+		return new RationalResampler(filterBank, interpolation, decimation, inputRate, outputRate);
+	}
+
+	private static String getFilterBankKey(int interpolation, int decimation, float gain, float relativeCutOff,
+										   float relativeTransition, float attenuation) {
+		return interpolation + "/" + decimation + " gain=" + gain + " cutoff=" + relativeCutOff
+				+ " transition=" + relativeTransition + " attenuation=" + attenuation;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	public int getInterpolation() {
+		return interpolation;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	public int getInputSampleRate() {
+		return inputSampleRate;
+	}
+
+	public int getOutputSampleRate() {
+		return outputSampleRate;
+	}
+
+	/**
+	 * @param inputSize		number of input samples
+	 * @return max. number of output samples that filter() produces for inputSize samples:
+	 *         ceil(inputSize * L / M) (plus one, depending on the phase of the previous call)
+	 */
+	public int getMaxOutputSize(int inputSize) {
+		return (int) (((long) inputSize * interpolation + decimation - 1) / decimation) + 1;
+	}
+
+	/**
+	 * @return length of the prototype filter (including zero padding)
+	 */
+	public int getNumberOfTaps() {
+		return phaseTaps.length;
+	}
+
+	/**
+	 * Resamples the samples from the input sample packet and appends the output to the output
+	 * sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filter(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, true);
+	}
+
+	/**
+	 * Resamples the real parts of the samples from the input sample packet and appends the output to
+	 * the output sample packet. Stops automatically if output sample packet is full.
+	 * @param in		input sample packet
+	 * @param out		output sample packet
+	 * @param offset	offset to use as start index for the input packet
+	 * @param length	max number of samples processed from the input packet
+	 * @return number of samples consumed from the input packet
+	 */
+	public int filterReal(SamplePacket in, SamplePacket out, int offset, int length) {
+		return filter(in, out, offset, length, false);
+	}
+
+	private int filter(SamplePacket in, SamplePacket out, int offset, int length, boolean complex) {
+		int k = tapsPerPhase;
+		int indexOut = out.size();
+		int outputCapacity = out.capacity();
+		float[] reIn = in.re(), imIn = in.im(), reOut = out.re(), imOut = out.im();
+		float[] dReal = delaysReal, dImag = delaysImag;
+		float sumReal, sumImag;
+
+		for (int i = 0; i < length; i++) {
+			// first check if we have enough space in the output buffers for all outputs of this sample:
+			int outputs = phase < interpolation ? (interpolation - 1 - phase) / decimation + 1 : 0;
+			if(indexOut + outputs > outputCapacity) {
+				out.setSize(indexOut);	// update size of output sample packet
+				out.setSampleRate(outputSampleRate);	// update the sample rate of the output sample packet
+				return i;    // We return the number of consumed samples from the input buffers
+			}
+
+			// Insert the sample into the delay line:
+			dReal[delayIndex] = dReal[delayIndex + k] = reIn[offset + i];
+			if(complex)
+				dImag[delayIndex] = dImag[delayIndex + k] = imIn[offset + i];
+			delayIndex++;
+			if(delayIndex >= k)
+				delayIndex = 0;
+
+			// Calculate all outputs that fall between this and the next input sample:
+			while (phase < interpolation) {
+				int tapIndex = phase * k;
+				sumReal = 0;
+				sumImag = 0;
+				if(complex) {
+					for (int j = 0; j < k; j++) {
+						sumReal += phaseTaps[tapIndex + j] * dReal[delayIndex + j];
+						sumImag += phaseTaps[tapIndex + j] * dImag[delayIndex + j];
+					}
+					imOut[indexOut] = sumImag;
+				} else {
+					for (int j = 0; j < k; j++)
+						sumReal += phaseTaps[tapIndex + j] * dReal[delayIndex + j];
+				}
+				reOut[indexOut] = sumReal;
+				indexOut++;
+				phase += decimation;
+			}
+			phase -= interpolation;
+		}
+		out.setSize(indexOut);	// update size of output sample packet
+		out.setSampleRate(outputSampleRate);	// update the sample rate of the output sample packet
+		return length;			// We return the number of consumed samples from the input buffers
+	}
+}
@@ -0,0 +1,112 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Real FFT</h1>
+ *
+ * Module:      RealFFT.java
+ * Description: This class implements a forward FFT for real valued input (e.g. demodulated
+ *              audio or the output of FirFilter.filterReal()). The N real samples are packed
+ *              into N/2 complex samples (even samples as real part, odd samples as imaginary
+ *              part), transformed with a Radix4FFT of size N/2 and then separated with a
+ *              post-twiddle step. This costs roughly half of a complex FFT of size N.
+ *
+ *              Because the spectrum of a real signal is conjugate symmetric, only the bins
+ *              0 .. N/2 are calculated.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class RealFFT {
+	private int n;						// number of real input samples
+	private Radix4FFT halfSizeFft;		// complex FFT of size n/2 (its plan also holds the post-twiddles)
+
+	/**
+	 * Constructor.
+	 *
+	 * @param n		number of real input samples (must be a power of 2 and at least 2)
+	 */
+	public RealFFT(int n) {
+		if(n < 2 || Integer.bitCount(n) != 1)
+			throw new IllegalArgumentException("FFT length must be power of 2 and at least 2");
+		this.n = n;
+		this.halfSizeFft = new Radix4FFT(n/2);
+	}
+
+	/**
+	 * @return number of real input samples
+	 */
+	public int getSize() {
+		return n;
+	}
+
+	/**
+	 * @return number of output bins (n/2 + 1)
+	 */
+	public int getOutputSize() {
+		return n/2 + 1;
+	}
+
+	/**
+	 * Calculates the forward FFT of the given real samples. The bins 0 .. n/2 are stored in
+	 * re and im (bins n/2+1 .. n-1 are the complex conjugates of the bins n/2-1 .. 1).
+	 * The input array is not modified.
+	 *
+	 * @param x		real input samples (at least n)
+	 * @param re	real parts of the result (length must be at least n/2 + 1)
+	 * @param im	imaginary parts of the result (length must be at least n/2 + 1)
+	 */
+	public void fft(float[] x, float[] re, float[] im) {
+		int m = n/2;
+
+		// Pack the real samples into a complex signal of half the length:
+		for (int k = 0; k < m; k++) {
+			re[k] = x[2*k];
+			im[k] = x[2*k+1];
+		}
+
+		halfSizeFft.fft(re, im);
+
+		// Separate the spectra of the even and odd samples (Z[k] = E[k] + j*O[k]) and combine them:
+		// X[k] = E[k] + w^k * O[k] and X[m-k] = conj(E[k] - w^k * O[k])   with w = exp(-j*2*PI/n)
+		float[] wRe = halfSizeFft.getPlan().getRealTwiddlesRe();
+		float[] wIm = halfSizeFft.getPlan().getRealTwiddlesIm();
+		float z0 = re[0];
+		re[0] = z0 + im[0];
+		re[m] = z0 - im[0];
+		im[0] = 0;
+		im[m] = 0;
+		float eRe, eIm, oRe, oIm, tRe, tIm;
+		for (int k = 1; k < m - k; k++) {
+			int l = m - k;
+			eRe = (re[k] + re[l]) * 0.5f;
+			eIm = (im[k] - im[l]) * 0.5f;
+			oRe = (im[k] + im[l]) * 0.5f;
+			oIm = (re[l] - re[k]) * 0.5f;
+			tRe = wRe[k]*oRe - wIm[k]*oIm;
+			tIm = wRe[k]*oIm + wIm[k]*oRe;
+			re[k] = eRe + tRe;
+			im[k] = eIm + tIm;
+			re[l] = eRe - tRe;
+			im[l] = tIm - eIm;
+		}
+		// The middle bin (k = m/2) is simply the complex conjugate of Z[m/2]:
+		if(m >= 2)
+			im[m/2] = -im[m/2];
+	}
+}
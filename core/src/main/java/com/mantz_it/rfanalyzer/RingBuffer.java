@@ -0,0 +1,367 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>RF Analyzer - Ring Buffer</h1>
+ *
+ * Module:      RingBuffer.java
+ * Description: Lock-free single-producer/single-consumer ring buffer over preallocated slots
+ *              (e.g. SamplePackets or byte arrays). It replaces the pairs of ArrayBlockingQueues
+ *              (one queue for filled buffers, one to return the empty buffers) between the blocks
+ *              of the pipeline: a released slot is automatically free for the producer again.
+ *
+ *              Producer:  slot = claim(timeout);  (fill slot)  publish();
+ *              Consumer:  slot = acquire(timeout);  (read slot)  release(slot);
+ *
+ *              Both sides can hold at most one slot at a time. Calling claim() / acquire() again
+ *              before publish() / release() returns the same slot. The only shared state are the
+ *              two sequence counters (published / released slots); no locks are involved. If a
+ *              side has to wait, it uses the configured WaitStrategy:
+ *              - SPIN:  busy wait (lowest latency, burns a cpu core while waiting; behaves like
+ *                       YIELD on single core devices, where spinning would block the other side)
+ *              - YIELD: Thread.yield() between two checks
+ *              - PARK:  the thread is parked and unparked by the other side (default)
+ *
+ *              Only the consumer may remove published slots. Other threads (e.g. the producer
+ *              if the consumer is too slow) can request this with flush(). The consumer will drop
+ *              all published slots the next time it calls acquire().
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class RingBuffer<T> {
+	public enum WaitStrategy { SPIN, YIELD, PARK }
+
+	private final Object[] slots;
+	private final int capacity;
+	private volatile WaitStrategy waitStrategy;
+	private final AtomicLong publishSequence = new AtomicLong(0);	// number of published slots (written by the producer)
+	private final AtomicLong releaseSequence = new AtomicLong(0);	// number of released slots (written by the consumer)
+	private volatile boolean flushRequested = false;
+	private volatile Thread waitingProducer = null;		// set while the producer is parked
+	private volatile Thread waitingConsumer = null;		// set while the consumer is parked
+
+	// producer side (only accessed by the producer thread):
+	private long claimSequence = 0;			// sequence of the next slot that is claimed
+	private boolean claimed = false;		// true if the slot at claimSequence is currently claimed
+	private long cachedReleaseSequence = 0;	// last read value of releaseSequence
+
+	// consumer side (only accessed by the consumer thread):
+	private long acquireSequence = 0;		// sequence of the next slot that is acquired
+	private Object acquiredSlot = null;		// slot that is currently acquired (null if none)
+	private long cachedPublishSequence = 0;	// last read value of publishSequence
+
+	private static WaitStrategy defaultWaitStrategy = WaitStrategy.PARK;
+	private static final boolean SINGLE_CORE = Runtime.getRuntime().availableProcessors() < 2;
+	private static final String LOGTAG = "RingBuffer";
+
+	/**
+	 * Constructor. The slots are owned by the ring buffer afterwards.
+	 *
+	 * @param slots			preallocated slots (entries may be null if the producer exchanges them on publish)
+	 * @param waitStrategy	strategy that is used while waiting in claim() and acquire()
+	 */
+	public RingBuffer(T[] slots, WaitStrategy waitStrategy) {
+		if(slots.length < 1)
+			throw new IllegalArgumentException("ring buffer needs at least one slot");
+		this.slots = slots.clone();
+		this.capacity = slots.length;
+		this.waitStrategy = waitStrategy;
+	}
+
+	/**
+	 * Will create a ring buffer with preallocated sample packets and the default wait strategy.
+	 *
+	 * @param capacity		number of slots
+	 * @param packetSize	capacity of each sample packet
+	 * @return new ring buffer
+	 */
+	public static RingBuffer<SamplePacket> createSamplePacketRingBuffer(int capacity, int packetSize) {
+		SamplePacket[] slots = new SamplePacket[capacity];
+		for (int i = 0; i < capacity; i++)
+			slots[i] = new SamplePacket(packetSize);
+		return new RingBuffer<SamplePacket>(slots, defaultWaitStrategy);
+	}
+
+	/**
+	 * Will create a ring buffer with preallocated byte arrays and the default wait strategy.
+	 *
+	 * @param capacity		number of slots
+	 * @param packetSize	length of each byte array
+	 * @return new ring buffer
+	 */
+	public static RingBuffer<byte[]> createByteArrayRingBuffer(int capacity, int packetSize) {
+		byte[][] slots = new byte[capacity][];
+		for (int i = 0; i < capacity; i++)
+			slots[i] = new byte[packetSize];
+		return new RingBuffer<byte[]>(slots, defaultWaitStrategy);
+	}
+
+	/**
+	 * @return wait strategy of ring buffers that are created by the create*RingBuffer() methods
+	 */
+	public static WaitStrategy getDefaultWaitStrategy() {
+		return defaultWaitStrategy;
+	}
+
+	/**
+	 * Sets the wait strategy for all ring buffers that are created afterwards by the
+	 * create*RingBuffer() methods (i.e. the buffers of the pipeline).
+	 *
+	 * @param waitStrategy	SPIN, YIELD or PARK
+	 */
+	public static void setDefaultWaitStrategy(WaitStrategy waitStrategy) {
+		defaultWaitStrategy = waitStrategy;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of slots that are published or acquired (not yet released)
+	 */
+	public int size() {
+		return (int) (publishSequence.get() - releaseSequence.get());
+	}
+
+	/**
+	 * Can only be trusted by the producer (the consumer might release slots at any time).
+	 *
+	 * @return number of slots that can currently be claimed by the producer
+	 */
+	public int remainingCapacity() {
+		return capacity - (int) (claimSequence - releaseSequence.get());
+	}
+
+	/**
+	 * Requests the consumer to drop all published slots. Can be called from any thread.
+	 * The slots are dropped in the next call of acquire().
+	 */
+	public void flush() {
+		flushRequested = true;
+	}
+
+	///// PRODUCER /////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Claims the next free slot without waiting. May only be called by the producer.
+	 *
+	 * @return free slot or null if all slots are in use
+	 */
+	@SuppressWarnings("unchecked")
+	public T claim() {
+		if(!claimed) {
+			if(claimSequence - cachedReleaseSequence >= capacity) {
+				cachedReleaseSequence = releaseSequence.get();
+				if(claimSequence - cachedReleaseSequence >= capacity)
+					return null;
+			}
+			claimed = true;
+		}
+		return (T) slots[(int) (claimSequence % capacity)];
+	}
+
+	/**
+	 * Claims the next free slot. Waits (according to the wait strategy) until a slot is free.
+	 * May only be called by the producer.
+	 *
+	 * @param timeout	max time to wait in milliseconds
+	 * @return free slot or null if no slot was freed within the timeout
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public T claim(int timeout) throws InterruptedException {
+		T slot = claim();
+		if(slot != null)
+			return slot;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			while (true) {
+				if(waitStrategy == WaitStrategy.PARK) {
+					// announce that we are going to park and check again (release() reads waitingProducer
+					// after it updated releaseSequence, so either we see the slot or it sees us):
+					waitingProducer = Thread.currentThread();
+					if((slot = claim()) != null)
+						return slot;
+				}
+				if(!idle(deadline))
+					return null;
+				if((slot = claim()) != null)
+					return slot;
+			}
+		} finally {
+			waitingProducer = null;
+		}
+	}
+
+	/**
+	 * Hands the claimed slot over to the consumer. May only be called by the producer.
+	 *
+	 * @return true if success; false if no slot was claimed
+	 */
+	public boolean publish() {
+		if(!claimed) {
+			Log.e(LOGTAG, "publish: no slot claimed.");
+			return false;
+		}
+		claimed = false;
+		publishSequence.set(++claimSequence);
+		Thread waiter = waitingConsumer;
+		if(waiter != null)
+			LockSupport.unpark(waiter);
+		return true;
+	}
+
+	/**
+	 * Replaces the claimed slot with the given object and hands it over to the consumer. The
+	 * producer owns the object that was returned by claim() afterwards. This allows the producer
+	 * to deliver buffers it doesn't get from the ring buffer (e.g. buffers of USB requests)
+	 * without copying them. May only be called by the producer.
+	 *
+	 * @param slot	object that replaces the claimed slot
+	 * @return true if success; false if no slot was claimed
+	 */
+	public boolean publish(T slot) {
+		if(!claimed) {
+			Log.e(LOGTAG, "publish: no slot claimed.");
+			return false;
+		}
+		slots[(int) (claimSequence % capacity)] = slot;
+		return publish();
+	}
+
+	///// CONSUMER /////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Acquires the next published slot without waiting. May only be called by the consumer.
+	 *
+	 * @return published slot or null if no slot is published
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if(acquiredSlot != null)
+			return (T) acquiredSlot;
+		if(flushRequested) {
+			// drop all published slots:
+			flushRequested = false;
+			cachedPublishSequence = publishSequence.get();
+			acquireSequence = cachedPublishSequence;
+			releaseSequence.set(acquireSequence);
+			Thread waiter = waitingProducer;
+			if(waiter != null)
+				LockSupport.unpark(waiter);
+			return null;
+		}
+		if(acquireSequence >= cachedPublishSequence) {
+			cachedPublishSequence = publishSequence.get();
+			if(acquireSequence >= cachedPublishSequence)
+				return null;
+		}
+		acquiredSlot = slots[(int) (acquireSequence % capacity)];
+		acquireSequence++;
+		return (T) acquiredSlot;
+	}
+
+	/**
+	 * Acquires the next published slot. Waits (according to the wait strategy) until a slot
+	 * is published. May only be called by the consumer.
+	 *
+	 * @param timeout	max time to wait in milliseconds
+	 * @return published slot or null if no slot was published within the timeout
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public T acquire(int timeout) throws InterruptedException {
+		T slot = acquire();
+		if(slot != null)
+			return slot;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			while (true) {
+				if(waitStrategy == WaitStrategy.PARK) {
+					waitingConsumer = Thread.currentThread();
+					if((slot = acquire()) != null)
+						return slot;
+				}
+				if(!idle(deadline))
+					return null;
+				if((slot = acquire()) != null)
+					return slot;
+			}
+		} finally {
+			waitingConsumer = null;
+		}
+	}
+
+	/**
+	 * Returns the acquired slot to the producer. May only be called by the consumer.
+	 *
+	 * @param slot	slot that was returned by acquire()
+	 * @return true if success; false if the slot is not the acquired slot
+	 */
+	public boolean release(T slot) {
+		if(slot == null || slot != acquiredSlot) {
+			Log.e(LOGTAG, "release: slot was not acquired from this ring buffer.");
+			return false;
+		}
+		acquiredSlot = null;
+		releaseSequence.set(acquireSequence);
+		Thread waiter = waitingProducer;
+		if(waiter != null)
+			LockSupport.unpark(waiter);
+		return true;
+	}
+
+	/**
+	 * Waits once according to the wait strategy.
+	 *
+	 * @param deadline	System.nanoTime() at which the waiting should end
+	 * @return false if the deadline is reached
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	private boolean idle(long deadline) throws InterruptedException {
+		if(Thread.interrupted())
+			throw new InterruptedException();
+		long remaining = deadline - System.nanoTime();
+		if(remaining <= 0)
+			return false;
+		switch (waitStrategy) {
+			case SPIN:
+				if(SINGLE_CORE)
+					Thread.yield();		// spinning would block the thread we are waiting for
+				break;
+			case YIELD:
+				Thread.yield();
+				break;
+			default:
+				LockSupport.parkNanos(this, remaining);
+		}
+		return true;
+	}
+}
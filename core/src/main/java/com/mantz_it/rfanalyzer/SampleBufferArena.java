@@ -0,0 +1,124 @@
+package com.mantz_it.rfanalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <h1>RF Analyzer - Sample Buffer Arena</h1>
+ *
+ * Module:      SampleBufferArena.java
+ * Description: Pool of equally sized direct (off-heap) buffers. All blocks are slices of one
+ *              large direct ByteBuffer that is allocated once, so taking and returning blocks
+ *              neither allocates nor produces garbage. The blocks are in native byte order and
+ *              can be used for raw bytes of a source (e.g. a socket channel or USB request reads
+ *              directly into them) or as the storage of DirectSamplePackets.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class SampleBufferArena {
+	private ByteBuffer arena;						// backing memory of all blocks
+	private ByteBuffer[] blocks;					// all blocks
+	private boolean[] inUse;						// true if the block with the same index is in use
+	private int[] freeIndices;						// stack of the indices of all free blocks
+	private int freeCount;							// number of free blocks (size of the stack)
+	private int blockSize;							// size of each block in bytes
+	private static final String LOGTAG = "SampleBufferArena";
+
+	/**
+	 * Constructor. Allocates the direct memory for all blocks.
+	 *
+	 * @param blockSize			size of each block in bytes (rounded up to a multiple of 8)
+	 * @param numberOfBlocks	number of blocks
+	 */
+	public SampleBufferArena(int blockSize, int numberOfBlocks) {
+		if(blockSize <= 0 || numberOfBlocks <= 0)
+			throw new IllegalArgumentException("block size and number of blocks must be positive");
+		this.blockSize = (blockSize + 7) & ~7;		// keeps every block aligned for float views
+		this.arena = ByteBuffer.allocateDirect(this.blockSize * numberOfBlocks).order(ByteOrder.nativeOrder());
+		this.blocks = new ByteBuffer[numberOfBlocks];
+		this.inUse = new boolean[numberOfBlocks];
+		this.freeIndices = new int[numberOfBlocks];
+		for (int i = 0; i < numberOfBlocks; i++) {
+			arena.limit((i + 1) * this.blockSize);
+			arena.position(i * this.blockSize);
+			blocks[i] = arena.slice().order(ByteOrder.nativeOrder());
+			freeIndices[i] = numberOfBlocks - 1 - i;
+		}
+		this.freeCount = numberOfBlocks;
+		arena.clear();
+	}
+
+	/**
+	 * @return size of each block in bytes
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getNumberOfBlocks() {
+		return blocks.length;
+	}
+
+	/**
+	 * @return number of blocks that are currently available
+	 */
+	public synchronized int getFreeBlocks() {
+		return freeCount;
+	}
+
+	/**
+	 * Takes a block from the pool. The block is cleared (position 0, limit blockSize) and in
+	 * native byte order.
+	 *
+	 * @return free block or null if all blocks are in use
+	 */
+	public synchronized ByteBuffer allocate() {
+		if(freeCount == 0) {
+			Log.w(LOGTAG, "allocate: all " + blocks.length + " blocks are in use.");
+			return null;
+		}
+		int index = freeIndices[--freeCount];
+		inUse[index] = true;
+		blocks[index].clear();
+		return blocks[index];
+	}
+
+	/**
+	 * Returns a block to the pool.
+	 *
+	 * @param block		block that was returned by allocate()
+	 * @return true if success; false if the block doesn't belong to this arena
+	 */
+	public synchronized boolean release(ByteBuffer block) {
+		for (int i = 0; i < blocks.length; i++) {
+			if(blocks[i] == block) {
+				if(!inUse[i]) {
+					Log.e(LOGTAG, "release: block was already released.");
+					return false;
+				}
+				inUse[i] = false;
+				freeIndices[freeCount++] = i;
+				return true;
+			}
+		}
+		Log.e(LOGTAG, "release: block doesn't belong to this arena.");
+		return false;
+	}
+}
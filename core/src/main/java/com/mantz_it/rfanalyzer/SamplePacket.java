@@ -31,6 +31,8 @@ public class SamplePacket {
 	private long frequency;		// center frequency
 	private int sampleRate;		// sample rate
 	private int size;			// number of samples in this packet
+	private long timestamp;		// System.nanoTime() when the (oldest) samples were received from the source; 0 if unknown
+	private boolean endOfStream;	// true if this packet marks the end of the stream (see setEndOfStream())
 
 	/**
 	 * Constructor. This constructor wraps existing arrays and set the number of
@@ -165,4 +167,71 @@ public class SamplePacket {
 	public void setSampleRate(int sampleRate) {
 		this.sampleRate = sampleRate;
 	}
+
+	/**
+	 * @return System.nanoTime() when the (oldest) samples of this packet were received from the source; 0 if unknown
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Sets the reception time of the samples. It is passed along the pipeline to measure the
+	 * latency of the blocks (see PipelineMetrics).
+	 *
+	 * @param timestamp		System.nanoTime() when the samples were received from the source
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return true if this packet marks the end of the stream
+	 */
+	public boolean isEndOfStream() {
+		return endOfStream;
+	}
+
+	/**
+	 * Marks the end of the stream (lossless mode, see Scheduler). The marked packet is empty
+	 * and follows the last samples. A block that receives it processes nothing more, passes the
+	 * mark on to its consumer and stops. The consumer clears the mark before it releases the packet.
+	 *
+	 * @param endOfStream	true if this packet marks the end of the stream
+	 */
+	public void setEndOfStream(boolean endOfStream) {
+		this.endOfStream = endOfStream;
+	}
+
+	/**
+	 * Appends the samples of this packet to another packet (as far as there is space left)
+	 * and copies sample rate and frequency. The timestamp is copied if the destination was
+	 * empty (it always refers to the oldest samples).
+	 *
+	 * @param destination	packet to which the samples are appended
+	 * @return number of copied samples
+	 */
+	public int copyTo(SamplePacket destination) {
+		return copyTo(destination, 0);
+	}
+
+	/**
+	 * Same as copyTo(SamplePacket) but starts at the given sample of this packet. This is used
+	 * to distribute one packet over several smaller packets.
+	 *
+	 * @param destination	packet to which the samples are appended
+	 * @param offset		index of the first sample that is copied
+	 * @return number of copied samples
+	 */
+	public int copyTo(SamplePacket destination, int offset) {
+		int count = Math.min(size - offset, destination.capacity() - destination.size());
+		if(destination.size == 0)
+			destination.setTimestamp(timestamp);
+		System.arraycopy(re, offset, destination.re, destination.size, count);
+		System.arraycopy(im, offset, destination.im, destination.size, count);
+		destination.setSize(destination.size + count);
+		destination.setSampleRate(sampleRate);
+		destination.setFrequency(frequency);
+		return count;
+	}
 }
@@ -0,0 +1,566 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <h1>RF Analyzer - Scheduler</h1>
+ *
+ * Module:      Scheduler.java
+ * Description: This Thread is responsible for forwarding the samples from the input hardware
+ *              to the Demodulator and to the Processing Loop and at the correct speed and format.
+ *              Sample packets are passed to other blocks by using lock-free ring buffers. The samples passed
+ *              to the Demodulator will be shifted to base band first.
+ *              Multiple channels can be demodulated at the same time (see DemodulationChannel). Each
+ *              packet is converted only once and then shared by all channels and the Processing Loop.
+ *              If the Demodulator or the Processing Loop are to slow, the scheduler will automatically
+ *              drop incoming samples to keep the buffer of the hackrf_android library from beeing filled up.
+ *              In lossless mode (offline processing of files) the scheduler waits for them instead.
+ *              When it stops, it marks the end of the stream, so that all blocks process the samples
+ *              that are still queued and stop on their own (see SamplePacket.isEndOfStream()).
+ *              In continuous fft mode every packet is passed to the Processing Loop (which calculates
+ *              overlapping FFTs over all samples, see ContinuousFft) instead of one FFT buffer per frame.
+ *              A memory mapped FileIQSource is read with getPacketBuffer(): the packets are converted
+ *              straight out of the mapped file into a DirectSamplePacket (direct memory, optionally a
+ *              block of a SampleBufferArena that is reused by the next scheduler). Channels with an
+ *              xlating filter read these samples directly, so the samples at the full source rate are
+ *              only copied to the heap if the Processing Loop or a mixer / pass through channel needs them.
+ *
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class Scheduler extends Thread {
+	private IQSourceInterface source = null;	// Reference to the source of the IQ samples
+	private FileIQSource mappedSource = null;	// same as source if it is a memory mapped FileIQSource (else null)
+	private RingBuffer<SamplePacket> fftRingBuffer = null;	// Ring buffer that delivers samples to the Processing Loop
+	private CopyOnWriteArrayList<DemodulationChannel> channels = null;	// All channels that are demodulated
+	private DemodulationChannel mainChannel = null;		// The channel that is controlled by the user interface (first in channels)
+	private SamplePacket convertedSamples = null;		// Converted samples of the current packet (shared by all channels)
+	private DirectSamplePacket directSamples = null;	// Converted samples of the current packet if the source is memory mapped
+	private boolean convertedSamplesValid = false;		// true if convertedSamples holds the current packet
+	private boolean directSamplesValid = false;			// true if directSamples holds the current packet
+	private SampleBufferArena sampleBufferArena = null;	// provides the direct memory for directSamples (optional)
+	private volatile boolean stopRequested = true;
+	private BufferedOutputStream bufferedOutputStream = null;	// Used for recording
+	private boolean stopRecording = false;
+	private boolean lossless = false;					// true: wait for the consumers instead of dropping samples
+	private boolean continuousFft = false;				// true: pass all packets to the processing loop (see setContinuousFft())
+	private AnalyzerProcessingLoop fftConsumer = null;	// consumer of the fft ring buffer (lossless mode stops if it stopped)
+	private int fftSize;
+	private PipelineMetrics.Counter inCounter = PipelineMetrics.counter(PipelineMetrics.SCHEDULER_IN);
+	private PipelineMetrics.Counter fftInCounter = PipelineMetrics.counter(PipelineMetrics.FFT_IN);
+	private PipelineMetrics.Counter fftDroppedCounter = PipelineMetrics.counter(PipelineMetrics.FFT_DROPPED);
+
+	// Define the size of the fft ring buffer. By setting this value to 2 we basically end up
+	// with double buffering. The ring buffer handles the synchronization between the scheduler
+	// thread and the processing loop for us.
+	// Note that setting the size to 1 will not work well and any number higher than 2 will cause
+	// higher delays when switching frequencies.
+	private static final int FFT_QUEUE_SIZE = 2;
+	private static final int DEMOD_QUEUE_SIZE = 20;
+	// In continuous fft mode the ring buffer holds whole packets and has to bridge the time in which
+	// the processing loop draws a frame:
+	private static final int CONTINUOUS_FFT_QUEUE_SIZE = 16;
+	private static final String LOGTAG = "Scheduler";
+
+	public Scheduler(int fftSize, IQSourceInterface source) {
+		this.source = source;
+		this.fftSize = fftSize;
+		if(source instanceof FileIQSource && ((FileIQSource) source).isMemoryMapped())
+			this.mappedSource = (FileIQSource) source;
+
+		// Create the fft ring buffer and allocate the buffer packets.
+		this.fftRingBuffer = RingBuffer.createSamplePacketRingBuffer(FFT_QUEUE_SIZE, fftSize);
+
+		// Create the main demodulation channel (with its demod ring buffer)
+		this.channels = new CopyOnWriteArrayList<DemodulationChannel>();
+		this.mainChannel = new DemodulationChannel(0, source.getPacketSize(), DEMOD_QUEUE_SIZE);
+		this.channels.add(mainChannel);
+		if(mappedSource == null)
+			this.convertedSamples = new SamplePacket(source.getPacketSize());	// memory mapped: allocated if needed
+		PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_FFT, fftRingBuffer);
+		PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_DEMODULATOR, mainChannel.getDemodRingBuffer());
+	}
+
+	public void stopScheduler() {
+		this.stopRequested = true;
+		this.source.stopSampling();
+	}
+
+	public void start() {
+		this.stopRequested = false;
+		this.source.startSampling();
+		super.start();
+	}
+
+	/**
+	 * @return true if scheduler is running; false if not.
+	 */
+	public boolean isRunning() {
+		return !stopRequested;
+	}
+
+	public RingBuffer<SamplePacket> getFftRingBuffer() {
+		return fftRingBuffer;
+	}
+
+	public boolean isContinuousFft() {
+		return continuousFft;
+	}
+
+	/**
+	 * In continuous fft mode the scheduler passes every packet to the processing loop instead of
+	 * filling one buffer of fftSize samples whenever the processing loop has a free buffer. The
+	 * processing loop must then integrate the packets (AnalyzerProcessingLoop.setContinuousFft()).
+	 * This creates a new fft ring buffer, so it must be set before the processing loop is created
+	 * and before the scheduler is started.
+	 *
+	 * @param continuousFft		true to pass all samples to the processing loop
+	 */
+	public void setContinuousFft(boolean continuousFft) {
+		this.continuousFft = continuousFft;
+		if(continuousFft)
+			this.fftRingBuffer = RingBuffer.createSamplePacketRingBuffer(CONTINUOUS_FFT_QUEUE_SIZE, source.getPacketSize());
+		else
+			this.fftRingBuffer = RingBuffer.createSamplePacketRingBuffer(FFT_QUEUE_SIZE, fftSize);
+		PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_FFT, fftRingBuffer);
+	}
+
+	public RingBuffer<SamplePacket> getDemodRingBuffer() {
+		return mainChannel.getDemodRingBuffer();
+	}
+
+	public boolean isDemodulationActivated() {
+		return mainChannel.isDemodulationActivated();
+	}
+
+	public void setDemodulationActivated(boolean demodulationActivated) {
+		mainChannel.setDemodulationActivated(demodulationActivated);
+	}
+
+	public long getChannelFrequency() {
+		return mainChannel.getFrequency();
+	}
+
+	public void setChannelFrequency(long channelFrequency) {
+		mainChannel.setFrequency(channelFrequency);
+	}
+
+	/**
+	 * Has to be called when the signal strength of the selected channel crosses the squelch threshold
+	 *
+	 * @param squelchSatisfied	true: the signal is now stronger than the threshold; false: signal is now weaker
+	 */
+	public void setSquelchSatisfied(boolean squelchSatisfied) {
+		mainChannel.setSquelchSatisfied(squelchSatisfied);
+	}
+
+	/**
+	 * @return the channel that is controlled by setChannelFrequency(), setDemodulationActivated(), ...
+	 */
+	public DemodulationChannel getMainChannel() {
+		return mainChannel;
+	}
+
+	/**
+	 * @return all demodulation channels (the main channel is the first one)
+	 */
+	public List<DemodulationChannel> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Adds an additional channel that is demodulated simultaneously with the main channel. The
+	 * caller has to attach a Demodulator to the ring buffer of the returned channel and activate it.
+	 * Its squelch is open by default. Can be called while the scheduler is running.
+	 *
+	 * @param frequency		frequency of the new channel
+	 * @return the new channel
+	 */
+	public DemodulationChannel addChannel(long frequency) {
+		DemodulationChannel channel = new DemodulationChannel(frequency, source.getPacketSize(), DEMOD_QUEUE_SIZE);
+		channel.setSquelchSatisfied(true);
+		channel.setLossless(lossless);
+		channels.add(channel);
+		return channel;
+	}
+
+	/**
+	 * Removes a channel that was added with addChannel(). The main channel can't be removed.
+	 *
+	 * @param channel	channel to remove
+	 * @return true if the channel was removed
+	 */
+	public boolean removeChannel(DemodulationChannel channel) {
+		if(channel == mainChannel)
+			return false;
+		return channels.remove(channel);
+	}
+
+	public boolean isLossless() {
+		return lossless;
+	}
+
+	/**
+	 * In lossless mode the scheduler doesn't drop any samples: it waits until the Processing Loop
+	 * and the Demodulators have freed a buffer (back-pressure). Every packet is then delivered to
+	 * the Processing Loop and to all active channels. Without the continuous fft the packets are
+	 * split into buffers of fftSize samples (one spectrum per fftSize samples). This only makes sense for sources that can
+	 * wait (FileIQSource without throttling) and must be set before the scheduler is started.
+	 *
+	 * @param lossless	true to wait for the consumers; false to drop samples if they are too slow
+	 */
+	public void setLossless(boolean lossless) {
+		this.lossless = lossless;
+		for (DemodulationChannel channel : channels)
+			channel.setLossless(lossless);
+	}
+
+	/**
+	 * In lossless mode the scheduler waits for the processing loop that consumes the fft ring
+	 * buffer. If it stops (e.g. because of an error), the scheduler stops as well instead of
+	 * waiting forever. The consumers of the channels are set with DemodulationChannel.setConsumer().
+	 *
+	 * @param fftConsumer	processing loop that consumes the fft ring buffer
+	 */
+	public void setFftConsumer(AnalyzerProcessingLoop fftConsumer) {
+		this.fftConsumer = fftConsumer;
+	}
+
+	/**
+	 * If the source is a memory mapped FileIQSource, the packets are converted into a block of
+	 * this arena (the block must hold at least source.getPacketSize() samples, i.e. 8 bytes per
+	 * sample). The block is returned when the scheduler stops, so the next scheduler can reuse it.
+	 * Without an arena (or if it has no suitable free block) the scheduler allocates the direct
+	 * memory itself. Must be set before the scheduler is started.
+	 *
+	 * @param sampleBufferArena		arena that provides the direct memory (null for none)
+	 */
+	public void setSampleBufferArena(SampleBufferArena sampleBufferArena) {
+		this.sampleBufferArena = sampleBufferArena;
+	}
+
+	/**
+	 * Will stop writing samples to the bufferedOutputStream and close it.
+	 */
+	public void stopRecording() {
+		this.stopRecording = true;
+	}
+
+	/**
+	 * Will start writing the raw samples to the bufferedOutputStream. Stream will be
+	 * closed on error, on stopRecording() and on stopSampling()
+	 *
+	 * @param bufferedOutputStream		stream to write the samples out.
+	 */
+	public void startRecording(BufferedOutputStream bufferedOutputStream) {
+		this.stopRecording = false;
+		this.bufferedOutputStream = bufferedOutputStream;
+		Log.i(LOGTAG, "startRecording: Recording started.");
+	}
+
+	/**
+	 * @return true if currently recording; false if not
+	 */
+	public boolean isRecording() {
+		return bufferedOutputStream != null;
+	}
+
+	/**
+	 * Converts the current packet of the source: packetBuffer if the source is memory mapped,
+	 * otherwise packet.
+	 *
+	 * @param packet			packet from source.getPacket()
+	 * @param packetBuffer		packet from mappedSource.getPacketBuffer()
+	 * @param samplePacket		SamplePacket that is filled with the samples
+	 * @return the number of samples filled into the samplePacket
+	 */
+	private int fillPacketIntoSamplePacket(byte[] packet, ByteBuffer packetBuffer, SamplePacket samplePacket) {
+		if(packetBuffer != null)
+			return mappedSource.fillPacketIntoSamplePacket(packetBuffer, samplePacket);
+		return source.fillPacketIntoSamplePacket(packet, samplePacket);
+	}
+
+	/**
+	 * Returns the current packet converted into direct memory (memory mapped source only). The
+	 * packet is only converted by the first call.
+	 *
+	 * @param packetBuffer		packet from mappedSource.getPacketBuffer()
+	 * @param timestamp			reception time of the packet
+	 * @return directSamples
+	 */
+	private DirectSamplePacket getDirectSamples(ByteBuffer packetBuffer, long timestamp) {
+		if(!directSamplesValid) {
+			directSamples.setSize(0);	// mark buffer as empty
+			mappedSource.fillPacketIntoDirectSamplePacket(packetBuffer, directSamples);
+			directSamples.setTimestamp(timestamp);
+			directSamplesValid = true;
+		}
+		return directSamples;
+	}
+
+	/**
+	 * Returns the current packet converted into a (heap) SamplePacket. The packet is only
+	 * converted by the first call.
+	 *
+	 * @param packet			packet from source.getPacket()
+	 * @param packetBuffer		packet from mappedSource.getPacketBuffer()
+	 * @param timestamp			reception time of the packet
+	 * @return convertedSamples
+	 */
+	private SamplePacket getConvertedSamples(byte[] packet, ByteBuffer packetBuffer, long timestamp) {
+		if(!convertedSamplesValid) {
+			if(convertedSamples == null)
+				convertedSamples = new SamplePacket(source.getPacketSize());
+			convertedSamples.setSize(0);	// mark buffer as empty
+			fillPacketIntoSamplePacket(packet, packetBuffer, convertedSamples);
+			convertedSamples.setTimestamp(timestamp);
+			convertedSamplesValid = true;
+		}
+		return convertedSamples;
+	}
+
+	/**
+	 * Copies the converted samples of the current packet (starting at offset) into the destination.
+	 * The samples are taken from directSamples if the packet was not converted to the heap.
+	 *
+	 * @param packet			packet from source.getPacket()
+	 * @param packetBuffer		packet from mappedSource.getPacketBuffer()
+	 * @param timestamp			reception time of the packet
+	 * @param destination		packet to which the samples are appended
+	 * @param offset			index of the first sample that is copied
+	 * @return number of copied samples
+	 */
+	private int copyConvertedSamples(byte[] packet, ByteBuffer packetBuffer, long timestamp, SamplePacket destination, int offset) {
+		if(directSamples != null && !convertedSamplesValid)
+			return getDirectSamples(packetBuffer, timestamp).copyTo(destination, offset);
+		return getConvertedSamples(packet, packetBuffer, timestamp).copyTo(destination, offset);
+	}
+
+	/**
+	 * Takes the direct memory for the converted samples of a memory mapped source from the
+	 * sampleBufferArena (or allocates it if there is no suitable block).
+	 *
+	 * @return packet in direct memory
+	 */
+	private DirectSamplePacket createDirectSamples() {
+		int capacity = source.getPacketSize();
+		if(sampleBufferArena != null && sampleBufferArena.getBlockSize() >= capacity * 8) {
+			try {
+				return new DirectSamplePacket(sampleBufferArena, DirectSamplePacket.LAYOUT_SPLIT);
+			} catch (IllegalStateException e) {
+				Log.w(LOGTAG, "createDirectSamples: " + e.getMessage() + ". Allocating a new buffer.");
+			}
+		}
+		return new DirectSamplePacket(capacity, DirectSamplePacket.LAYOUT_SPLIT);
+	}
+
+	/**
+	 * Claims an empty buffer from the fft ring buffer. In lossless mode this waits until the
+	 * processing loop has freed one; if the processing loop stopped, the scheduler stops as well.
+	 *
+	 * @return empty buffer or null if no buffer is available
+	 */
+	private SamplePacket claimFftBuffer() {
+		SamplePacket fftBuffer = fftRingBuffer.claim();
+		try {
+			while (fftBuffer == null && lossless && !stopRequested && (fftConsumer == null || fftConsumer.isRunning()))
+				fftBuffer = fftRingBuffer.claim(1000);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "claimFftBuffer: Interrupted while waiting on the fft ring buffer.");
+		}
+		if(fftBuffer == null && lossless && !stopRequested) {
+			Log.e(LOGTAG, "claimFftBuffer: The processing loop stopped. Shutting down...");
+			this.stopScheduler();
+		}
+		if(fftBuffer != null)
+			fftBuffer.setSize(0);	// mark buffer as empty
+		return fftBuffer;
+	}
+
+	/**
+	 * Marks the end of the stream (lossless mode): an empty packet with the end of stream mark is
+	 * passed to the processing loop and to all activated channels. The samples of a partially
+	 * filled fft buffer are dropped. Waits until the consumers have freed a buffer (unless they
+	 * stopped).
+	 *
+	 * @param fftBuffer		buffer that is currently claimed from the fft ring buffer (or null)
+	 */
+	private void publishEndOfStream(SamplePacket fftBuffer) {
+		try {
+			if(fftBuffer == null)
+				fftBuffer = fftRingBuffer.claim();
+			while (fftBuffer == null && (fftConsumer == null || fftConsumer.isRunning()))
+				fftBuffer = fftRingBuffer.claim(1000);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "publishEndOfStream: Interrupted while waiting on the fft ring buffer.");
+		}
+		if(fftBuffer != null) {
+			fftBuffer.setSize(0);
+			fftBuffer.setEndOfStream(true);
+			fftRingBuffer.publish();
+		}
+		for (DemodulationChannel channel : channels) {
+			if(channel.isDemodulationActivated())
+				channel.deliverEndOfStream();
+		}
+		Log.i(LOGTAG, "publishEndOfStream: End of the stream was passed to the consumers.");
+	}
+
+	@Override
+	public void run() {
+		Log.i(LOGTAG,"Scheduler started. (Thread: " + this.getName() + ")");
+		SamplePacket fftBuffer = null;		// reference to a buffer we claimed from the fft ring buffer to fill
+		byte[] packet = null;				// packet from the source (null if packetBuffer is used)
+		ByteBuffer packetBuffer = null;		// packet from a memory mapped source (view of the mapped file)
+		byte[] recordingBuffer = null;		// copy of packetBuffer for the recording
+		if(mappedSource != null)
+			directSamples = createDirectSamples();
+
+		while(!stopRequested) {
+			// Get a new packet from the source:
+			if(mappedSource != null)
+				packetBuffer = mappedSource.getPacketBuffer(1000);
+			else
+				packet = source.getPacket(1000);
+			if(packet == null && packetBuffer == null) {
+				Log.e(LOGTAG, "run: No more packets from source. Shutting down...");
+				this.stopScheduler();
+				break;
+			}
+			long timestamp = System.nanoTime();		// reception time (for the latency metrics)
+			inCounter.increment();
+			convertedSamplesValid = false;
+			directSamplesValid = false;
+
+			///// Recording ////////////////////////////////////////////////////////////////////////
+			if(bufferedOutputStream != null) {
+				try {
+					if(packetBuffer != null) {
+						// the recording needs the raw bytes:
+						if(recordingBuffer == null || recordingBuffer.length != packetBuffer.remaining())
+							recordingBuffer = new byte[packetBuffer.remaining()];
+						packetBuffer.duplicate().get(recordingBuffer);
+						bufferedOutputStream.write(recordingBuffer);
+					} else
+						bufferedOutputStream.write(packet);
+				} catch (IOException e) {
+					Log.e(LOGTAG, "run: Error while writing to output stream (recording): " + e.getMessage());
+					this.stopRecording();
+				}
+				if(stopRecording) {
+					try {
+						bufferedOutputStream.close();
+					} catch (IOException e) {
+						Log.e(LOGTAG, "run: Error while closing output stream (recording): " + e.getMessage());
+					}
+					bufferedOutputStream = null;
+					Log.i(LOGTAG, "run: Recording stopped.");
+				}
+			}
+
+			///// Demodulation /////////////////////////////////////////////////////////////////////
+			// The packet is converted only once and shared by all active channels (and the fft).
+			// Memory mapped packets are passed in direct memory to the channels that accept them:
+			for (DemodulationChannel channel : channels) {
+				if(!channel.isActive())
+					continue;
+				boolean delivered;
+				if(directSamples != null && channel.acceptsDirectSamples(mappedSource.getSampleRate()))
+					delivered = channel.processSamples(getDirectSamples(packetBuffer, timestamp));
+				else
+					delivered = channel.processSamples(getConvertedSamples(packet, packetBuffer, timestamp));
+				if(!delivered && lossless) {
+					Log.e(LOGTAG, "run: The demodulator of channel " + channel.getFrequency() + " stopped. Shutting down...");
+					this.stopScheduler();
+				}
+			}
+
+			///// FFT //////////////////////////////////////////////////////////////////////////////
+			// If buffer is null we claim a new buffer from the fft ring buffer:
+			// (in lossless mode we wait until the processing loop has freed one)
+			if(fftBuffer == null)
+				fftBuffer = claimFftBuffer();
+
+			// If we got a buffer, fill it!
+			if(fftBuffer != null)
+			{
+				if(lossless && !continuousFft) {
+					// lossless: the rest of the packet is carried into the next buffers, so that
+					// there is one spectrum for every fftSize samples:
+					int offset = 0;
+					while (fftBuffer != null) {
+						offset += copyConvertedSamples(packet, packetBuffer, timestamp, fftBuffer, offset);
+						if(fftBuffer.capacity() > fftBuffer.size())
+							break;		// the next packet continues to fill this buffer
+						fftRingBuffer.publish();
+						int size = convertedSamplesValid ? convertedSamples.size() : directSamples.size();
+						fftBuffer = offset < size ? claimFftBuffer() : null;
+					}
+				} else {
+					// fill the packet into the buffer (copy it if it was already converted):
+					if(convertedSamplesValid || directSamplesValid)
+						copyConvertedSamples(packet, packetBuffer, timestamp, fftBuffer, 0);
+					else {
+						if(fftBuffer.size() == 0)
+							fftBuffer.setTimestamp(timestamp);
+						fillPacketIntoSamplePacket(packet, packetBuffer, fftBuffer);
+					}
+
+					// check if the buffer is now full (continuous fft: every packet) and if so: publish
+					// it to the processing loop
+					if(continuousFft || fftBuffer.capacity() == fftBuffer.size()) {
+						fftRingBuffer.publish();
+						fftBuffer = null;
+					}
+					// otherwise we would just go for another round...
+				}
+				fftInCounter.increment();
+			}
+			// If buffer was null we currently have no buffer available, which means we
+			// simply throw the samples away (this will happen most of the time).
+			else
+				fftDroppedCounter.increment();
+
+			// In both cases: Return the packet back to the source buffer pool:
+			if(packet != null)
+				source.returnPacket(packet);
+		}
+		this.stopRequested = true;
+		if(lossless)
+			publishEndOfStream(fftBuffer);
+		if(directSamples != null) {
+			directSamples.free();	// return the block to the arena
+			directSamples = null;
+		}
+		if(bufferedOutputStream != null) {
+			try {
+				bufferedOutputStream.close();
+			} catch (IOException e) {
+				Log.e(LOGTAG, "run: Error while closing output stream (cleanup)(recording): " + e.getMessage());
+			}
+			bufferedOutputStream = null;
+		}
+		Log.i(LOGTAG,"Scheduler stopped. (Thread: " + this.getName() + ")");
+	}
+}
@@ -1,5 +1,7 @@
 package com.mantz_it.rfanalyzer;
 
+import java.nio.ByteBuffer;
+
 public class Signed12BitIQConverter extends IQConverter {
     public Signed12BitIQConverter() {
         super();
@@ -51,8 +53,8 @@ public class Signed12BitIQConverter extends IQConverter {
         float[] im = samplePacket.im();
 
         for (int i = 0; i < count; i++) {
-            final short sre = (short) (((short) packet[i * 4 + 1] << 8) | (short) packet[i * 4 + 0]);
-            final short sim = (short) (((short) packet[i * 4 + 3] << 8) | (short) packet[i * 4 + 2]);
+            final short sre = (short) (((short) packet[i * 4 + 1] << 8) | (packet[i * 4 + 0] & 0xff));
+            final short sim = (short) (((short) packet[i * 4 + 3] << 8) | (packet[i * 4 + 2] & 0xff));
             re[startIndex + i] = lookupTable[sre + 2048];
             im[startIndex + i] = lookupTable[sim + 2048];
         }
@@ -65,7 +67,51 @@ public class Signed12BitIQConverter extends IQConverter {
     }
 
     @Override
-    public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+    public int fillPacketIntoSamplePacket(ByteBuffer packet, SamplePacket samplePacket) {
+        final int startIndex = samplePacket.size();
+        final int count = Math.min(packet.remaining() / 4, samplePacket.capacity() - startIndex);
+        final int offset = packet.position();
+
+        float[] re = samplePacket.re();
+        float[] im = samplePacket.im();
+
+        for (int i = 0; i < count; i++) {
+            final int index = offset + i * 4;
+            final short sre = (short) (((short) packet.get(index + 1) << 8) | (packet.get(index) & 0xff));
+            final short sim = (short) (((short) packet.get(index + 3) << 8) | (packet.get(index + 2) & 0xff));
+            re[startIndex + i] = lookupTable[sre + 2048];
+            im[startIndex + i] = lookupTable[sim + 2048];
+        }
+
+        samplePacket.setSize(startIndex + count);
+        samplePacket.setSampleRate(sampleRate);
+        samplePacket.setFrequency(frequency);
+
+        return count;
+    }
+
+    @Override
+    public int fillPacketIntoDirectSamplePacket(ByteBuffer packet, DirectSamplePacket samplePacket) {
+        final int startIndex = samplePacket.size();
+        final int count = Math.min(packet.remaining() / 4, samplePacket.capacity() - startIndex);
+        final int offset = packet.position();
+
+        for (int i = 0; i < count; i++) {
+            final int index = offset + i * 4;
+            final short sre = (short) (((short) packet.get(index + 1) << 8) | (packet.get(index) & 0xff));
+            final short sim = (short) (((short) packet.get(index + 3) << 8) | (packet.get(index + 2) & 0xff));
+            samplePacket.set(startIndex + i, lookupTable[sre + 2048], lookupTable[sim + 2048]);
+        }
+
+        samplePacket.setSize(startIndex + count);
+        samplePacket.setSampleRate(sampleRate);
+        samplePacket.setFrequency(frequency);
+
+        return count;
+    }
+
+    @Override
+    protected int mixPacketWithLookupTable(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
         final int mixFrequency = (int) (frequency - channelFrequency);
         generateMixerLookupTable(mixFrequency);
 
@@ -76,8 +122,8 @@ public class Signed12BitIQConverter extends IQConverter {
         float[] im = samplePacket.im();
 
         for (int i = 0; i < count; i++) {
-            final short sre = (short) (((short) packet[i * 4 + 1] << 8) | (short) packet[i * 4 + 0]);
-            final short sim = (short) (((short) packet[i * 4 + 3] << 8) | (short) packet[i * 4 + 2]);
+            final short sre = (short) (((short) packet[i * 4 + 1] << 8) | (packet[i * 4 + 0] & 0xff));
+            final short sim = (short) (((short) packet[i * 4 + 3] << 8) | (packet[i * 4 + 2] & 0xff));
             re[startIndex + i] = cosineRealLookupTable[cosineIndex][sre + 2048] - cosineImagLookupTable[cosineIndex][sim + 2048];
             im[startIndex + i] = cosineRealLookupTable[cosineIndex][sim + 2048] + cosineImagLookupTable[cosineIndex][sre + 2048];
             cosineIndex = (cosineIndex + 1) % cosineRealLookupTable.length;
@@ -1,5 +1,7 @@
 package com.mantz_it.rfanalyzer;
 
+import java.nio.ByteBuffer;
+
 /**
  * <h1>RF Analyzer - signed 8-bit IQ Converter</h1>
  *
@@ -97,7 +99,40 @@ public class Signed8BitIQConverter extends IQConverter {
 	}
 
 	@Override
-	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+	public int fillPacketIntoSamplePacket(ByteBuffer packet, SamplePacket samplePacket) {
+		int startIndex = samplePacket.size();
+		int count = Math.min(packet.remaining() / 2, samplePacket.capacity() - startIndex);
+		int index = packet.position();
+		float[] re = samplePacket.re();
+		float[] im = samplePacket.im();
+		for (int i = 0; i < count; i++) {
+			re[startIndex+i] = lookupTable[packet.get(index)+128];
+			im[startIndex+i] = lookupTable[packet.get(index+1)+128];
+			index += 2;
+		}
+		samplePacket.setSize(startIndex+count);				// update the size of the sample packet
+		samplePacket.setSampleRate(sampleRate);				// update the sample rate
+		samplePacket.setFrequency(frequency);				// update the frequency
+		return count;
+	}
+
+	@Override
+	public int fillPacketIntoDirectSamplePacket(ByteBuffer packet, DirectSamplePacket samplePacket) {
+		int startIndex = samplePacket.size();
+		int count = Math.min(packet.remaining() / 2, samplePacket.capacity() - startIndex);
+		int index = packet.position();
+		for (int i = 0; i < count; i++) {
+			samplePacket.set(startIndex+i, lookupTable[packet.get(index)+128], lookupTable[packet.get(index+1)+128]);
+			index += 2;
+		}
+		samplePacket.setSize(startIndex+count);				// update the size of the sample packet
+		samplePacket.setSampleRate(sampleRate);				// update the sample rate
+		samplePacket.setFrequency(frequency);				// update the frequency
+		return count;
+	}
+
+	@Override
+	protected int mixPacketWithLookupTable(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
 		int mixFrequency = (int)(frequency - channelFrequency);
 
 		generateMixerLookupTable(mixFrequency);	// will only generate table if really necessary
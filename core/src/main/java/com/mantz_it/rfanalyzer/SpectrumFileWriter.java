@@ -0,0 +1,87 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * <h1>RF Analyzer - Spectrum File Writer</h1>
+ *
+ * Module:      SpectrumFileWriter.java
+ * Description: Writes the spectra calculated by the AnalyzerProcessingLoop to a binary file
+ *              (offline processing). Every spectrum is stored as one frame (big endian, as
+ *              written by DataOutputStream):
+ *
+ *                  long   center frequency (Hz)
+ *                  int    sample rate (Sps)
+ *                  int    fft size (N)
+ *                  float  N magnitudes in dB (lowest frequency first)
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class SpectrumFileWriter {
+	private DataOutputStream outputStream;
+	private long numberOfFrames = 0;		// number of frames written so far
+
+	/**
+	 * Constructor. Creates the file.
+	 *
+	 * @param file		output file (will be overwritten)
+	 * @throws IOException if the file can't be created
+	 */
+	public SpectrumFileWriter(File file) throws IOException {
+		this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	}
+
+	/**
+	 * @return number of frames written so far
+	 */
+	public long getNumberOfFrames() {
+		return numberOfFrames;
+	}
+
+	/**
+	 * Appends one spectrum to the file.
+	 *
+	 * @param mag			magnitudes in dB
+	 * @param frequency		center frequency of the spectrum
+	 * @param sampleRate	sample rate (= bandwidth) of the spectrum
+	 * @throws IOException on write errors
+	 */
+	public void write(float[] mag, long frequency, int sampleRate) throws IOException {
+		outputStream.writeLong(frequency);
+		outputStream.writeInt(sampleRate);
+		outputStream.writeInt(mag.length);
+		for (float value : mag)
+			outputStream.writeFloat(value);
+		numberOfFrames++;
+	}
+
+	/**
+	 * Flushes and closes the file.
+	 *
+	 * @throws IOException on write errors
+	 */
+	public void close() throws IOException {
+		outputStream.close();
+	}
+}
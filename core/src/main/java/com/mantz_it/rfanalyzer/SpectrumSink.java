@@ -0,0 +1,42 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Spectrum Sink</h1>
+ *
+ * Module:      SpectrumSink.java
+ * Description: Receives the spectra that are calculated by the AnalyzerProcessingLoop.
+ *              Implemented by the AnalyzerSurface of the app.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public interface SpectrumSink {
+
+	/**
+	 * Is called by the AnalyzerProcessingLoop for every calculated spectrum.
+	 *
+	 * @param mag			array of magnitude values that represent the fft (averaged, see AnalyzerProcessingLoop.setAverageLength())
+	 * @param latestMag		magnitude values of the latest fft without averaging (same array as mag if averaging is off)
+	 * @param frequency		center frequency
+	 * @param sampleRate	sample rate
+	 * @param frameRate 	current frame rate (FPS)
+	 * @param load			current load (percentage [0..1])
+	 */
+	public void draw(float[] mag, float[] latestMag, long frequency, int sampleRate, int frameRate, double load);
+}
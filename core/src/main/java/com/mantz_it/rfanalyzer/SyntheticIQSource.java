@@ -0,0 +1,412 @@
+package com.mantz_it.rfanalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>RF Analyzer - Synthetic IQ Source</h1>
+ *
+ * Module:      SyntheticIQSource.java
+ * Description: IQ source that generates a test signal (any number of tones plus gaussian noise)
+ *              in the wire formats of the hardware (8 bit signed, 8 bit unsigned, 12 bit signed).
+ *              Used to measure the throughput of the signal processing pipeline without a device.
+ *
+ *              The signal is generated once in open() as a cycle of CYCLE_PACKETS packets, so that
+ *              getPacket() costs (almost) nothing. The tone frequencies are rounded to a multiple
+ *              of (sample rate / samples per cycle) to avoid a phase jump at the end of the cycle.
+ *
+ *              Two modes:
+ *              - not throttled (default): getPacket() returns the next packet immediately. The
+ *                pipeline runs as fast as it can.
+ *              - throttled: a producer thread delivers the packets at the sample rate into a
+ *                queue of QUEUE_SIZE packets, like the USB transfer buffers of the hardware. If
+ *                the queue is full (the scheduler is too slow), the packet is dropped and counted
+ *                (see getDroppedPackets()).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class SyntheticIQSource implements IQSourceInterface {
+	private Callback callback = null;
+	private int sampleRate;
+	private long frequency;
+	private int packetSize;
+	private int format;
+	private int bytesPerSample;
+	private IQConverter iqConverter;
+	private List<float[]> tones = new ArrayList<float[]>();	// {offset frequency, amplitude} of each tone
+	private float noiseAmplitude = 0;		// standard deviation of the noise (I and Q)
+	private boolean throttled = false;		// true: deliver the packets at the sample rate (see class description)
+	private byte[][] packets = null;		// one cycle of the generated signal
+	private int packetIndex = 0;			// index of the next packet in packets
+	private RingBuffer<byte[]> queue = null;	// packets delivered by the producer thread (throttled mode)
+	private Thread producer = null;
+	private volatile boolean sampling = false;
+	private volatile long deliveredPackets = 0;	// packets handed to the scheduler (or to the queue)
+	private volatile long droppedPackets = 0;	// packets dropped because the queue was full (throttled mode)
+	private static final String LOGTAG = "SyntheticIQSource";
+	private static final int CYCLE_PACKETS = 16;
+	public static final int QUEUE_SIZE = 32;
+	public static final int MIN_SAMPLE_RATE = 1000000;
+	public static final int MAX_SAMPLE_RATE = 61440000;
+	private static final int[] OPTIMAL_SAMPLE_RATES = { 1000000, 2000000, 4000000, 8000000, 10000000,
+			16000000, 20000000, 30000000, 40000000, 61440000};
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sampleRate	sample rate of the generated signal
+	 * @param frequency		center frequency (the tones are relative to it)
+	 * @param packetSize	size of the packets returned by getPacket() in bytes
+	 * @param format		wire format: FileIQSource.FILE_FORMAT_8BIT_SIGNED, ...
+	 */
+	public SyntheticIQSource(int sampleRate, long frequency, int packetSize, int format) {
+		this.sampleRate = sampleRate;
+		this.frequency = frequency;
+		this.packetSize = packetSize;
+		this.format = format;
+		switch (format) {
+			case FileIQSource.FILE_FORMAT_8BIT_SIGNED:
+				iqConverter = new Signed8BitIQConverter();
+				break;
+			case FileIQSource.FILE_FORMAT_8BIT_UNSIGNED:
+				iqConverter = new Unsigned8BitIQConverter();
+				break;
+			case FileIQSource.FILE_FORMAT_12BIT_SIGNED:
+				iqConverter = new Signed12BitIQConverter();
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid format: " + format);
+		}
+		iqConverter.setFrequency(frequency);
+		iqConverter.setSampleRate(sampleRate);
+		this.bytesPerSample = format == FileIQSource.FILE_FORMAT_12BIT_SIGNED ? 4 : 2;
+	}
+
+	/**
+	 * Adds a tone to the signal. Must be called before open().
+	 *
+	 * @param offset		frequency of the tone relative to the center frequency (Hz)
+	 * @param amplitude		amplitude of the tone (full scale = 1)
+	 */
+	public void addTone(int offset, float amplitude) {
+		tones.add(new float[] {offset, amplitude});
+	}
+
+	/**
+	 * @param noiseAmplitude	standard deviation of the gaussian noise on I and Q (full scale = 1).
+	 *                          Must be set before open().
+	 */
+	public void setNoiseAmplitude(float noiseAmplitude) {
+		this.noiseAmplitude = noiseAmplitude;
+	}
+
+	/**
+	 * @return true if the packets are delivered at the sample rate
+	 */
+	public boolean isThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * @param throttled		true to deliver the packets at the sample rate and drop them if the queue
+	 *                      is full; false to deliver them as fast as possible (default).
+	 *                      Must be set before startSampling().
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	/**
+	 * @return the wire format: FileIQSource.FILE_FORMAT_8BIT_SIGNED, ...
+	 */
+	public int getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return number of packets that were delivered since startSampling()
+	 */
+	public long getDeliveredPackets() {
+		return deliveredPackets;
+	}
+
+	/**
+	 * @return number of packets that were dropped since startSampling() (throttled mode only)
+	 */
+	public long getDroppedPackets() {
+		return droppedPackets;
+	}
+
+	/**
+	 * @return number of packets that wait in the queue for the scheduler (throttled mode only)
+	 */
+	public int getQueueSize() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	@Override
+	public boolean open(Object context, Callback callback) {
+		this.callback = callback;
+		generatePackets();
+		if(callback != null)
+			callback.onIQSourceReady(this);
+		return true;
+	}
+
+	/**
+	 * Generates one cycle of the signal in the wire format.
+	 */
+	private void generatePackets() {
+		int samplesPerPacket = packetSize / bytesPerSample;
+		int cycleSamples = samplesPerPacket * CYCLE_PACKETS;
+		Random random = new Random(0);
+		double[] phaseIncrements = new double[tones.size()];
+		for (int t = 0; t < phaseIncrements.length; t++) {
+			// round to a whole number of periods per cycle:
+			long periods = Math.round((double) tones.get(t)[0] * cycleSamples / sampleRate);
+			phaseIncrements[t] = 2 * Math.PI * periods / cycleSamples;
+		}
+		packets = new byte[CYCLE_PACKETS][packetSize];
+		for (int p = 0; p < CYCLE_PACKETS; p++) {
+			for (int i = 0; i < samplesPerPacket; i++) {
+				int n = p * samplesPerPacket + i;
+				double re = random.nextGaussian() * noiseAmplitude;
+				double im = random.nextGaussian() * noiseAmplitude;
+				for (int t = 0; t < phaseIncrements.length; t++) {
+					re += tones.get(t)[1] * Math.cos(phaseIncrements[t] * n);
+					im += tones.get(t)[1] * Math.sin(phaseIncrements[t] * n);
+				}
+				re = Math.max(-1, Math.min(1, re));
+				im = Math.max(-1, Math.min(1, im));
+				switch (format) {
+					case FileIQSource.FILE_FORMAT_8BIT_SIGNED:
+						packets[p][2 * i] = (byte) Math.round(re * 127);
+						packets[p][2 * i + 1] = (byte) Math.round(im * 127);
+						break;
+					case FileIQSource.FILE_FORMAT_8BIT_UNSIGNED:
+						packets[p][2 * i] = (byte) (Math.round(re * 127) + 128);
+						packets[p][2 * i + 1] = (byte) (Math.round(im * 127) + 128);
+						break;
+					case FileIQSource.FILE_FORMAT_12BIT_SIGNED:
+						// little endian 16 bit words (like the bladeRF):
+						int sre = (int) Math.round(re * 2047);
+						int sim = (int) Math.round(im * 2047);
+						packets[p][4 * i] = (byte) sre;
+						packets[p][4 * i + 1] = (byte) (sre >> 8);
+						packets[p][4 * i + 2] = (byte) sim;
+						packets[p][4 * i + 3] = (byte) (sim >> 8);
+						break;
+				}
+			}
+		}
+		packetIndex = 0;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return packets != null;
+	}
+
+	@Override
+	public boolean close() {
+		stopSampling();
+		packets = null;
+		return true;
+	}
+
+	@Override
+	public String getName() {
+		return "Synthetic IQ Source";
+	}
+
+	@Override
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	@Override
+	public void setSampleRate(int sampleRate) {
+		if(sampling) {
+			Log.e(LOGTAG, "setSampleRate: can't change the sample rate while sampling");
+			return;
+		}
+		this.sampleRate = sampleRate;
+		iqConverter.setSampleRate(sampleRate);
+		if(packets != null)
+			generatePackets();
+	}
+
+	@Override
+	public long getFrequency() {
+		return frequency;
+	}
+
+	@Override
+	public void setFrequency(long frequency) {
+		this.frequency = frequency;
+		iqConverter.setFrequency(frequency);
+	}
+
+	@Override
+	public long getMaxFrequency() {
+		return 6000000000L;
+	}
+
+	@Override
+	public long getMinFrequency() {
+		return 0;
+	}
+
+	@Override
+	public int getMaxSampleRate() {
+		return MAX_SAMPLE_RATE;
+	}
+
+	@Override
+	public int getMinSampleRate() {
+		return MIN_SAMPLE_RATE;
+	}
+
+	@Override
+	public int getNextHigherOptimalSampleRate(int sampleRate) {
+		for (int opt : OPTIMAL_SAMPLE_RATES) {
+			if (sampleRate < opt)
+				return opt;
+		}
+		return OPTIMAL_SAMPLE_RATES[OPTIMAL_SAMPLE_RATES.length-1];
+	}
+
+	@Override
+	public int getNextLowerOptimalSampleRate(int sampleRate) {
+		for (int i = 1; i < OPTIMAL_SAMPLE_RATES.length; i++) {
+			if(sampleRate <= OPTIMAL_SAMPLE_RATES[i])
+				return OPTIMAL_SAMPLE_RATES[i-1];
+		}
+		return OPTIMAL_SAMPLE_RATES[OPTIMAL_SAMPLE_RATES.length-1];
+	}
+
+	@Override
+	public int[] getSupportedSampleRates() {
+		return OPTIMAL_SAMPLE_RATES;
+	}
+
+	@Override
+	public int getPacketSize() {
+		return packetSize;
+	}
+
+	@Override
+	public byte[] getPacket(int timeout) {
+		if(packets == null)
+			return null;
+		if(!throttled) {
+			byte[] packet = packets[packetIndex];
+			packetIndex = (packetIndex + 1) % CYCLE_PACKETS;
+			deliveredPackets++;
+			return packet;
+		}
+		if(queue == null)
+			return null;
+		try {
+			return queue.acquire(timeout);
+		} catch (InterruptedException e) {
+			Log.e(LOGTAG, "getPacket: Interrupted while waiting on the queue.");
+			return null;
+		}
+	}
+
+	@Override
+	public void returnPacket(byte[] buffer) {
+		if(throttled && queue != null)
+			queue.release(buffer);
+	}
+
+	@Override
+	public void startSampling() {
+		if(sampling || packets == null)
+			return;
+		deliveredPackets = 0;
+		droppedPackets = 0;
+		sampling = true;
+		if(throttled) {
+			queue = RingBuffer.createByteArrayRingBuffer(QUEUE_SIZE, packetSize);
+			PipelineMetrics.registerQueueGauge(PipelineMetrics.QUEUE_SOURCE, queue);
+			producer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					produce();
+				}
+			}, LOGTAG);
+			producer.start();
+		}
+	}
+
+	@Override
+	public void stopSampling() {
+		sampling = false;
+		if(producer != null) {
+			try {
+				producer.join();
+			} catch (InterruptedException e) {
+				Log.e(LOGTAG, "stopSampling: Interrupted while joining the producer thread.");
+			}
+			producer = null;
+		}
+	}
+
+	/**
+	 * Producer thread (throttled mode): Puts the packets into the queue at the sample rate and
+	 * drops them if the queue is full. If the thread falls behind, it catches up in a burst.
+	 */
+	private void produce() {
+		long packetTime = 1000000000L * (packetSize / bytesPerSample) / sampleRate;	// ns
+		long nextPacketTime = System.nanoTime();
+		while (sampling) {
+			long waitTime = nextPacketTime - System.nanoTime();
+			if(waitTime > 0) {
+				LockSupport.parkNanos(waitTime);
+				continue;
+			}
+			byte[] slot = queue.claim();
+			if(slot != null) {
+				System.arraycopy(packets[packetIndex], 0, slot, 0, packetSize);
+				queue.publish();
+				deliveredPackets++;
+			} else {
+				droppedPackets++;
+				PipelineMetrics.counter(PipelineMetrics.SOURCE_DROPPED).increment();
+			}
+			packetIndex = (packetIndex + 1) % CYCLE_PACKETS;
+			nextPacketTime += packetTime;
+		}
+	}
+
+	@Override
+	public int fillPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket) {
+		return this.iqConverter.fillPacketIntoSamplePacket(packet, samplePacket);
+	}
+
+	@Override
+	public int mixPacketIntoSamplePacket(byte[] packet, SamplePacket samplePacket, long channelFrequency) {
+		return this.iqConverter.mixPacketIntoSamplePacket(packet, samplePacket, channelFrequency);
+	}
+}
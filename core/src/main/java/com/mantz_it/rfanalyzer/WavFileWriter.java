@@ -0,0 +1,180 @@
+package com.mantz_it.rfanalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * <h1>RF Analyzer - WAV File Writer</h1>
+ *
+ * Module:      WavFileWriter.java
+ * Description: Audio output that writes mono 16 bit PCM samples to a WAV file. The sizes in the
+ *              RIFF header are not known in advance, so they are written when the file is closed.
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class WavFileWriter implements AudioOutput {
+	private File file;
+	private BufferedOutputStream outputStream = null;
+	private byte[] byteBuffer = new byte[0];	// used to convert the samples to little endian bytes
+	private long numberOfSamples = 0;			// number of samples written so far
+	private int sampleRate = 0;
+	private static final int HEADER_SIZE = 44;
+	private static final String LOGTAG = "WavFileWriter";
+
+	/**
+	 * Constructor. The file is created by open().
+	 *
+	 * @param file			output file (will be overwritten)
+	 */
+	public WavFileWriter(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return sample rate of the file
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return number of samples written so far
+	 */
+	public long getNumberOfSamples() {
+		return numberOfSamples;
+	}
+
+	/**
+	 * Creates the file and writes a preliminary header.
+	 *
+	 * @param sampleRate	sample rate of the audio samples
+	 * @return false if the file can't be created
+	 */
+	@Override
+	public boolean open(int sampleRate) {
+		this.sampleRate = sampleRate;
+		this.numberOfSamples = 0;
+		try {
+			this.outputStream = new BufferedOutputStream(new FileOutputStream(file));
+			outputStream.write(createHeader(0));
+			return true;
+		} catch (IOException e) {
+			Log.e(LOGTAG, "open: Error while creating " + file + ": " + e.getMessage());
+			outputStream = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Appends samples to the file.
+	 *
+	 * @param samples	16 bit samples
+	 * @param offset	index of the first sample to write
+	 * @param length	number of samples to write
+	 * @return false on write errors
+	 */
+	@Override
+	public boolean write(short[] samples, int offset, int length) {
+		if(outputStream == null)
+			return false;
+		if(byteBuffer.length < 2 * length)
+			byteBuffer = new byte[2 * length];
+		for (int i = 0; i < length; i++) {
+			byteBuffer[2 * i] = (byte) samples[offset + i];
+			byteBuffer[2 * i + 1] = (byte) (samples[offset + i] >> 8);
+		}
+		try {
+			outputStream.write(byteBuffer, 0, 2 * length);
+		} catch (IOException e) {
+			Log.e(LOGTAG, "write: Error while writing to " + file + ": " + e.getMessage());
+			return false;
+		}
+		numberOfSamples += length;
+		return true;
+	}
+
+	/**
+	 * Flushes the samples and writes the final header.
+	 *
+	 * @return false if the samples or the header could not be written (the file is incomplete)
+	 */
+	@Override
+	public boolean close() {
+		if(outputStream == null)
+			return true;
+		boolean success = true;
+		try {
+			outputStream.close();
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				randomAccessFile.write(createHeader(numberOfSamples * 2));
+			} finally {
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			Log.e(LOGTAG, "close: Error while closing " + file + ": " + e.getMessage());
+			success = false;
+		}
+		outputStream = null;
+		return success;
+	}
+
+	/**
+	 * Creates the RIFF header of a mono 16 bit PCM file.
+	 *
+	 * @param dataSize	size of the sample data in bytes
+	 * @return header (44 bytes)
+	 */
+	private byte[] createHeader(long dataSize) {
+		byte[] header = new byte[HEADER_SIZE];
+		putString(header, 0, "RIFF");
+		putInt(header, 4, (int) (dataSize + HEADER_SIZE - 8));
+		putString(header, 8, "WAVE");
+		putString(header, 12, "fmt ");
+		putInt(header, 16, 16);				// size of the fmt chunk
+		putShort(header, 20, 1);			// PCM
+		putShort(header, 22, 1);			// mono
+		putInt(header, 24, sampleRate);
+		putInt(header, 28, sampleRate * 2);	// byte rate
+		putShort(header, 32, 2);			// block align
+		putShort(header, 34, 16);			// bits per sample
+		putString(header, 36, "data");
+		putInt(header, 40, (int) dataSize);
+		return header;
+	}
+
+	private static void putString(byte[] buffer, int offset, String value) {
+		for (int i = 0; i < value.length(); i++)
+			buffer[offset + i] = (byte) value.charAt(i);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		for (int i = 0; i < 4; i++)
+			buffer[offset + i] = (byte) (value >> (8 * i));
+	}
+
+	private static void putShort(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+	}
+}
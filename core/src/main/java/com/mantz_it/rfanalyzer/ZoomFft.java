@@ -0,0 +1,212 @@
+package com.mantz_it.rfanalyzer;
+
+/**
+ * <h1>RF Analyzer - Zoom FFT</h1>
+ *
+ * Module:      ZoomFft.java
+ * Description: Continuous FFT with a higher resolution for a sub-band of the incoming samples.
+ *              The sub-band is shifted to baseband (NcoMixer), decimated by 2^stages with a
+ *              cascade of half band filters (HalfBandLowPassFilter, N=12) and then transformed
+ *              like in ContinuousFft. With the same FFT size the bins are 2^stages times
+ *              narrower than the bins of the full band, without retuning the source.
+ *
+ *              As many stages are used as long as the decimated rate is at least twice the
+ *              requested span, so the visible part stays in the center of the decimated band
+ *              (away from the aliasing at the edges of the half band filters). The center of the
+ *              sub-band is aligned to a grid of 1/GRID_DIVISOR of the decimated rate, so that
+ *              scrolling in small steps does not restart the filters and the integration.
+ *              Without a zoom (or if the span is too wide for a single stage) the samples are
+ *              passed on unchanged.
+ *
+ *              The spectra are calculated at the decimated rate and frequency of the sub-band
+ *              (see getSampleRate() and getFrequency()) and compensated for the gain of the half
+ *              band filters, so they have the same level as the spectra of the full band.
+ *              The incoming packets must be contiguous and have an even size at every stage
+ *              (e.g. a power of 2).
+ *
+ * @author Dennis Mantz
+ *
+ * Copyright (C) 2014 Dennis Mantz
+ * License: http://www.gnu.org/licenses/gpl.html GPL version 2 or higher
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+public class ZoomFft extends ContinuousFft {
+	public static final int MAX_STAGES = 12;		// max. decimation: 4096
+	public static final int GRID_DIVISOR = 8;		// the center is aligned to decimated rate / GRID_DIVISOR
+
+	private long zoomFrequency = 0;				// requested center of the sub-band (guarded by this)
+	private int zoomSpan = 0;					// requested width of the sub-band; 0: no zoom (guarded by this)
+	private long plannedZoomFrequency = 0;		// request that the current filter chain was planned for
+	private int plannedZoomSpan = 0;
+	private long inputFrequency = 0;			// center frequency of the incoming samples
+	private int inputSampleRate = 0;			// sample rate of the incoming samples
+	private long centerFrequency = 0;			// frequency that is shifted to baseband
+	private NcoMixer mixer = null;
+	private HalfBandLowPassFilter[] halfBandFilters = null;	// cascade of half band filters (decimation by 2 each)
+	private SamplePacket mixedSamples = null;	// sub-band shifted to baseband
+	private SamplePacket tmpSamples = null;		// output of the half band filters (alternating)
+	private SamplePacket tmpSamples2 = null;
+	private static final String LOGTAG = "ZoomFft";
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fftSize		size of the FFT (power of 2)
+	 * @param overlap		overlap of consecutive FFTs [0..MAX_OVERLAP]
+	 */
+	public ZoomFft(int fftSize, float overlap) {
+		super(fftSize, overlap);
+	}
+
+	/**
+	 * Will change the sub-band. Can be called from any thread; takes effect with the next packet.
+	 *
+	 * @param frequency		center frequency of the sub-band
+	 * @param span			width of the sub-band in Hz (0 or the full band: no zoom)
+	 */
+	public synchronized void setZoom(long frequency, int span) {
+		this.zoomFrequency = frequency;
+		this.zoomSpan = span;
+	}
+
+	public synchronized long getZoomFrequency() {
+		return zoomFrequency;
+	}
+
+	public synchronized int getZoomSpan() {
+		return zoomSpan;
+	}
+
+	/**
+	 * @return current decimation (1: no zoom)
+	 */
+	public int getDecimation() {
+		return halfBandFilters == null ? 1 : 1 << halfBandFilters.length;
+	}
+
+	/**
+	 * Returns the number of half band stages for a sub-band of the given width: as many as
+	 * possible while the decimated rate is at least twice the span.
+	 *
+	 * @param sampleRate	sample rate of the incoming samples
+	 * @param span			width of the sub-band (0: no zoom)
+	 * @return number of stages [0..MAX_STAGES]
+	 */
+	public static int getDecimationStages(int sampleRate, int span) {
+		if(span <= 0)
+			return 0;
+		int stages = 0;
+		while (stages < MAX_STAGES && (sampleRate >> (stages + 1)) >= 2L * span)
+			stages++;
+		return stages;
+	}
+
+	/**
+	 * Will plan the mixer and the filter chain for the given input and zoom request. The
+	 * filters and the integration are only restarted if the chain actually changes.
+	 */
+	private void planZoom(long inputFrequency, int inputSampleRate, long zoomFrequency, int zoomSpan) throws InterruptedException {
+		int stages = getDecimationStages(inputSampleRate, zoomSpan);
+		long centerFrequency = inputFrequency;
+		if(stages > 0) {
+			int grid = Math.max(1, (inputSampleRate >> stages) / GRID_DIVISOR);
+			centerFrequency = inputFrequency + Math.round((zoomFrequency - inputFrequency) / (double) grid) * grid;
+		}
+		if(halfBandFilters == null || stages != halfBandFilters.length || centerFrequency != this.centerFrequency
+				|| inputFrequency != this.inputFrequency || inputSampleRate != this.inputSampleRate) {
+			halfBandFilters = new HalfBandLowPassFilter[stages];
+			for (int i = 0; i < stages; i++)
+				halfBandFilters[i] = new HalfBandLowPassFilter(12);
+			mixer = new NcoMixer();
+			reset();
+			Log.d(LOGTAG, "planZoom: " + inputSampleRate + " Sps @ " + inputFrequency + " Hz -> " + stages
+					+ " half band filters -> " + (inputSampleRate >> stages) + " Sps @ " + centerFrequency + " Hz");
+		}
+		this.inputFrequency = inputFrequency;
+		this.inputSampleRate = inputSampleRate;
+		this.centerFrequency = centerFrequency;
+		this.plannedZoomFrequency = zoomFrequency;
+		this.plannedZoomSpan = zoomSpan;
+	}
+
+	/**
+	 * Shifts the sub-band of the given samples to baseband, decimates it and calculates all
+	 * FFTs that can be completed (see ContinuousFft.process()).
+	 *
+	 * @param samples		next packet of the (contiguous) sample stream
+	 */
+	@Override
+	public void process(SamplePacket samples) throws InterruptedException {
+		long zoomFrequency;
+		int zoomSpan;
+		synchronized (this) {
+			zoomFrequency = this.zoomFrequency;
+			zoomSpan = this.zoomSpan;
+		}
+		if(halfBandFilters == null || samples.getFrequency() != inputFrequency || samples.getSampleRate() != inputSampleRate
+				|| zoomFrequency != plannedZoomFrequency || zoomSpan != plannedZoomSpan)
+			planZoom(samples.getFrequency(), samples.getSampleRate(), zoomFrequency, zoomSpan);
+
+		if(halfBandFilters.length == 0) {
+			super.process(samples);
+			return;
+		}
+
+		// (re)allocate the buffers if the packets became larger:
+		if(mixedSamples == null || mixedSamples.capacity() < samples.size()) {
+			mixedSamples = new SamplePacket(samples.size());
+			tmpSamples = new SamplePacket(samples.size() / 2);
+			tmpSamples2 = new SamplePacket(samples.size() / 2);
+		}
+
+		// shift the sub-band to baseband:
+		mixedSamples.setSize(0);
+		mixer.mix(samples, mixedSamples, centerFrequency);
+
+		// apply the half band filters (alternating between the two tmp buffers):
+		SamplePacket current = mixedSamples;
+		for (int i = 0; i < halfBandFilters.length; i++) {
+			SamplePacket next = current == tmpSamples ? tmpSamples2 : tmpSamples;
+			next.setSize(0);	// mark buffer as empty
+			if (halfBandFilters[i].filterN12(current, next, 0, current.size()) < current.size())
+				Log.e(LOGTAG, "process: [halfBandFilter " + i + "] could not filter all samples from input packet.");
+			current = next;
+		}
+		current.setFrequency(centerFrequency);
+		current.setTimestamp(samples.getTimestamp());
+		super.process(current);
+	}
+
+	/**
+	 * Returns the integrated power spectrum of the sub-band (compensated for the gain of 2 of
+	 * each half band filter) and starts the integration of the next one.
+	 *
+	 * @param power		destination for the linear power of each bin (see ContinuousFft.getPowerSpectrum())
+	 * @return false if no FFT was integrated since the last call (power is not changed)
+	 */
+	@Override
+	public boolean getPowerSpectrum(float[] power) throws InterruptedException {
+		if(!super.getPowerSpectrum(power))
+			return false;
+		int decimation = getDecimation();
+		if(decimation > 1) {
+			float scale = 1f / ((float) decimation * decimation);
+			for (int i = 0; i < power.length; i++)
+				power[i] *= scale;
+		}
+		return true;
+	}
+}